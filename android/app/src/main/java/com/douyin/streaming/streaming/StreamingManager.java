@@ -1,294 +1,435 @@
-package com.douyin.streaming.streaming;
-
-import android.content.Context;
-import android.util.Log;
-
-import com.douyin.streaming.streaming.protocols.OKBStreamingProtocol;
-import com.douyin.streaming.streaming.protocols.VRStreamingProtocol;
-import com.douyin.streaming.streaming.protocols.ATFStreamingProtocol;
-import com.douyin.streaming.streaming.protocols.ATSStreamingProtocol;
-import com.douyin.streaming.streaming.protocols.StreamingProtocol;
-import com.douyin.streaming.utils.StreamingConfig;
-
-import java.util.HashMap;
-import java.util.Map;
-
-public class StreamingManager {
-    private static final String TAG = "StreamingManager";
-    
-    public enum StreamingType {
-        OKB("OKB推流"),
-        VR("VR推流"),
-        ATF("ATF推流"),
-        ATS("ATS推流");
-        
-        private final String displayName;
-        
-        StreamingType(String displayName) {
-            this.displayName = displayName;
-        }
-        
-        public String getDisplayName() {
-            return displayName;
-        }
-    }
-    
-    public interface StatusListener {
-        void onStatusChanged(String status);
-        void onError(String error);
-    }
-    
-    private Context context;
-    private StreamingConfig config;
-    private Map<StreamingType, StreamingProtocol> protocols;
-    private StreamingProtocol currentProtocol;
-    private StreamingType currentType;
-    private StatusListener statusListener;
-    private boolean isStreaming = false;
-    
-    public StreamingManager(Context context) {
-        this.context = context;
-        this.config = new StreamingConfig();
-        initProtocols();
-    }
-    
-    private void initProtocols() {
-        protocols = new HashMap<>();
-        protocols.put(StreamingType.OKB, new OKBStreamingProtocol(context, config));
-        protocols.put(StreamingType.VR, new VRStreamingProtocol(context, config));
-        protocols.put(StreamingType.ATF, new ATFStreamingProtocol(context, config));
-        protocols.put(StreamingType.ATS, new ATSStreamingProtocol(context, config));
-        
-        // 设置默认推流方式
-        currentType = StreamingType.OKB;
-        currentProtocol = protocols.get(currentType);
-    }
-    
-    public void setStreamingType(StreamingType type) {
-        if (isStreaming) {
-            Log.w(TAG, "推流进行中，无法切换推流方式");
-            return;
-        }
-        
-        if (protocols.containsKey(type)) {
-            currentType = type;
-            currentProtocol = protocols.get(type);
-            Log.d(TAG, "推流方式已切换为: " + type.getDisplayName());
-            
-            if (statusListener != null) {
-                statusListener.onStatusChanged("推流方式: " + type.getDisplayName());
-            }
-        } else {
-            Log.e(TAG, "不支持的推流方式: " + type);
-        }
-    }
-    
-    public void setStatusListener(StatusListener listener) {
-        this.statusListener = listener;
-    }
-    
-    public void startStreaming(String streamKey, String rtmpUrl) {
-        if (isStreaming) {
-            Log.w(TAG, "推流已在进行中");
-            return;
-        }
-        
-        if (currentProtocol == null) {
-            String error = "推流协议未初始化";
-            Log.e(TAG, error);
-            if (statusListener != null) {
-                statusListener.onError(error);
-            }
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "开始推流，方式: " + currentType.getDisplayName());
-            if (statusListener != null) {
-                statusListener.onStatusChanged("正在启动推流...");
-            }
-            
-            // 配置推流参数
-            config.setStreamKey(streamKey);
-            config.setRtmpUrl(rtmpUrl);
-            config.setStreamingType(currentType);
-            
-            // 启动推流
-            currentProtocol.startStreaming(config, new StreamingProtocol.StreamingCallback() {
-                @Override
-                public void onStarted() {
-                    isStreaming = true;
-                    Log.d(TAG, "推流已启动");
-                    if (statusListener != null) {
-                        statusListener.onStatusChanged("推流已启动 - " + currentType.getDisplayName());
-                    }
-                }
-                
-                @Override
-                public void onStopped() {
-                    isStreaming = false;
-                    Log.d(TAG, "推流已停止");
-                    if (statusListener != null) {
-                        statusListener.onStatusChanged("推流已停止");
-                    }
-                }
-                
-                @Override
-                public void onError(String error) {
-                    isStreaming = false;
-                    Log.e(TAG, "推流错误: " + error);
-                    if (statusListener != null) {
-                        statusListener.onError(error);
-                    }
-                }
-                
-                @Override
-                public void onStatusUpdate(String status) {
-                    if (statusListener != null) {
-                        statusListener.onStatusChanged(status);
-                    }
-                }
-            });
-            
-        } catch (Exception e) {
-            String error = "启动推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (statusListener != null) {
-                statusListener.onError(error);
-            }
-        }
-    }
-    
-    public void stopStreaming() {
-        if (!isStreaming || currentProtocol == null) {
-            Log.w(TAG, "推流未在进行中");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "停止推流");
-            if (statusListener != null) {
-                statusListener.onStatusChanged("正在停止推流...");
-            }
-            
-            currentProtocol.stopStreaming();
-            
-        } catch (Exception e) {
-            String error = "停止推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (statusListener != null) {
-                statusListener.onError(error);
-            }
-        }
-    }
-    
-    public void pauseStreaming() {
-        if (!isStreaming || currentProtocol == null) {
-            Log.w(TAG, "推流未在进行中");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "暂停推流");
-            currentProtocol.pauseStreaming();
-            
-            if (statusListener != null) {
-                statusListener.onStatusChanged("推流已暂停");
-            }
-            
-        } catch (Exception e) {
-            String error = "暂停推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (statusListener != null) {
-                statusListener.onError(error);
-            }
-        }
-    }
-    
-    public void resumeStreaming() {
-        if (!isStreaming || currentProtocol == null) {
-            Log.w(TAG, "推流未在进行中");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "恢复推流");
-            currentProtocol.resumeStreaming();
-            
-            if (statusListener != null) {
-                statusListener.onStatusChanged("推流已恢复");
-            }
-            
-        } catch (Exception e) {
-            String error = "恢复推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (statusListener != null) {
-                statusListener.onError(error);
-            }
-        }
-    }
-    
-    public boolean isStreaming() {
-        return isStreaming;
-    }
-    
-    public StreamingType getCurrentStreamingType() {
-        return currentType;
-    }
-    
-    public StreamingConfig getConfig() {
-        return config;
-    }
-    
-    public void updateConfig(StreamingConfig newConfig) {
-        this.config = newConfig;
-        Log.d(TAG, "推流配置已更新");
-    }
-    
-    public void setVideoQuality(int width, int height, int bitrate, int fps) {
-        config.setVideoWidth(width);
-        config.setVideoHeight(height);
-        config.setVideoBitrate(bitrate);
-        config.setVideoFps(fps);
-        
-        Log.d(TAG, String.format("视频质量设置: %dx%d, %dkbps, %dfps", 
-                width, height, bitrate, fps));
-    }
-    
-    public void setAudioQuality(int sampleRate, int channels, int bitrate) {
-        config.setAudioSampleRate(sampleRate);
-        config.setAudioChannels(channels);
-        config.setAudioBitrate(bitrate);
-        
-        Log.d(TAG, String.format("音频质量设置: %dHz, %d声道, %dkbps", 
-                sampleRate, channels, bitrate));
-    }
-    
-    public void setNetworkConfig(int timeout, int retryCount, boolean enableAdaptive) {
-        config.setNetworkTimeout(timeout);
-        config.setRetryCount(retryCount);
-        config.setEnableAdaptiveBitrate(enableAdaptive);
-        
-        Log.d(TAG, String.format("网络配置: 超时%dms, 重试%d次, 自适应比特率%s", 
-                timeout, retryCount, enableAdaptive ? "开启" : "关闭"));
-    }
-    
-    public void release() {
-        if (isStreaming) {
-            stopStreaming();
-        }
-        
-        for (StreamingProtocol protocol : protocols.values()) {
-            try {
-                protocol.release();
-            } catch (Exception e) {
-                Log.e(TAG, "释放推流协议失败", e);
-            }
-        }
-        
-        protocols.clear();
-        currentProtocol = null;
-        Log.d(TAG, "推流管理器已释放");
-    }
-}
-
+package com.douyin.streaming.streaming;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.log.AndroidLogger;
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.network.rtmp.RtmpBandwidthProbe;
+import com.douyin.streaming.streaming.network.rtmp.RtmpUrl;
+import com.douyin.streaming.streaming.protocols.OKBStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.VRStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.ATFStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.ATSStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.SRTStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.WHIPStreamingProtocol;
+import com.douyin.streaming.streaming.protocols.StreamingProtocol;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class StreamingManager {
+    private static final String TAG = "StreamingManager";
+    
+    public interface StatusListener {
+        void onStatusChanged(String status);
+        void onError(String error);
+    }
+    
+    private Context context;
+    private StreamingConfig config;
+    // 所有协议共用的定时线程，release()时统一停止
+    private final StreamingScheduler scheduler = new StreamingScheduler();
+    private Map<StreamingType, StreamingProtocol> protocols;
+    private StreamingProtocol currentProtocol;
+    private StreamingType currentType;
+    private StatusListener statusListener;
+    private boolean isStreaming = false;
+    private final AtomicBoolean isProbing = new AtomicBoolean(false);
+    private volatile RtmpBandwidthProbe.Result lastProbeResult;
+    
+    public StreamingManager(Context context) {
+        this.context = context;
+        // 核心模块的日志输出到logcat
+        StreamingLog.setLogger(new AndroidLogger());
+        this.config = new StreamingConfig();
+        initProtocols();
+    }
+    
+    private void initProtocols() {
+        protocols = new HashMap<>();
+        protocols.put(StreamingType.OKB, new OKBStreamingProtocol(context, config, scheduler));
+        protocols.put(StreamingType.VR, new VRStreamingProtocol(context, config, scheduler));
+        protocols.put(StreamingType.ATF, new ATFStreamingProtocol(context, config, scheduler));
+        protocols.put(StreamingType.ATS, new ATSStreamingProtocol(context, config, scheduler));
+        protocols.put(StreamingType.SRT, new SRTStreamingProtocol(context, config, scheduler));
+        protocols.put(StreamingType.WHIP, new WHIPStreamingProtocol(context, config, scheduler));
+        
+        // 设置默认推流方式
+        currentType = StreamingType.OKB;
+        currentProtocol = protocols.get(currentType);
+    }
+    
+    public void setStreamingType(StreamingType type) {
+        if (isStreaming || isProbing.get()) {
+            Log.w(TAG, "推流进行中，无法切换推流方式");
+            return;
+        }
+        
+        if (protocols.containsKey(type)) {
+            currentType = type;
+            currentProtocol = protocols.get(type);
+            Log.d(TAG, "推流方式已切换为: " + type.getDisplayName());
+            
+            if (statusListener != null) {
+                statusListener.onStatusChanged("推流方式: " + type.getDisplayName());
+            }
+        } else {
+            Log.e(TAG, "不支持的推流方式: " + type);
+        }
+    }
+    
+    public void setStatusListener(StatusListener listener) {
+        this.statusListener = listener;
+    }
+    
+    public void startStreaming(String streamKey, String rtmpUrl) {
+        if (isStreaming || isProbing.get()) {
+            Log.w(TAG, "推流已在进行中");
+            return;
+        }
+        
+        if (currentProtocol == null) {
+            String error = "推流协议未初始化";
+            Log.e(TAG, error);
+            if (statusListener != null) {
+                statusListener.onError(error);
+            }
+            return;
+        }
+        
+        try {
+            Log.d(TAG, "开始推流，方式: " + currentType.getDisplayName());
+            if (statusListener != null) {
+                statusListener.onStatusChanged("正在启动推流...");
+            }
+            
+            // 配置推流参数
+            config.setStreamKey(streamKey);
+            config.setRtmpUrl(rtmpUrl);
+            config.setStreamingType(currentType);
+            
+            // RTMP推流先探测上行带宽，探测完成后再配置编码器
+            String url = rtmpUrl + streamKey;
+            if (config.isEnableBandwidthProbe() && config.isEnableAdaptiveBitrate() && RtmpUrl.isSupported(url)) {
+                startBandwidthProbe(RtmpUrl.parse(url));
+            } else {
+                currentProtocol.startStreaming(config, createStreamingCallback());
+            }
+            
+        } catch (Exception e) {
+            String error = "启动推流失败: " + e.getMessage();
+            Log.e(TAG, error, e);
+            if (statusListener != null) {
+                statusListener.onError(error);
+            }
+        }
+    }
+    
+    /**
+     * 在后台线程探测上行带宽，按结果调整本次推流的参数后再启动推流
+     * 只按服务器确认的结果调整，探测失败或服务器不确认时使用原配置；调整只作用于本次推流的配置副本
+     */
+    private void startBandwidthProbe(RtmpUrl url) {
+        isProbing.set(true);
+        if (statusListener != null) {
+            statusListener.onStatusChanged("正在检测上行带宽...");
+        }
+        
+        final StreamingConfig sessionConfig = config.copy();
+        final StreamingProtocol protocol = currentProtocol;
+        // 实测达到所需码率的两倍即认为带宽充足，不必继续探测
+        final int maxKbps = (sessionConfig.getVideoBitrate() + sessionConfig.getAudioBitrate()) * 2;
+        Thread probeThread = new Thread(() -> {
+            RtmpBandwidthProbe probe = new RtmpBandwidthProbe(url, sessionConfig.getNetworkTimeout(),
+                    sessionConfig.getBandwidthProbeDuration(), maxKbps);
+            String status;
+            try {
+                RtmpBandwidthProbe.Result result = probe.run();
+                lastProbeResult = result;
+                if (!result.isAcknowledged()) {
+                    status = "服务器未确认探测数据，使用原配置";
+                } else {
+                    if (result.getKbps() < maxKbps * 9 / 10) {
+                        sessionConfig.adjustForNetworkCondition(result.getKbps());
+                    }
+                    status = String.format("上行带宽约%dkbps，视频%dx%d %dkbps", result.getKbps(),
+                            sessionConfig.getVideoWidth(), sessionConfig.getVideoHeight(),
+                            sessionConfig.getVideoBitrate());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "上行带宽探测失败，使用原配置", e);
+                status = "上行带宽探测失败，使用原配置";
+            }
+            
+            // 探测期间已停止推流
+            if (!isProbing.compareAndSet(true, false)) {
+                return;
+            }
+            Log.d(TAG, status);
+            if (statusListener != null) {
+                statusListener.onStatusChanged(status);
+            }
+            try {
+                protocol.startStreaming(sessionConfig, createStreamingCallback());
+            } catch (Exception e) {
+                String error = "启动推流失败: " + e.getMessage();
+                Log.e(TAG, error, e);
+                if (statusListener != null) {
+                    statusListener.onError(error);
+                }
+            }
+        }, "UplinkProbe");
+        probeThread.start();
+    }
+    
+    private StreamingProtocol.StreamingCallback createStreamingCallback() {
+        return new StreamingProtocol.StreamingCallback() {
+            @Override
+            public void onStarted() {
+                isStreaming = true;
+                Log.d(TAG, "推流已启动");
+                if (statusListener != null) {
+                    statusListener.onStatusChanged("推流已启动 - " + currentType.getDisplayName());
+                }
+            }
+            
+            @Override
+            public void onStopped() {
+                isStreaming = false;
+                Log.d(TAG, "推流已停止");
+                if (statusListener != null) {
+                    statusListener.onStatusChanged("推流已停止");
+                }
+            }
+            
+            @Override
+            public void onError(String error) {
+                isStreaming = false;
+                Log.e(TAG, "推流错误: " + error);
+                if (statusListener != null) {
+                    statusListener.onError(error);
+                }
+            }
+            
+            @Override
+            public void onStatusUpdate(String status) {
+                if (statusListener != null) {
+                    statusListener.onStatusChanged(status);
+                }
+            }
+            
+            @Override
+            public void onBitrateChanged(int oldBitrate, int newBitrate, String reason) {
+                Log.d(TAG, String.format("码率调整: %dkbps -> %dkbps (%s)", oldBitrate, newBitrate, reason));
+                if (statusListener != null) {
+                    statusListener.onStatusChanged(String.format("码率调整为%dkbps - %s", newBitrate, reason));
+                }
+            }
+        };
+    }
+    
+    public void stopStreaming() {
+        if (isProbing.compareAndSet(true, false)) {
+            Log.d(TAG, "取消上行带宽探测");
+            if (statusListener != null) {
+                statusListener.onStatusChanged("推流已停止");
+            }
+            return;
+        }
+        
+        if (!isStreaming || currentProtocol == null) {
+            Log.w(TAG, "推流未在进行中");
+            return;
+        }
+        
+        try {
+            Log.d(TAG, "停止推流");
+            if (statusListener != null) {
+                statusListener.onStatusChanged("正在停止推流...");
+            }
+            
+            currentProtocol.stopStreaming();
+            
+        } catch (Exception e) {
+            String error = "停止推流失败: " + e.getMessage();
+            Log.e(TAG, error, e);
+            if (statusListener != null) {
+                statusListener.onError(error);
+            }
+        }
+    }
+    
+    public void pauseStreaming() {
+        if (!isStreaming || currentProtocol == null) {
+            Log.w(TAG, "推流未在进行中");
+            return;
+        }
+        
+        try {
+            Log.d(TAG, "暂停推流");
+            currentProtocol.pauseStreaming();
+            
+            if (statusListener != null) {
+                statusListener.onStatusChanged("推流已暂停");
+            }
+            
+        } catch (Exception e) {
+            String error = "暂停推流失败: " + e.getMessage();
+            Log.e(TAG, error, e);
+            if (statusListener != null) {
+                statusListener.onError(error);
+            }
+        }
+    }
+    
+    public void resumeStreaming() {
+        if (!isStreaming || currentProtocol == null) {
+            Log.w(TAG, "推流未在进行中");
+            return;
+        }
+        
+        try {
+            Log.d(TAG, "恢复推流");
+            currentProtocol.resumeStreaming();
+            
+            if (statusListener != null) {
+                statusListener.onStatusChanged("推流已恢复");
+            }
+            
+        } catch (Exception e) {
+            String error = "恢复推流失败: " + e.getMessage();
+            Log.e(TAG, error, e);
+            if (statusListener != null) {
+                statusListener.onError(error);
+            }
+        }
+    }
+    
+    public boolean isStreaming() {
+        return isStreaming;
+    }
+    
+    /**
+     * 最近一次上行带宽探测结果，尚未探测或探测失败时为null
+     */
+    public RtmpBandwidthProbe.Result getLastProbeResult() {
+        return lastProbeResult;
+    }
+    
+    /**
+     * 当前推流方式最近一个统计周期的指标快照
+     */
+    public StreamingProtocol.MetricsSnapshot getMetricsSnapshot() {
+        StreamingProtocol protocol = currentProtocol;
+        return protocol != null ? protocol.getMetricsSnapshot() : StreamingProtocol.MetricsSnapshot.EMPTY;
+    }
+    
+    /**
+     * 订阅推流指标，切换推流方式后仍然有效
+     * @param intervalMs 回调间隔，按统计周期 (1秒) 向上取整
+     */
+    public StreamingProtocol.MetricsSubscription subscribeMetrics(StreamingProtocol.MetricsListener listener,
+                                                                  long intervalMs) {
+        // 只有正在推流的协议会发布快照，因此在每个协议上订阅
+        final List<StreamingProtocol.MetricsSubscription> subscriptions = new ArrayList<>();
+        for (StreamingProtocol protocol : protocols.values()) {
+            subscriptions.add(protocol.subscribeMetrics(listener, intervalMs));
+        }
+        return () -> {
+            for (StreamingProtocol.MetricsSubscription subscription : subscriptions) {
+                subscription.cancel();
+            }
+        };
+    }
+    
+    public StreamingType getCurrentStreamingType() {
+        return currentType;
+    }
+    
+    /**
+     * 共享的定时任务调度，供需要周期任务的组件注册
+     */
+    public StreamingScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    public StreamingConfig getConfig() {
+        return config;
+    }
+    
+    public void updateConfig(StreamingConfig newConfig) {
+        this.config = newConfig;
+        Log.d(TAG, "推流配置已更新");
+    }
+    
+    public void setVideoQuality(int width, int height, int bitrate, int fps) {
+        config.setVideoWidth(width);
+        config.setVideoHeight(height);
+        config.setVideoBitrate(bitrate);
+        config.setVideoFps(fps);
+        
+        Log.d(TAG, String.format("视频质量设置: %dx%d, %dkbps, %dfps", 
+                width, height, bitrate, fps));
+    }
+    
+    public void setAudioQuality(int sampleRate, int channels, int bitrate) {
+        config.setAudioSampleRate(sampleRate);
+        config.setAudioChannels(channels);
+        config.setAudioBitrate(bitrate);
+        
+        Log.d(TAG, String.format("音频质量设置: %dHz, %d声道, %dkbps", 
+                sampleRate, channels, bitrate));
+    }
+    
+    public void setNetworkConfig(int timeout, int retryCount, boolean enableAdaptive) {
+        config.setNetworkTimeout(timeout);
+        config.setRetryCount(retryCount);
+        config.setEnableAdaptiveBitrate(enableAdaptive);
+        
+        Log.d(TAG, String.format("网络配置: 超时%dms, 重试%d次, 自适应比特率%s", 
+                timeout, retryCount, enableAdaptive ? "开启" : "关闭"));
+    }
+    
+    /**
+     * 设置同时推流的其他完整地址，与主地址共用一次编码，下次开始推流时生效
+     */
+    public void setAdditionalDestinations(List<String> rtmpUrls) {
+        config.setAdditionalRtmpUrls(rtmpUrls);
+        Log.d(TAG, "其他推流地址: " + config.getAdditionalRtmpUrls().size() + "个");
+    }
+    
+    /**
+     * 设置多码率阶梯，主输出之外同时编码推流的较低档位，下次开始推流时生效
+     */
+    public void setRenditionLadder(List<StreamingConfig.QualityPreset> presets) {
+        config.setRenditionLadder(presets);
+        Log.d(TAG, "多码率阶梯: " + config.getRenditions().size() + "档");
+    }
+    
+    public void release() {
+        if (isStreaming) {
+            stopStreaming();
+        }
+        
+        for (StreamingProtocol protocol : protocols.values()) {
+            try {
+                protocol.release();
+            } catch (Exception e) {
+                Log.e(TAG, "释放推流协议失败", e);
+            }
+        }
+        
+        protocols.clear();
+        currentProtocol = null;
+        scheduler.release();
+        Log.d(TAG, "推流管理器已释放");
+    }
+}
+
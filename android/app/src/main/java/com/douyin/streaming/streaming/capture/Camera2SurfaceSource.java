@@ -0,0 +1,282 @@
+package com.douyin.streaming.streaming.capture;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaCodec;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camera2采集源
+ * 摄像头画面直接输出到编码器输入Surface，零拷贝
+ * 多个Surface时由摄像头硬件按各自尺寸缩放，多码率编码不需要在CPU或GPU上再缩放
+ */
+public class Camera2SurfaceSource implements VideoCaptureSource {
+    private static final String TAG = "Camera2SurfaceSource";
+
+    private final CameraManager cameraManager;
+    private final boolean frontFacing;
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private final List<Surface> targetSurfaces = new ArrayList<>();
+    private Callback callback;
+    private int fps;
+    // 只在摄像头线程上访问
+    private boolean paused = false;
+    // stop()后到达的打开回调直接关闭摄像头
+    private volatile boolean stopped = true;
+
+    public Camera2SurfaceSource(Context context, boolean frontFacing) {
+        this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.frontFacing = frontFacing;
+    }
+
+    @Override
+    public boolean isSizeSupported(int width, int height) {
+        try {
+            String cameraId = findCameraId();
+            if (cameraId == null) {
+                return false;
+            }
+            StreamConfigurationMap map = cameraManager.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map == null) {
+                return false;
+            }
+            for (Size size : map.getOutputSizes(MediaCodec.class)) {
+                if ((size.getWidth() == width && size.getHeight() == height)
+                        || (size.getWidth() == height && size.getHeight() == width)) {
+                    return true;
+                }
+            }
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "查询摄像头输出尺寸失败", e);
+        }
+        return false;
+    }
+
+    @Override
+    public void start(List<Surface> targets, int fps, Callback callback) {
+        this.targetSurfaces.clear();
+        this.targetSurfaces.addAll(targets);
+        this.fps = fps;
+        this.callback = callback;
+        this.paused = false;
+        this.stopped = false;
+
+        if (cameraThread == null) {
+            cameraThread = new HandlerThread("Camera2Capture");
+            cameraThread.start();
+            cameraHandler = new Handler(cameraThread.getLooper());
+        }
+
+        try {
+            String cameraId = findCameraId();
+            if (cameraId == null) {
+                notifyError("未找到可用的摄像头");
+                return;
+            }
+            Log.d(TAG, "打开摄像头: " + cameraId);
+            cameraManager.openCamera(cameraId, deviceCallback, cameraHandler);
+        } catch (CameraAccessException | SecurityException e) {
+            Log.e(TAG, "打开摄像头失败", e);
+            notifyError("打开摄像头失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        if (cameraHandler == null) {
+            return;
+        }
+        cameraHandler.post(this::closeCamera);
+    }
+
+    @Override
+    public void pause() {
+        if (cameraHandler == null) {
+            return;
+        }
+        cameraHandler.post(() -> {
+            paused = true;
+            if (captureSession == null) {
+                return;
+            }
+            try {
+                // 停止重复请求后传感器不再出图，摄像头保持打开，恢复时无需重新建立会话
+                captureSession.stopRepeating();
+                Log.d(TAG, "摄像头采集已暂停");
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.w(TAG, "暂停采集失败", e);
+            }
+        });
+    }
+
+    @Override
+    public void resume() {
+        if (cameraHandler == null) {
+            return;
+        }
+        cameraHandler.post(() -> {
+            paused = false;
+            startRepeatingRequest();
+        });
+    }
+
+    @Override
+    public void release() {
+        stop();
+        if (cameraThread != null) {
+            cameraThread.quitSafely();
+            cameraThread = null;
+            cameraHandler = null;
+        }
+    }
+
+    private final CameraDevice.StateCallback deviceCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(CameraDevice camera) {
+            if (stopped) {
+                Log.d(TAG, "采集已停止，关闭刚打开的摄像头");
+                camera.close();
+                return;
+            }
+            cameraDevice = camera;
+            createCaptureSession();
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+            Log.w(TAG, "摄像头已断开");
+            camera.close();
+            cameraDevice = null;
+            notifyError("摄像头已断开");
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+            Log.e(TAG, "摄像头错误: " + error);
+            camera.close();
+            cameraDevice = null;
+            notifyError("摄像头错误: " + error);
+        }
+    };
+
+    private void createCaptureSession() {
+        try {
+            cameraDevice.createCaptureSession(new ArrayList<>(targetSurfaces),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(CameraCaptureSession session) {
+                            if (stopped) {
+                                session.close();
+                                return;
+                            }
+                            captureSession = session;
+                            startRepeatingRequest();
+                        }
+
+                        @Override
+                        public void onConfigureFailed(CameraCaptureSession session) {
+                            Log.e(TAG, "采集会话配置失败");
+                            notifyError("采集会话配置失败");
+                        }
+                    }, cameraHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "创建采集会话失败", e);
+            notifyError("创建采集会话失败: " + e.getMessage());
+        }
+    }
+
+    private void startRepeatingRequest() {
+        if (cameraDevice == null || captureSession == null || paused) {
+            return;
+        }
+        try {
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            for (Surface target : targetSurfaces) {
+                builder.addTarget(target);
+            }
+            Range<Integer> fpsRange = chooseFpsRange(cameraDevice.getId());
+            if (fpsRange != null) {
+                builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+            }
+            captureSession.setRepeatingRequest(builder.build(), null, cameraHandler);
+
+            Log.d(TAG, "摄像头采集已开始, 帧率范围: " + fpsRange);
+            if (callback != null) {
+                callback.onCaptureStarted();
+            }
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "启动采集失败", e);
+            notifyError("启动采集失败: " + e.getMessage());
+        }
+    }
+
+    private void closeCamera() {
+        if (captureSession != null) {
+            captureSession.close();
+            captureSession = null;
+        }
+        if (cameraDevice != null) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+        Log.d(TAG, "摄像头采集已停止");
+    }
+
+    private String findCameraId() throws CameraAccessException {
+        int facing = frontFacing ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+        String[] ids = cameraManager.getCameraIdList();
+        for (String id : ids) {
+            Integer lensFacing = cameraManager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == facing) {
+                return id;
+            }
+        }
+        return ids.length > 0 ? ids[0] : null;
+    }
+
+    /**
+     * 选择上限等于目标帧率、下限尽量高的固定帧率范围
+     */
+    private Range<Integer> chooseFpsRange(String cameraId) throws CameraAccessException {
+        Range<Integer>[] ranges = cameraManager.getCameraCharacteristics(cameraId)
+                .get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null) {
+            return null;
+        }
+        Range<Integer> best = null;
+        for (Range<Integer> range : ranges) {
+            if (range.getUpper() != fps) {
+                continue;
+            }
+            if (best == null || range.getLower() > best.getLower()) {
+                best = range;
+            }
+        }
+        return best;
+    }
+
+    private void notifyError(String error) {
+        if (callback != null) {
+            callback.onCaptureError(error);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.douyin.streaming.streaming.capture;
+
+import android.view.Surface;
+
+import java.util.List;
+
+/**
+ * 视频采集源接口
+ * 采集源直接把画面渲染到编码器的输入Surface，像素数据不经过Java堆
+ */
+public interface VideoCaptureSource {
+
+    /**
+     * 采集回调接口
+     */
+    interface Callback {
+        /**
+         * 采集已开始
+         */
+        void onCaptureStarted();
+
+        /**
+         * 采集出错
+         */
+        void onCaptureError(String error);
+    }
+
+    /**
+     * 检查是否支持指定的输出尺寸
+     */
+    boolean isSizeSupported(int width, int height);
+
+    /**
+     * 开始采集
+     * 同一帧画面输出到每个Surface，由采集设备按各Surface的尺寸各缩放一次，时间戳相同
+     * @param targets 编码器输入Surface，最多3个
+     * @param fps 目标帧率
+     * @param callback 采集回调
+     */
+    void start(List<Surface> targets, int fps, Callback callback);
+
+    /**
+     * 停止采集
+     */
+    void stop();
+
+    /**
+     * 暂停输出画面，采集设备保持打开以便快速恢复
+     */
+    void pause();
+
+    /**
+     * 恢复输出画面，恢复后再次回调onCaptureStarted
+     */
+    void resume();
+
+    /**
+     * 释放资源
+     */
+    void release();
+}
@@ -0,0 +1,222 @@
+package com.douyin.streaming.streaming.encoder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 麦克风采集 + MediaCodec AAC-LC或Opus编码
+ * PCM直接读入编码器输入缓冲区，时间戳按采样数计算，编码输出通过EncoderListener回调。
+ * Opus编码器从Android 10起提供，编码器按20ms分帧，配置帧为带AOPUSHDR标记的OpusHead
+ */
+public class AudioEncoder {
+    private static final String TAG = "AudioEncoder";
+    private static final long TIMEOUT_US = 10000;
+    private static final long PAUSE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final EncoderListener listener;
+    private MediaCodec codec;
+    private AudioRecord audioRecord;
+    private Thread inputThread;
+    private Thread drainThread;
+    private int sampleRate;
+    private int bytesPerFrame;
+    private volatile boolean running = false;
+    private volatile boolean paused = false;
+
+    public AudioEncoder(EncoderListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 配置采集和AAC编码器
+     * @param bitrate 码率 (kbps)
+     */
+    public void configure(int sampleRate, int channels, int bitrate) throws IOException {
+        configure(false, sampleRate, channels, bitrate);
+    }
+
+    /**
+     * 配置采集和编码器
+     * @param opus true时编码为Opus (WebRTC)，否则为AAC-LC
+     * @param bitrate 码率 (kbps)
+     */
+    public void configure(boolean opus, int sampleRate, int channels, int bitrate) throws IOException {
+        if (opus && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            throw new IOException("Opus编码需要Android 10及以上");
+        }
+        this.sampleRate = sampleRate;
+        this.bytesPerFrame = 2 * channels;
+        int channelMask = channels > 1 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IOException("不支持的音频参数: " + sampleRate + "Hz, " + channels + "声道");
+        }
+
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, channelMask,
+                AudioFormat.ENCODING_PCM_16BIT, minBufferSize * 2);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new IOException("麦克风初始化失败");
+        }
+
+        String mimeType = opus ? MediaFormat.MIMETYPE_AUDIO_OPUS : MediaFormat.MIMETYPE_AUDIO_AAC;
+        MediaFormat format = MediaFormat.createAudioFormat(mimeType, sampleRate, channels);
+        if (!opus) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate * 1000);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, minBufferSize);
+        codec = MediaCodec.createEncoderByType(mimeType);
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+
+        Log.d(TAG, String.format("音频编码器已配置: %s, %dHz, %d声道, %dkbps", opus ? "Opus" : "AAC",
+                sampleRate, channels, bitrate));
+    }
+
+    /**
+     * 开始采集和编码
+     */
+    public void start() {
+        codec.start();
+        audioRecord.startRecording();
+        running = true;
+        inputThread = new Thread(this::inputLoop, "AudioEncoderInput");
+        drainThread = new Thread(this::drainLoop, "AudioEncoderDrain");
+        inputThread.start();
+        drainThread.start();
+    }
+
+    /**
+     * 暂停或恢复采集，暂停期间停止录音，不产生编码输出
+     * 恢复后时间戳按暂停的实际时长推进，与视频保持同步
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * 停止采集和编码并释放资源
+     */
+    public void release() {
+        running = false;
+        joinQuietly(inputThread);
+        joinQuietly(drainThread);
+        inputThread = null;
+        drainThread = null;
+
+        if (audioRecord != null) {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "停止录音失败", e);
+            }
+            audioRecord.release();
+            audioRecord = null;
+        }
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "停止音频编码器失败", e);
+            }
+            codec.release();
+            codec = null;
+        }
+        Log.d(TAG, "音频编码器已释放");
+    }
+
+    private void inputLoop() {
+        long totalFrames = 0;
+        try {
+            while (running) {
+                if (paused) {
+                    totalFrames += waitWhilePaused();
+                    continue;
+                }
+                int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (index < 0) {
+                    continue;
+                }
+                ByteBuffer input = codec.getInputBuffer(index);
+                int read = input != null ? audioRecord.read(input, input.remaining()) : 0;
+                if (read < 0) {
+                    throw new IllegalStateException("麦克风读取失败: " + read);
+                }
+                long ptsUs = totalFrames * 1000000L / sampleRate;
+                totalFrames += read / bytesPerFrame;
+                codec.queueInputBuffer(index, 0, read, ptsUs, 0);
+            }
+        } catch (IllegalStateException e) {
+            if (running) {
+                Log.e(TAG, "音频采集异常", e);
+                listener.onEncoderError(e);
+            }
+        }
+    }
+
+    /**
+     * 在采集线程上停止录音并等待恢复
+     * @return 暂停时长对应的采样数
+     */
+    private long waitWhilePaused() {
+        long pauseStart = System.nanoTime();
+        audioRecord.stop();
+        Log.d(TAG, "音频采集已暂停");
+        while (paused && running) {
+            LockSupport.parkNanos(PAUSE_POLL_NANOS);
+        }
+        if (running) {
+            audioRecord.startRecording();
+            Log.d(TAG, "音频采集已恢复");
+        }
+        return (System.nanoTime() - pauseStart) * sampleRate / 1000000000L;
+    }
+
+    private void drainLoop() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        try {
+            while (running) {
+                int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    listener.onOutputFormatChanged(codec.getOutputFormat());
+                } else if (index >= 0) {
+                    ByteBuffer data = codec.getOutputBuffer(index);
+                    if (data != null && info.size > 0) {
+                        data.position(info.offset);
+                        data.limit(info.offset + info.size);
+                        listener.onEncodedData(data, info);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                }
+            }
+        } catch (IllegalStateException e) {
+            if (running) {
+                Log.e(TAG, "音频编码输出异常", e);
+                listener.onEncoderError(e);
+            }
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.douyin.streaming.streaming.encoder;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把硬件编码输出的H.264 Annex-B码流写入FFmpeg管道
+ * 编码输出缓冲区是直接内存，通过FileChannel写入不经过Java堆
+ */
+public class EncodedVideoPipe implements EncoderListener {
+    private static final String TAG = "EncodedVideoPipe";
+
+    /**
+     * 编码或管道写入出错回调
+     */
+    public interface ErrorListener {
+        void onPipeError(Exception e);
+    }
+
+    private final String pipePath;
+    private final ErrorListener errorListener;
+    private FileOutputStream pipeStream;
+    private FileChannel pipeChannel;
+    private volatile boolean closed = false;
+
+    /**
+     * @param pipePath FFmpeg管道路径
+     * @param errorListener 编码或写入出错时通知
+     */
+    public EncodedVideoPipe(String pipePath, ErrorListener errorListener) {
+        this.pipePath = pipePath;
+        this.errorListener = errorListener;
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        Log.d(TAG, "编码输出格式: " + format);
+    }
+
+    @Override
+    public void onEncodedData(ByteBuffer data, MediaCodec.BufferInfo info) {
+        if (closed) {
+            return;
+        }
+        try {
+            // 管道在FFmpeg打开读取端之前会阻塞，因此延迟到第一帧再打开
+            if (pipeChannel == null) {
+                pipeStream = new FileOutputStream(pipePath);
+                pipeChannel = pipeStream.getChannel();
+            }
+            while (data.hasRemaining()) {
+                pipeChannel.write(data);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                Log.e(TAG, "写入FFmpeg管道失败", e);
+                closed = true;
+                errorListener.onPipeError(e);
+            }
+        }
+    }
+
+    @Override
+    public void onEncoderError(Exception e) {
+        errorListener.onPipeError(e);
+    }
+
+    /**
+     * 关闭管道写入端
+     */
+    public void close() {
+        closed = true;
+        try {
+            if (pipeStream != null) {
+                pipeStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "关闭FFmpeg管道失败", e);
+        }
+        pipeStream = null;
+        pipeChannel = null;
+    }
+}
@@ -0,0 +1,26 @@
+package com.douyin.streaming.streaming.encoder;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 编码输出回调，在编码器输出线程上调用
+ */
+public interface EncoderListener {
+    /**
+     * 输出格式确定
+     */
+    void onOutputFormatChanged(MediaFormat format);
+
+    /**
+     * 编码数据输出，data仅在回调期间有效
+     */
+    void onEncodedData(ByteBuffer data, MediaCodec.BufferInfo info);
+
+    /**
+     * 编码器出错
+     */
+    void onEncoderError(Exception e);
+}
@@ -0,0 +1,217 @@
+package com.douyin.streaming.streaming.encoder;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MediaCodec硬件H.264编码器
+ * 使用Surface输入模式，编码输出通过EncoderListener回调
+ */
+public class HardwareVideoEncoder {
+    private static final String TAG = "HardwareVideoEncoder";
+    private static final long DRAIN_TIMEOUT_US = 10000;
+
+    private final String codecName;
+    private final EncoderListener listener;
+    private MediaCodec codec;
+    private Surface inputSurface;
+    private Thread drainThread;
+    private volatile boolean running = false;
+
+    public HardwareVideoEncoder(String codecName, EncoderListener listener) {
+        this.codecName = codecName;
+        this.listener = listener;
+    }
+
+    /**
+     * 配置编码器并返回输入Surface
+     * @param bitrate 码率 (kbps)
+     * @param gop 关键帧间隔 (帧)
+     */
+    public Surface configure(int width, int height, int fps, int bitrate, int gop, String profile) throws IOException {
+        codec = MediaCodec.createByCodecName(codecName);
+
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate * 1000);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, fps);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, Math.max(1, gop / Math.max(1, fps)));
+
+        MediaCodecInfo.CodecCapabilities capabilities =
+                codec.getCodecInfo().getCapabilitiesForType(MediaFormat.MIMETYPE_VIDEO_AVC);
+        MediaCodecInfo.EncoderCapabilities encoderCapabilities = capabilities.getEncoderCapabilities();
+        if (encoderCapabilities != null && encoderCapabilities.isBitrateModeSupported(
+                MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR)) {
+            format.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+        }
+
+        // 设备支持时使用配置的profile及其最高level
+        int avcProfile = toAvcProfile(profile);
+        int avcLevel = 0;
+        for (MediaCodecInfo.CodecProfileLevel profileLevel : capabilities.profileLevels) {
+            if (profileLevel.profile == avcProfile) {
+                avcLevel = Math.max(avcLevel, profileLevel.level);
+            }
+        }
+        if (avcLevel > 0) {
+            format.setInteger(MediaFormat.KEY_PROFILE, avcProfile);
+            format.setInteger(MediaFormat.KEY_LEVEL, avcLevel);
+        }
+
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        inputSurface = codec.createInputSurface();
+
+        Log.d(TAG, String.format("编码器已配置: %s %dx%d, %dkbps, %dfps, GOP %d",
+                codecName, width, height, bitrate, fps, gop));
+        return inputSurface;
+    }
+
+    /**
+     * 启动编码和输出线程
+     */
+    public void start() {
+        codec.start();
+        running = true;
+        drainThread = new Thread(this::drainLoop, "VideoEncoderDrain");
+        drainThread.start();
+    }
+
+    /**
+     * 请求编码器尽快输出关键帧
+     */
+    public void requestKeyFrame() {
+        MediaCodec current = codec;
+        if (current == null || !running) {
+            return;
+        }
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        try {
+            current.setParameters(params);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "请求关键帧失败", e);
+        }
+    }
+
+    /**
+     * 运行中调整目标码率，不需要重新配置编码器
+     * @param bitrate 码率 (kbps)
+     */
+    public void setBitrate(int bitrate) {
+        MediaCodec current = codec;
+        if (current == null || !running) {
+            return;
+        }
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitrate * 1000);
+        try {
+            current.setParameters(params);
+            Log.d(TAG, "编码码率已调整为 " + bitrate + "kbps");
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "调整码率失败", e);
+        }
+    }
+
+    /**
+     * 挂起或恢复编码，挂起期间输入Surface上的画面被丢弃，不产生输出
+     */
+    public void setSuspended(boolean suspended) {
+        MediaCodec current = codec;
+        if (current == null || !running) {
+            return;
+        }
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_SUSPEND, suspended ? 1 : 0);
+        try {
+            current.setParameters(params);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, suspended ? "挂起编码失败" : "恢复编码失败", e);
+        }
+    }
+
+    /**
+     * 停止编码并释放编码器
+     */
+    public void release() {
+        if (codec == null) {
+            return;
+        }
+
+        if (drainThread != null) {
+            // 先让输出线程处理完结束标记，超时后强制退出
+            try {
+                codec.signalEndOfInputStream();
+                drainThread.join(500);
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "结束编码输入失败", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running = false;
+            try {
+                drainThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drainThread = null;
+        }
+
+        try {
+            codec.stop();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "停止编码器失败", e);
+        }
+        codec.release();
+        codec = null;
+
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        Log.d(TAG, "编码器已释放");
+    }
+
+    private void drainLoop() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        try {
+            while (running) {
+                int index = codec.dequeueOutputBuffer(info, DRAIN_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    listener.onOutputFormatChanged(codec.getOutputFormat());
+                } else if (index >= 0) {
+                    ByteBuffer data = codec.getOutputBuffer(index);
+                    if (data != null && info.size > 0) {
+                        data.position(info.offset);
+                        data.limit(info.offset + info.size);
+                        listener.onEncodedData(data, info);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (IllegalStateException e) {
+            if (running) {
+                Log.e(TAG, "编码输出异常", e);
+                listener.onEncoderError(e);
+            }
+        }
+    }
+
+    private static int toAvcProfile(String profile) {
+        if ("high".equals(profile)) {
+            return MediaCodecInfo.CodecProfileLevel.AVCProfileHigh;
+        } else if ("main".equals(profile)) {
+            return MediaCodecInfo.CodecProfileLevel.AVCProfileMain;
+        }
+        return MediaCodecInfo.CodecProfileLevel.AVCProfileBaseline;
+    }
+}
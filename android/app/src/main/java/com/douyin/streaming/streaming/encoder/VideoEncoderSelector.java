@@ -0,0 +1,120 @@
+package com.douyin.streaming.streaming.encoder;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+import android.util.Range;
+
+import com.douyin.streaming.utils.StreamingConfig;
+
+/**
+ * 视频编码器选择
+ * 开启硬件加速时查询设备MediaCodec能力，不支持当前分辨率/帧率时回退到libx264
+ */
+public final class VideoEncoderSelector {
+    private static final String TAG = "VideoEncoderSelector";
+    private static final String MIME_AVC = "video/avc";
+
+    private VideoEncoderSelector() {
+    }
+
+    /**
+     * 编码器选择结果
+     */
+    public static final class Selection {
+        private final VideoEncoderBackend backend;
+        private final String codecName;
+        private final String reason;
+
+        Selection(VideoEncoderBackend backend, String codecName, String reason) {
+            this.backend = backend;
+            this.codecName = codecName;
+            this.reason = reason;
+        }
+
+        public VideoEncoderBackend getBackend() { return backend; }
+
+        /**
+         * 设备上的MediaCodec编码器名称，软件编码时为null
+         */
+        public String getCodecName() { return codecName; }
+
+        public String getReason() { return reason; }
+    }
+
+    /**
+     * 按推流配置选择编码器
+     */
+    public static Selection select(StreamingConfig config) {
+        return select(config, config.getVideoWidth(), config.getVideoHeight(), config.getVideoFps());
+    }
+
+    /**
+     * 按指定的输出尺寸选择编码器
+     */
+    public static Selection select(StreamingConfig config, int width, int height, int fps) {
+        if (!config.isEnableHardwareAcceleration()) {
+            return new Selection(VideoEncoderBackend.LIBX264, null, "硬件加速未开启");
+        }
+
+        try {
+            String codecName = findHardwareEncoder(width, height, fps, config.getVideoBitrate() * 1000);
+            if (codecName != null) {
+                Log.d(TAG, String.format("选用硬件编码器 %s (%dx%d@%dfps)", codecName, width, height, fps));
+                return new Selection(VideoEncoderBackend.MEDIACODEC, codecName, "硬件编码器支持当前配置");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "查询MediaCodec编码器失败", e);
+        }
+
+        String reason = String.format("无硬件编码器支持 %dx%d@%dfps，回退到libx264", width, height, fps);
+        Log.w(TAG, reason);
+        return new Selection(VideoEncoderBackend.LIBX264, null, reason);
+    }
+
+    /**
+     * 查找支持指定分辨率、帧率和码率的H.264硬件编码器
+     */
+    private static String findHardwareEncoder(int width, int height, int fps, int bitrate) {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo info : codecList.getCodecInfos()) {
+            if (!info.isEncoder() || !isHardwareCodec(info) || !supportsType(info, MIME_AVC)) {
+                continue;
+            }
+
+            MediaCodecInfo.VideoCapabilities capabilities =
+                    info.getCapabilitiesForType(MIME_AVC).getVideoCapabilities();
+            if (capabilities == null) {
+                continue;
+            }
+
+            // 竖屏推流时宽高可能互换，两种方向都检查
+            boolean sizeSupported = capabilities.areSizeAndRateSupported(width, height, fps)
+                    || capabilities.areSizeAndRateSupported(height, width, fps);
+            Range<Integer> bitrateRange = capabilities.getBitrateRange();
+            if (sizeSupported && bitrateRange.contains(bitrate)) {
+                return info.getName();
+            }
+        }
+        return null;
+    }
+
+    private static boolean supportsType(MediaCodecInfo info, String mimeType) {
+        for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHardwareCodec(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return info.isHardwareAccelerated();
+        }
+        String name = info.getName().toLowerCase();
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.")
+                && !name.contains(".sw.");
+    }
+}
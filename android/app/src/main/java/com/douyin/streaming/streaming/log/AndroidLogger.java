@@ -0,0 +1,16 @@
+package com.douyin.streaming.streaming.log;
+
+import android.util.Log;
+
+/**
+ * 把推流核心模块的日志输出到logcat
+ */
+public final class AndroidLogger implements StreamingLog.Logger {
+    @Override
+    public void log(int priority, String tag, String message, Throwable throwable) {
+        if (throwable != null) {
+            message = message + '\n' + Log.getStackTraceString(throwable);
+        }
+        Log.println(priority, tag, message);
+    }
+}
@@ -0,0 +1,602 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import android.util.Log;
+import android.view.Surface;
+
+import com.douyin.streaming.streaming.capture.VideoCaptureSource;
+import com.douyin.streaming.streaming.encoder.AudioEncoder;
+import com.douyin.streaming.streaming.encoder.HardwareVideoEncoder;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 进程内推流会话
+ * 摄像头 -> MediaCodec硬件编码 -> 池化帧 -> SPSC队列 -> FLV/RTMP、TS/SRT或RTP/WebRTC发送，全程不经过FFmpeg，
+ * 稳态推流时帧数据在预分配的直接内存中复用，以聚合写直接发送到套接字。
+ * 编码一次，同一帧以引用计数分发给每个推流目标 (StreamDestination)，各目标有自己的连接、
+ * 发送队列、丢帧策略和重连状态，一个目标拥塞或断开不影响其他目标。
+ * 第一个目标为主目标：统计和自适应码率以它为准，它失败时会话结束；其他目标失败只通知不中断推流。
+ * 音频队列满的目标丢弃新到的音频帧，网络阻塞不会反压到音频编码线程和采集。
+ * 配置多码率阶梯时摄像头同时输出到每档的编码器Surface，由摄像头硬件各缩放一次，各档编码器并行运行，
+ * 帧率和GOP相同且关键帧请求同时发给所有编码器，各档关键帧对齐；每档推到自己的地址，音频编码一次分发给所有档。
+ * 暂停时停止采集和编码，只保留连接并定期发送保活消息，恢复后以关键帧开始。
+ */
+public class DirectStreamingSession {
+    private static final String TAG = "DirectStreamingSession";
+
+    private static final int AUDIO_FRAME_CAPACITY = 2048;
+    // AAC每帧1024个采样
+    private static final int AAC_SAMPLES_PER_FRAME = 1024;
+    // 低延迟模式下队列最多缓冲的时长
+    private static final int LOW_LATENCY_BUFFER_MS = 1000;
+    private static final int MIN_RING_FRAMES = 8;
+    private static final int MAX_RING_FRAMES = 512;
+    // 帧池在队列容量之外预留给编码线程和发送线程正在处理的帧
+    private static final int POOL_HEADROOM_FRAMES = 8;
+
+    /**
+     * 会话事件回调
+     */
+    public interface Listener {
+        /**
+         * 主目标连接成功
+         */
+        void onConnected();
+
+        /**
+         * 采集已开始，开始推流
+         */
+        void onStarted();
+
+        /**
+         * 主目标每个数据包发送完成，在发送线程上调用
+         */
+        void onPacketSent(MediaFrame frame, long bytes, long sendNanos);
+
+        /**
+         * 主目标视频发送队列积压状态变化，在视频编码线程上调用
+         * @param congested 队列深度超过高水位为true，回落到低水位以下为false
+         */
+        void onCongestionChanged(boolean congested);
+
+        /**
+         * 主目标连接断开，开始第attempt次重连，在重连线程上调用
+         */
+        void onReconnecting(int attempt, int maxAttempts);
+
+        /**
+         * 主目标重连成功，在重连线程上调用
+         * @param recoveryMs 从断开到重新发布成功的耗时
+         */
+        void onReconnected(long recoveryMs);
+
+        /**
+         * 其他推流目标失败并停止，推流继续
+         * @param index 目标序号，从1开始
+         */
+        void onDestinationError(int index, FramePublisher.Endpoint url, String error);
+
+        void onError(String error);
+    }
+
+    private final StreamingConfig config;
+    private final VideoCaptureSource captureSource;
+    private final Listener listener;
+
+    private final MediaFramePool audioPool;
+    private final EncodedFrameCollector audioCollector;
+    // 第一档为主输出
+    private final VideoRung[] rungs;
+    // 所有档的推流目标，按读取方编号排列
+    private final StreamDestination[] destinations;
+    private final StreamDestination primary;
+    private final AudioEncoder audioEncoder;
+
+    private volatile boolean running = false;
+    private volatile boolean started = false;
+    private boolean paused = false;
+
+    public DirectStreamingSession(StreamingConfig config, List<? extends FramePublisher.Endpoint> urls,
+                                  VideoCaptureSource captureSource, String videoCodecName, Listener listener) {
+        this(config, urls, Collections.<FramePublisher.Endpoint>emptyList(), captureSource, videoCodecName,
+                listener);
+    }
+
+    /**
+     * @param urls 主输出的推流目标，第一个为主目标
+     * @param renditionUrls 与config.getRenditions()逐档对应的推流地址，主输出和各档的目标合计最多MediaFrame.MAX_READERS个
+     * @param videoCodecName MediaCodec硬件编码器名称
+     */
+    public DirectStreamingSession(StreamingConfig config, List<? extends FramePublisher.Endpoint> urls,
+                                  List<? extends FramePublisher.Endpoint> renditionUrls,
+                                  VideoCaptureSource captureSource, String videoCodecName, Listener listener) {
+        List<StreamingConfig.Rendition> renditions = config.getRenditions();
+        int total = urls.size() + renditionUrls.size();
+        if (urls.isEmpty() || total > MediaFrame.MAX_READERS) {
+            throw new IllegalArgumentException("推流目标数量须为1-" + MediaFrame.MAX_READERS + ": " + total);
+        }
+        if (renditionUrls.size() != renditions.size()) {
+            throw new IllegalArgumentException("阶梯档位与推流地址数量不一致: "
+                    + renditions.size() + "/" + renditionUrls.size());
+        }
+        this.config = config;
+        this.captureSource = captureSource;
+        this.listener = listener;
+
+        // 队列按缓冲时长换算为帧数
+        int bufferMs = config.isEnableLowLatency()
+                ? Math.min(config.getBufferSize(), LOW_LATENCY_BUFFER_MS) : config.getBufferSize();
+        int audioFps = Math.max(1, config.getAudioSampleRate() / AAC_SAMPLES_PER_FRAME);
+        int videoRingFrames = ringFrames(bufferMs, config.getVideoFps());
+        // 音频队列留出两倍余量
+        int audioRingFrames = ringFrames(bufferMs * 2, audioFps);
+        // 每个目标的队列各自持有帧的引用，一个目标积压时其他目标的帧仍要有池可用
+        this.audioPool = new MediaFramePool(MediaFrame.Track.AUDIO,
+                new SpscFrameRing(audioRingFrames).capacity() * total + POOL_HEADROOM_FRAMES, AUDIO_FRAME_CAPACITY);
+
+        EncodedFrameCollector.ErrorListener encoderErrorListener =
+                e -> fail("编码失败: " + e.getMessage());
+        this.audioCollector = new EncodedFrameCollector(audioPool, this::enqueueAudio, encoderErrorListener);
+        this.audioEncoder = new AudioEncoder(audioCollector);
+
+        this.rungs = new VideoRung[1 + renditions.size()];
+        this.destinations = new StreamDestination[total];
+        rungs[0] = new VideoRung(config.getVideoWidth(), config.getVideoHeight(), config.getVideoBitrate(),
+                videoCodecName, videoRingFrames, urls.size(), encoderErrorListener);
+        int reader = 0;
+        for (FramePublisher.Endpoint url : urls) {
+            destinations[reader] = rungs[0].addDestination(reader, url, videoRingFrames, audioRingFrames,
+                    bufferMs);
+            reader++;
+        }
+        for (int i = 0; i < renditions.size(); i++) {
+            StreamingConfig.Rendition rendition = renditions.get(i);
+            rungs[i + 1] = new VideoRung(rendition.getWidth(), rendition.getHeight(), rendition.getBitrate(),
+                    videoCodecName, videoRingFrames, 1, encoderErrorListener);
+            destinations[reader] = rungs[i + 1].addDestination(reader, renditionUrls.get(i), videoRingFrames,
+                    audioRingFrames, bufferMs);
+            reader++;
+        }
+        this.primary = destinations[0];
+    }
+
+    /**
+     * 异步连接所有目标，主目标发布成功后开始采集编码
+     */
+    public void start() {
+        running = true;
+        for (StreamDestination destination : destinations) {
+            destination.start();
+        }
+    }
+
+    /**
+     * 停止推流并释放编码器和连接
+     */
+    public void stop() {
+        synchronized (this) {
+            running = false;
+        }
+        for (StreamDestination destination : destinations) {
+            destination.stop();
+        }
+        captureSource.stop();
+        for (VideoRung rung : rungs) {
+            rung.encoder.release();
+            rung.configCache.clear();
+        }
+        audioEncoder.release();
+        Log.d(TAG, "进程内推流已停止");
+    }
+
+    /**
+     * 暂停推流
+     * 摄像头停止出图、麦克风停止录音、视频编码器挂起，连接保持并每秒发送一条保活消息，
+     * 观众端停留在最后一帧
+     */
+    public synchronized void pause() {
+        if (!running || paused) {
+            return;
+        }
+        paused = true;
+        captureSource.pause();
+        for (VideoRung rung : rungs) {
+            rung.encoder.setSuspended(true);
+        }
+        audioEncoder.setPaused(true);
+        for (StreamDestination destination : destinations) {
+            destination.setPaused(true);
+        }
+        Log.d(TAG, "推流已暂停");
+    }
+
+    /**
+     * 恢复推流，第一帧为关键帧
+     */
+    public synchronized void resume() {
+        if (!running || !paused) {
+            return;
+        }
+        paused = false;
+        for (StreamDestination destination : destinations) {
+            destination.setPaused(false);
+        }
+        for (VideoRung rung : rungs) {
+            rung.encoder.setSuspended(false);
+        }
+        requestKeyFrame();
+        audioEncoder.setPaused(false);
+        captureSource.resume();
+        Log.d(TAG, "推流已恢复");
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 编码档位数量，包括主输出
+     */
+    public int getRenditionCount() {
+        return rungs.length;
+    }
+
+    /**
+     * 推流目标数量，包括各档的目标
+     */
+    public int getDestinationCount() {
+        return destinations.length;
+    }
+
+    /**
+     * 按序号获取推流目标，0为主目标
+     */
+    public StreamDestination getDestination(int index) {
+        return destinations[index];
+    }
+
+    /**
+     * 主目标累计发送字节数，包括重连前的连接
+     */
+    public long getBytesSent() {
+        return primary.getBytesSent();
+    }
+
+    /**
+     * 主目标推流中重连成功的次数
+     */
+    public int getReconnectCount() {
+        return primary.getReconnectCount();
+    }
+
+    /**
+     * 主目标最近一次重连从断开到恢复的耗时 (毫秒)，尚未重连时返回-1
+     */
+    public long getLastRecoveryMs() {
+        return primary.getLastRecoveryMs();
+    }
+
+    /**
+     * 丢弃的帧数，包括主目标拥塞丢帧和各档帧池耗尽
+     */
+    public long getDroppedFrames() {
+        long dropped = primary.getDroppedFrames() + audioCollector.getDroppedFrames();
+        for (VideoRung rung : rungs) {
+            dropped += rung.collector.getDroppedFrames();
+        }
+        return dropped;
+    }
+
+    /**
+     * 主输出最近一帧视频编码输出的System.nanoTime，尚无输出时返回-1
+     */
+    public long getLastVideoOutputNanos() {
+        return rungs[0].collector.getLastOutputNanos();
+    }
+
+    /**
+     * 主目标发送队列当前深度 (帧)
+     */
+    public int getQueueDepth() {
+        return primary.getQueueDepth();
+    }
+
+    public int getQueueCapacity() {
+        return primary.getQueueCapacity();
+    }
+
+    /**
+     * 主目标视频发送队列占用比例 (0-1)
+     */
+    public double getVideoQueueRatio() {
+        return primary.getVideoQueueRatio();
+    }
+
+    /**
+     * 主目标往返时延 (毫秒)，尚无数据时返回-1
+     */
+    public double getRttMs() {
+        return primary.getRttMs();
+    }
+
+    /**
+     * 主目标上次调用以来单帧的最大节拍排队时延 (毫秒)，读取后清零，统计线程每周期调用一次
+     */
+    public double pollPacerDelayMs() {
+        return primary.pollPacerDelayMs();
+    }
+
+    /**
+     * 主目标上次调用以来音频帧的最大发送排队时延 (毫秒)，读取后清零
+     */
+    public double pollAudioQueueDelayMs() {
+        return primary.pollAudioQueueDelayMs();
+    }
+
+    /**
+     * 主目标上次调用以来视频帧的最大发送排队时延 (毫秒)，读取后清零
+     */
+    public double pollVideoQueueDelayMs() {
+        return primary.pollVideoQueueDelayMs();
+    }
+
+    public double getMinRttMs() {
+        return primary.getMinRttMs();
+    }
+
+    /**
+     * 主目标的发送端带宽估计 (kbps)，传输层不支持时返回-1
+     */
+    public int getEstimatedBitrateKbps() {
+        return primary.getEstimatedBitrateKbps();
+    }
+
+    /**
+     * 主目标链路层的发送、丢失和重传包数，RTMP下为0
+     */
+    public long getPacketsSent() {
+        return primary.getPacketsSent();
+    }
+
+    public long getPacketsLost() {
+        return primary.getPacketsLost();
+    }
+
+    public long getPacketsRetransmitted() {
+        return primary.getPacketsRetransmitted();
+    }
+
+    /**
+     * 运行中调整主输出码率，其他档按初始码率的比例同步调整
+     * @param bitrate 码率 (kbps)
+     */
+    public void setVideoBitrate(int bitrate) {
+        int mainBitrate = rungs[0].initialBitrate;
+        for (VideoRung rung : rungs) {
+            int rungBitrate = (int) ((long) rung.initialBitrate * bitrate / mainBitrate);
+            rung.encoder.setBitrate(rungBitrate);
+            for (StreamDestination destination : rung.rungDestinations) {
+                destination.setTargetBitrate(rungBitrate);
+            }
+        }
+    }
+
+    /**
+     * 主目标视频发送队列是否处于积压状态
+     */
+    public boolean isCongested() {
+        return primary.isCongested();
+    }
+
+    /**
+     * 主目标发布成功后配置并启动编码器和采集，在主目标的连接线程上运行
+     * 各档编码器使用相同的帧率和GOP，从同一帧开始编码
+     */
+    private void startCapture() {
+        try {
+            audioEncoder.configure("opus".equalsIgnoreCase(config.getAudioCodec()), config.getAudioSampleRate(),
+                    config.getAudioChannels(), config.getAudioBitrate());
+            List<Surface> inputSurfaces = new ArrayList<>(rungs.length);
+            for (VideoRung rung : rungs) {
+                inputSurfaces.add(rung.encoder.configure(rung.width, rung.height, config.getVideoFps(),
+                        rung.initialBitrate, config.getVideoGop(), config.getVideoProfile()));
+            }
+            audioEncoder.start();
+            for (VideoRung rung : rungs) {
+                rung.encoder.start();
+            }
+            captureSource.start(inputSurfaces, config.getVideoFps(), captureCallback);
+        } catch (IOException | RuntimeException e) {
+            fail("启动推流失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 任何一个目标需要关键帧时所有档同时插入，保持各档GOP对齐
+     */
+    private void requestKeyFrame() {
+        for (VideoRung rung : rungs) {
+            rung.encoder.requestKeyFrame();
+        }
+    }
+
+    private final VideoCaptureSource.Callback captureCallback = new VideoCaptureSource.Callback() {
+        @Override
+        public void onCaptureStarted() {
+            // 暂停恢复后会再次回调，只在首次开始时通知
+            if (running && !started) {
+                started = true;
+                listener.onStarted();
+            }
+        }
+
+        @Override
+        public void onCaptureError(String error) {
+            fail("摄像头采集失败: " + error);
+        }
+    };
+
+    /**
+     * 音频帧分发给所有档的每个目标，在音频编码线程上调用
+     */
+    private void enqueueAudio(MediaFrame frame) {
+        if (frame.isConfig()) {
+            for (VideoRung rung : rungs) {
+                rung.configCache.update(frame);
+            }
+        }
+        if (running) {
+            for (StreamDestination destination : destinations) {
+                destination.offerAudio(frame);
+            }
+        }
+        frame.release();
+    }
+
+    private final StreamDestination.Listener primaryListener = new StreamDestination.Listener() {
+        @Override
+        public void onConnected(StreamDestination destination) {
+            // 重连不回调此方法，只在首次发布成功时启动采集
+            listener.onConnected();
+            if (running) {
+                startCapture();
+            }
+        }
+
+        @Override
+        public void onPacketSent(StreamDestination destination, MediaFrame frame, long bytes, long sendNanos) {
+            listener.onPacketSent(frame, bytes, sendNanos);
+        }
+
+        @Override
+        public void onCongestionChanged(StreamDestination destination, boolean congested) {
+            listener.onCongestionChanged(congested);
+        }
+
+        @Override
+        public void onReconnecting(StreamDestination destination, int attempt, int maxAttempts) {
+            listener.onReconnecting(attempt, maxAttempts);
+        }
+
+        @Override
+        public void onReconnected(StreamDestination destination, long recoveryMs) {
+            listener.onReconnected(recoveryMs);
+        }
+
+        @Override
+        public void onFailed(StreamDestination destination, String error) {
+            fail(error);
+        }
+    };
+
+    private final StreamDestination.Listener secondaryListener = new StreamDestination.Listener() {
+        @Override
+        public void onConnected(StreamDestination destination) {
+            Log.d(TAG, "推流目标" + destination.getIndex() + "已连接: " + destination.getUrl());
+        }
+
+        @Override
+        public void onPacketSent(StreamDestination destination, MediaFrame frame, long bytes, long sendNanos) {
+        }
+
+        @Override
+        public void onCongestionChanged(StreamDestination destination, boolean congested) {
+        }
+
+        @Override
+        public void onReconnecting(StreamDestination destination, int attempt, int maxAttempts) {
+        }
+
+        @Override
+        public void onReconnected(StreamDestination destination, long recoveryMs) {
+        }
+
+        @Override
+        public void onFailed(StreamDestination destination, String error) {
+            if (running) {
+                listener.onDestinationError(destination.getIndex(), destination.getUrl(), error);
+            }
+        }
+    };
+
+    /**
+     * 一个编码档位：硬件编码器、帧池和该档的推流目标
+     * 每档有自己的配置帧缓存，重连时发送该档的SPS/PPS
+     */
+    private final class VideoRung {
+        final int width;
+        final int height;
+        final int initialBitrate;
+        final EncodedFrameCollector collector;
+        final HardwareVideoEncoder encoder;
+        final ConfigFrameCache configCache = new ConfigFrameCache();
+        final List<StreamDestination> rungDestinations = new ArrayList<>();
+
+        /**
+         * @param destinationCount 本档的推流目标数
+         */
+        VideoRung(int width, int height, int bitrate, String codecName, int videoRingFrames, int destinationCount,
+                  EncodedFrameCollector.ErrorListener errorListener) {
+            this.width = width;
+            this.height = height;
+            this.initialBitrate = bitrate;
+            // 各目标的队列各自持有帧的引用，拥塞的目标可占满自己的整个队列，池容量按所有队列之和计算
+            // 初始容量按平均帧大小的4倍估算，关键帧超出时单帧扩容一次后复用
+            int frameCapacity = Math.max(16 * 1024, bitrate * 1000 / 8 / Math.max(1, config.getVideoFps()) * 4);
+            MediaFramePool pool = new MediaFramePool(MediaFrame.Track.VIDEO,
+                    new SpscFrameRing(videoRingFrames).capacity() * destinationCount + POOL_HEADROOM_FRAMES,
+                    frameCapacity);
+            this.collector = new EncodedFrameCollector(pool, this::enqueue, errorListener,
+                    DirectStreamingSession.this::requestKeyFrame);
+            this.encoder = new HardwareVideoEncoder(codecName, collector);
+        }
+
+        StreamDestination addDestination(int reader, FramePublisher.Endpoint url, int videoRingFrames,
+                                         int audioRingFrames, int bufferMs) {
+            StreamDestination destination = new StreamDestination(reader, config, url, configCache,
+                    DirectStreamingSession.this::requestKeyFrame, videoRingFrames, audioRingFrames, bufferMs,
+                    Clock.SYSTEM, reader == 0 ? primaryListener : secondaryListener);
+            destination.setTargetBitrate(initialBitrate);
+            rungDestinations.add(destination);
+            return destination;
+        }
+
+        /**
+         * 视频帧分发给本档的每个目标，在本档的编码线程上调用
+         * 各目标入队时各自持有一次引用，最后归还编码线程自己的引用
+         */
+        private void enqueue(MediaFrame frame) {
+            if (frame.isConfig()) {
+                configCache.update(frame);
+            }
+            if (running) {
+                for (int i = 0; i < rungDestinations.size(); i++) {
+                    rungDestinations.get(i).offerVideo(frame);
+                }
+            }
+            frame.release();
+        }
+    }
+
+    private static int ringFrames(int bufferMs, int fps) {
+        int frames = (int) ((long) bufferMs * fps / 1000);
+        return Math.max(MIN_RING_FRAMES, Math.min(MAX_RING_FRAMES, frames));
+    }
+
+    private synchronized void fail(String error) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Log.e(TAG, error);
+        listener.onError(error);
+    }
+}
@@ -0,0 +1,145 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.encoder.EncoderListener;
+import com.douyin.streaming.streaming.media.AvcNalUnits;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把MediaCodec编码输出拷贝到池化帧
+ * 视频从Annex-B转为AVCC，配置帧转为AVCDecoderConfigurationRecord；音频原样拷贝。
+ * 时间戳以第一帧为基准换算到System.nanoTime时间轴，使音视频两路对齐。
+ * 帧池耗尽时视频丢弃到下一个关键帧并请求编码器尽快输出，不在GOP中间留下缺帧。
+ */
+public class EncodedFrameCollector implements EncoderListener {
+    private static final String TAG = "EncodedFrameCollector";
+
+    /**
+     * 帧去向，接收方负责释放帧
+     */
+    public interface FrameSink {
+        void onFrame(MediaFrame frame);
+    }
+
+    /**
+     * 编码器错误回调
+     */
+    public interface ErrorListener {
+        void onError(Exception e);
+    }
+
+    private final MediaFramePool pool;
+    private final FrameSink sink;
+    private final ErrorListener errorListener;
+    private final GopDropPolicy.KeyFrameRequester keyFrameRequester;
+    private long timeOffsetUs = Long.MIN_VALUE;
+    private volatile long droppedFrames;
+    // 最近一帧非配置帧的输出时间，尚无输出时为-1
+    private volatile long lastOutputNanos = -1;
+    // 视频帧池耗尽后等待下一个关键帧，只在编码线程上访问
+    private boolean awaitingKeyFrame = false;
+
+    public EncodedFrameCollector(MediaFramePool pool, FrameSink sink, ErrorListener errorListener) {
+        this(pool, sink, errorListener, null);
+    }
+
+    /**
+     * @param keyFrameRequester 视频帧池耗尽时请求关键帧，音频为null
+     */
+    public EncodedFrameCollector(MediaFramePool pool, FrameSink sink, ErrorListener errorListener,
+                                 GopDropPolicy.KeyFrameRequester keyFrameRequester) {
+        this.pool = pool;
+        this.sink = sink;
+        this.errorListener = errorListener;
+        this.keyFrameRequester = keyFrameRequester;
+    }
+
+    /**
+     * 因帧池耗尽而丢弃的帧数，包括之后等待关键帧期间丢弃的视频帧
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * 最近一帧编码输出的System.nanoTime，不含配置帧，尚无输出时返回-1
+     */
+    public long getLastOutputNanos() {
+        return lastOutputNanos;
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        // 配置数据随BUFFER_FLAG_CODEC_CONFIG输出，这里不需要处理
+    }
+
+    @Override
+    public void onEncodedData(ByteBuffer data, MediaCodec.BufferInfo info) {
+        boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        boolean video = pool.getTrack() == MediaFrame.Track.VIDEO;
+        if (video && awaitingKeyFrame && !config && !keyFrame) {
+            droppedFrames++;
+            return;
+        }
+        MediaFrame frame = pool.acquire();
+        if (frame == null) {
+            droppedFrames++;
+            // 丢失的帧可能被后续帧参考，等到关键帧再恢复；丢失的是关键帧时再请求一次
+            if (video && !config && (!awaitingKeyFrame || keyFrame)) {
+                awaitingKeyFrame = true;
+                Log.w(TAG, "视频帧池耗尽，丢弃至下一个关键帧");
+                if (keyFrameRequester != null) {
+                    keyFrameRequester.requestKeyFrame();
+                }
+            }
+            return;
+        }
+        if (keyFrame) {
+            awaitingKeyFrame = false;
+        }
+
+        int size;
+        if (video) {
+            ByteBuffer dst = frame.prepareWrite(AvcNalUnits.maxAvccSize(data.remaining()));
+            size = config ? AvcNalUnits.writeDecoderConfigurationRecord(data, dst)
+                    : AvcNalUnits.annexBToAvcc(data, dst);
+            dst.flip();
+        } else {
+            ByteBuffer dst = frame.prepareWrite(data.remaining());
+            size = data.remaining();
+            dst.put(data);
+            dst.flip();
+        }
+        if (size <= 0) {
+            frame.release();
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (timeOffsetUs == Long.MIN_VALUE && !config) {
+            timeOffsetUs = now / 1000 - info.presentationTimeUs;
+        }
+        long ptsUs = timeOffsetUs == Long.MIN_VALUE ? now / 1000 : info.presentationTimeUs + timeOffsetUs;
+        // MediaCodec不输出DTS，直播编码不使用B帧，DTS与PTS相同
+        frame.set(ptsUs, ptsUs, keyFrame, config, now);
+        if (video && !config) {
+            frame.setNonReference(AvcNalUnits.isNonReference(frame.data()));
+        }
+        if (!config) {
+            lastOutputNanos = now;
+        }
+        sink.onFrame(frame);
+    }
+
+    @Override
+    public void onEncoderError(Exception e) {
+        errorListener.onError(e);
+    }
+}
@@ -0,0 +1,108 @@
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.cmaf.CmafUrl;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ATF推流协议实现
+ * 低延迟CMAF分块上传：分片MP4经HTTP/1.1持久连接以分块传输编码上传 (http(s)://host/path，推流码为最后一级路径)，
+ * 每个GOP一个媒体段，段内每帧一个CMAF块，编码后立即写出，服务器不必等整段收完即可转发或打包为LL-HLS/LL-DASH。
+ * 硬件编码且摄像头支持Surface采集时使用进程内上传，帧数据直接从帧池的缓冲区写出，请求的响应时延作为往返时延
+ * 参与自适应码率；其余情况由FFmpeg采集编码后以分片MP4经HTTP上传。
+ */
+public class ATFStreamingProtocol extends DirectStreamingProtocol {
+    private static final String TAG = "ATFStreamingProtocol";
+    // FFmpeg回退时的分片MP4：空moov在前，每帧一个分片，分片内偏移相对moof
+    private static final String FFMPEG_MOVFLAGS = "empty_moov+default_base_moof+frag_every_frame";
+    private static final String FFMPEG_STREAM_NAME = "stream.mp4";
+
+    // 主地址、其他地址和阶梯各档的地址，启动时解析
+    private List<CmafUrl> urls;
+    private List<CmafUrl> renditionUrls;
+
+    public ATFStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler) {
+        super(context, config, scheduler, TAG, "ATF");
+    }
+
+    /**
+     * 解析推流地址：主地址拼接推流码，其他地址已完整，阶梯各档拼接各自的推流码
+     * @throws IllegalArgumentException 地址无效
+     */
+    @Override
+    protected void parseUrls() {
+        urls = new ArrayList<>();
+        urls.add(CmafUrl.parse(config.getRtmpUrl(), config.getStreamKey()));
+        for (String url : config.getAdditionalRtmpUrls()) {
+            urls.add(CmafUrl.parse(url, null));
+        }
+        renditionUrls = new ArrayList<>();
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            renditionUrls.add(CmafUrl.parse(config.getRtmpUrl(), rendition.getStreamKey()));
+        }
+        Log.d(TAG, "推流URL: " + urls.get(0));
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectUrls() {
+        return urls;
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectRenditionUrls() {
+        return renditionUrls;
+    }
+
+    @Override
+    protected String describeDirectStreaming() {
+        return "CMAF分块上传";
+    }
+
+    /**
+     * 查询参数可能含鉴权令牌，这时不输出命令
+     */
+    @Override
+    protected boolean isFFmpegCommandLoggable() {
+        return urls.get(0).getQuery() == null;
+    }
+
+    /**
+     * 构建FFmpeg推流命令，多个推流地址时由tee复用同一份编码输出
+     */
+    @Override
+    protected String buildFFmpegCommand() {
+        StringBuilder command = new StringBuilder();
+        appendCaptureAndEncoding(command);
+        if (urls.size() > 1) {
+            // 其他地址失败时只停止该地址
+            command.append("-map 0:v -map 1:a ");
+            command.append("-f tee \"[f=mp4:movflags=").append(FFMPEG_MOVFLAGS).append(":onfail=abort]")
+                    .append(toFFmpegUrl(urls.get(0)));
+            for (int i = 1; i < urls.size(); i++) {
+                command.append("|[f=mp4:movflags=").append(FFMPEG_MOVFLAGS).append(":onfail=ignore]")
+                        .append(toFFmpegUrl(urls.get(i)));
+            }
+            command.append("\"");
+        } else {
+            command.append("-f mp4 -movflags ").append(FFMPEG_MOVFLAGS).append(" ");
+            command.append("\"").append(toFFmpegUrl(urls.get(0))).append("\"");
+        }
+        return command.toString();
+    }
+
+    /**
+     * FFmpeg整条流作为一个文件以分块传输编码POST到上传目录下
+     */
+    private static String toFFmpegUrl(CmafUrl url) {
+        String host = url.getHost().indexOf(':') >= 0 ? "[" + url.getHost() + "]" : url.getHost();
+        return (url.isSecure() ? "https://" : "http://") + host + ":" + url.getPort() + url.getPath()
+                + "/" + FFMPEG_STREAM_NAME + (url.getQuery() != null ? "?" + url.getQuery() : "");
+    }
+}
@@ -0,0 +1,104 @@
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.udp.UdpUrl;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ATS推流协议实现
+ * MPEG-TS直接经UDP发送 (udp://host:port)，每个数据报7个TS包，没有握手、重传和反馈，延迟最低，
+ * 适合局域网和专线等丢包很少的回传链路。
+ * 硬件编码且摄像头支持Surface采集时使用进程内TS/UDP推流，数据报池化复用并按PCR分散发送；
+ * 其余情况由FFmpeg采集编码后经其udp输出按码率发送。多码率阶梯各档推到主地址之后的相邻端口。
+ */
+public class ATSStreamingProtocol extends DirectStreamingProtocol {
+    private static final String TAG = "ATSStreamingProtocol";
+
+    // 主地址、其他地址和阶梯各档的地址，启动时解析
+    private List<UdpUrl> urls;
+    private List<UdpUrl> renditionUrls;
+
+    public ATSStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler) {
+        super(context, config, scheduler, TAG, "ATS");
+    }
+
+    /**
+     * 解析推流地址：UDP没有流ID，推流码不使用，阶梯第i档推到主地址端口+i+1
+     * @throws IllegalArgumentException 地址无效或阶梯端口超出范围
+     */
+    @Override
+    protected void parseUrls() {
+        urls = new ArrayList<>();
+        UdpUrl primary = UdpUrl.parse(config.getRtmpUrl());
+        urls.add(primary);
+        for (String url : config.getAdditionalRtmpUrls()) {
+            urls.add(UdpUrl.parse(url));
+        }
+        renditionUrls = new ArrayList<>();
+        for (int i = 0; i < config.getRenditions().size(); i++) {
+            renditionUrls.add(primary.withPort(primary.getPort() + i + 1));
+        }
+        Log.d(TAG, "推流URL: " + urls.get(0));
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectUrls() {
+        return urls;
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectRenditionUrls() {
+        return renditionUrls;
+    }
+
+    @Override
+    protected String describeDirectStreaming() {
+        return "TS/UDP推流";
+    }
+
+    /**
+     * UDP写出不阻塞，也没有接收端反馈，没有可用于调整码率的信号
+     */
+    @Override
+    protected boolean isAdaptiveBitrateSupported() {
+        return false;
+    }
+
+    /**
+     * 构建FFmpeg推流命令，多个推流地址时由tee复用同一份编码输出
+     */
+    @Override
+    protected String buildFFmpegCommand() {
+        StringBuilder command = new StringBuilder();
+        appendCaptureAndEncoding(command);
+        if (urls.size() > 1) {
+            // 其他地址失败时只停止该地址
+            command.append("-map 0:v -map 1:a ");
+            command.append("-f tee \"[f=mpegts:onfail=abort]").append(toFFmpegUrl(urls.get(0)));
+            for (int i = 1; i < urls.size(); i++) {
+                command.append("|[f=mpegts:onfail=ignore]").append(toFFmpegUrl(urls.get(i)));
+            }
+            command.append("\"");
+        } else {
+            command.append("-f mpegts ");
+            command.append("\"").append(toFFmpegUrl(urls.get(0))).append("\"");
+        }
+        return command.toString();
+    }
+
+    /**
+     * FFmpeg udp输出的地址参数，按总码率的1.5倍限速发送，避免关键帧突发
+     */
+    private String toFFmpegUrl(UdpUrl url) {
+        long bitrate = (config.getVideoBitrate() + config.getAudioBitrate()) * 1500L;
+        return url + "?pkt_size=" + TsMuxer.DATAGRAM_SIZE + "&bitrate=" + bitrate;
+    }
+}
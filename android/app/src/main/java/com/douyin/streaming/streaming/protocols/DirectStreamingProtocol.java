@@ -0,0 +1,866 @@
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.arthenica.ffmpegkit.FFmpegKit;
+import com.arthenica.ffmpegkit.FFmpegSession;
+import com.arthenica.ffmpegkit.Level;
+import com.arthenica.ffmpegkit.ReturnCode;
+import com.douyin.streaming.streaming.capture.Camera2SurfaceSource;
+import com.douyin.streaming.streaming.capture.VideoCaptureSource;
+import com.douyin.streaming.streaming.encoder.VideoEncoderBackend;
+import com.douyin.streaming.streaming.encoder.VideoEncoderSelector;
+import com.douyin.streaming.streaming.ffmpeg.FFmpegEvent;
+import com.douyin.streaming.streaming.ffmpeg.FFmpegLogParser;
+import com.douyin.streaming.streaming.log.AsyncLogSink;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.pipeline.AdaptiveBitrateController;
+import com.douyin.streaming.streaming.pipeline.DirectStreamingSession;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 支持进程内推流的协议的公共部分
+ * 硬件编码且摄像头支持Surface采集时由DirectStreamingSession在进程内编码和发送，其余情况由FFmpeg推流；
+ * 推流生命周期、暂停恢复、状态、统计汇总、自适应码率和遥测在这里实现，
+ * 子类只提供推流地址、能否进程内发送的判断和FFmpeg命令。
+ */
+public abstract class DirectStreamingProtocol implements StreamingProtocol {
+    private static final int MIN_ADAPTIVE_BITRATE = 200; // kbps
+
+    protected final Context context;
+    protected StreamingConfig config;
+    protected VideoEncoderSelector.Selection encoderSelection;
+    protected VideoCaptureSource captureSource;
+
+    private final String tag;
+    private final String name;
+    private final StreamingStats stats = new StreamingStats();
+    private final MetricsPublisher metrics = new MetricsPublisher();
+    private final StatsCollector statsCollector;
+    private StreamingCallback callback;
+    private StreamingStatus status = StreamingStatus.IDLE;
+    private volatile FFmpegSession ffmpegSession;
+    private boolean isPaused = false;
+    // 致命错误后停止会话的线程，重新启动或停止推流前等待其结束
+    private volatile Thread shutdownThread;
+
+    // 进程内推流：摄像头 -> 编码器 -> 池化帧 -> 各协议的发布器
+    private volatile DirectStreamingSession directSession;
+    private volatile FramePublisher.SendListener packetSendListener;
+    private final Object packetStatsLock = new Object();
+    private long videoPacketsSent;
+    private long audioPacketsSent;
+    private long windowPackets;
+    private long windowSendNanos;
+    private long windowMaxSendNanos;
+    private long videoBytesSent;
+    private long audioBytesSent;
+
+    // 以下字段只在统计线程上访问
+    private AdaptiveBitrateController bitrateController;
+    private long lastVideoBytesSent;
+    private long lastAudioBytesSent;
+    private long lastDroppedFrames;
+
+    /**
+     * @param tag 日志标签
+     * @param name 协议名，用于状态消息和遥测文件名
+     */
+    protected DirectStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler,
+                                      String tag, String name) {
+        this.context = context;
+        this.config = config;
+        this.tag = tag;
+        this.name = name;
+        this.statsCollector = new StatsCollector(name, scheduler, Clock.SYSTEM, stats, metrics, statsSource);
+    }
+
+    /**
+     * 解析推流地址，在选择推流方式之前调用
+     * @throws IllegalArgumentException 地址或协议参数无效
+     */
+    protected abstract void parseUrls();
+
+    /**
+     * 进程内推流时主输出的推流目标，第一个为主目标
+     */
+    protected abstract List<? extends FramePublisher.Endpoint> getDirectUrls();
+
+    /**
+     * 进程内推流时多码率阶梯各档的推流目标，与配置的阶梯一一对应
+     */
+    protected abstract List<? extends FramePublisher.Endpoint> getDirectRenditionUrls();
+
+    /**
+     * 进程内推流的描述，如"TS/SRT推流"，用于日志
+     */
+    protected abstract String describeDirectStreaming();
+
+    /**
+     * 构建FFmpeg推流命令，在openFFmpegInput之后调用
+     */
+    protected abstract String buildFFmpegCommand() throws IOException;
+
+    /**
+     * 推流使用的配置，子类可按协议要求调整副本，不修改调用方的配置
+     */
+    protected StreamingConfig adaptConfig(StreamingConfig config) {
+        return config;
+    }
+
+    /**
+     * 是否使用进程内推流，默认在Surface采集可用且推流目标都能由进程内发送时使用
+     * @throws IllegalStateException 协议只能进程内推流而当前条件不满足
+     */
+    protected boolean shouldStreamDirect() {
+        return isSurfaceCaptureAvailable() && isDirectSupported();
+    }
+
+    /**
+     * 推流目标数不超过帧的读取方上限，且摄像头能输出阶梯各档的尺寸时才能由进程内发送
+     */
+    protected boolean isDirectSupported() {
+        if (getDirectUrls().size() + getDirectRenditionUrls().size() > MediaFrame.MAX_READERS) {
+            return false;
+        }
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            if (!captureSource.isSizeSupported(rendition.getWidth(), rendition.getHeight())) {
+                Log.w(tag, "摄像头不支持阶梯分辨率" + rendition.getWidth() + "x" + rendition.getHeight());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 链路是否提供可用于调整码率的反馈，不提供时忽略自适应码率配置
+     */
+    protected boolean isAdaptiveBitrateSupported() {
+        return true;
+    }
+
+    /**
+     * FFmpeg命令中可能含密码或鉴权令牌时返回false，不输出命令
+     */
+    protected boolean isFFmpegCommandLoggable() {
+        return true;
+    }
+
+    /**
+     * 启动FFmpeg会话之前调用，子类可在此准备命令使用的输入
+     */
+    protected void openFFmpegInput() {
+    }
+
+    /**
+     * FFmpeg会话被取消或结束之后调用
+     */
+    protected void closeFFmpegInput() {
+    }
+
+    @Override
+    public void startStreaming(StreamingConfig config, StreamingCallback callback) {
+        this.config = adaptConfig(config);
+        this.callback = callback;
+
+        if (status == StreamingStatus.STREAMING || status == StreamingStatus.CONNECTING) {
+            Log.w(tag, "推流已在进行中");
+            return;
+        }
+        awaitShutdown();
+
+        try {
+            updateStatus(StreamingStatus.CONNECTING);
+            if (callback != null) {
+                callback.onStatusUpdate("正在连接推流服务器...");
+            }
+
+            parseUrls();
+
+            // 选择视频编码器
+            encoderSelection = VideoEncoderSelector.select(this.config);
+            stats.setVideoEncoderBackend(encoderSelection.getBackend());
+            stats.setVideoEncoderName(encoderSelection.getCodecName());
+            Log.d(tag, "视频编码: " + encoderSelection.getBackend().getDisplayName()
+                    + " (" + encoderSelection.getReason() + ")");
+
+            isPaused = false;
+            if (shouldStreamDirect()) {
+                startDirectStreaming();
+            } else {
+                launchFFmpegSession();
+            }
+            startStatsCollection();
+
+        } catch (Exception e) {
+            String error = "启动" + name + "推流失败: " + e.getMessage();
+            Log.e(tag, error, e);
+            updateStatus(StreamingStatus.ERROR);
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+    }
+
+    @Override
+    public void stopStreaming() {
+        if (status == StreamingStatus.IDLE || status == StreamingStatus.DISCONNECTED) {
+            Log.w(tag, "推流未在进行中");
+            return;
+        }
+        awaitShutdown();
+
+        try {
+            Log.d(tag, "停止" + name + "推流");
+            cancelFFmpegSession();
+            stopDirectStreaming();
+            // 最后一个指标快照带上结束状态
+            updateStatus(StreamingStatus.DISCONNECTED);
+            stopStatsCollection();
+
+            if (callback != null) {
+                callback.onStopped();
+            }
+
+        } catch (Exception e) {
+            String error = "停止" + name + "推流失败: " + e.getMessage();
+            Log.e(tag, error, e);
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+    }
+
+    @Override
+    public void pauseStreaming() {
+        if (status != StreamingStatus.STREAMING) {
+            Log.w(tag, "推流未在进行中，无法暂停");
+            return;
+        }
+
+        try {
+            Log.d(tag, "暂停" + name + "推流");
+            isPaused = true;
+            if (directSession != null) {
+                directSession.pause();
+            } else {
+                // FFmpeg会话无法挂起，直接结束以停止采集、编码和上传，恢复时重新建立
+                cancelFFmpegSession();
+            }
+            updateStatus(StreamingStatus.PAUSED);
+
+            if (callback != null) {
+                callback.onStatusUpdate("推流已暂停");
+            }
+
+        } catch (Exception e) {
+            String error = "暂停" + name + "推流失败: " + e.getMessage();
+            Log.e(tag, error, e);
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+    }
+
+    @Override
+    public void resumeStreaming() {
+        if (status != StreamingStatus.PAUSED) {
+            Log.w(tag, "推流未暂停，无法恢复");
+            return;
+        }
+
+        try {
+            Log.d(tag, "恢复" + name + "推流");
+            isPaused = false;
+            if (directSession != null) {
+                directSession.resume();
+            } else {
+                launchFFmpegSession();
+            }
+            updateStatus(StreamingStatus.STREAMING);
+
+            if (callback != null) {
+                callback.onStatusUpdate("推流已恢复");
+            }
+
+        } catch (Exception e) {
+            String error = "恢复" + name + "推流失败: " + e.getMessage();
+            Log.e(tag, error, e);
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+    }
+
+    @Override
+    public StreamingStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public StreamingStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public MetricsSnapshot getMetricsSnapshot() {
+        return metrics.getLatest();
+    }
+
+    @Override
+    public MetricsSubscription subscribeMetrics(MetricsListener listener, long intervalMs) {
+        return metrics.subscribe(listener, intervalMs);
+    }
+
+    @Override
+    public void setConfig(StreamingConfig config) {
+        this.config = adaptConfig(config);
+    }
+
+    @Override
+    public void release() {
+        stopStreaming();
+        stopStatsCollection();
+        if (captureSource != null) {
+            captureSource.release();
+            captureSource = null;
+        }
+    }
+
+    /**
+     * 设置视频采集源，未设置时使用前置摄像头
+     */
+    public void setVideoCaptureSource(VideoCaptureSource source) {
+        if (captureSource != null && captureSource != source) {
+            captureSource.release();
+        }
+        this.captureSource = source;
+    }
+
+    /**
+     * 设置数据包发送回调，进程内推流时每帧交给传输层后在发送线程上回调
+     */
+    public void setPacketSendListener(FramePublisher.SendListener listener) {
+        this.packetSendListener = listener;
+    }
+
+    /**
+     * 硬件编码、配置允许Surface采集且摄像头支持当前分辨率
+     */
+    protected final boolean isSurfaceCaptureAvailable() {
+        return encoderSelection.getBackend() == VideoEncoderBackend.MEDIACODEC
+                && config.isEnableSurfaceCapture() && isCaptureSizeSupported();
+    }
+
+    /**
+     * 摄像头是否支持以当前分辨率输出到编码器Surface
+     */
+    protected final boolean isCaptureSizeSupported() {
+        if (captureSource == null) {
+            captureSource = new Camera2SurfaceSource(context, true);
+        }
+        if (!captureSource.isSizeSupported(config.getVideoWidth(), config.getVideoHeight())) {
+            Log.w(tag, "摄像头不支持当前分辨率");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * FFmpeg从摄像头和麦克风采集并编码一路主输出的参数，多码率阶梯不推流，输出格式和地址由调用方追加
+     */
+    protected final void appendCaptureAndEncoding(StringBuilder command) {
+        if (!config.getRenditions().isEmpty()) {
+            Log.w(tag, "FFmpeg推流不支持" + name + "多码率阶梯，只推主输出");
+        }
+        command.append("-f android_camera -i 0 "); // 前置摄像头
+        command.append("-f android_microphone -i 1 "); // 麦克风
+
+        if (encoderSelection.getBackend() == VideoEncoderBackend.MEDIACODEC) {
+            command.append("-c:v h264_mediacodec ");
+            command.append("-codec_name ").append(encoderSelection.getCodecName()).append(" ");
+            command.append("-bitrate_mode cbr ");
+        } else {
+            command.append("-c:v libx264 ");
+            command.append("-preset ultrafast ");
+            command.append("-tune zerolatency ");
+        }
+        command.append("-g ").append(config.getVideoGop()).append(" ");
+        command.append("-profile:v baseline ");
+        command.append("-level 3.0 ");
+        command.append("-s ").append(config.getVideoWidth()).append("x").append(config.getVideoHeight()).append(" ");
+        command.append("-r ").append(config.getVideoFps()).append(" ");
+        command.append("-b:v ").append(config.getVideoBitrate()).append("k ");
+        command.append("-maxrate ").append(config.getVideoBitrate()).append("k ");
+        command.append("-bufsize ").append(config.getVideoBitrate() * 2).append("k ");
+
+        command.append("-c:a aac ");
+        command.append("-b:a ").append(config.getAudioBitrate()).append("k ");
+        command.append("-ar ").append(config.getAudioSampleRate()).append(" ");
+        command.append("-ac ").append(config.getAudioChannels()).append(" ");
+    }
+
+    /**
+     * 报告推流错误并进入错误状态，同时停止推流会话和统计任务
+     */
+    protected final void notifyError(String error) {
+        updateStatus(StreamingStatus.ERROR);
+        shutdownAfterError();
+        if (callback != null) {
+            callback.onError(error);
+        }
+    }
+
+    /**
+     * 致命错误后释放摄像头、编码器和连接
+     * 错误在编码、采集或发送线程上报告，停止会话要等待这些线程退出，因此在单独的线程上进行
+     */
+    private void shutdownAfterError() {
+        stopStatsCollection();
+        final DirectStreamingSession session = takeDirectSession();
+        final FFmpegSession ffmpeg = ffmpegSession;
+        ffmpegSession = null;
+        if (session == null && ffmpeg == null) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            if (ffmpeg != null) {
+                FFmpegKit.cancel(ffmpeg.getSessionId());
+                closeFFmpegInput();
+            }
+            if (session != null) {
+                session.stop();
+            }
+            Log.d(tag, name + "推流出错，已停止推流会话");
+        }, tag + "Shutdown");
+        shutdownThread = thread;
+        thread.start();
+    }
+
+    /**
+     * 等待错误后的停止完成
+     */
+    private void awaitShutdown() {
+        Thread thread = shutdownThread;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shutdownThread = null;
+    }
+
+    /**
+     * 取出当前的进程内推流会话，停止只由取到的一方执行
+     */
+    private synchronized DirectStreamingSession takeDirectSession() {
+        DirectStreamingSession session = directSession;
+        directSession = null;
+        return session;
+    }
+
+    /**
+     * 启动进程内推流，上一个会话未停止时先停止
+     */
+    private void startDirectStreaming() {
+        stopDirectStreaming();
+        synchronized (packetStatsLock) {
+            videoPacketsSent = 0;
+            audioPacketsSent = 0;
+            windowPackets = 0;
+            windowSendNanos = 0;
+            windowMaxSendNanos = 0;
+            videoBytesSent = 0;
+            audioBytesSent = 0;
+        }
+        stats.setBytesSent(0);
+        stats.setVideoFramesSent(0);
+        stats.setRetryCount(0);
+        stats.setLastRecoveryTimeMs(-1);
+        lastVideoBytesSent = 0;
+        lastAudioBytesSent = 0;
+        lastDroppedFrames = 0;
+
+        // 自适应码率下限为初始码率的1/5，且不低于200kbps
+        bitrateController = null;
+        if (config.isEnableAdaptiveBitrate()) {
+            if (isAdaptiveBitrateSupported()) {
+                bitrateController = new AdaptiveBitrateController(config.getVideoBitrate(),
+                        Math.max(MIN_ADAPTIVE_BITRATE, config.getVideoBitrate() / 5));
+            } else {
+                Log.w(tag, "链路没有接收端反馈，不启用自适应码率");
+            }
+        }
+        List<? extends FramePublisher.Endpoint> urls = getDirectUrls();
+        List<? extends FramePublisher.Endpoint> renditionUrls = getDirectRenditionUrls();
+        directSession = new DirectStreamingSession(config, urls, renditionUrls, captureSource,
+                encoderSelection.getCodecName(), directSessionListener);
+        directSession.start();
+        Log.d(tag, "使用进程内" + describeDirectStreaming() + "，编码" + (renditionUrls.size() + 1)
+                + "档，推流目标" + (urls.size() + renditionUrls.size()) + "个");
+    }
+
+    /**
+     * 停止进程内推流
+     */
+    private void stopDirectStreaming() {
+        DirectStreamingSession session = takeDirectSession();
+        if (session != null) {
+            session.stop();
+        }
+    }
+
+    private final DirectStreamingSession.Listener directSessionListener = new DirectStreamingSession.Listener() {
+        @Override
+        public void onConnected() {
+            updateStatus(StreamingStatus.CONNECTED);
+            if (callback != null) {
+                callback.onStatusUpdate("已连接到推流服务器");
+            }
+        }
+
+        @Override
+        public void onStarted() {
+            updateStatus(StreamingStatus.STREAMING);
+            if (callback != null) {
+                callback.onStarted();
+            }
+        }
+
+        @Override
+        public void onPacketSent(MediaFrame frame, long bytes, long sendNanos) {
+            if (!frame.isConfig()) {
+                synchronized (packetStatsLock) {
+                    if (frame.isVideo()) {
+                        videoPacketsSent++;
+                        videoBytesSent += bytes;
+                    } else {
+                        audioPacketsSent++;
+                        audioBytesSent += bytes;
+                    }
+                    windowPackets++;
+                    windowSendNanos += sendNanos;
+                    windowMaxSendNanos = Math.max(windowMaxSendNanos, sendNanos);
+                }
+            }
+            FramePublisher.SendListener listener = packetSendListener;
+            if (listener != null) {
+                listener.onPacketSent(frame, bytes, sendNanos);
+            }
+        }
+
+        @Override
+        public void onCongestionChanged(boolean congested) {
+            if (callback != null) {
+                callback.onStatusUpdate(congested ? "网络拥塞，发送队列积压" : "网络拥塞已缓解");
+            }
+        }
+
+        @Override
+        public void onReconnecting(int attempt, int maxAttempts) {
+            updateStatus(StreamingStatus.CONNECTING);
+            if (callback != null) {
+                callback.onStatusUpdate(String.format("连接断开，正在重连 (%d/%d)...", attempt, maxAttempts));
+            }
+        }
+
+        @Override
+        public void onReconnected(long recoveryMs) {
+            stats.incrementRetryCount();
+            stats.setLastRecoveryTimeMs(recoveryMs);
+            updateStatus(isPaused ? StreamingStatus.PAUSED : StreamingStatus.STREAMING);
+            if (callback != null) {
+                callback.onStatusUpdate(String.format("已重连，恢复耗时%dms", recoveryMs));
+            }
+        }
+
+        @Override
+        public void onDestinationError(int index, FramePublisher.Endpoint url, String error) {
+            if (callback != null) {
+                callback.onStatusUpdate(String.format("推流目标%d (%s) 已停止: %s", index + 1, url, error));
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            notifyError(error);
+        }
+    };
+
+    /**
+     * 汇总进程内推流的发送统计和传输层统计，每秒调用一次
+     * 传输层不可见的统计由发布器返回0或-1，与重置后的默认值相同
+     */
+    private void updateDirectStats(DirectStreamingSession session) {
+        long videoFrames;
+        long audioFrames;
+        long packets;
+        long sendNanos;
+        long maxSendNanos;
+        long videoBytes;
+        long audioBytes;
+        synchronized (packetStatsLock) {
+            videoFrames = videoPacketsSent;
+            audioFrames = audioPacketsSent;
+            videoBytes = videoBytesSent;
+            audioBytes = audioBytesSent;
+            packets = windowPackets;
+            sendNanos = windowSendNanos;
+            maxSendNanos = windowMaxSendNanos;
+            windowPackets = 0;
+            windowSendNanos = 0;
+            windowMaxSendNanos = 0;
+        }
+
+        stats.setBytesSent(session.getBytesSent());
+        stats.setFramesSent(videoFrames);
+        stats.setVideoFramesSent(videoFrames);
+        stats.setAudioFramesSent(audioFrames);
+        stats.setDroppedFrames(session.getDroppedFrames());
+        stats.setSendQueueDepth(session.getQueueDepth());
+        stats.setSendQueueCapacity(session.getQueueCapacity());
+        stats.setPacerQueueDelayMs(session.pollPacerDelayMs());
+        stats.setAudioQueueDelayMs(session.pollAudioQueueDelayMs());
+        stats.setVideoQueueDelayMs(session.pollVideoQueueDelayMs());
+        stats.setDuration(System.currentTimeMillis() - stats.getStartTime());
+        stats.setPacketSendTimeUs(packets > 0 ? sendNanos / 1000.0 / packets : 0);
+        stats.setMaxPacketSendTimeUs(maxSendNanos / 1000);
+        stats.setVideoBitrate((videoBytes - lastVideoBytesSent) * 8.0 / 1000);
+        stats.setAudioBitrate((audioBytes - lastAudioBytesSent) * 8.0 / 1000);
+        stats.setRttMs(session.getRttMs());
+        stats.setLinkPacketsSent(session.getPacketsSent());
+        stats.setLinkPacketsLost(session.getPacketsLost());
+        stats.setLinkPacketsRetransmitted(session.getPacketsRetransmitted());
+        stats.setEstimatedBandwidthKbps(session.getEstimatedBitrateKbps());
+        lastVideoBytesSent = videoBytes;
+        lastAudioBytesSent = audioBytes;
+
+        long dropped = stats.getDroppedFrames() - lastDroppedFrames;
+        lastDroppedFrames = stats.getDroppedFrames();
+        if (bitrateController == null) {
+            if (dropped > 0) {
+                Log.w(tag, "发送队列丢弃" + dropped + "帧");
+            }
+        } else if (status == StreamingStatus.STREAMING) {
+            adaptBitrate(session, dropped);
+        }
+    }
+
+    /**
+     * 根据队列深度、实测速率和往返时延调整视频码率，传输层有带宽估计时扣除音频后作为上限
+     */
+    private void adaptBitrate(DirectStreamingSession session, long droppedFrames) {
+        int estimated = stats.getEstimatedBandwidthKbps();
+        int videoEstimate = estimated > 0 ? Math.max(1, estimated - (int) stats.getAudioBitrate()) : -1;
+        AdaptiveBitrateController.Decision decision = bitrateController.update(
+                session.getVideoQueueRatio(), stats.getVideoBitrate(),
+                session.getRttMs(), session.getMinRttMs(), droppedFrames, videoEstimate);
+        if (decision == null) {
+            return;
+        }
+
+        session.setVideoBitrate(decision.getNewBitrate());
+        stats.setTargetVideoBitrate(decision.getNewBitrate());
+        Log.d(tag, String.format("自适应码率: %dkbps -> %dkbps (%s)",
+                decision.getOldBitrate(), decision.getNewBitrate(), decision.getReason()));
+        if (callback != null) {
+            callback.onBitrateChanged(decision.getOldBitrate(), decision.getNewBitrate(), decision.getReason());
+        }
+    }
+
+    /**
+     * 启动FFmpeg推流会话
+     */
+    private void launchFFmpegSession() throws IOException {
+        openFFmpegInput();
+        String ffmpegCommand = buildFFmpegCommand();
+        if (isFFmpegCommandLoggable()) {
+            Log.d(tag, "FFmpeg命令: " + ffmpegCommand);
+        }
+        ffmpegSession = FFmpegKit.executeAsync(ffmpegCommand,
+                session -> handleFFmpegResult(session),
+                log -> handleFFmpegLog(log),
+                statistics -> handleFFmpegStatistics(statistics));
+    }
+
+    /**
+     * 结束FFmpeg会话并释放其输入
+     */
+    private void cancelFFmpegSession() {
+        if (ffmpegSession != null) {
+            FFmpegKit.cancel(ffmpegSession.getSessionId());
+            ffmpegSession = null;
+        }
+        closeFFmpegInput();
+    }
+
+    /**
+     * 处理FFmpeg执行结果
+     */
+    private void handleFFmpegResult(FFmpegSession session) {
+        // 暂停或停止时主动结束的会话已处理完毕
+        FFmpegSession current = ffmpegSession;
+        if (current == null || current.getSessionId() != session.getSessionId()) {
+            Log.d(tag, "FFmpeg会话已结束: " + session.getSessionId());
+            return;
+        }
+
+        // FFmpeg会话结束后不再需要其输入
+        closeFFmpegInput();
+
+        if (ReturnCode.isSuccess(session.getReturnCode())) {
+            Log.d(tag, name + "推流成功完成");
+            updateStatus(StreamingStatus.DISCONNECTED);
+            stopStatsCollection();
+            if (callback != null) {
+                callback.onStopped();
+            }
+        } else if (ReturnCode.isCancel(session.getReturnCode())) {
+            Log.d(tag, name + "推流被取消");
+            updateStatus(StreamingStatus.DISCONNECTED);
+            stopStatsCollection();
+            if (callback != null) {
+                callback.onStopped();
+            }
+        } else {
+            String error = name + "推流失败: " + session.getFailStackTrace();
+            Log.e(tag, error);
+            notifyError(error);
+        }
+    }
+
+    /**
+     * 处理FFmpeg日志
+     */
+    private void handleFFmpegLog(com.arthenica.ffmpegkit.Log log) {
+        // 原始日志交给异步输出，回调线程上只做级别过滤和一次扫描
+        Level level = log.getLevel();
+        int levelValue = level != null ? level.getValue() : FFmpegLogParser.AV_LOG_INFO;
+        String message = log.getMessage();
+        AsyncLogSink.shared().log(FFmpegLogParser.toLogPriority(levelValue), name + "FFmpeg", message);
+
+        FFmpegEvent event = FFmpegLogParser.parse(levelValue, message);
+        if (event == null) {
+            return;
+        }
+        switch (event) {
+            case CONNECTED:
+                updateStatus(StreamingStatus.CONNECTED);
+                if (callback != null) {
+                    callback.onStatusUpdate("已连接到推流服务器");
+                }
+                break;
+            case STARTED:
+                updateStatus(StreamingStatus.STREAMING);
+                if (callback != null) {
+                    callback.onStarted();
+                }
+                break;
+            case CONNECTION_LOST:
+                notifyError("推流连接丢失");
+                break;
+            case ENCODER_WARNING:
+                stats.incrementEncoderWarnings();
+                break;
+        }
+    }
+
+    /**
+     * 处理FFmpeg统计信息
+     */
+    private void handleFFmpegStatistics(com.arthenica.ffmpegkit.Statistics statistics) {
+        if (statistics != null) {
+            stats.setBytesSent(statistics.getSize());
+            stats.setFramesSent(statistics.getFrameNumber());
+            stats.setVideoFramesSent(statistics.getVideoFrameNumber());
+            stats.setAudioFramesSent(statistics.getAudioFrameNumber());
+            stats.setDuration(statistics.getTime());
+            // 码率和帧率由统计线程按滑动窗口计算
+        }
+    }
+
+    /**
+     * 启动统计信息收集
+     */
+    private void startStatsCollection() {
+        statsCollector.start(config, config.isEnableTelemetry() ? getTelemetryDirectory(context) : null);
+        stats.setTargetVideoBitrate(config.getVideoBitrate());
+    }
+
+    /**
+     * 停止统计信息收集
+     */
+    private void stopStatsCollection() {
+        statsCollector.stop();
+    }
+
+    /**
+     * 应用专属的遥测目录，可通过adb pull取出
+     */
+    static File getTelemetryDirectory(Context context) {
+        File dir = context.getExternalFilesDir("telemetry");
+        return dir != null ? dir : new File(context.getFilesDir(), "telemetry");
+    }
+
+    private final StatsCollector.Source statsSource = new StatsCollector.Source() {
+        @Override
+        public StreamingStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return status == StreamingStatus.STREAMING && !isPaused;
+        }
+
+        @Override
+        public void updateStats() {
+            DirectStreamingSession session = directSession;
+            if (session != null) {
+                updateDirectStats(session);
+            }
+        }
+
+        /**
+         * 进程内推流直接读取发送端的累计值，不等待每秒一次的统计汇总
+         */
+        @Override
+        public void sampleTelemetry(StatsCollector.TelemetrySample sample) {
+            DirectStreamingSession session = directSession;
+            if (session == null) {
+                return;
+            }
+            synchronized (packetStatsLock) {
+                sample.videoFrames = videoPacketsSent;
+                sample.audioFrames = audioPacketsSent;
+            }
+            sample.bytesSent = session.getBytesSent();
+            sample.droppedFrames = session.getDroppedFrames();
+            sample.queueDepth = session.getQueueDepth();
+            sample.rttMs = session.getRttMs();
+            sample.encoderOutputNanos = session.getLastVideoOutputNanos();
+        }
+    };
+
+    /**
+     * 更新推流状态
+     */
+    private void updateStatus(StreamingStatus newStatus) {
+        StreamingStatus oldStatus = this.status;
+        this.status = newStatus;
+
+        Log.d(tag, String.format("%s推流状态变化: %s -> %s", name,
+                oldStatus.getDescription(), newStatus.getDescription()));
+    }
+}
@@ -1,351 +1,309 @@
-package com.douyin.streaming.streaming.protocols;
-
-import android.content.Context;
-import android.util.Log;
-
-import com.arthenica.ffmpegkit.FFmpegKit;
-import com.arthenica.ffmpegkit.FFmpegSession;
-import com.arthenica.ffmpegkit.ReturnCode;
-import com.douyin.streaming.utils.StreamingConfig;
-
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-/**
- * OKB推流协议实现
- * 使用FFmpeg进行RTMP推流
- */
-public class OKBStreamingProtocol implements StreamingProtocol {
-    private static final String TAG = "OKBStreamingProtocol";
-    
-    private Context context;
-    private StreamingConfig config;
-    private StreamingCallback callback;
-    private StreamingStatus status = StreamingStatus.IDLE;
-    private StreamingStats stats;
-    private FFmpegSession ffmpegSession;
-    private ScheduledExecutorService statsExecutor;
-    private String rtmpUrl;
-    private boolean isPaused = false;
-    
-    public OKBStreamingProtocol(Context context, StreamingConfig config) {
-        this.context = context;
-        this.config = config;
-        this.stats = new StreamingStats();
-    }
-    
-    @Override
-    public void startStreaming(StreamingConfig config, StreamingCallback callback) {
-        this.config = config;
-        this.callback = callback;
-        
-        if (status == StreamingStatus.STREAMING || status == StreamingStatus.CONNECTING) {
-            Log.w(TAG, "推流已在进行中");
-            return;
-        }
-        
-        try {
-            updateStatus(StreamingStatus.CONNECTING);
-            if (callback != null) {
-                callback.onStatusUpdate("正在连接推流服务器...");
-            }
-            
-            // 构建推流URL
-            rtmpUrl = config.getRtmpUrl() + config.getStreamKey();
-            Log.d(TAG, "推流URL: " + rtmpUrl);
-            
-            // 构建FFmpeg命令
-            String ffmpegCommand = buildFFmpegCommand();
-            Log.d(TAG, "FFmpeg命令: " + ffmpegCommand);
-            
-            // 执行FFmpeg推流
-            ffmpegSession = FFmpegKit.executeAsync(ffmpegCommand, 
-                    session -> handleFFmpegResult(session),
-                    log -> handleFFmpegLog(log),
-                    statistics -> handleFFmpegStatistics(statistics));
-            
-            // 启动统计信息收集
-            startStatsCollection();
-            
-        } catch (Exception e) {
-            String error = "启动OKB推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            updateStatus(StreamingStatus.ERROR);
-            if (callback != null) {
-                callback.onError(error);
-            }
-        }
-    }
-    
-    @Override
-    public void stopStreaming() {
-        if (status == StreamingStatus.IDLE || status == StreamingStatus.DISCONNECTED) {
-            Log.w(TAG, "推流未在进行中");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "停止OKB推流");
-            
-            // 停止FFmpeg会话
-            if (ffmpegSession != null) {
-                FFmpegKit.cancel(ffmpegSession.getSessionId());
-                ffmpegSession = null;
-            }
-            
-            // 停止统计信息收集
-            stopStatsCollection();
-            
-            // 更新状态
-            updateStatus(StreamingStatus.DISCONNECTED);
-            
-            if (callback != null) {
-                callback.onStopped();
-            }
-            
-        } catch (Exception e) {
-            String error = "停止OKB推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (callback != null) {
-                callback.onError(error);
-            }
-        }
-    }
-    
-    @Override
-    public void pauseStreaming() {
-        if (status != StreamingStatus.STREAMING) {
-            Log.w(TAG, "推流未在进行中，无法暂停");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "暂停OKB推流");
-            isPaused = true;
-            updateStatus(StreamingStatus.PAUSED);
-            
-            if (callback != null) {
-                callback.onStatusUpdate("推流已暂停");
-            }
-            
-        } catch (Exception e) {
-            String error = "暂停OKB推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (callback != null) {
-                callback.onError(error);
-            }
-        }
-    }
-    
-    @Override
-    public void resumeStreaming() {
-        if (status != StreamingStatus.PAUSED) {
-            Log.w(TAG, "推流未暂停，无法恢复");
-            return;
-        }
-        
-        try {
-            Log.d(TAG, "恢复OKB推流");
-            isPaused = false;
-            updateStatus(StreamingStatus.STREAMING);
-            
-            if (callback != null) {
-                callback.onStatusUpdate("推流已恢复");
-            }
-            
-        } catch (Exception e) {
-            String error = "恢复OKB推流失败: " + e.getMessage();
-            Log.e(TAG, error, e);
-            if (callback != null) {
-                callback.onError(error);
-            }
-        }
-    }
-    
-    @Override
-    public StreamingStatus getStatus() {
-        return status;
-    }
-    
-    @Override
-    public StreamingStats getStats() {
-        return stats;
-    }
-    
-    @Override
-    public void setConfig(StreamingConfig config) {
-        this.config = config;
-    }
-    
-    @Override
-    public void release() {
-        stopStreaming();
-        if (statsExecutor != null && !statsExecutor.isShutdown()) {
-            statsExecutor.shutdown();
-        }
-    }
-    
-    /**
-     * 构建FFmpeg推流命令
-     */
-    private String buildFFmpegCommand() {
-        StringBuilder command = new StringBuilder();
-        
-        // 输入源（摄像头和麦克风）
-        command.append("-f android_camera -i 0 "); // 前置摄像头
-        command.append("-f android_microphone -i 1 "); // 麦克风
-        
-        // 视频编码设置
-        command.append("-c:v libx264 "); // H.264编码
-        command.append("-preset ultrafast "); // 最快编码速度
-        command.append("-tune zerolatency "); // 零延迟调优
-        command.append("-profile:v baseline "); // 基线配置
-        command.append("-level 3.0 "); // H.264级别
-        
-        // 视频参数
-        command.append("-s ").append(config.getVideoWidth()).append("x").append(config.getVideoHeight()).append(" ");
-        command.append("-r ").append(config.getVideoFps()).append(" ");
-        command.append("-b:v ").append(config.getVideoBitrate()).append("k ");
-        command.append("-maxrate ").append(config.getVideoBitrate()).append("k ");
-        command.append("-bufsize ").append(config.getVideoBitrate() * 2).append("k ");
-        
-        // 音频编码设置
-        command.append("-c:a aac "); // AAC音频编码
-        command.append("-b:a ").append(config.getAudioBitrate()).append("k ");
-        command.append("-ar ").append(config.getAudioSampleRate()).append(" ");
-        command.append("-ac ").append(config.getAudioChannels()).append(" ");
-        
-        // 网络设置
-        command.append("-f flv "); // 输出格式为FLV
-        command.append("-rtmp_live live "); // 直播模式
-        command.append("-rtmp_buffer 5000 "); // 缓冲区大小
-        
-        // 输出URL
-        command.append(rtmpUrl);
-        
-        return command.toString();
-    }
-    
-    /**
-     * 处理FFmpeg执行结果
-     */
-    private void handleFFmpegResult(FFmpegSession session) {
-        if (ReturnCode.isSuccess(session.getReturnCode())) {
-            Log.d(TAG, "OKB推流成功完成");
-            updateStatus(StreamingStatus.DISCONNECTED);
-            if (callback != null) {
-                callback.onStopped();
-            }
-        } else if (ReturnCode.isCancel(session.getReturnCode())) {
-            Log.d(TAG, "OKB推流被取消");
-            updateStatus(StreamingStatus.DISCONNECTED);
-            if (callback != null) {
-                callback.onStopped();
-            }
-        } else {
-            String error = "OKB推流失败: " + session.getFailStackTrace();
-            Log.e(TAG, error);
-            updateStatus(StreamingStatus.ERROR);
-            if (callback != null) {
-                callback.onError(error);
-            }
-        }
-    }
-    
-    /**
-     * 处理FFmpeg日志
-     */
-    private void handleFFmpegLog(com.arthenica.ffmpegkit.Log log) {
-        String message = log.getMessage();
-        Log.d(TAG, "FFmpeg日志: " + message);
-        
-        // 检测连接状态
-        if (message.contains("Connection established")) {
-            updateStatus(StreamingStatus.CONNECTED);
-            if (callback != null) {
-                callback.onStatusUpdate("已连接到推流服务器");
-            }
-        } else if (message.contains("Streaming started")) {
-            updateStatus(StreamingStatus.STREAMING);
-            if (callback != null) {
-                callback.onStarted();
-            }
-        } else if (message.contains("Connection lost") || message.contains("Connection failed")) {
-            updateStatus(StreamingStatus.ERROR);
-            if (callback != null) {
-                callback.onError("推流连接丢失");
-            }
-        }
-    }
-    
-    /**
-     * 处理FFmpeg统计信息
-     */
-    private void handleFFmpegStatistics(com.arthenica.ffmpegkit.Statistics statistics) {
-        if (statistics != null) {
-            stats.setBytesSent(statistics.getSize());
-            stats.setFramesSent(statistics.getFrameNumber());
-            stats.setVideoFramesSent(statistics.getVideoFrameNumber());
-            stats.setAudioFramesSent(statistics.getAudioFrameNumber());
-            stats.setDuration(statistics.getTime());
-            
-            // 计算实时比特率和帧率
-            if (statistics.getTime() > 0) {
-                double currentBitrate = (statistics.getSize() * 8.0 / 1000) / (statistics.getTime() / 1000.0);
-                stats.setBitrate(currentBitrate);
-                
-                if (statistics.getTime() > 1000) { // 1秒后开始计算帧率
-                    double currentFps = (statistics.getFrameNumber() * 1000.0) / statistics.getTime();
-                    stats.setFps(currentFps);
-                }
-            }
-        }
-    }
-    
-    /**
-     * 启动统计信息收集
-     */
-    private void startStatsCollection() {
-        if (statsExecutor != null && !statsExecutor.isShutdown()) {
-            statsExecutor.shutdown();
-        }
-        
-        statsExecutor = Executors.newSingleThreadScheduledExecutor();
-        statsExecutor.scheduleAtFixedRate(() -> {
-            if (status == StreamingStatus.STREAMING && !isPaused) {
-                stats.setRunningTime(getStats().getRunningTime());
-                
-                if (callback != null) {
-                    String statusText = String.format("推流中 - 比特率: %.1fkbps, 帧率: %.1ffps, 时长: %ds",
-                            stats.getBitrate(), stats.getFps(), stats.getRunningTime());
-                    callback.onStatusUpdate(statusText);
-                }
-            }
-        }, 1, 1, TimeUnit.SECONDS);
-        
-        stats.setStartTime(System.currentTimeMillis());
-    }
-    
-    /**
-     * 停止统计信息收集
-     */
-    private void stopStatsCollection() {
-        if (statsExecutor != null && !statsExecutor.isShutdown()) {
-            statsExecutor.shutdown();
-            statsExecutor = null;
-        }
-    }
-    
-    /**
-     * 更新推流状态
-     */
-    private void updateStatus(StreamingStatus newStatus) {
-        StreamingStatus oldStatus = this.status;
-        this.status = newStatus;
-        
-        Log.d(TAG, String.format("OKB推流状态变化: %s -> %s", 
-                oldStatus.getDescription(), newStatus.getDescription()));
-    }
-}
-
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.Surface;
+
+import com.arthenica.ffmpegkit.FFmpegKitConfig;
+import com.douyin.streaming.streaming.capture.VideoCaptureSource;
+import com.douyin.streaming.streaming.encoder.EncodedVideoPipe;
+import com.douyin.streaming.streaming.encoder.HardwareVideoEncoder;
+import com.douyin.streaming.streaming.encoder.VideoEncoderBackend;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.rtmp.RtmpUrl;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * OKB推流协议实现
+ * 硬件编码且摄像头支持Surface采集时使用进程内FLV/RTMP推流，其余情况使用FFmpeg进行RTMP推流
+ */
+public class OKBStreamingProtocol extends DirectStreamingProtocol {
+    private static final String TAG = "OKBStreamingProtocol";
+    
+    private String rtmpUrl;
+    private boolean useSurfaceCapture = false;
+    
+    // Surface采集链路：摄像头 -> 编码器输入Surface -> FFmpeg管道
+    private HardwareVideoEncoder videoEncoder;
+    private EncodedVideoPipe videoPipe;
+    private String videoPipePath;
+    
+    public OKBStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler) {
+        super(context, config, scheduler, TAG, "OKB");
+    }
+    
+    @Override
+    protected void parseUrls() {
+        // 构建推流URL
+        rtmpUrl = config.getRtmpUrl() + config.getStreamKey();
+        Log.d(TAG, "推流URL: " + rtmpUrl);
+    }
+    
+    @Override
+    protected boolean shouldStreamDirect() {
+        // 硬件编码时优先使用Surface采集链路，rtmp://地址由进程内发送，其余地址经管道交给FFmpeg
+        useSurfaceCapture = isSurfaceCaptureAvailable();
+        if (useSurfaceCapture && config.isEnableDirectRtmp() && isDirectSupported()) {
+            return true;
+        }
+        // 管道只传一路已编码的码流，多码率阶梯由FFmpeg采集后按档缩放编码
+        if (useSurfaceCapture && !config.getRenditions().isEmpty()) {
+            Log.w(TAG, "多码率阶梯不能经管道推流，使用FFmpeg采集");
+            useSurfaceCapture = false;
+        }
+        return false;
+    }
+    
+    /**
+     * 所有推流地址都是rtmp://时才能由进程内发送，推流目标数和阶梯分辨率的检查见父类
+     */
+    @Override
+    protected boolean isDirectSupported() {
+        if (!RtmpUrl.isSupported(rtmpUrl)) {
+            return false;
+        }
+        for (String url : config.getAdditionalRtmpUrls()) {
+            if (!RtmpUrl.isSupported(url)) {
+                return false;
+            }
+        }
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            if (!RtmpUrl.isSupported(config.getRtmpUrl() + rendition.getStreamKey())) {
+                return false;
+            }
+        }
+        return super.isDirectSupported();
+    }
+    
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectUrls() {
+        List<RtmpUrl> urls = new ArrayList<>();
+        urls.add(RtmpUrl.parse(rtmpUrl));
+        for (String url : config.getAdditionalRtmpUrls()) {
+            urls.add(RtmpUrl.parse(url));
+        }
+        return urls;
+    }
+    
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectRenditionUrls() {
+        List<RtmpUrl> renditionUrls = new ArrayList<>();
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            renditionUrls.add(RtmpUrl.parse(config.getRtmpUrl() + rendition.getStreamKey()));
+        }
+        return renditionUrls;
+    }
+    
+    @Override
+    protected String describeDirectStreaming() {
+        return "FLV/RTMP推流";
+    }
+    
+    /**
+     * 可使用Surface采集时先启动采集链路
+     */
+    @Override
+    protected void openFFmpegInput() {
+        if (useSurfaceCapture) {
+            startSurfaceCapture();
+        }
+    }
+    
+    /**
+     * FFmpeg会话结束后不再需要编码输出
+     */
+    @Override
+    protected void closeFFmpegInput() {
+        stopSurfaceCapture();
+    }
+    
+    /**
+     * 启动Surface采集链路
+     * 摄像头画面直接渲染到MediaCodec输入Surface，编码后的H.264码流通过管道交给FFmpeg
+     */
+    private void startSurfaceCapture() {
+        try {
+            videoPipePath = FFmpegKitConfig.registerNewFFmpegPipe(context);
+            videoPipe = new EncodedVideoPipe(videoPipePath, surfaceErrorListener);
+            videoEncoder = new HardwareVideoEncoder(encoderSelection.getCodecName(), videoPipe);
+            Surface inputSurface = videoEncoder.configure(config.getVideoWidth(), config.getVideoHeight(),
+                    config.getVideoFps(), config.getVideoBitrate(), config.getVideoGop(), config.getVideoProfile());
+            videoEncoder.start();
+            captureSource.start(Collections.singletonList(inputSurface), config.getVideoFps(), captureCallback);
+            Log.d(TAG, "Surface采集链路已启动");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "启动Surface采集失败，使用FFmpeg采集", e);
+            stopSurfaceCapture();
+        }
+    }
+    
+    /**
+     * 停止Surface采集链路
+     */
+    private void stopSurfaceCapture() {
+        if (captureSource != null) {
+            captureSource.stop();
+        }
+        if (videoEncoder != null) {
+            videoEncoder.release();
+            videoEncoder = null;
+        }
+        if (videoPipe != null) {
+            videoPipe.close();
+            videoPipe = null;
+        }
+        if (videoPipePath != null) {
+            FFmpegKitConfig.closeFFmpegPipe(videoPipePath);
+            videoPipePath = null;
+        }
+    }
+    
+    private final VideoCaptureSource.Callback captureCallback = new VideoCaptureSource.Callback() {
+        @Override
+        public void onCaptureStarted() {
+            Log.d(TAG, "摄像头采集已开始");
+        }
+        
+        @Override
+        public void onCaptureError(String error) {
+            handleSurfaceError("摄像头采集失败: " + error);
+        }
+    };
+    
+    private final EncodedVideoPipe.ErrorListener surfaceErrorListener =
+            e -> handleSurfaceError("硬件编码失败: " + e.getMessage());
+    
+    private void handleSurfaceError(String error) {
+        Log.e(TAG, error);
+        notifyError(error);
+    }
+    
+    /**
+     * 构建FFmpeg推流命令
+     * 配置多码率阶梯且由FFmpeg采集时，采集画面拆分一次、每档缩放一次，各档编码器各自一路输出
+     */
+    @Override
+    protected String buildFFmpegCommand() {
+        StringBuilder command = new StringBuilder();
+        List<StreamingConfig.Rendition> renditions = videoPipePath == null
+                ? config.getRenditions() : Collections.<StreamingConfig.Rendition>emptyList();
+        boolean ladder = !renditions.isEmpty();
+        
+        // 输入源（摄像头和麦克风）
+        if (videoPipePath != null) {
+            // 视频已由MediaCodec编码，从管道读取H.264码流
+            command.append("-f h264 -framerate ").append(config.getVideoFps()).append(" -i ").append(videoPipePath).append(" ");
+        } else {
+            command.append("-f android_camera -i 0 "); // 前置摄像头
+        }
+        command.append("-f android_microphone -i 1 "); // 麦克风
+        
+        if (ladder) {
+            // [v0]为主输出，[r1]...为各档缩放后的画面，滤镜图按档数并行
+            command.append("-filter_complex_threads ").append(renditions.size() + 1).append(" ");
+            command.append("-filter_complex \"[0:v]split=").append(renditions.size() + 1);
+            for (int i = 0; i <= renditions.size(); i++) {
+                command.append("[v").append(i).append("]");
+            }
+            for (int i = 1; i <= renditions.size(); i++) {
+                StreamingConfig.Rendition rendition = renditions.get(i - 1);
+                command.append(";[v").append(i).append("]scale=").append(rendition.getWidth()).append(":")
+                        .append(rendition.getHeight()).append("[r").append(i).append("]");
+            }
+            command.append("\" ");
+            command.append("-map [v0] -map 1:a ");
+        }
+        
+        // 视频编码设置
+        if (videoPipePath != null) {
+            command.append("-c:v copy "); // 直接封装，不再重新编码
+        } else {
+            appendVideoEncoding(command, config.getVideoWidth(), config.getVideoHeight(),
+                    config.getVideoBitrate(), ladder);
+        }
+        appendAudioEncoding(command);
+        
+        List<String> additional = config.getAdditionalRtmpUrls();
+        if (!additional.isEmpty()) {
+            // 多个推流地址时由tee复用同一份编码输出，其他地址失败时只停止该地址
+            if (!ladder) {
+                command.append("-map 0:v -map 1:a ");
+            }
+            command.append("-f tee \"[f=flv:onfail=abort]").append(rtmpUrl);
+            for (String url : additional) {
+                command.append("|[f=flv:onfail=ignore]").append(url);
+            }
+            command.append("\"");
+        } else {
+            // 网络设置
+            command.append("-f flv "); // 输出格式为FLV
+            command.append("-rtmp_live live "); // 直播模式
+            command.append("-rtmp_buffer 5000 "); // 缓冲区大小
+            
+            // 输出URL
+            command.append(rtmpUrl);
+        }
+        
+        // 阶梯各档推到 推流码_档位名
+        for (int i = 1; i <= renditions.size(); i++) {
+            StreamingConfig.Rendition rendition = renditions.get(i - 1);
+            command.append(" -map [r").append(i).append("] -map 1:a ");
+            appendVideoEncoding(command, rendition.getWidth(), rendition.getHeight(), rendition.getBitrate(), true);
+            appendAudioEncoding(command);
+            command.append("-f flv -rtmp_live live ");
+            command.append(config.getRtmpUrl()).append(rendition.getStreamKey());
+        }
+        
+        return command.toString();
+    }
+    
+    /**
+     * 视频编码参数
+     * @param aligned 多码率阶梯时固定GOP、关闭场景切换插入关键帧并按帧号强制关键帧，各档关键帧位置相同
+     */
+    private void appendVideoEncoding(StringBuilder command, int width, int height, int bitrate, boolean aligned) {
+        if (encoderSelection.getBackend() == VideoEncoderBackend.MEDIACODEC) {
+            command.append("-c:v h264_mediacodec "); // MediaCodec硬件H.264编码
+            command.append("-codec_name ").append(encoderSelection.getCodecName()).append(" ");
+            command.append("-bitrate_mode cbr "); // 恒定码率
+            command.append("-g ").append(config.getVideoGop()).append(" "); // GOP大小
+        } else {
+            command.append("-c:v libx264 "); // H.264编码
+            command.append("-preset ultrafast "); // 最快编码速度
+            command.append("-tune zerolatency "); // 零延迟调优
+            if (aligned) {
+                command.append("-g ").append(config.getVideoGop()).append(" ");
+                command.append("-keyint_min ").append(config.getVideoGop()).append(" ");
+                command.append("-sc_threshold 0 ");
+            }
+        }
+        if (aligned) {
+            command.append("-force_key_frames \"expr:eq(mod(n,").append(config.getVideoGop()).append("),0)\" ");
+        }
+        command.append("-profile:v baseline "); // 基线配置
+        command.append("-level 3.0 "); // H.264级别
+        
+        // 视频参数
+        command.append("-s ").append(width).append("x").append(height).append(" ");
+        command.append("-r ").append(config.getVideoFps()).append(" ");
+        command.append("-b:v ").append(bitrate).append("k ");
+        command.append("-maxrate ").append(bitrate).append("k ");
+        command.append("-bufsize ").append(bitrate * 2).append("k ");
+    }
+    
+    /**
+     * 音频编码参数，阶梯各档各编码一路相同参数的音频
+     */
+    private void appendAudioEncoding(StringBuilder command) {
+        command.append("-c:a aac "); // AAC音频编码
+        command.append("-b:a ").append(config.getAudioBitrate()).append("k ");
+        command.append("-ar ").append(config.getAudioSampleRate()).append(" ");
+        command.append("-ac ").append(config.getAudioChannels()).append(" ");
+    }
+}
@@ -0,0 +1,116 @@
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.srt.SrtUrl;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SRT推流协议实现
+ * MPEG-TS经SRT (UDP) 发送，丢包只重传丢失的包，不像TCP上的RTMP那样阻塞后续数据，适合丢包较多的移动网络上行。
+ * 硬件编码且摄像头支持Surface采集时使用进程内TS/SRT推流，链路往返时延、丢包和重传计入统计；
+ * 其余情况由FFmpeg采集编码后经libsrt推流。延迟窗口和加密参数取自配置，推流地址中的查询参数优先。
+ * SRT重传发生在发送缓冲内，不阻塞发送队列，持续丢包时由往返时延升高和队列积压反映到自适应码率。
+ */
+public class SRTStreamingProtocol extends DirectStreamingProtocol {
+    private static final String TAG = "SRTStreamingProtocol";
+
+    // 主地址、其他地址和阶梯各档的地址，启动时解析
+    private List<SrtUrl> urls;
+    private List<SrtUrl> renditionUrls;
+
+    public SRTStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler) {
+        super(context, config, scheduler, TAG, "SRT");
+    }
+
+    /**
+     * 解析推流地址：主地址的流ID默认为推流码，阶梯各档的流ID为各自的推流码
+     * @throws IllegalArgumentException 地址或SRT参数无效
+     */
+    @Override
+    protected void parseUrls() {
+        urls = new ArrayList<>();
+        SrtUrl primary = SrtUrl.parse(config.getRtmpUrl(), config.getSrtLatency(), config.getSrtPassphrase(),
+                config.getSrtKeyLength());
+        urls.add(primary.withDefaultStreamId(config.getStreamKey()));
+        for (String url : config.getAdditionalRtmpUrls()) {
+            urls.add(SrtUrl.parse(url, config.getSrtLatency(), config.getSrtPassphrase(), config.getSrtKeyLength()));
+        }
+        renditionUrls = new ArrayList<>();
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            renditionUrls.add(primary.withStreamId(rendition.getStreamKey()));
+        }
+        Log.d(TAG, "推流URL: " + urls.get(0));
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectUrls() {
+        return urls;
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectRenditionUrls() {
+        return renditionUrls;
+    }
+
+    @Override
+    protected String describeDirectStreaming() {
+        return "TS/SRT推流，延迟窗口" + urls.get(0).getLatencyMs() + "ms";
+    }
+
+    /**
+     * 命令中含密码时不输出
+     */
+    @Override
+    protected boolean isFFmpegCommandLoggable() {
+        return !urls.get(0).isEncrypted();
+    }
+
+    /**
+     * 构建FFmpeg推流命令，多个推流地址时由tee复用同一份编码输出
+     */
+    @Override
+    protected String buildFFmpegCommand() throws UnsupportedEncodingException {
+        StringBuilder command = new StringBuilder();
+        appendCaptureAndEncoding(command);
+        if (urls.size() > 1) {
+            // 其他地址失败时只停止该地址
+            command.append("-map 0:v -map 1:a ");
+            command.append("-f tee \"[f=mpegts:onfail=abort]").append(toFFmpegUrl(urls.get(0)));
+            for (int i = 1; i < urls.size(); i++) {
+                command.append("|[f=mpegts:onfail=ignore]").append(toFFmpegUrl(urls.get(i)));
+            }
+            command.append("\"");
+        } else {
+            command.append("-f mpegts ");
+            command.append("\"").append(toFFmpegUrl(urls.get(0))).append("\"");
+        }
+        return command.toString();
+    }
+
+    /**
+     * libsrt的地址参数，latency的单位为微秒
+     */
+    private static String toFFmpegUrl(SrtUrl url) throws UnsupportedEncodingException {
+        StringBuilder address = new StringBuilder("srt://");
+        address.append(url.getHost().indexOf(':') >= 0 ? "[" + url.getHost() + "]" : url.getHost());
+        address.append(":").append(url.getPort());
+        address.append("?mode=caller&transtype=live&latency=").append(url.getLatencyMs() * 1000L);
+        if (url.getStreamId() != null) {
+            address.append("&streamid=").append(URLEncoder.encode(url.getStreamId(), "UTF-8"));
+        }
+        if (url.isEncrypted()) {
+            address.append("&passphrase=").append(URLEncoder.encode(url.getPassphrase(), "UTF-8"));
+            address.append("&pbkeylen=").append(url.getKeyLength());
+        }
+        return address.toString();
+    }
+}
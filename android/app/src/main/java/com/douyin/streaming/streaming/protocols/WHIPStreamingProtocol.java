@@ -0,0 +1,107 @@
+package com.douyin.streaming.streaming.protocols;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.douyin.streaming.streaming.encoder.VideoEncoderBackend;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.webrtc.WhipUrl;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WebRTC (WHIP) 推流协议实现
+ * HTTP交换SDP后以ICE-lite、DTLS-SRTP建立UDP链路，H.264和Opus经RTP发送，丢包由NACK重传，
+ * 接收端的传输层反馈驱动发送端带宽估计，估计值作为自适应码率的上限，延迟低于RTMP和SRT。
+ * FFmpeg不支持WHIP输出，只能使用硬件编码和Surface采集的进程内推流；Opus编码需要Android 10，
+ * 更低的版本只推视频。主地址以推流码作为Bearer令牌。
+ */
+public class WHIPStreamingProtocol extends DirectStreamingProtocol {
+    private static final String TAG = "WHIPStreamingProtocol";
+    // WebRTC的Opus固定为48kHz
+    private static final int OPUS_SAMPLE_RATE = 48000;
+
+    // 主地址、其他地址和阶梯各档的地址，启动时解析
+    private List<WhipUrl> urls;
+    private List<WhipUrl> renditionUrls;
+
+    public WHIPStreamingProtocol(Context context, StreamingConfig config, StreamingScheduler scheduler) {
+        super(context, config, scheduler, TAG, "WebRTC");
+    }
+
+    /**
+     * 音频改为Opus，不修改调用方的配置；系统不支持Opus编码时保留AAC，发布器只推视频
+     */
+    @Override
+    protected StreamingConfig adaptConfig(StreamingConfig config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return config;
+        }
+        StreamingConfig copy = config.copy();
+        copy.setAudioCodec("opus");
+        copy.setAudioSampleRate(OPUS_SAMPLE_RATE);
+        return copy;
+    }
+
+    /**
+     * 解析推流地址：主地址以推流码为Bearer令牌，阶梯各档使用同一端点、以各自的推流码为令牌
+     * @throws IllegalArgumentException 地址无效
+     */
+    @Override
+    protected void parseUrls() {
+        urls = new ArrayList<>();
+        urls.add(WhipUrl.parse(config.getRtmpUrl(), config.getStreamKey()));
+        for (String url : config.getAdditionalRtmpUrls()) {
+            urls.add(WhipUrl.parse(url, null));
+        }
+        renditionUrls = new ArrayList<>();
+        for (StreamingConfig.Rendition rendition : config.getRenditions()) {
+            renditionUrls.add(WhipUrl.parse(config.getRtmpUrl(), rendition.getStreamKey()));
+        }
+        Log.d(TAG, "推流URL: " + urls.get(0));
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectUrls() {
+        return urls;
+    }
+
+    @Override
+    protected List<? extends FramePublisher.Endpoint> getDirectRenditionUrls() {
+        return renditionUrls;
+    }
+
+    @Override
+    protected String describeDirectStreaming() {
+        return "RTP/WebRTC推流，音频" + config.getAudioCodec();
+    }
+
+    /**
+     * 只能进程内推流，条件不满足时启动失败
+     */
+    @Override
+    protected boolean shouldStreamDirect() {
+        if (encoderSelection.getBackend() != VideoEncoderBackend.MEDIACODEC) {
+            throw new IllegalStateException("WebRTC推流需要硬件编码器");
+        }
+        if (!config.isEnableSurfaceCapture() || !isCaptureSizeSupported()) {
+            throw new IllegalStateException("WebRTC推流需要摄像头支持Surface采集");
+        }
+        if (!isDirectSupported()) {
+            throw new IllegalStateException("推流目标过多或摄像头不支持阶梯分辨率");
+        }
+        return true;
+    }
+
+    /**
+     * shouldStreamDirect总是选择进程内推流，不会调用
+     */
+    @Override
+    protected String buildFFmpegCommand() {
+        throw new IllegalStateException("FFmpeg不支持WHIP输出");
+    }
+}
@@ -0,0 +1,68 @@
+package com.douyin.streaming.streaming.ffmpeg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FFmpeg日志解析
+ * FFmpeg每秒输出数十行日志，绝大多数不是事件，解析不应分配内存。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FFmpegLogParserBenchmark {
+    // 按实际推流时的日志构成：进度行为主，少量事件和编码器警告
+    private static final int[] LEVELS = {
+            FFmpegLogParser.AV_LOG_INFO,
+            FFmpegLogParser.AV_LOG_INFO,
+            FFmpegLogParser.AV_LOG_INFO,
+            FFmpegLogParser.AV_LOG_WARNING,
+            FFmpegLogParser.AV_LOG_INFO,
+            FFmpegLogParser.AV_LOG_VERBOSE,
+            FFmpegLogParser.AV_LOG_DEBUG,
+    };
+    private static final String[] LINES = {
+            "frame=  912 fps= 30 q=23.0 size=    4096kB time=00:00:30.40 bitrate=1103.7kbits/s speed=1.00x",
+            "Connection established to rtmp://push.example.com/live",
+            "Stream mapping:\n  Stream #0:0 -> #0:0 (h264 (native) -> h264 (h264_mediacodec))",
+            "[h264_mediacodec @ 0x7b2c4e8a00] Output buffer dequeue timed out",
+            "Streaming started",
+            "[rtmp @ 0x7b2c4e9b00] Sending chunk of 4096 bytes",
+            "[flv @ 0x7b2c4eac00] Writing packet with pts 912000",
+    };
+
+    private int index;
+
+    @Benchmark
+    public FFmpegEvent progressLine() {
+        return FFmpegLogParser.parse(FFmpegLogParser.AV_LOG_INFO, LINES[0]);
+    }
+
+    @Benchmark
+    public FFmpegEvent eventLine() {
+        return FFmpegLogParser.parse(FFmpegLogParser.AV_LOG_INFO, LINES[1]);
+    }
+
+    /**
+     * VERBOSE级别的日志只做级别判断
+     */
+    @Benchmark
+    public FFmpegEvent filteredLine() {
+        return FFmpegLogParser.parse(FFmpegLogParser.AV_LOG_VERBOSE, LINES[5]);
+    }
+
+    @Benchmark
+    public void mixedLines(Blackhole blackhole) {
+        int i = index;
+        index = i + 1 == LINES.length ? 0 : i + 1;
+        blackhole.consume(FFmpegLogParser.toLogPriority(LEVELS[i]));
+        blackhole.consume(FFmpegLogParser.parse(LEVELS[i], LINES[i]));
+    }
+}
@@ -0,0 +1,60 @@
+package com.douyin.streaming.streaming.muxer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FLV标签序列化
+ * 每个音视频帧都要写一次标签头，写入预分配的直接缓冲区，不应分配内存。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FlvTagWriterBenchmark {
+    private final ByteBuffer tagHeader = ByteBuffer.allocateDirect(
+            FlvTagWriter.TAG_HEADER_SIZE + FlvTagWriter.VIDEO_TAG_HEADER_SIZE);
+    private final ByteBuffer metaData = ByteBuffer.allocate(512);
+    private int timestamp;
+
+    /**
+     * 写FLV文件时每个视频帧的标签头和视频标签头
+     */
+    @Benchmark
+    public ByteBuffer videoTagHeader() {
+        timestamp += 33;
+        tagHeader.clear();
+        FlvTagWriter.writeTagHeader(tagHeader, FlvTagWriter.TAG_VIDEO, 12 * 1024, timestamp);
+        FlvTagWriter.writeVideoTagHeader(tagHeader, (timestamp & 0xFF) == 0, false, 0);
+        tagHeader.flip();
+        return tagHeader;
+    }
+
+    /**
+     * RTMP推流时每个音频帧的音频标签头
+     */
+    @Benchmark
+    public ByteBuffer audioTagHeader() {
+        tagHeader.clear();
+        FlvTagWriter.writeAudioTagHeader(tagHeader, false);
+        tagHeader.flip();
+        return tagHeader;
+    }
+
+    /**
+     * onMetaData，每次连接写一次
+     */
+    @Benchmark
+    public ByteBuffer metaData() {
+        metaData.clear();
+        FlvTagWriter.writeMetaData(metaData, true, 1920, 1080, 30, 2500, 128, 44100, 2);
+        metaData.flip();
+        return metaData;
+    }
+}
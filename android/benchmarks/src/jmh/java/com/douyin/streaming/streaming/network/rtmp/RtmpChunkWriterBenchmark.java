@@ -0,0 +1,99 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.muxer.FlvTagWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RTMP分块序列化
+ * 测量一个视频帧拆成块、组装聚合写缓冲区数组的开销，输出端只消费字节不做IO。
+ * 帧数据以视图引用，块头写在预分配内存中，稳态下不应分配内存。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RtmpChunkWriterBenchmark {
+    private static final int CSID_VIDEO = 6;
+    private static final int CSID_AUDIO = 4;
+    private static final int STREAM_ID = 1;
+
+    /**
+     * 128为协议默认块大小，4096为推流时设置的块大小
+     */
+    @Param({"128", "4096"})
+    public int chunkSize;
+
+    /**
+     * 2.5Mbps/30fps的平均P帧和关键帧大小
+     */
+    @Param({"10000", "40000"})
+    public int frameSize;
+
+    private final RtmpChunkWriter.Output sink = (srcs, offset, length) -> {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer src = srcs[i];
+            total += src.remaining();
+            src.position(src.limit());
+        }
+        return total;
+    };
+
+    private RtmpChunkWriter writer;
+    private MediaFrame videoFrame;
+    private MediaFrame audioFrame;
+    private ByteBuffer tagHeader;
+    private int timestamp;
+
+    @Setup
+    public void setUp() {
+        writer = new RtmpChunkWriter();
+        writer.setChunkSize(chunkSize);
+        videoFrame = fill(new MediaFramePool(MediaFrame.Track.VIDEO, 1, frameSize).acquire(), frameSize);
+        audioFrame = fill(new MediaFramePool(MediaFrame.Track.AUDIO, 1, 512).acquire(), 372);
+        tagHeader = ByteBuffer.allocateDirect(FlvTagWriter.VIDEO_TAG_HEADER_SIZE);
+    }
+
+    @Benchmark
+    public long videoFrame() throws IOException {
+        timestamp += 33;
+        tagHeader.clear();
+        FlvTagWriter.writeVideoTagHeader(tagHeader, false, false, 0);
+        tagHeader.flip();
+        return writer.write(sink, CSID_VIDEO, RtmpConnection.MSG_VIDEO, STREAM_ID, timestamp,
+                tagHeader, videoFrame, null);
+    }
+
+    @Benchmark
+    public long audioFrame() throws IOException {
+        timestamp += 23;
+        tagHeader.clear();
+        FlvTagWriter.writeAudioTagHeader(tagHeader, false);
+        tagHeader.flip();
+        return writer.write(sink, CSID_AUDIO, RtmpConnection.MSG_AUDIO, STREAM_ID, timestamp,
+                tagHeader, audioFrame, null);
+    }
+
+    private static MediaFrame fill(MediaFrame frame, int size) {
+        ByteBuffer data = frame.prepareWrite(size);
+        for (int i = 0; i < size; i++) {
+            data.put((byte) i);
+        }
+        data.flip();
+        frame.set(0, 0, false, false, System.nanoTime());
+        return frame;
+    }
+}
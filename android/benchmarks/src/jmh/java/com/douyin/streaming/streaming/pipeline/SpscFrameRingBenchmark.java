@@ -0,0 +1,74 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编码线程到发送线程的帧交接
+ * 同线程的入队出队测量单次操作的开销；生产者和消费者分别在两个线程上时测量跨核交接的吞吐，
+ * 与推流时编码回调和发送线程的关系相同。交接不应分配内存。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpscFrameRingBenchmark {
+    private static final int RING_CAPACITY = 256;
+
+    @State(Scope.Thread)
+    public static class SingleThread {
+        SpscFrameRing ring;
+        MediaFrame frame;
+
+        @Setup
+        public void setUp() {
+            ring = new SpscFrameRing(RING_CAPACITY);
+            frame = new MediaFramePool(MediaFrame.Track.VIDEO, 1, 1024).acquire();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Handoff {
+        SpscFrameRing ring;
+        MediaFrame frame;
+
+        @Setup
+        public void setUp() {
+            ring = new SpscFrameRing(RING_CAPACITY);
+            frame = new MediaFramePool(MediaFrame.Track.VIDEO, 1, 1024).acquire();
+        }
+    }
+
+    @Benchmark
+    public MediaFrame offerPoll(SingleThread state) {
+        state.ring.offer(state.frame);
+        return state.ring.poll();
+    }
+
+    /**
+     * 生产者入队，队列满时直接返回，与编码线程满队列时的处理一致
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean producer(Handoff state) {
+        return state.ring.offer(state.frame);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public MediaFrame consumer(Handoff state) {
+        return state.ring.poll();
+    }
+}
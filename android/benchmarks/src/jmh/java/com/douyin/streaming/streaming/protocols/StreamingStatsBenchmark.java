@@ -0,0 +1,89 @@
+package com.douyin.streaming.streaming.protocols;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreamingStats写入吞吐
+ * 推流时发送线程、编码回调和FFmpeg日志线程同时写计数器，统计线程读取并采样。
+ * 写入路径应无锁、不分配内存，多写者时吞吐不应明显下降。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+public class StreamingStatsBenchmark {
+    private StreamingProtocol.StreamingStats stats;
+    private long nowNanos;
+
+    @Setup
+    public void setUp() {
+        stats = new StreamingProtocol.StreamingStats();
+        stats.setStartTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 单个发送线程，每个数据包更新一次
+     */
+    @Benchmark
+    @Group("singleWriter")
+    @GroupThreads(1)
+    public void singleWriter() {
+        stats.addBytesSent(1400);
+    }
+
+    /**
+     * 三个写线程分别更新字节数、帧数和队列深度，一个线程每次操作做一次采样和快照
+     */
+    @Benchmark
+    @Group("concurrentWriters")
+    @GroupThreads(1)
+    public void bytesWriter() {
+        stats.addBytesSent(1400);
+    }
+
+    /**
+     * 帧计数只有这一个写线程，读后写不会丢失更新
+     */
+    @Benchmark
+    @Group("concurrentWriters")
+    @GroupThreads(1)
+    public void framesWriter() {
+        stats.setVideoFramesSent(stats.getVideoFramesSent() + 1);
+    }
+
+    @Benchmark
+    @Group("concurrentWriters")
+    @GroupThreads(1)
+    public void queueWriter() {
+        stats.setSendQueueDepth(8);
+        stats.setPacketSendTimeUs(42.0);
+    }
+
+    @Benchmark
+    @Group("concurrentWriters")
+    @GroupThreads(1)
+    public StreamingProtocol.MetricsSnapshot sampler() {
+        nowNanos += TimeUnit.SECONDS.toNanos(1);
+        stats.sampleWindows(nowNanos);
+        return stats.snapshot(StreamingProtocol.StreamingStatus.STREAMING, nowNanos);
+    }
+
+    /**
+     * 四个线程争用同一个计数器，对照AtomicLong在竞争下的开销
+     */
+    @Benchmark
+    @Group("contendedCounter")
+    @GroupThreads(4)
+    public void contendedCounter() {
+        stats.addBytesSent(1400);
+    }
+}
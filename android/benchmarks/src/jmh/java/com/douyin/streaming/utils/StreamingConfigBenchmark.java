@@ -0,0 +1,58 @@
+package com.douyin.streaming.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推流配置的复制和预设应用
+ * 每次开始推流和切换协议时复制配置，分配量应只有配置对象本身。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class StreamingConfigBenchmark {
+    private static final StreamingConfig.QualityPreset[] PRESETS = {
+            StreamingConfig.QualityPreset.ULTRA_LOW,
+            StreamingConfig.QualityPreset.MEDIUM,
+            StreamingConfig.QualityPreset.HIGH,
+            StreamingConfig.QualityPreset.ULTRA_HIGH,
+    };
+
+    private StreamingConfig config;
+    private int presetIndex;
+
+    @Setup
+    public void setUp() {
+        config = new StreamingConfig(StreamingConfig.QualityPreset.HIGH);
+        config.setRtmpUrl("rtmp://push.example.com/live/");
+        config.setStreamKey("stream-key");
+    }
+
+    @Benchmark
+    public StreamingConfig copy() {
+        return config.copy();
+    }
+
+    @Benchmark
+    public StreamingConfig applyQualityPreset() {
+        int i = presetIndex;
+        presetIndex = i + 1 == PRESETS.length ? 0 : i + 1;
+        config.applyQualityPreset(PRESETS[i]);
+        return config;
+    }
+
+    /**
+     * 开始推流时的完整流程：按预设新建配置再复制一份交给协议
+     */
+    @Benchmark
+    public StreamingConfig presetAndCopy() {
+        return new StreamingConfig(StreamingConfig.QualityPreset.MEDIUM).copy();
+    }
+}
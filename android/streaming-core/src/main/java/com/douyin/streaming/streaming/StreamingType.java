@@ -0,0 +1,23 @@
+package com.douyin.streaming.streaming;
+
+/**
+ * 推流方式
+ */
+public enum StreamingType {
+    OKB("OKB推流"),
+    VR("VR推流"),
+    ATF("ATF推流"),
+    ATS("ATS推流"),
+    SRT("SRT推流"),
+    WHIP("WebRTC推流");
+    
+    private final String displayName;
+    
+    StreamingType(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+}
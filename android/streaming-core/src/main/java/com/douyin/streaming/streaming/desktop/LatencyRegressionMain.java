@@ -0,0 +1,409 @@
+package com.douyin.streaming.streaming.desktop;
+
+import com.douyin.streaming.streaming.StreamingType;
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.muxer.FlvTagWriter;
+import com.douyin.streaming.streaming.muxer.TsDemuxer;
+import com.douyin.streaming.streaming.network.cmaf.CmafIngestServer;
+import com.douyin.streaming.streaming.network.rtmp.RtmpIngestServer;
+import com.douyin.streaming.streaming.network.srt.SrtIngestServer;
+import com.douyin.streaming.streaming.network.udp.UdpIngestServer;
+import com.douyin.streaming.streaming.network.webrtc.WhipIngestServer;
+import com.douyin.streaming.streaming.protocols.StreamingProtocol;
+import com.douyin.streaming.streaming.protocols.SyntheticStreamingProtocol;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.streaming.stats.IngestLatencyTracker;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端延迟回归检查
+ * 在本机回环地址上启动RtmpIngestServer，以合成帧经完整的队列和FLV/RTMP发送链路推流，
+ * 接收端按帧内的采集时间计算逐帧延迟、抖动和接收速率，超过阈值时以非0退出码结束。
+ * 推流目标数大于1时每个目标各启动一个接收端，检查编码一次分发到多个目标后每个目标都满足阈值。
+ * 协议为srt时改用SrtIngestServer，经TS/SRT链路推流，可模拟丢包检查重传后的延迟，并输出链路丢包和重传统计。
+ * 协议为whip时改用WhipIngestServer，音频改为Opus，经RTP/WebRTC链路推流，同样可模拟丢包；给出瓶颈带宽时
+ * 开启自适应码率，检查带宽估计不超过瓶颈、码率随之下调后延迟仍满足阈值。起始码率高于瓶颈时先过载丢包，
+ * 估计要十几秒才回升到瓶颈附近，这时宜跑30秒以上并放宽最低速率比例，如 40 300 50 0.5 1 whip 0 "" 1000。
+ * 协议为udp时改用UdpIngestServer，经TS/UDP链路推流，没有重传，检查TS连续计数没有错误并输出最长连续突发，
+ * 确认大帧按PCR间隔分散发送。
+ * 协议为cmaf时以ATF推流方式经分块上传的分片MP4推流到CmafIngestServer，检查moof序号连续并输出上传的段数。
+ * 不需要外部网络和推流服务器。
+ *
+ * 用法: LatencyRegressionMain [秒数, 默认10] [p95延迟上限ms, 默认50] [抖动上限ms, 默认10]
+ *                            [最低速率比例, 默认0.9] [推流目标数, 默认1]
+ *                            [协议rtmp|srt|whip|udp|cmaf, 默认rtmp] [SRT/WebRTC模拟丢包率, 默认0] [SRT密码, 默认不加密]
+ *                            [WebRTC瓶颈带宽kbps, 默认不限]
+ */
+public final class LatencyRegressionMain {
+    private static final String TAG = "LatencyRegression";
+    // 预热期间的数据不计入，排除JIT编译和连接建立的影响
+    private static final int WARMUP_SECONDS = 2;
+    private static final int START_TIMEOUT_SECONDS = 10;
+    // WebRTC接收端等待重传的时间
+    private static final int WHIP_LATENCY_MS = 200;
+    // UDP接收端允许的最长连续突发，关键帧不分散发送时可达数十个数据报
+    private static final int MAX_UDP_BURST = 8;
+    // 带宽估计允许超出瓶颈的比例，估计在探测上调和过载下调之间振荡
+    private static final double ESTIMATE_OVERSHOOT = 1.1;
+
+    private LatencyRegressionMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        double maxP95Ms = args.length > 1 ? Double.parseDouble(args[1]) : 50;
+        double maxJitterMs = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        double minThroughputRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.9;
+        int destinations = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        String protocolName = args.length > 5 ? args[5] : "rtmp";
+        boolean srt = protocolName.equalsIgnoreCase("srt");
+        boolean whip = protocolName.equalsIgnoreCase("whip");
+        boolean udp = protocolName.equalsIgnoreCase("udp");
+        boolean cmaf = protocolName.equalsIgnoreCase("cmaf");
+        double lossRate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+        String passphrase = args.length > 7 ? args[7] : "";
+        int bottleneckKbps = whip && args.length > 8 ? Integer.parseInt(args[8]) : 0;
+        StreamingLog.setMinPriority(StreamingLog.INFO);
+
+        // 没有瓶颈时关闭自适应码率，使接收速率可与配置码率比较
+        StreamingConfig config = new StreamingConfig(StreamingConfig.QualityPreset.MEDIUM);
+        config.setStreamKey("latency");
+        config.setSrtPassphrase(passphrase);
+        config.setEnableAdaptiveBitrate(bottleneckKbps > 0);
+        if (whip) {
+            config.setAudioCodec("opus");
+            config.setAudioSampleRate(48000);
+        }
+        if (cmaf) {
+            config.setStreamingType(StreamingType.ATF);
+        }
+
+        IngestLatencyTracker[] trackers = new IngestLatencyTracker[destinations];
+        Closeable[] servers = new Closeable[destinations];
+        TsReceiver[] receivers = new TsReceiver[destinations];
+        WhipIngestServer[] whipServers = new WhipIngestServer[destinations];
+        UdpIngestServer[] udpServers = new UdpIngestServer[destinations];
+        CmafIngestServer[] cmafServers = new CmafIngestServer[destinations];
+        List<String> additionalUrls = new ArrayList<>();
+        for (int i = 0; i < destinations; i++) {
+            trackers[i] = new IngestLatencyTracker();
+            String url;
+            if (whip) {
+                // 主目标的streamKey作为Bearer令牌
+                WhipIngestServer server = new WhipIngestServer(new WhipReceiver(trackers[i]), Clock.SYSTEM,
+                        WHIP_LATENCY_MS, i == 0 ? config.getStreamKey() : null);
+                server.setLossRate(lossRate);
+                server.setBandwidthKbps(bottleneckKbps);
+                server.start(0);
+                servers[i] = server;
+                whipServers[i] = server;
+                url = server.getUrl();
+            } else if (udp) {
+                receivers[i] = new TsReceiver(trackers[i]);
+                UdpIngestServer server = new UdpIngestServer(receivers[i], Clock.SYSTEM);
+                server.start(0);
+                servers[i] = server;
+                udpServers[i] = server;
+                url = server.getUrl();
+            } else if (cmaf) {
+                CmafIngestServer server = new CmafIngestServer(new CmafReceiver(trackers[i]), Clock.SYSTEM);
+                server.start(0);
+                servers[i] = server;
+                cmafServers[i] = server;
+                // 主目标的streamKey拼接为最后一级路径
+                url = i > 0 ? server.getUrl() + "/latency" : server.getUrl();
+            } else if (srt) {
+                receivers[i] = new TsReceiver(trackers[i]);
+                SrtIngestServer server = new SrtIngestServer(receivers[i], Clock.SYSTEM, config.getSrtLatency(),
+                        passphrase);
+                server.setLossRate(lossRate);
+                server.start(0);
+                servers[i] = server;
+                url = i > 0 ? server.getUrl() + "?streamid=latency" : server.getUrl();
+            } else {
+                RtmpIngestServer server = startServer(trackers[i]);
+                servers[i] = server;
+                url = server.getUrl("live", i > 0 ? "latency" : "");
+            }
+            if (i == 0) {
+                config.setRtmpUrl(url);
+            } else {
+                additionalUrls.add(url);
+            }
+        }
+        config.setAdditionalRtmpUrls(additionalUrls);
+
+        StreamingScheduler scheduler = new StreamingScheduler();
+        SyntheticStreamingProtocol protocol = new SyntheticStreamingProtocol(config, scheduler, Clock.SYSTEM);
+        CountDownLatch started = new CountDownLatch(1);
+        String[] error = {null};
+        protocol.startStreaming(config, new StreamingProtocol.StreamingCallback() {
+            @Override
+            public void onStarted() {
+                started.countDown();
+            }
+
+            @Override
+            public void onStopped() {
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                started.countDown();
+            }
+
+            @Override
+            public void onStatusUpdate(String status) {
+            }
+
+            @Override
+            public void onBitrateChanged(int oldBitrate, int newBitrate, String reason) {
+            }
+        });
+
+        boolean ok = started.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS) && error[0] == null;
+        if (ok) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_SECONDS));
+            for (IngestLatencyTracker tracker : trackers) {
+                tracker.reset();
+            }
+            for (UdpIngestServer server : udpServers) {
+                if (server != null) {
+                    server.resetBurst();
+                }
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        }
+        StreamingProtocol.StreamingStats stats = protocol.getStats();
+        long dropped = stats.getDroppedFrames();
+        double pacerDelayMs = stats.getPacerQueueDelayMs();
+        double audioQueueDelayMs = stats.getAudioQueueDelayMs();
+        double videoQueueDelayMs = stats.getVideoQueueDelayMs();
+        int estimatedKbps = stats.getEstimatedBandwidthKbps();
+        int targetKbps = stats.getTargetVideoBitrate();
+        protocol.release();
+        scheduler.release();
+        for (Closeable server : servers) {
+            server.close();
+        }
+
+        if (!ok) {
+            System.err.println("推流未能开始: " + (error[0] != null ? error[0] : "超时"));
+            System.exit(2);
+        }
+
+        if (error[0] != null) {
+            System.out.println("推流出错: " + error[0]);
+        }
+        boolean passed = error[0] == null;
+        // 有瓶颈时视频速率以瓶颈扣除音频后的带宽为准
+        double expectedKbps = bottleneckKbps > 0
+                ? Math.min(config.getVideoBitrate(), bottleneckKbps - config.getAudioBitrate())
+                : config.getVideoBitrate();
+        for (int i = 0; i < destinations; i++) {
+            String prefix = destinations > 1 ? "目标" + (i + 1) + " " : "";
+            IngestLatencyTracker.TrackReport video = trackers[i].getVideoReport();
+            IngestLatencyTracker.TrackReport audio = trackers[i].getAudioReport();
+            System.out.println(prefix + "视频 " + video);
+            System.out.println(prefix + "音频 " + audio);
+            passed &= check(prefix + "视频p95延迟", video.getP95Ms(), maxP95Ms, true);
+            passed &= check(prefix + "音频p95延迟", audio.getP95Ms(), maxP95Ms, true);
+            passed &= check(prefix + "视频抖动", video.getJitterMs(), maxJitterMs, true);
+            passed &= check(prefix + "音频抖动", audio.getJitterMs(), maxJitterMs, true);
+            passed &= check(prefix + "视频速率", video.getThroughputKbps(), expectedKbps * minThroughputRatio, false);
+            if (receivers[i] != null) {
+                passed &= check(prefix + "TS连续计数错误", receivers[i].demuxer.getContinuityErrors(), 0, true);
+            }
+            if (udpServers[i] != null) {
+                passed &= check(prefix + "UDP最长连续突发", udpServers[i].getMaxBurst(), MAX_UDP_BURST, true);
+            }
+            if (cmafServers[i] != null) {
+                passed &= check(prefix + "moof序号错误", cmafServers[i].getSequenceErrors(), 0, true);
+            }
+        }
+        if (srt) {
+            System.out.println(String.format(Locale.US, "SRT链路: 发送%d包，丢失%d包 (%.2f%%)，重传%d包，RTT %.2fms",
+                    stats.getLinkPacketsSent(), stats.getLinkPacketsLost(), stats.getLinkLossRate(),
+                    stats.getLinkPacketsRetransmitted(), stats.getRttMs()));
+        }
+        if (udp) {
+            System.out.println(String.format(Locale.US, "UDP链路: 发送%d个数据报", stats.getLinkPacketsSent()));
+        }
+        if (cmaf) {
+            long uploads = 0;
+            for (CmafIngestServer server : cmafServers) {
+                uploads += server.getUploads();
+            }
+            System.out.println(String.format(Locale.US, "CMAF链路: 上传%d个请求，RTT %.2fms",
+                    uploads, stats.getRttMs()));
+        }
+        if (whip) {
+            long skipped = 0;
+            for (WhipIngestServer server : whipServers) {
+                skipped += server.getSkippedPackets();
+            }
+            System.out.println(String.format(Locale.US,
+                    "WebRTC链路: 发送%d包，丢失%d包 (%.2f%%)，重传%d包，接收端跳过%d包，RTT %.2fms，带宽估计%dkbps，视频码率%dkbps",
+                    stats.getLinkPacketsSent(), stats.getLinkPacketsLost(), stats.getLinkLossRate(),
+                    stats.getLinkPacketsRetransmitted(), skipped, stats.getRttMs(), estimatedKbps, targetKbps));
+            passed &= check("收到传输层反馈", estimatedKbps > 0 ? 1 : 0, 1, false);
+            if (bottleneckKbps > 0) {
+                passed &= check("带宽估计", estimatedKbps, bottleneckKbps * ESTIMATE_OVERSHOOT, true);
+            }
+        }
+        System.out.println(String.format(Locale.US, "发送节拍: 最近1秒单帧最大排队时延%.2fms", pacerDelayMs));
+        System.out.println(String.format(Locale.US, "发送队列: 最近1秒音频最大排队时延%.2fms，视频%.2fms",
+                audioQueueDelayMs, videoQueueDelayMs));
+        passed &= check("丢帧数", dropped, 0, true);
+        System.out.println(passed ? "延迟回归检查通过" : "延迟回归检查失败");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * 启动一个接收端，按帧内的采集时间记录延迟
+     */
+    private static RtmpIngestServer startServer(IngestLatencyTracker tracker) throws IOException {
+        RtmpIngestServer server = new RtmpIngestServer(new RtmpIngestServer.Listener() {
+            @Override
+            public void onPublish(String app, String streamName) {
+            }
+
+            @Override
+            public void onMedia(int type, int timestamp, ByteBuffer body, long arrivalNanos) {
+                long captureNanos = SyntheticFrameSource.readCaptureNanos(type, body);
+                if (captureNanos >= 0) {
+                    tracker.record(type == FlvTagWriter.TAG_VIDEO, captureNanos, arrivalNanos, body.remaining());
+                }
+            }
+
+            @Override
+            public void onClosed(IOException e) {
+                if (e != null) {
+                    StreamingLog.w(TAG, "接收端连接异常断开", e);
+                }
+            }
+        }, Clock.SYSTEM);
+        server.start(0);
+        return server;
+    }
+
+    /**
+     * @param upperBound true表示value不得超过limit，false表示不得低于limit
+     */
+    private static boolean check(String name, double value, double limit, boolean upperBound) {
+        boolean ok = upperBound ? value <= limit : value >= limit;
+        System.out.println(String.format(Locale.US, "%s %s: %.3f (%s%.3f)",
+                ok ? "[通过]" : "[失败]", name, value, upperBound ? "<=" : ">=", limit));
+        return ok;
+    }
+
+    /**
+     * WebRTC接收端交付的帧按帧内的采集时间记录延迟，在接收线程上调用
+     */
+    private static final class WhipReceiver implements WhipIngestServer.Listener {
+        private final IngestLatencyTracker tracker;
+
+        WhipReceiver(IngestLatencyTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public void onConnected() {
+        }
+
+        @Override
+        public void onFrame(boolean video, ByteBuffer frame, long deliveryNanos) {
+            long captureNanos = SyntheticFrameSource.readRtpCaptureNanos(video, frame);
+            if (captureNanos >= 0) {
+                tracker.record(video, captureNanos, deliveryNanos, frame.remaining());
+            }
+        }
+
+        @Override
+        public void onClosed(IOException e) {
+            if (e != null) {
+                StreamingLog.w(TAG, "接收端连接异常断开", e);
+            }
+        }
+    }
+
+    /**
+     * CMAF接收端交付的样本按帧内的采集时间记录延迟，在连接线程上调用
+     */
+    private static final class CmafReceiver implements CmafIngestServer.Listener {
+        private final IngestLatencyTracker tracker;
+
+        CmafReceiver(IngestLatencyTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public void onUpload(String method, String path) {
+        }
+
+        @Override
+        public void onSample(boolean video, ByteBuffer sample, long arrivalNanos) {
+            long captureNanos = SyntheticFrameSource.readMp4CaptureNanos(video, sample);
+            if (captureNanos >= 0) {
+                tracker.record(video, captureNanos, arrivalNanos, sample.remaining());
+            }
+        }
+
+        @Override
+        public void onClosed(IOException e) {
+            if (e != null) {
+                StreamingLog.w(TAG, "接收端连接异常断开", e);
+            }
+        }
+    }
+
+    /**
+     * SRT或UDP接收端的负载经TS解封装后，按帧内的采集时间记录延迟，在接收线程上调用
+     */
+    private static final class TsReceiver implements SrtIngestServer.Listener, UdpIngestServer.Listener,
+            TsDemuxer.Listener {
+        private final IngestLatencyTracker tracker;
+        private final TsDemuxer demuxer = new TsDemuxer(this);
+        private long deliveryNanos;
+
+        TsReceiver(IngestLatencyTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public void onConnected(String streamId) {
+        }
+
+        @Override
+        public void onPayload(ByteBuffer payload, long deliveryNanos) {
+            this.deliveryNanos = deliveryNanos;
+            demuxer.feed(payload);
+        }
+
+        @Override
+        public void onPes(boolean video, ByteBuffer payload) {
+            long captureNanos = SyntheticFrameSource.readTsCaptureNanos(video, payload);
+            if (captureNanos >= 0) {
+                tracker.record(video, captureNanos, deliveryNanos, payload.remaining());
+            }
+        }
+
+        @Override
+        public void onClosed(IOException e) {
+            if (e != null) {
+                StreamingLog.w(TAG, "接收端连接异常断开", e);
+            }
+        }
+    }
+}
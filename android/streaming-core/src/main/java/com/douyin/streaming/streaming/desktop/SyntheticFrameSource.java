@@ -0,0 +1,370 @@
+package com.douyin.streaming.streaming.desktop;
+
+import com.douyin.streaming.streaming.media.AvcNalUnits;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.muxer.FlvTagWriter;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 合成音视频帧源，代替摄像头、麦克风和编码器
+ * 按配置的帧率和码率输出H.264和AAC (或20ms的Opus) 帧，帧大小符合码率 (关键帧为平均帧的4倍)，
+ * 视频经与设备相同的Annex-B到AVCC转换写入池化帧。码流内容为占位数据，不可解码，
+ * 只用于在桌面环境压测和剖析发送链路。
+ * 每帧数据开头写入采集时间，同进程的接收端用readCaptureNanos()取出，计算端到端延迟。
+ */
+public class SyntheticFrameSource {
+    private static final int AAC_SAMPLES_PER_FRAME = 1024;
+    private static final int OPUS_FRAME_MS = 20;
+    private static final int OPUS_PRE_SKIP = 312;
+    private static final int KEY_FRAME_WEIGHT = 4;
+    // 采集时间在帧数据中的位置：视频在AVCC长度前缀和NAL头之后，音频在开头
+    private static final int VIDEO_STAMP_OFFSET = 5;
+    private static final int AUDIO_STAMP_OFFSET = 0;
+    private static final int ADTS_HEADER_SIZE = 7;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    // Baseline Profile的SPS/PPS，只用于生成序列头
+    private static final byte[] SPS = {0x67, 0x42, (byte) 0xC0, 0x1F, (byte) 0xDA, 0x01, 0x40, 0x16, (byte) 0xE8, 0x40};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+
+    /**
+     * 帧去向，接收方负责释放帧
+     */
+    public interface FrameSink {
+        void onFrame(MediaFrame frame);
+    }
+
+    private final MediaFramePool videoPool;
+    private final MediaFramePool audioPool;
+    private final FrameSink videoSink;
+    private final FrameSink audioSink;
+    private final Clock clock;
+    private final int fps;
+    private final int gop;
+    private final int sampleRate;
+    private final int audioChannels;
+    private final int audioBitrate;
+    private int audioFrameSize;
+    private boolean opusAudio;
+
+    private volatile int videoBitrate;
+    private volatile boolean keyFrameRequested;
+    private volatile boolean running;
+    private volatile long droppedFrames;
+    private Thread videoThread;
+    private Thread audioThread;
+    // 只在视频线程上访问，Annex-B输入缓冲
+    private ByteBuffer annexB = ByteBuffer.allocateDirect(64 * 1024);
+
+    /**
+     * @param videoBitrate 视频码率 (kbps)
+     * @param audioBitrate 音频码率 (kbps)
+     */
+    public SyntheticFrameSource(MediaFramePool videoPool, MediaFramePool audioPool,
+                                FrameSink videoSink, FrameSink audioSink, Clock clock,
+                                int fps, int gop, int videoBitrate,
+                                int sampleRate, int audioChannels, int audioBitrate) {
+        this.videoPool = videoPool;
+        this.audioPool = audioPool;
+        this.videoSink = videoSink;
+        this.audioSink = audioSink;
+        this.clock = clock;
+        this.fps = Math.max(1, fps);
+        this.gop = Math.max(1, gop);
+        this.videoBitrate = videoBitrate;
+        this.sampleRate = sampleRate;
+        this.audioChannels = audioChannels;
+        this.audioBitrate = audioBitrate;
+        this.audioFrameSize = Math.max(8, audioBitrate * 1000 / 8 * AAC_SAMPLES_PER_FRAME / sampleRate);
+    }
+
+    /**
+     * 音频改为Opus (WebRTC只支持Opus)，配置帧为OpusHead，须在start()之前调用
+     */
+    public void setOpusAudio(boolean opus) {
+        this.opusAudio = opus;
+        this.audioFrameSize = opus
+                ? Math.max(8, audioBitrate * 1000 / 8 * OPUS_FRAME_MS / 1000)
+                : Math.max(8, audioBitrate * 1000 / 8 * AAC_SAMPLES_PER_FRAME / sampleRate);
+    }
+
+    public void start() {
+        running = true;
+        videoThread = new Thread(this::videoLoop, "SyntheticVideo");
+        audioThread = new Thread(this::audioLoop, "SyntheticAudio");
+        videoThread.start();
+        audioThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        join(videoThread);
+        join(audioThread);
+        videoThread = null;
+        audioThread = null;
+    }
+
+    /**
+     * 运行中调整视频码率，从下一帧开始生效
+     * @param bitrate 码率 (kbps)
+     */
+    public void setVideoBitrate(int bitrate) {
+        this.videoBitrate = bitrate;
+    }
+
+    /**
+     * 下一帧输出关键帧
+     */
+    public void requestKeyFrame() {
+        keyFrameRequested = true;
+    }
+
+    /**
+     * 因帧池耗尽而丢弃的帧数
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * 读取合成帧中的采集时间
+     * @param tagType FLV标签类型，与RTMP音视频消息类型相同
+     * @param body FLV标签体，含音视频标签头，不修改position
+     * @return 采集时间 (Clock.nanoTime)，序列头或数据不足时返回-1
+     */
+    public static long readCaptureNanos(int tagType, ByteBuffer body) {
+        int start = body.position();
+        int offset;
+        if (tagType == FlvTagWriter.TAG_VIDEO) {
+            offset = FlvTagWriter.VIDEO_TAG_HEADER_SIZE + VIDEO_STAMP_OFFSET;
+        } else if (tagType == FlvTagWriter.TAG_AUDIO) {
+            offset = FlvTagWriter.AUDIO_TAG_HEADER_SIZE + AUDIO_STAMP_OFFSET;
+        } else {
+            return -1;
+        }
+        // 音视频标签头第二个字节为0表示序列头
+        if (body.remaining() < offset + 8 || body.get(start + 1) == 0) {
+            return -1;
+        }
+        return body.getLong(start + offset);
+    }
+
+    /**
+     * 读取TS解封装后合成帧中的采集时间
+     * @param video true为视频PES，Annex-B格式，采集时间在条带NAL头之后；否则为ADTS帧
+     * @param es 去掉PES头的基本流数据，不修改position
+     * @return 采集时间 (Clock.nanoTime)，数据不足时返回-1
+     */
+    public static long readTsCaptureNanos(boolean video, ByteBuffer es) {
+        int start = es.position();
+        int end = es.limit();
+        int offset = -1;
+        if (video) {
+            // 跳过AUD和SPS/PPS，找到条带NAL
+            for (int i = start; i + 4 < end; i++) {
+                if (es.get(i) == 0 && es.get(i + 1) == 0 && es.get(i + 2) == 1) {
+                    int type = es.get(i + 3) & 0x1F;
+                    if (type == AvcNalUnits.NAL_IDR || type == AvcNalUnits.NAL_SLICE) {
+                        offset = i + 4;
+                        break;
+                    }
+                }
+            }
+        } else {
+            offset = start + ADTS_HEADER_SIZE + AUDIO_STAMP_OFFSET;
+        }
+        if (offset < 0 || offset + 8 > end) {
+            return -1;
+        }
+        return es.getLong(offset);
+    }
+
+    /**
+     * 读取WebRTC接收端交付的合成帧中的采集时间
+     * @param video true为解包后的Annex-B访问单元，否则为一个Opus包
+     * @param frame 不修改position
+     * @return 采集时间 (Clock.nanoTime)，数据不足时返回-1
+     */
+    public static long readRtpCaptureNanos(boolean video, ByteBuffer frame) {
+        if (video) {
+            return readTsCaptureNanos(true, frame);
+        }
+        int offset = frame.position() + AUDIO_STAMP_OFFSET;
+        return offset + 8 <= frame.limit() ? frame.getLong(offset) : -1;
+    }
+
+    /**
+     * 读取分片MP4样本中的采集时间
+     * @param video true为AVCC视频帧，否则为原始AAC帧
+     * @param sample 不修改position
+     * @return 采集时间 (Clock.nanoTime)，数据不足时返回-1
+     */
+    public static long readMp4CaptureNanos(boolean video, ByteBuffer sample) {
+        int offset = sample.position() + (video ? VIDEO_STAMP_OFFSET : AUDIO_STAMP_OFFSET);
+        return offset + 8 <= sample.limit() ? sample.getLong(offset) : -1;
+    }
+
+    private void videoLoop() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+        long startNanos = clock.nanoTime();
+        emitVideoConfig(startNanos);
+        for (long index = 0; running; index++) {
+            long due = startNanos + index * intervalNanos;
+            if (!waitUntil(due)) {
+                return;
+            }
+            boolean keyFrame = index % gop == 0 || keyFrameRequested;
+            if (keyFrame) {
+                keyFrameRequested = false;
+            }
+            emitVideoFrame(due, keyFrame);
+        }
+    }
+
+    private void audioLoop() {
+        long intervalNanos = opusAudio ? TimeUnit.MILLISECONDS.toNanos(OPUS_FRAME_MS)
+                : TimeUnit.SECONDS.toNanos(AAC_SAMPLES_PER_FRAME) / sampleRate;
+        long startNanos = clock.nanoTime();
+        emitAudioConfig(startNanos);
+        for (long index = 0; running; index++) {
+            long due = startNanos + index * intervalNanos;
+            if (!waitUntil(due)) {
+                return;
+            }
+            MediaFrame frame = audioPool.acquire();
+            if (frame == null) {
+                droppedFrames++;
+                continue;
+            }
+            long captureNanos = clock.nanoTime();
+            ByteBuffer dst = frame.prepareWrite(audioFrameSize);
+            dst.putLong(captureNanos);
+            fill(dst, audioFrameSize - 8, (byte) 0x21);
+            dst.flip();
+            long ptsUs = due / 1000;
+            frame.set(ptsUs, ptsUs, true, false, captureNanos);
+            audioSink.onFrame(frame);
+        }
+    }
+
+    private void emitVideoConfig(long nowNanos) {
+        annexB.clear();
+        annexB.put(START_CODE).put(SPS).put(START_CODE).put(PPS);
+        annexB.flip();
+        MediaFrame frame = videoPool.acquire();
+        if (frame == null) {
+            droppedFrames++;
+            return;
+        }
+        ByteBuffer dst = frame.prepareWrite(AvcNalUnits.maxAvccSize(annexB.remaining()));
+        AvcNalUnits.writeDecoderConfigurationRecord(annexB, dst);
+        dst.flip();
+        frame.set(nowNanos / 1000, nowNanos / 1000, false, true, nowNanos);
+        videoSink.onFrame(frame);
+    }
+
+    private void emitAudioConfig(long nowNanos) {
+        MediaFrame frame = audioPool.acquire();
+        if (frame == null) {
+            droppedFrames++;
+            return;
+        }
+        ByteBuffer dst;
+        if (opusAudio) {
+            // OpusHead (RFC 7845): 版本、声道数、预跳过、输入采样率、增益和映射族，多字节字段为小端
+            dst = frame.prepareWrite(19);
+            dst.put(new byte[] {'O', 'p', 'u', 's', 'H', 'e', 'a', 'd', 1, (byte) audioChannels});
+            dst.put((byte) OPUS_PRE_SKIP).put((byte) (OPUS_PRE_SKIP >> 8));
+            dst.put((byte) sampleRate).put((byte) (sampleRate >> 8)).put((byte) (sampleRate >> 16))
+                    .put((byte) (sampleRate >> 24));
+            dst.put((byte) 0).put((byte) 0).put((byte) 0);
+        } else {
+            // AudioSpecificConfig: AAC-LC，采样率索引和声道数
+            int rateIndex = sampleRateIndex(sampleRate);
+            dst = frame.prepareWrite(2);
+            dst.put((byte) ((2 << 3) | (rateIndex >> 1)));
+            dst.put((byte) (((rateIndex & 1) << 7) | (audioChannels << 3)));
+        }
+        dst.flip();
+        frame.set(nowNanos / 1000, nowNanos / 1000, false, true, nowNanos);
+        audioSink.onFrame(frame);
+    }
+
+    private void emitVideoFrame(long dueNanos, boolean keyFrame) {
+        MediaFrame frame = videoPool.acquire();
+        if (frame == null) {
+            droppedFrames++;
+            // 丢失的帧可能被后续帧参考，下一帧以关键帧重新开始
+            keyFrameRequested = true;
+            return;
+        }
+        // 关键帧按平均帧的KEY_FRAME_WEIGHT倍，其余帧分摊剩余码率，GOP平均码率等于目标码率
+        long gopBytes = (long) videoBitrate * 1000 / 8 * gop / fps;
+        int unit = (int) Math.max(64, gopBytes / (gop - 1 + KEY_FRAME_WEIGHT));
+        int size = keyFrame ? unit * KEY_FRAME_WEIGHT : unit;
+
+        long captureNanos = clock.nanoTime();
+        if (annexB.capacity() < size + 8) {
+            annexB = ByteBuffer.allocateDirect(Integer.highestOneBit(size + 8) << 1);
+        }
+        annexB.clear();
+        annexB.put(START_CODE);
+        annexB.put((byte) (keyFrame ? 0x65 : 0x41));
+        fill(annexB, size - 1, (byte) 0x5A);
+        annexB.flip();
+
+        ByteBuffer dst = frame.prepareWrite(AvcNalUnits.maxAvccSize(annexB.remaining()));
+        AvcNalUnits.annexBToAvcc(annexB, dst);
+        dst.flip();
+        // 转换后写入，避免时间戳字节在Annex-B中构成起始码
+        dst.putLong(VIDEO_STAMP_OFFSET, captureNanos);
+        long ptsUs = dueNanos / 1000;
+        frame.set(ptsUs, ptsUs, keyFrame, false, captureNanos);
+        videoSink.onFrame(frame);
+    }
+
+    /**
+     * 等待到指定时间，停止时返回false
+     */
+    private boolean waitUntil(long dueNanos) {
+        while (running) {
+            long remaining = dueNanos - clock.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            }
+            LockSupport.parkNanos(remaining);
+        }
+        return false;
+    }
+
+    private static void fill(ByteBuffer dst, int count, byte value) {
+        for (int i = 0; i < count; i++) {
+            dst.put(value);
+        }
+    }
+
+    private static int sampleRateIndex(int sampleRate) {
+        int[] rates = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+        for (int i = 0; i < rates.length; i++) {
+            if (rates[i] == sampleRate) {
+                return i;
+            }
+        }
+        return 4;
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
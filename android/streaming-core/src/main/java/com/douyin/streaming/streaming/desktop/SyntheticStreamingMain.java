@@ -0,0 +1,73 @@
+package com.douyin.streaming.streaming.desktop;
+
+import com.douyin.streaming.streaming.protocols.StreamingProtocol;
+import com.douyin.streaming.streaming.protocols.SyntheticStreamingProtocol;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 桌面合成推流入口
+ * 用法: SyntheticStreamingMain rtmp://host/app/stream [秒数, 默认30] [视频码率kbps]
+ * 以合成帧推流到指定地址，每秒输出一次指标快照，到时或出错后退出。
+ */
+public final class SyntheticStreamingMain {
+    private SyntheticStreamingMain() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("用法: SyntheticStreamingMain <rtmp地址> [秒数] [视频码率kbps]");
+            System.exit(2);
+        }
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        StreamingConfig config = new StreamingConfig(StreamingConfig.QualityPreset.HIGH);
+        config.setRtmpUrl(args[0]);
+        config.setStreamKey("");
+        if (args.length > 2) {
+            config.setVideoBitrate(Integer.parseInt(args[2]));
+        }
+
+        StreamingScheduler scheduler = new StreamingScheduler();
+        SyntheticStreamingProtocol protocol = new SyntheticStreamingProtocol(config, scheduler, Clock.SYSTEM);
+        CountDownLatch done = new CountDownLatch(1);
+        int[] exitCode = {0};
+        protocol.subscribeMetrics(snapshot -> System.out.println(snapshot), 1000);
+        protocol.startStreaming(config, new StreamingProtocol.StreamingCallback() {
+            @Override
+            public void onStarted() {
+                System.out.println("开始推流: " + args[0]);
+            }
+
+            @Override
+            public void onStopped() {
+            }
+
+            @Override
+            public void onError(String error) {
+                System.err.println("推流失败: " + error);
+                exitCode[0] = 1;
+                done.countDown();
+            }
+
+            @Override
+            public void onStatusUpdate(String status) {
+                System.out.println(status);
+            }
+
+            @Override
+            public void onBitrateChanged(int oldBitrate, int newBitrate, String reason) {
+                System.out.println(String.format("码率调整: %dkbps -> %dkbps (%s)", oldBitrate, newBitrate, reason));
+            }
+        });
+
+        done.await(seconds, TimeUnit.SECONDS);
+        protocol.release();
+        scheduler.release();
+        System.exit(exitCode[0]);
+    }
+}
@@ -0,0 +1,306 @@
+package com.douyin.streaming.streaming.desktop;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.pipeline.ConfigFrameCache;
+import com.douyin.streaming.streaming.pipeline.SpscFrameRing;
+import com.douyin.streaming.streaming.pipeline.StreamDestination;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 桌面推流会话
+ * 合成帧源 -> 池化帧 -> 各推流目标的SPSC队列 -> FLV/RTMP (或TS/SRT、WebRTC) 发送，分发、队列、丢帧策略、重连和发送线程
+ * 与设备上的DirectStreamingSession相同，用于在JVM上压测和剖析发送链路。
+ * 第一个目标为主目标，统计以它为准，它失败时会话结束。
+ */
+public class SyntheticStreamingSession {
+    private static final String TAG = "SyntheticStreamingSession";
+
+    private static final int AUDIO_FRAME_CAPACITY = 2048;
+    private static final int AAC_SAMPLES_PER_FRAME = 1024;
+    private static final int OPUS_FRAMES_PER_SECOND = 50;
+    private static final int MIN_RING_FRAMES = 8;
+    private static final int MAX_RING_FRAMES = 512;
+    private static final int POOL_HEADROOM_FRAMES = 8;
+
+    /**
+     * 会话事件回调
+     */
+    public interface Listener {
+        void onConnected();
+
+        /**
+         * 主目标每个数据包发送完成，在发送线程上调用
+         */
+        void onPacketSent(MediaFrame frame, long bytes, long sendNanos);
+
+        void onError(String error);
+    }
+
+    private final Listener listener;
+    private final SyntheticFrameSource source;
+    private final ConfigFrameCache configCache = new ConfigFrameCache();
+    private final StreamDestination[] destinations;
+    private final StreamDestination primary;
+
+    private volatile boolean running = false;
+
+    public SyntheticStreamingSession(StreamingConfig config, FramePublisher.Endpoint url, Clock clock, Listener listener) {
+        this(config, Collections.singletonList(url), clock, listener);
+    }
+
+    /**
+     * @param urls 推流目标，第一个为主目标，最多MediaFrame.MAX_READERS个
+     */
+    public SyntheticStreamingSession(StreamingConfig config, List<? extends FramePublisher.Endpoint> urls, Clock clock,
+                                     Listener listener) {
+        if (urls.isEmpty() || urls.size() > MediaFrame.MAX_READERS) {
+            throw new IllegalArgumentException("推流目标数量须为1-" + MediaFrame.MAX_READERS + ": " + urls.size());
+        }
+        this.listener = listener;
+
+        int bufferMs = config.getBufferSize();
+        boolean opus = "opus".equalsIgnoreCase(config.getAudioCodec());
+        int audioFps = opus ? OPUS_FRAMES_PER_SECOND : Math.max(1, config.getAudioSampleRate() / AAC_SAMPLES_PER_FRAME);
+        int videoRingFrames = ringFrames(bufferMs, config.getVideoFps());
+        int audioRingFrames = ringFrames(bufferMs * 2, audioFps);
+
+        int videoFrameCapacity = Math.max(16 * 1024,
+                config.getVideoBitrate() * 1000 / 8 / Math.max(1, config.getVideoFps()) * 4);
+        // 每个目标的队列各自持有帧的引用，池容量按所有队列之和计算
+        MediaFramePool videoPool = new MediaFramePool(MediaFrame.Track.VIDEO,
+                new SpscFrameRing(videoRingFrames).capacity() * urls.size() + POOL_HEADROOM_FRAMES,
+                videoFrameCapacity);
+        MediaFramePool audioPool = new MediaFramePool(MediaFrame.Track.AUDIO,
+                new SpscFrameRing(audioRingFrames).capacity() * urls.size() + POOL_HEADROOM_FRAMES,
+                AUDIO_FRAME_CAPACITY);
+
+        this.source = new SyntheticFrameSource(videoPool, audioPool, this::enqueueVideo, this::enqueueAudio,
+                clock, config.getVideoFps(), config.getVideoGop(), config.getVideoBitrate(),
+                config.getAudioSampleRate(), config.getAudioChannels(), config.getAudioBitrate());
+        source.setOpusAudio(opus);
+        this.destinations = new StreamDestination[urls.size()];
+        for (int i = 0; i < destinations.length; i++) {
+            destinations[i] = new StreamDestination(i, config, urls.get(i), configCache, source::requestKeyFrame,
+                    videoRingFrames, audioRingFrames, bufferMs, clock,
+                    i == 0 ? primaryListener : secondaryListener);
+        }
+        this.primary = destinations[0];
+    }
+
+    /**
+     * 异步连接所有目标，主目标发布成功后开始产生帧
+     */
+    public void start() {
+        running = true;
+        for (StreamDestination destination : destinations) {
+            destination.start();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (StreamDestination destination : destinations) {
+            destination.stop();
+        }
+        source.stop();
+        configCache.clear();
+        StreamingLog.d(TAG, "桌面推流已停止");
+    }
+
+    public int getDestinationCount() {
+        return destinations.length;
+    }
+
+    /**
+     * 按序号获取推流目标，0为主目标
+     */
+    public StreamDestination getDestination(int index) {
+        return destinations[index];
+    }
+
+    public long getBytesSent() {
+        return primary.getBytesSent();
+    }
+
+    /**
+     * 丢弃的帧数，包括主目标拥塞丢帧和帧池耗尽
+     */
+    public long getDroppedFrames() {
+        return primary.getDroppedFrames() + source.getDroppedFrames();
+    }
+
+    public int getQueueDepth() {
+        return primary.getQueueDepth();
+    }
+
+    public int getQueueCapacity() {
+        return primary.getQueueCapacity();
+    }
+
+    public double getVideoQueueRatio() {
+        return primary.getVideoQueueRatio();
+    }
+
+    public double getRttMs() {
+        return primary.getRttMs();
+    }
+
+    /**
+     * 主目标上次调用以来单帧的最大节拍排队时延 (毫秒)，读取后清零
+     */
+    public double pollPacerDelayMs() {
+        return primary.pollPacerDelayMs();
+    }
+
+    /**
+     * 主目标上次调用以来音频帧的最大发送排队时延 (毫秒)，读取后清零
+     */
+    public double pollAudioQueueDelayMs() {
+        return primary.pollAudioQueueDelayMs();
+    }
+
+    /**
+     * 主目标上次调用以来视频帧的最大发送排队时延 (毫秒)，读取后清零
+     */
+    public double pollVideoQueueDelayMs() {
+        return primary.pollVideoQueueDelayMs();
+    }
+
+    public double getMinRttMs() {
+        return primary.getMinRttMs();
+    }
+
+    /**
+     * 主目标的发送端带宽估计 (kbps)，传输层不支持时返回-1
+     */
+    public int getEstimatedBitrateKbps() {
+        return primary.getEstimatedBitrateKbps();
+    }
+
+    public long getPacketsSent() {
+        return primary.getPacketsSent();
+    }
+
+    public long getPacketsLost() {
+        return primary.getPacketsLost();
+    }
+
+    public long getPacketsRetransmitted() {
+        return primary.getPacketsRetransmitted();
+    }
+
+    /**
+     * @param bitrate 码率 (kbps)
+     */
+    public void setVideoBitrate(int bitrate) {
+        source.setVideoBitrate(bitrate);
+        for (StreamDestination destination : destinations) {
+            destination.setTargetBitrate(bitrate);
+        }
+    }
+
+    private void enqueueVideo(MediaFrame frame) {
+        if (frame.isConfig()) {
+            configCache.update(frame);
+        }
+        if (running) {
+            for (StreamDestination destination : destinations) {
+                destination.offerVideo(frame);
+            }
+        }
+        frame.release();
+    }
+
+    private void enqueueAudio(MediaFrame frame) {
+        if (frame.isConfig()) {
+            configCache.update(frame);
+        }
+        if (running) {
+            for (StreamDestination destination : destinations) {
+                destination.offerAudio(frame);
+            }
+        }
+        frame.release();
+    }
+
+    private final StreamDestination.Listener primaryListener = new StreamDestination.Listener() {
+        @Override
+        public void onConnected(StreamDestination destination) {
+            listener.onConnected();
+            if (running) {
+                source.start();
+            }
+        }
+
+        @Override
+        public void onPacketSent(StreamDestination destination, MediaFrame frame, long bytes, long sendNanos) {
+            listener.onPacketSent(frame, bytes, sendNanos);
+        }
+
+        @Override
+        public void onCongestionChanged(StreamDestination destination, boolean congested) {
+        }
+
+        @Override
+        public void onReconnecting(StreamDestination destination, int attempt, int maxAttempts) {
+        }
+
+        @Override
+        public void onReconnected(StreamDestination destination, long recoveryMs) {
+        }
+
+        @Override
+        public void onFailed(StreamDestination destination, String error) {
+            fail(error);
+        }
+    };
+
+    private final StreamDestination.Listener secondaryListener = new StreamDestination.Listener() {
+        @Override
+        public void onConnected(StreamDestination destination) {
+            StreamingLog.d(TAG, "推流目标" + destination.getIndex() + "已连接: " + destination.getUrl());
+        }
+
+        @Override
+        public void onPacketSent(StreamDestination destination, MediaFrame frame, long bytes, long sendNanos) {
+        }
+
+        @Override
+        public void onCongestionChanged(StreamDestination destination, boolean congested) {
+        }
+
+        @Override
+        public void onReconnecting(StreamDestination destination, int attempt, int maxAttempts) {
+        }
+
+        @Override
+        public void onReconnected(StreamDestination destination, long recoveryMs) {
+        }
+
+        @Override
+        public void onFailed(StreamDestination destination, String error) {
+            StreamingLog.w(TAG, "推流目标" + destination.getIndex() + "已停止: " + error);
+        }
+    };
+
+    private static int ringFrames(int bufferMs, int fps) {
+        int frames = (int) ((long) bufferMs * fps / 1000);
+        return Math.max(MIN_RING_FRAMES, Math.min(MAX_RING_FRAMES, frames));
+    }
+
+    private synchronized void fail(String error) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        StreamingLog.e(TAG, error);
+        listener.onError(error);
+    }
+}
@@ -0,0 +1,30 @@
+package com.douyin.streaming.streaming.encoder;
+
+/**
+ * 视频编码后端
+ * 对应FFmpeg中的编码器名称
+ */
+public enum VideoEncoderBackend {
+    MEDIACODEC("h264_mediacodec", "硬件编码(MediaCodec)"),
+    LIBX264("libx264", "软件编码(libx264)");
+
+    private final String ffmpegCodec;
+    private final String displayName;
+
+    VideoEncoderBackend(String ffmpegCodec, String displayName) {
+        this.ffmpegCodec = ffmpegCodec;
+        this.displayName = displayName;
+    }
+
+    public String getFFmpegCodec() {
+        return ffmpegCodec;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public boolean isHardware() {
+        return this == MEDIACODEC;
+    }
+}
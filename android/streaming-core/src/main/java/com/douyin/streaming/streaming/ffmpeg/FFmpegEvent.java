@@ -0,0 +1,26 @@
+package com.douyin.streaming.streaming.ffmpeg;
+
+/**
+ * 从FFmpeg日志中提取的推流事件
+ */
+public enum FFmpegEvent {
+    /**
+     * 已连接到推流服务器
+     */
+    CONNECTED,
+
+    /**
+     * 开始推流
+     */
+    STARTED,
+
+    /**
+     * 连接丢失或连接失败
+     */
+    CONNECTION_LOST,
+
+    /**
+     * 编码器输出的警告
+     */
+    ENCODER_WARNING
+}
@@ -0,0 +1,94 @@
+package com.douyin.streaming.streaming.ffmpeg;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+/**
+ * FFmpeg日志事件解析
+ * 先按日志级别过滤，VERBOSE及更详细的日志不做任何扫描；
+ * 其余日志只扫描一遍，按首字符定位候选位置后再比较关键字，不创建任何对象。
+ * 日志级别使用FFmpeg的数值 (av_log级别)，不依赖FFmpegKit，可在桌面环境使用。
+ */
+public final class FFmpegLogParser {
+    // av_log级别，数值越小越严重
+    public static final int AV_LOG_ERROR = 16;
+    public static final int AV_LOG_WARNING = 24;
+    public static final int AV_LOG_INFO = 32;
+    public static final int AV_LOG_VERBOSE = 40;
+    public static final int AV_LOG_DEBUG = 48;
+
+    private static final String CONNECTION = "Connection ";
+    private static final String ESTABLISHED = "established";
+    private static final String LOST = "lost";
+    private static final String FAILED = "failed";
+    private static final String STREAMING_STARTED = "Streaming started";
+
+    // 编码器日志以"[编码器名 @ 地址]"开头
+    private static final String[] ENCODER_PREFIXES = {
+            "[libx264 @", "[h264_mediacodec @", "[aac @"
+    };
+
+    private FFmpegLogParser() {
+    }
+
+    /**
+     * 是否需要解析该级别的日志
+     */
+    public static boolean isParsed(int level) {
+        return level <= AV_LOG_INFO;
+    }
+
+    /**
+     * 解析一行日志
+     * @return 识别出的事件，不是事件时返回null
+     */
+    public static FFmpegEvent parse(int level, String message) {
+        if (message == null || !isParsed(level)) {
+            return null;
+        }
+        if (level == AV_LOG_WARNING && isEncoderMessage(message)) {
+            return FFmpegEvent.ENCODER_WARNING;
+        }
+
+        int last = message.length() - Math.min(CONNECTION.length(), STREAMING_STARTED.length());
+        for (int i = 0; i <= last; i++) {
+            char c = message.charAt(i);
+            if (c == 'C' && message.startsWith(CONNECTION, i)) {
+                int next = i + CONNECTION.length();
+                if (message.startsWith(ESTABLISHED, next)) {
+                    return FFmpegEvent.CONNECTED;
+                }
+                if (message.startsWith(LOST, next) || message.startsWith(FAILED, next)) {
+                    return FFmpegEvent.CONNECTION_LOST;
+                }
+            } else if (c == 'S' && message.startsWith(STREAMING_STARTED, i)) {
+                return FFmpegEvent.STARTED;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * FFmpeg日志级别转换为日志优先级
+     */
+    public static int toLogPriority(int level) {
+        if (level <= AV_LOG_ERROR) {
+            return StreamingLog.ERROR;
+        } else if (level <= AV_LOG_WARNING) {
+            return StreamingLog.WARN;
+        } else if (level <= AV_LOG_INFO) {
+            return StreamingLog.INFO;
+        } else if (level <= AV_LOG_DEBUG) {
+            return StreamingLog.DEBUG;
+        }
+        return StreamingLog.VERBOSE;
+    }
+
+    private static boolean isEncoderMessage(String message) {
+        for (String prefix : ENCODER_PREFIXES) {
+            if (message.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
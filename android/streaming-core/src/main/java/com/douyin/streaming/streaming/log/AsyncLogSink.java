@@ -0,0 +1,140 @@
+package com.douyin.streaming.streaming.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志输出
+ * 调用线程只把日志引用写入预分配的环形缓冲区，由后台线程批量输出到StreamingLog，
+ * 缓冲区满时丢弃新日志并计数，不阻塞调用线程。
+ */
+public final class AsyncLogSink {
+    private static final String TAG = "AsyncLogSink";
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static volatile AsyncLogSink shared;
+
+    private final int[] priorities;
+    private final String[] tags;
+    private final String[] messages;
+    private final int mask;
+    // 以下两个位置由this保护
+    private long head;
+    private long tail;
+
+    private volatile int minPriority;
+    private volatile long droppedLogs;
+    private long reportedDroppedLogs;
+
+    /**
+     * 进程内共享的日志输出，首次使用时启动输出线程
+     */
+    public static AsyncLogSink shared() {
+        AsyncLogSink sink = shared;
+        if (sink == null) {
+            synchronized (AsyncLogSink.class) {
+                sink = shared;
+                if (sink == null) {
+                    sink = new AsyncLogSink(DEFAULT_CAPACITY, StreamingLog.INFO);
+                    sink.start();
+                    shared = sink;
+                }
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * @param capacity 缓冲的日志条数，向上取整为2的幂
+     * @param minPriority 输出的最低日志优先级
+     */
+    public AsyncLogSink(int capacity, int minPriority) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.priorities = new int[size];
+        this.tags = new String[size];
+        this.messages = new String[size];
+        this.mask = size - 1;
+        this.minPriority = minPriority;
+    }
+
+    /**
+     * 设置输出的最低优先级，低于该优先级的日志在调用线程上直接丢弃
+     */
+    public void setMinPriority(int minPriority) {
+        this.minPriority = minPriority;
+    }
+
+    public boolean isLoggable(int priority) {
+        return priority >= minPriority;
+    }
+
+    /**
+     * 写入一条日志，不阻塞
+     * @param priority 日志优先级，如StreamingLog.INFO
+     */
+    public void log(int priority, String tag, String message) {
+        if (priority < minPriority) {
+            return;
+        }
+        synchronized (this) {
+            if (tail - head > mask) {
+                droppedLogs++;
+                return;
+            }
+            int index = (int) tail & mask;
+            priorities[index] = priority;
+            tags[index] = tag;
+            messages[index] = message;
+            tail++;
+        }
+    }
+
+    /**
+     * 缓冲区满而丢弃的日志条数
+     */
+    public long getDroppedLogs() {
+        return droppedLogs;
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::drainLoop, "AsyncLogSink");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void drainLoop() {
+        while (true) {
+            drain();
+            LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int priority;
+            String tag;
+            String message;
+            synchronized (this) {
+                if (head == tail) {
+                    break;
+                }
+                int index = (int) head & mask;
+                priority = priorities[index];
+                tag = tags[index];
+                message = messages[index];
+                tags[index] = null;
+                messages[index] = null;
+                head++;
+            }
+            StreamingLog.println(priority, tag, message);
+        }
+
+        long dropped = droppedLogs;
+        if (dropped != reportedDroppedLogs) {
+            StreamingLog.w(TAG, "日志缓冲区已满，丢弃" + (dropped - reportedDroppedLogs) + "条日志");
+            reportedDroppedLogs = dropped;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.douyin.streaming.streaming.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * 推流核心模块的日志入口
+ * 核心模块不依赖Android，日志经可替换的Logger输出：应用中安装输出到logcat的实现，
+ * 桌面环境默认输出到标准错误。优先级与android.util.Log的常量一致。
+ */
+public final class StreamingLog {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /**
+     * 日志输出实现
+     */
+    public interface Logger {
+        /**
+         * @param throwable 可为null
+         */
+        void log(int priority, String tag, String message, Throwable throwable);
+    }
+
+    /**
+     * 输出到标准错误，用于桌面环境
+     */
+    public static final Logger CONSOLE = (priority, tag, message, throwable) -> {
+        StringBuilder line = new StringBuilder(tag.length() + message.length() + 8);
+        line.append(levelChar(priority)).append('/').append(tag).append(": ").append(message);
+        if (throwable != null) {
+            StringWriter trace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(trace));
+            line.append('\n').append(trace);
+        }
+        System.err.println(line);
+    };
+
+    private static volatile Logger logger = CONSOLE;
+    private static volatile int minPriority = DEBUG;
+
+    private StreamingLog() {
+    }
+
+    public static void setLogger(Logger logger) {
+        StreamingLog.logger = logger != null ? logger : CONSOLE;
+    }
+
+    /**
+     * 低于该优先级的日志直接丢弃
+     */
+    public static void setMinPriority(int priority) {
+        minPriority = priority;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= minPriority;
+    }
+
+    public static void println(int priority, String tag, String message) {
+        log(priority, tag, message, null);
+    }
+
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message) {
+        log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        log(WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable throwable) {
+        log(WARN, tag, message, throwable);
+    }
+
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        log(ERROR, tag, message, throwable);
+    }
+
+    private static void log(int priority, String tag, String message, Throwable throwable) {
+        if (priority >= minPriority) {
+            logger.log(priority, tag, message, throwable);
+        }
+    }
+
+    private static char levelChar(int priority) {
+        switch (priority) {
+            case VERBOSE: return 'V';
+            case DEBUG: return 'D';
+            case INFO: return 'I';
+            case WARN: return 'W';
+            case ERROR: return 'E';
+            default: return '?';
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.douyin.streaming.streaming.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 NAL单元工具
+ * 在Annex-B（起始码分隔）和AVCC（长度前缀）格式之间转换，只使用绝对读写，不分配内存
+ */
+public final class AvcNalUnits {
+    public static final int NAL_SLICE = 1;
+    public static final int NAL_IDR = 5;
+    public static final int NAL_SEI = 6;
+    public static final int NAL_SPS = 7;
+    public static final int NAL_PPS = 8;
+    public static final int NAL_AUD = 9;
+
+    private AvcNalUnits() {
+    }
+
+    public static int nalType(byte header) {
+        return header & 0x1F;
+    }
+
+    /**
+     * Annex-B转AVCC所需的最大字节数
+     */
+    public static int maxAvccSize(int annexBSize) {
+        return annexBSize + (annexBSize >> 1) + 8;
+    }
+
+    /**
+     * 把Annex-B码流转换为AVCC格式写入dst，跳过SPS/PPS/AUD
+     * src的position到limit为输入数据，不修改src的position
+     * @return 写入的字节数
+     */
+    public static int annexBToAvcc(ByteBuffer src, ByteBuffer dst) {
+        int start = dst.position();
+        int end = src.limit();
+        int savedPosition = src.position();
+        int nalStart = nextNalStart(src, savedPosition, end);
+        while (nalStart >= 0 && nalStart < end) {
+            int next = findStartCode(src, nalStart, end);
+            int nalEnd = trimTrailingZeros(src, nalStart, next < 0 ? end : next);
+            int type = nalType(src.get(nalStart));
+            if (nalEnd > nalStart && type != NAL_SPS && type != NAL_PPS && type != NAL_AUD) {
+                dst.putInt(nalEnd - nalStart);
+                src.limit(nalEnd).position(nalStart);
+                dst.put(src);
+                src.limit(end);
+            }
+            nalStart = next < 0 ? -1 : next + 3;
+        }
+        src.limit(end).position(savedPosition);
+        return dst.position() - start;
+    }
+
+    /**
+     * 从Annex-B格式的SPS/PPS生成AVCDecoderConfigurationRecord写入dst
+     * @return 写入的字节数，缺少SPS或PPS时返回-1
+     */
+    public static int writeDecoderConfigurationRecord(ByteBuffer src, ByteBuffer dst) {
+        int end = src.limit();
+        int spsStart = -1;
+        int spsEnd = -1;
+        int ppsStart = -1;
+        int ppsEnd = -1;
+        int nalStart = nextNalStart(src, src.position(), end);
+        while (nalStart >= 0 && nalStart < end) {
+            int next = findStartCode(src, nalStart, end);
+            int nalEnd = trimTrailingZeros(src, nalStart, next < 0 ? end : next);
+            int type = nalType(src.get(nalStart));
+            if (type == NAL_SPS && spsStart < 0) {
+                spsStart = nalStart;
+                spsEnd = nalEnd;
+            } else if (type == NAL_PPS && ppsStart < 0) {
+                ppsStart = nalStart;
+                ppsEnd = nalEnd;
+            }
+            nalStart = next < 0 ? -1 : next + 3;
+        }
+        if (spsStart < 0 || ppsStart < 0 || spsEnd - spsStart < 4) {
+            return -1;
+        }
+
+        int start = dst.position();
+        dst.put((byte) 1); // configurationVersion
+        dst.put(src.get(spsStart + 1)); // AVCProfileIndication
+        dst.put(src.get(spsStart + 2)); // profile_compatibility
+        dst.put(src.get(spsStart + 3)); // AVCLevelIndication
+        dst.put((byte) 0xFF); // lengthSizeMinusOne = 3
+        dst.put((byte) 0xE1); // numOfSequenceParameterSets = 1
+        dst.putShort((short) (spsEnd - spsStart));
+        for (int i = spsStart; i < spsEnd; i++) {
+            dst.put(src.get(i));
+        }
+        dst.put((byte) 1); // numOfPictureParameterSets
+        dst.putShort((short) (ppsEnd - ppsStart));
+        for (int i = ppsStart; i < ppsEnd; i++) {
+            dst.put(src.get(i));
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * AVCC格式的帧是否为非参考帧：所有slice的nal_ref_idc均为0
+     */
+    public static boolean isNonReference(ByteBuffer avcc) {
+        int end = avcc.limit();
+        int offset = avcc.position();
+        boolean hasSlice = false;
+        while (offset + 4 < end) {
+            int length = avcc.getInt(offset);
+            offset += 4;
+            if (length <= 0 || offset + length > end) {
+                return false;
+            }
+            byte header = avcc.get(offset);
+            int type = nalType(header);
+            if (type == NAL_SLICE || type == NAL_IDR) {
+                if ((header & 0x60) != 0) {
+                    return false;
+                }
+                hasSlice = true;
+            }
+            offset += length;
+        }
+        return hasSlice;
+    }
+
+    private static int nextNalStart(ByteBuffer buf, int from, int end) {
+        int startCode = findStartCode(buf, from, end);
+        return startCode < 0 ? -1 : startCode + 3;
+    }
+
+    /**
+     * 查找3字节起始码00 00 01的位置
+     */
+    private static int findStartCode(ByteBuffer buf, int from, int end) {
+        for (int i = from; i + 2 < end; i++) {
+            if ((buf.get(i + 2) & 0xFF) > 1) {
+                i += 2;
+            } else if (buf.get(i) == 0 && buf.get(i + 1) == 0 && buf.get(i + 2) == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 去掉NAL末尾的0字节（4字节起始码的前导0或trailing_zero）
+     */
+    private static int trimTrailingZeros(ByteBuffer buf, int start, int end) {
+        while (end > start && buf.get(end - 1) == 0) {
+            end--;
+        }
+        return end;
+    }
+}
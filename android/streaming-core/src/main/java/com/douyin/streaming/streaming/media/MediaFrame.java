@@ -0,0 +1,195 @@
+package com.douyin.streaming.streaming.media;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 编码后的音视频帧
+ * 数据存放在池化的直接内存中，用完后必须调用release()归还
+ * 帧带引用计数：从帧池取出时为1，分发给多个发送端时每多一个持有方调用一次retain()，
+ * 各持有方用完后各自release()，计数归零时归还帧池。多个发送端并发读取时各用自己的读取方编号取视图。
+ *
+ * 视频帧为AVCC格式（4字节长度前缀的NAL单元），视频配置帧为AVCDecoderConfigurationRecord；
+ * 音频帧为原始AAC数据，音频配置帧为AudioSpecificConfig。
+ */
+public final class MediaFrame {
+    private static final int MIN_CAPACITY = 1024;
+    /**
+     * 同时读取一帧的发送端上限，每个发送端使用独立的视图
+     */
+    public static final int MAX_READERS = 8;
+    private static final AtomicIntegerFieldUpdater<MediaFrame> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(MediaFrame.class, "refCount");
+
+    public enum Track {
+        VIDEO,
+        AUDIO
+    }
+
+    private final MediaFramePool pool;
+    private final Track track;
+    private ByteBuffer data;
+    private final ByteBuffer[][] views = new ByteBuffer[MAX_READERS][];
+    private volatile int refCount;
+    private long ptsUs;
+    private long dtsUs;
+    private boolean keyFrame;
+    private boolean config;
+    private boolean nonReference;
+    private long createdNanos;
+
+    MediaFrame(MediaFramePool pool, Track track, int capacity) {
+        this.pool = pool;
+        this.track = track;
+        this.data = allocate(capacity);
+        clearViews();
+    }
+
+    public Track getTrack() { return track; }
+
+    public boolean isVideo() { return track == Track.VIDEO; }
+
+    public boolean isAudio() { return track == Track.AUDIO; }
+
+    public long getPtsUs() { return ptsUs; }
+
+    public long getDtsUs() { return dtsUs; }
+
+    public boolean isKeyFrame() { return keyFrame; }
+
+    /**
+     * 是否为解码配置帧（SPS/PPS或AudioSpecificConfig）
+     */
+    public boolean isConfig() { return config; }
+
+    /**
+     * 是否为非参考帧（nal_ref_idc为0），丢弃后不影响其他帧解码
+     */
+    public boolean isNonReference() { return nonReference; }
+
+    public void setNonReference(boolean nonReference) { this.nonReference = nonReference; }
+
+    /**
+     * 帧进入推流链路的时间 (System.nanoTime)
+     */
+    public long getCreatedNanos() { return createdNanos; }
+
+    public int size() { return data.limit(); }
+
+    /**
+     * 设置帧属性
+     */
+    public void set(long ptsUs, long dtsUs, boolean keyFrame, boolean config, long createdNanos) {
+        this.ptsUs = ptsUs;
+        this.dtsUs = dtsUs;
+        this.keyFrame = keyFrame;
+        this.config = config;
+        this.nonReference = false;
+        this.createdNanos = createdNanos;
+    }
+
+    /**
+     * 获取写入缓冲区，position为0，limit为容量
+     * 写入完成后调用flip()
+     */
+    public ByteBuffer prepareWrite(int minCapacity) {
+        if (data.capacity() < minCapacity) {
+            int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(minCapacity - 1) << 1);
+            data = allocate(capacity);
+            clearViews();
+        }
+        data.clear();
+        return data;
+    }
+
+    /**
+     * 帧数据，position为0，limit为数据长度
+     * 多个读取方共享时使用view()，不要修改此缓冲区的position/limit
+     */
+    public ByteBuffer data() {
+        return data;
+    }
+
+    /**
+     * 获取第index个只读视图，视图与帧数据共享内存
+     * 视图按需创建并缓存在帧上，帧回收复用后不再分配
+     */
+    public ByteBuffer view(int index) {
+        return view(0, index);
+    }
+
+    /**
+     * 获取读取方reader的第index个视图，不同读取方的视图互不影响，可在各自线程上并发使用
+     * @param reader 读取方编号，0到MAX_READERS-1
+     */
+    public ByteBuffer view(int reader, int index) {
+        ByteBuffer[] lane = views[reader];
+        if (index >= lane.length) {
+            ByteBuffer[] grown = new ByteBuffer[Math.max(index + 1, lane.length * 2)];
+            System.arraycopy(lane, 0, grown, 0, lane.length);
+            lane = grown;
+            views[reader] = lane;
+        }
+        ByteBuffer view = lane[index];
+        if (view == null) {
+            view = data.duplicate();
+            lane[index] = view;
+        }
+        view.limit(data.limit());
+        view.position(0);
+        return view;
+    }
+
+    /**
+     * 增加一个持有方
+     * @return 本帧，便于链式调用
+     */
+    public MediaFrame retain() {
+        int count;
+        do {
+            count = refCount;
+            if (count <= 0) {
+                throw new IllegalStateException("帧已归还，不能再持有");
+            }
+        } while (!REF_COUNT.compareAndSet(this, count, count + 1));
+        return this;
+    }
+
+    /**
+     * 当前持有方数量
+     */
+    public int refCount() {
+        return refCount;
+    }
+
+    /**
+     * 释放一个持有方，最后一个持有方释放时归还到帧池
+     */
+    public void release() {
+        int count = REF_COUNT.decrementAndGet(this);
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            REF_COUNT.incrementAndGet(this);
+            throw new IllegalStateException("帧重复归还");
+        }
+    }
+
+    /**
+     * 从帧池取出时调用，只有一个持有方
+     */
+    void onAcquire() {
+        refCount = 1;
+    }
+
+    private void clearViews() {
+        for (int i = 0; i < MAX_READERS; i++) {
+            views[i] = new ByteBuffer[0];
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.BIG_ENDIAN);
+    }
+}
@@ -0,0 +1,59 @@
+package com.douyin.streaming.streaming.media;
+
+/**
+ * 预分配的编码帧池
+ * 稳态推流时只在池内复用帧，不再分配直接内存
+ */
+public final class MediaFramePool {
+    private final MediaFrame.Track track;
+    private final MediaFrame[] free;
+    private int freeCount;
+
+    /**
+     * @param frameCount 帧数量
+     * @param initialCapacity 每帧初始容量 (字节)，不足时单帧按需扩容
+     */
+    public MediaFramePool(MediaFrame.Track track, int frameCount, int initialCapacity) {
+        this.track = track;
+        this.free = new MediaFrame[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            free[i] = new MediaFrame(this, track, initialCapacity);
+        }
+        this.freeCount = frameCount;
+    }
+
+    public MediaFrame.Track getTrack() {
+        return track;
+    }
+
+    /**
+     * 取出一帧，池已耗尽时返回null
+     */
+    public synchronized MediaFrame acquire() {
+        if (freeCount == 0) {
+            return null;
+        }
+        MediaFrame frame = free[--freeCount];
+        free[freeCount] = null;
+        frame.onAcquire();
+        return frame;
+    }
+
+    /**
+     * 当前可用帧数
+     */
+    public synchronized int available() {
+        return freeCount;
+    }
+
+    public int capacity() {
+        return free.length;
+    }
+
+    synchronized void recycle(MediaFrame frame) {
+        if (freeCount == free.length) {
+            throw new IllegalStateException("帧重复归还");
+        }
+        free[freeCount++] = frame;
+    }
+}
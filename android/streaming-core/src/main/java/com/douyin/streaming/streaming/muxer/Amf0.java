@@ -0,0 +1,132 @@
+package com.douyin.streaming.streaming.muxer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AMF0编解码
+ * 用于FLV脚本数据和RTMP命令消息
+ */
+public final class Amf0 {
+    public static final int TYPE_NUMBER = 0x00;
+    public static final int TYPE_BOOLEAN = 0x01;
+    public static final int TYPE_STRING = 0x02;
+    public static final int TYPE_OBJECT = 0x03;
+    public static final int TYPE_NULL = 0x05;
+    public static final int TYPE_UNDEFINED = 0x06;
+    public static final int TYPE_ECMA_ARRAY = 0x08;
+    public static final int TYPE_OBJECT_END = 0x09;
+    public static final int TYPE_STRICT_ARRAY = 0x0A;
+    public static final int TYPE_LONG_STRING = 0x0C;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Amf0() {
+    }
+
+    public static void writeNumber(ByteBuffer dst, double value) {
+        dst.put((byte) TYPE_NUMBER);
+        dst.putDouble(value);
+    }
+
+    public static void writeBoolean(ByteBuffer dst, boolean value) {
+        dst.put((byte) TYPE_BOOLEAN);
+        dst.put((byte) (value ? 1 : 0));
+    }
+
+    public static void writeString(ByteBuffer dst, String value) {
+        dst.put((byte) TYPE_STRING);
+        writeUtf8(dst, value);
+    }
+
+    public static void writeNull(ByteBuffer dst) {
+        dst.put((byte) TYPE_NULL);
+    }
+
+    public static void writeObjectStart(ByteBuffer dst) {
+        dst.put((byte) TYPE_OBJECT);
+    }
+
+    public static void writeEcmaArrayStart(ByteBuffer dst, int count) {
+        dst.put((byte) TYPE_ECMA_ARRAY);
+        dst.putInt(count);
+    }
+
+    /**
+     * 写入对象属性名，之后紧跟属性值
+     */
+    public static void writeKey(ByteBuffer dst, String key) {
+        writeUtf8(dst, key);
+    }
+
+    public static void writeObjectEnd(ByteBuffer dst) {
+        dst.put((byte) 0);
+        dst.put((byte) 0);
+        dst.put((byte) TYPE_OBJECT_END);
+    }
+
+    /**
+     * 读取一个AMF0值
+     * 数字返回Double，对象和ECMA数组返回Map，严格数组返回List
+     */
+    public static Object read(ByteBuffer src) {
+        int type = src.get() & 0xFF;
+        switch (type) {
+            case TYPE_NUMBER:
+                return src.getDouble();
+            case TYPE_BOOLEAN:
+                return src.get() != 0;
+            case TYPE_STRING:
+                return readUtf8(src, src.getShort() & 0xFFFF);
+            case TYPE_LONG_STRING:
+                return readUtf8(src, src.getInt());
+            case TYPE_OBJECT:
+                return readProperties(src);
+            case TYPE_ECMA_ARRAY:
+                src.getInt(); // 元素个数仅供参考，以结束标记为准
+                return readProperties(src);
+            case TYPE_STRICT_ARRAY: {
+                int count = src.getInt();
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(read(src));
+                }
+                return list;
+            }
+            case TYPE_NULL:
+            case TYPE_UNDEFINED:
+                return null;
+            default:
+                throw new IllegalArgumentException("不支持的AMF0类型: " + type);
+        }
+    }
+
+    private static Map<String, Object> readProperties(ByteBuffer src) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (src.remaining() >= 3) {
+            String key = readUtf8(src, src.getShort() & 0xFFFF);
+            if (key.isEmpty() && (src.get(src.position()) & 0xFF) == TYPE_OBJECT_END) {
+                src.get();
+                break;
+            }
+            map.put(key, read(src));
+        }
+        return map;
+    }
+
+    private static void writeUtf8(ByteBuffer dst, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        dst.putShort((short) bytes.length);
+        dst.put(bytes);
+    }
+
+    private static String readUtf8(ByteBuffer src, int length) {
+        byte[] bytes = new byte[length];
+        src.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
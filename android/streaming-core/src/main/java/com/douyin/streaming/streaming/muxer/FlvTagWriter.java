@@ -0,0 +1,113 @@
+package com.douyin.streaming.streaming.muxer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FLV标签封装
+ * RTMP消息体即FLV标签体，这里只写标签头部分，帧数据由调用方以聚合写方式直接发送
+ */
+public final class FlvTagWriter {
+    public static final int TAG_AUDIO = 8;
+    public static final int TAG_VIDEO = 9;
+    public static final int TAG_SCRIPT = 18;
+
+    public static final int FILE_HEADER_SIZE = 13;
+    public static final int TAG_HEADER_SIZE = 11;
+    public static final int VIDEO_TAG_HEADER_SIZE = 5;
+    public static final int AUDIO_TAG_HEADER_SIZE = 2;
+
+    private static final int CODEC_AVC = 7;
+    private static final int FRAME_KEY = 1;
+    private static final int FRAME_INTER = 2;
+    private static final int AVC_SEQUENCE_HEADER = 0;
+    private static final int AVC_NALU = 1;
+    // AAC, 44kHz, 16bit, 立体声；AAC的实际参数以AudioSpecificConfig为准
+    private static final int AUDIO_AAC_FLAGS = 0xAF;
+    private static final int AAC_SEQUENCE_HEADER = 0;
+    private static final int AAC_RAW = 1;
+
+    private FlvTagWriter() {
+    }
+
+    /**
+     * 视频标签头 (5字节)
+     * @param sequenceHeader 后续数据为AVCDecoderConfigurationRecord
+     * @param compositionTime pts - dts (毫秒)
+     */
+    public static void writeVideoTagHeader(ByteBuffer dst, boolean keyFrame, boolean sequenceHeader, int compositionTime) {
+        dst.put((byte) (((keyFrame || sequenceHeader) ? FRAME_KEY : FRAME_INTER) << 4 | CODEC_AVC));
+        dst.put((byte) (sequenceHeader ? AVC_SEQUENCE_HEADER : AVC_NALU));
+        writeInt24(dst, sequenceHeader ? 0 : compositionTime);
+    }
+
+    /**
+     * 音频标签头 (2字节)
+     * @param sequenceHeader 后续数据为AudioSpecificConfig
+     */
+    public static void writeAudioTagHeader(ByteBuffer dst, boolean sequenceHeader) {
+        dst.put((byte) AUDIO_AAC_FLAGS);
+        dst.put((byte) (sequenceHeader ? AAC_SEQUENCE_HEADER : AAC_RAW));
+    }
+
+    /**
+     * onMetaData脚本数据
+     * @param setDataFrame RTMP推流时需要@setDataFrame前缀，写FLV文件时不需要
+     */
+    public static void writeMetaData(ByteBuffer dst, boolean setDataFrame, int width, int height, int fps,
+                                     int videoBitrate, int audioBitrate, int audioSampleRate, int audioChannels) {
+        if (setDataFrame) {
+            Amf0.writeString(dst, "@setDataFrame");
+        }
+        Amf0.writeString(dst, "onMetaData");
+        Amf0.writeEcmaArrayStart(dst, 10);
+        Amf0.writeKey(dst, "width");
+        Amf0.writeNumber(dst, width);
+        Amf0.writeKey(dst, "height");
+        Amf0.writeNumber(dst, height);
+        Amf0.writeKey(dst, "framerate");
+        Amf0.writeNumber(dst, fps);
+        Amf0.writeKey(dst, "videocodecid");
+        Amf0.writeNumber(dst, CODEC_AVC);
+        Amf0.writeKey(dst, "videodatarate");
+        Amf0.writeNumber(dst, videoBitrate);
+        Amf0.writeKey(dst, "audiocodecid");
+        Amf0.writeNumber(dst, 10); // AAC
+        Amf0.writeKey(dst, "audiodatarate");
+        Amf0.writeNumber(dst, audioBitrate);
+        Amf0.writeKey(dst, "audiosamplerate");
+        Amf0.writeNumber(dst, audioSampleRate);
+        Amf0.writeKey(dst, "audiosamplesize");
+        Amf0.writeNumber(dst, 16);
+        Amf0.writeKey(dst, "stereo");
+        Amf0.writeBoolean(dst, audioChannels > 1);
+        Amf0.writeObjectEnd(dst);
+    }
+
+    /**
+     * FLV文件头及第一个PreviousTagSize (13字节)
+     */
+    public static void writeFileHeader(ByteBuffer dst, boolean hasAudio, boolean hasVideo) {
+        dst.put((byte) 'F').put((byte) 'L').put((byte) 'V');
+        dst.put((byte) 1);
+        dst.put((byte) ((hasAudio ? 0x04 : 0) | (hasVideo ? 0x01 : 0)));
+        dst.putInt(9);
+        dst.putInt(0);
+    }
+
+    /**
+     * FLV文件中的标签头 (11字节)，标签体之后需写入PreviousTagSize = TAG_HEADER_SIZE + dataSize
+     */
+    public static void writeTagHeader(ByteBuffer dst, int tagType, int dataSize, int timestamp) {
+        dst.put((byte) tagType);
+        writeInt24(dst, dataSize);
+        writeInt24(dst, timestamp & 0xFFFFFF);
+        dst.put((byte) (timestamp >>> 24));
+        writeInt24(dst, 0); // StreamID
+    }
+
+    private static void writeInt24(ByteBuffer dst, int value) {
+        dst.put((byte) (value >>> 16));
+        dst.put((byte) (value >>> 8));
+        dst.put((byte) value);
+    }
+}
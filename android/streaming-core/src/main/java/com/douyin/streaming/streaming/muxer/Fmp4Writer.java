@@ -0,0 +1,336 @@
+package com.douyin.streaming.streaming.muxer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 分片MP4 (CMAF结构) 封装
+ * 初始化段为ftyp + moov，视频轨为avc1/avcC，音频轨为mp4a/esds，两轨复用在同一个文件中；
+ * 媒体块为moof + mdat，每块只含一帧，moof中tfdt给出绝对解码时间，样本时长为估计值，不影响时间轴。
+ * 这里只写moof和mdat头，帧数据（AVCC视频或原始AAC）由调用方以聚合写方式直接发送，不拷贝。
+ */
+public final class Fmp4Writer {
+    public static final int VIDEO_TRACK_ID = 1;
+    public static final int AUDIO_TRACK_ID = 2;
+    public static final int VIDEO_TIMESCALE = 90000;
+    public static final int AAC_SAMPLES_PER_FRAME = 1024;
+
+    // moof(8) + mfhd(16) + traf(8) + tfhd(16) + tfdt(20) + trun(12 + 8 + 每样本字段) + mdat(8)
+    public static final int VIDEO_CHUNK_HEADER_SIZE = 8 + 16 + 8 + 16 + 20 + 36 + 8;
+    public static final int AUDIO_CHUNK_HEADER_SIZE = 8 + 16 + 8 + 16 + 20 + 32 + 8;
+
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+    private static final int TRUN_DATA_OFFSET = 0x000001;
+    private static final int TRUN_SAMPLE_DURATION = 0x000100;
+    private static final int TRUN_SAMPLE_SIZE = 0x000200;
+    private static final int TRUN_SAMPLE_FLAGS = 0x000400;
+    private static final int TRUN_SAMPLE_CTO = 0x000800;
+    // sample_depends_on=2 (不依赖其他帧)
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    // sample_depends_on=1，sample_is_non_sync_sample=1
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+    private static final int LANGUAGE_UND = 0x55C4;
+    private static final int[] MATRIX = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+    private static final int[] AAC_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private static final int MOOF = fourcc("moof");
+    private static final int MFHD = fourcc("mfhd");
+    private static final int TRAF = fourcc("traf");
+    private static final int TFHD = fourcc("tfhd");
+    private static final int TFDT = fourcc("tfdt");
+    private static final int TRUN = fourcc("trun");
+    private static final int MDAT = fourcc("mdat");
+
+    private Fmp4Writer() {
+    }
+
+    /**
+     * 初始化段
+     * @param avcConfig AVCDecoderConfigurationRecord，position到limit，不修改position
+     * @param audioConfig AudioSpecificConfig，为null时不含音频轨
+     */
+    public static void writeInitSegment(ByteBuffer dst, ByteBuffer avcConfig, int width, int height,
+                                        ByteBuffer audioConfig) {
+        int ftyp = beginBox(dst, "ftyp");
+        putType(dst, "iso6");
+        dst.putInt(0);
+        putType(dst, "iso6");
+        putType(dst, "isom");
+        putType(dst, "dash");
+        endBox(dst, ftyp);
+
+        int moov = beginBox(dst, "moov");
+        int mvhd = beginFullBox(dst, "mvhd", 0, 0);
+        dst.putInt(0).putInt(0); // creation_time, modification_time
+        dst.putInt(1000).putInt(0); // timescale, duration
+        dst.putInt(0x00010000).putShort((short) 0x0100).putShort((short) 0).putInt(0).putInt(0);
+        putMatrix(dst);
+        for (int i = 0; i < 6; i++) {
+            dst.putInt(0);
+        }
+        dst.putInt(audioConfig != null ? AUDIO_TRACK_ID + 1 : VIDEO_TRACK_ID + 1);
+        endBox(dst, mvhd);
+
+        writeVideoTrack(dst, avcConfig, width, height);
+        if (audioConfig != null) {
+            writeAudioTrack(dst, audioConfig);
+        }
+
+        int mvex = beginBox(dst, "mvex");
+        writeTrex(dst, VIDEO_TRACK_ID);
+        if (audioConfig != null) {
+            writeTrex(dst, AUDIO_TRACK_ID);
+        }
+        endBox(dst, mvex);
+        endBox(dst, moov);
+    }
+
+    /**
+     * 一帧视频的moof和mdat头 (VIDEO_CHUNK_HEADER_SIZE字节)
+     * @param decodeTime 解码时间 (VIDEO_TIMESCALE)
+     * @param duration 样本时长估计 (VIDEO_TIMESCALE)
+     * @param compositionOffset pts - dts (VIDEO_TIMESCALE)
+     */
+    public static void writeVideoChunkHeader(ByteBuffer dst, int sequence, long decodeTime, int duration,
+                                             int sampleSize, boolean keyFrame, int compositionOffset) {
+        writeMoofStart(dst, VIDEO_CHUNK_HEADER_SIZE - 8, sequence, VIDEO_TRACK_ID, decodeTime);
+        // trun版本1，组合时间偏移为有符号数
+        dst.putInt(36).putInt(TRUN);
+        dst.putInt(1 << 24 | TRUN_DATA_OFFSET | TRUN_SAMPLE_DURATION | TRUN_SAMPLE_SIZE | TRUN_SAMPLE_FLAGS
+                | TRUN_SAMPLE_CTO);
+        dst.putInt(1).putInt(VIDEO_CHUNK_HEADER_SIZE);
+        dst.putInt(duration).putInt(sampleSize).putInt(keyFrame ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+        dst.putInt(compositionOffset);
+        dst.putInt(8 + sampleSize).putInt(MDAT);
+    }
+
+    /**
+     * 一帧音频的moof和mdat头 (AUDIO_CHUNK_HEADER_SIZE字节)
+     * @param decodeTime 解码时间，时间基为采样率
+     */
+    public static void writeAudioChunkHeader(ByteBuffer dst, int sequence, long decodeTime, int sampleSize) {
+        writeMoofStart(dst, AUDIO_CHUNK_HEADER_SIZE - 8, sequence, AUDIO_TRACK_ID, decodeTime);
+        dst.putInt(32).putInt(TRUN);
+        dst.putInt(TRUN_DATA_OFFSET | TRUN_SAMPLE_DURATION | TRUN_SAMPLE_SIZE | TRUN_SAMPLE_FLAGS);
+        dst.putInt(1).putInt(AUDIO_CHUNK_HEADER_SIZE);
+        dst.putInt(AAC_SAMPLES_PER_FRAME).putInt(sampleSize).putInt(SAMPLE_FLAGS_SYNC);
+        dst.putInt(8 + sampleSize).putInt(MDAT);
+    }
+
+    /**
+     * AudioSpecificConfig中的采样率，无法识别时返回-1
+     */
+    public static int aacSampleRate(ByteBuffer config) {
+        int start = config.position();
+        if (config.remaining() < 2) {
+            return -1;
+        }
+        int index = (config.get(start) & 0x07) << 1 | (config.get(start + 1) & 0xFF) >> 7;
+        return index < AAC_SAMPLE_RATES.length ? AAC_SAMPLE_RATES[index] : -1;
+    }
+
+    /**
+     * AudioSpecificConfig中的声道配置
+     */
+    public static int aacChannels(ByteBuffer config) {
+        return config.remaining() < 2 ? 0 : (config.get(config.position() + 1) >> 3) & 0x0F;
+    }
+
+    private static void writeMoofStart(ByteBuffer dst, int moofSize, int sequence, int trackId, long decodeTime) {
+        dst.putInt(moofSize).putInt(MOOF);
+        dst.putInt(16).putInt(MFHD).putInt(0).putInt(sequence);
+        dst.putInt(moofSize - 24).putInt(TRAF);
+        dst.putInt(16).putInt(TFHD).putInt(TFHD_DEFAULT_BASE_IS_MOOF).putInt(trackId);
+        dst.putInt(20).putInt(TFDT).putInt(1 << 24).putLong(decodeTime);
+    }
+
+    private static void writeVideoTrack(ByteBuffer dst, ByteBuffer avcConfig, int width, int height) {
+        int trak = beginBox(dst, "trak");
+        writeTkhd(dst, VIDEO_TRACK_ID, false, width, height);
+        int mdia = beginBox(dst, "mdia");
+        writeMdhd(dst, VIDEO_TIMESCALE);
+        writeHdlr(dst, "vide", "VideoHandler");
+        int minf = beginBox(dst, "minf");
+        int vmhd = beginFullBox(dst, "vmhd", 0, 1);
+        dst.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        endBox(dst, vmhd);
+        writeDinf(dst);
+        int stsd = beginSampleTable(dst);
+        int avc1 = beginBox(dst, "avc1");
+        writeSampleEntryStart(dst);
+        dst.putShort((short) 0).putShort((short) 0);
+        dst.putInt(0).putInt(0).putInt(0);
+        dst.putShort((short) width).putShort((short) height);
+        dst.putInt(0x00480000).putInt(0x00480000); // 72dpi
+        dst.putInt(0);
+        dst.putShort((short) 1); // frame_count
+        for (int i = 0; i < 32; i++) {
+            dst.put((byte) 0); // compressorname
+        }
+        dst.putShort((short) 0x0018).putShort((short) -1);
+        int avcC = beginBox(dst, "avcC");
+        dst.put(avcConfig.duplicate());
+        endBox(dst, avcC);
+        endBox(dst, avc1);
+        endSampleTable(dst, stsd);
+        endBox(dst, minf);
+        endBox(dst, mdia);
+        endBox(dst, trak);
+    }
+
+    private static void writeAudioTrack(ByteBuffer dst, ByteBuffer audioConfig) {
+        int sampleRate = aacSampleRate(audioConfig);
+        int trak = beginBox(dst, "trak");
+        writeTkhd(dst, AUDIO_TRACK_ID, true, 0, 0);
+        int mdia = beginBox(dst, "mdia");
+        writeMdhd(dst, sampleRate);
+        writeHdlr(dst, "soun", "SoundHandler");
+        int minf = beginBox(dst, "minf");
+        int smhd = beginFullBox(dst, "smhd", 0, 0);
+        dst.putShort((short) 0).putShort((short) 0);
+        endBox(dst, smhd);
+        writeDinf(dst);
+        int stsd = beginSampleTable(dst);
+        int mp4a = beginBox(dst, "mp4a");
+        writeSampleEntryStart(dst);
+        dst.putInt(0).putInt(0);
+        dst.putShort((short) aacChannels(audioConfig)).putShort((short) 16);
+        dst.putShort((short) 0).putShort((short) 0);
+        dst.putInt(sampleRate << 16);
+
+        // ES_Descriptor > DecoderConfigDescriptor > DecoderSpecificInfo，SLConfigDescriptor
+        int configSize = audioConfig.remaining();
+        int esds = beginFullBox(dst, "esds", 0, 0);
+        dst.put((byte) 0x03).put((byte) (3 + 2 + 13 + 2 + configSize + 3));
+        dst.putShort((short) 0).put((byte) 0);
+        dst.put((byte) 0x04).put((byte) (13 + 2 + configSize));
+        dst.put((byte) 0x40); // MPEG-4 Audio
+        dst.put((byte) 0x15); // AudioStream
+        dst.put((byte) 0).putShort((short) 0); // bufferSizeDB
+        dst.putInt(0).putInt(0); // maxBitrate, avgBitrate
+        dst.put((byte) 0x05).put((byte) configSize);
+        dst.put(audioConfig.duplicate());
+        dst.put((byte) 0x06).put((byte) 1).put((byte) 0x02);
+        endBox(dst, esds);
+        endBox(dst, mp4a);
+        endSampleTable(dst, stsd);
+        endBox(dst, minf);
+        endBox(dst, mdia);
+        endBox(dst, trak);
+    }
+
+    private static void writeTkhd(ByteBuffer dst, int trackId, boolean audio, int width, int height) {
+        // track_enabled | track_in_movie
+        int tkhd = beginFullBox(dst, "tkhd", 0, 3);
+        dst.putInt(0).putInt(0).putInt(trackId).putInt(0).putInt(0);
+        dst.putInt(0).putInt(0);
+        dst.putShort((short) 0).putShort((short) 0);
+        dst.putShort((short) (audio ? 0x0100 : 0)).putShort((short) 0);
+        putMatrix(dst);
+        dst.putInt(width << 16).putInt(height << 16);
+        endBox(dst, tkhd);
+    }
+
+    private static void writeMdhd(ByteBuffer dst, int timescale) {
+        int mdhd = beginFullBox(dst, "mdhd", 0, 0);
+        dst.putInt(0).putInt(0).putInt(timescale).putInt(0);
+        dst.putShort((short) LANGUAGE_UND).putShort((short) 0);
+        endBox(dst, mdhd);
+    }
+
+    private static void writeHdlr(ByteBuffer dst, String handlerType, String name) {
+        int hdlr = beginFullBox(dst, "hdlr", 0, 0);
+        dst.putInt(0);
+        putType(dst, handlerType);
+        dst.putInt(0).putInt(0).putInt(0);
+        for (int i = 0; i < name.length(); i++) {
+            dst.put((byte) name.charAt(i));
+        }
+        dst.put((byte) 0);
+        endBox(dst, hdlr);
+    }
+
+    private static void writeDinf(ByteBuffer dst) {
+        int dinf = beginBox(dst, "dinf");
+        int dref = beginFullBox(dst, "dref", 0, 0);
+        dst.putInt(1);
+        // 数据在同一文件中
+        int url = beginFullBox(dst, "url ", 0, 1);
+        endBox(dst, url);
+        endBox(dst, dref);
+        endBox(dst, dinf);
+    }
+
+    /**
+     * stbl和stsd的开头，样本表的其余部分为空，样本在moof中描述
+     * @return stbl的起始位置
+     */
+    private static int beginSampleTable(ByteBuffer dst) {
+        int stbl = beginBox(dst, "stbl");
+        beginFullBox(dst, "stsd", 0, 0);
+        dst.putInt(1);
+        return stbl;
+    }
+
+    private static void endSampleTable(ByteBuffer dst, int stbl) {
+        // stsd紧跟在stbl头之后
+        endBox(dst, stbl + 8);
+        int stts = beginFullBox(dst, "stts", 0, 0);
+        dst.putInt(0);
+        endBox(dst, stts);
+        int stsc = beginFullBox(dst, "stsc", 0, 0);
+        dst.putInt(0);
+        endBox(dst, stsc);
+        int stsz = beginFullBox(dst, "stsz", 0, 0);
+        dst.putInt(0).putInt(0);
+        endBox(dst, stsz);
+        int stco = beginFullBox(dst, "stco", 0, 0);
+        dst.putInt(0);
+        endBox(dst, stco);
+        endBox(dst, stbl);
+    }
+
+    private static void writeSampleEntryStart(ByteBuffer dst) {
+        for (int i = 0; i < 6; i++) {
+            dst.put((byte) 0);
+        }
+        dst.putShort((short) 1); // data_reference_index
+    }
+
+    private static void writeTrex(ByteBuffer dst, int trackId) {
+        int trex = beginFullBox(dst, "trex", 0, 0);
+        dst.putInt(trackId).putInt(1).putInt(0).putInt(0).putInt(0);
+        endBox(dst, trex);
+    }
+
+    private static void putMatrix(ByteBuffer dst) {
+        for (int value : MATRIX) {
+            dst.putInt(value);
+        }
+    }
+
+    private static int beginBox(ByteBuffer dst, String type) {
+        int start = dst.position();
+        dst.putInt(0);
+        putType(dst, type);
+        return start;
+    }
+
+    private static int beginFullBox(ByteBuffer dst, String type, int version, int flags) {
+        int start = beginBox(dst, type);
+        dst.putInt(version << 24 | flags);
+        return start;
+    }
+
+    private static void endBox(ByteBuffer dst, int start) {
+        dst.putInt(start, dst.position() - start);
+    }
+
+    private static void putType(ByteBuffer dst, String type) {
+        dst.putInt(fourcc(type));
+    }
+
+    private static int fourcc(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+}
@@ -0,0 +1,133 @@
+package com.douyin.streaming.streaming.muxer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MPEG-TS解封装
+ * 只处理TsMuxer写出的音视频PID，按payload_unit_start_indicator重组PES，去掉PES头后交给Listener。
+ * PES_packet_length不为0时收齐即交付，否则在下一个PES开始时交付；
+ * 统计连续计数器不连续的次数。用于接收端校验和延迟测量，按PES分配缓冲区，不用于生产。
+ *
+ * 非线程安全
+ */
+public class TsDemuxer {
+    private static final int INITIAL_PES_CAPACITY = 64 * 1024;
+
+    public interface Listener {
+        /**
+         * 一个PES接收完整
+         * @param video true为视频PID
+         * @param payload 去掉PES头的基本流数据，回调返回后失效
+         */
+        void onPes(boolean video, ByteBuffer payload);
+    }
+
+    private final Listener listener;
+    private final Track video = new Track(true);
+    private final Track audio = new Track(false);
+    private long continuityErrors;
+
+    public TsDemuxer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 输入若干个完整的TS包，position到limit
+     */
+    public void feed(ByteBuffer packets) {
+        int end = packets.limit();
+        for (int offset = packets.position(); offset + TsMuxer.PACKET_SIZE <= end; offset += TsMuxer.PACKET_SIZE) {
+            if (packets.get(offset) != TsMuxer.SYNC_BYTE) {
+                continue;
+            }
+            int pid = (packets.get(offset + 1) & 0x1F) << 8 | packets.get(offset + 2) & 0xFF;
+            Track track = pid == TsMuxer.PID_VIDEO ? video : pid == TsMuxer.PID_AUDIO ? audio : null;
+            if (track != null) {
+                track.onPacket(packets, offset);
+            }
+        }
+        packets.position(end);
+    }
+
+    /**
+     * 结束时交付最后一个未完成的PES
+     */
+    public void flush() {
+        video.deliver();
+        audio.deliver();
+    }
+
+    public long getContinuityErrors() {
+        return continuityErrors;
+    }
+
+    private final class Track {
+        private final boolean isVideo;
+        private ByteBuffer pes = ByteBuffer.allocate(INITIAL_PES_CAPACITY);
+        private int lastCounter = -1;
+        private boolean started;
+
+        Track(boolean isVideo) {
+            this.isVideo = isVideo;
+        }
+
+        void onPacket(ByteBuffer packet, int offset) {
+            int flags = packet.get(offset + 3) & 0xFF;
+            int counter = flags & 0xF;
+            if (lastCounter >= 0 && counter != ((lastCounter + 1) & 0xF)) {
+                continuityErrors++;
+                // 丢包后当前PES不完整，丢弃到下一个PES起点
+                started = false;
+                pes.clear();
+            }
+            lastCounter = counter;
+
+            int payloadStart = offset + 4;
+            if ((flags & 0x20) != 0) {
+                payloadStart += 1 + (packet.get(offset + 4) & 0xFF);
+            }
+            int payloadEnd = offset + TsMuxer.PACKET_SIZE;
+            if ((flags & 0x10) == 0 || payloadStart >= payloadEnd) {
+                return;
+            }
+            if ((packet.get(offset + 1) & 0x40) != 0) {
+                deliver();
+                started = true;
+            }
+            if (!started) {
+                return;
+            }
+            int length = payloadEnd - payloadStart;
+            if (pes.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(pes.capacity() * 2 + length);
+                pes.flip();
+                larger.put(pes);
+                pes = larger;
+            }
+            for (int i = payloadStart; i < payloadEnd; i++) {
+                pes.put(packet.get(i));
+            }
+            if (pes.position() >= 6) {
+                int packetLength = (pes.get(4) & 0xFF) << 8 | pes.get(5) & 0xFF;
+                if (packetLength > 0 && pes.position() >= 6 + packetLength) {
+                    deliver();
+                }
+            }
+        }
+
+        void deliver() {
+            if (!started || pes.position() < 9) {
+                pes.clear();
+                return;
+            }
+            pes.flip();
+            int headerSize = 9 + (pes.get(8) & 0xFF);
+            if (pes.get(0) == 0 && pes.get(1) == 0 && pes.get(2) == 1 && headerSize <= pes.limit()) {
+                pes.position(headerSize);
+                listener.onPes(isVideo, pes);
+            }
+            pes.clear();
+            started = false;
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.douyin.streaming.streaming.muxer;
+
+import com.douyin.streaming.streaming.media.AvcNalUnits;
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MPEG-TS封装
+ * H.264视频由AVCC转为Annex-B（每帧前加AUD，关键帧前加SPS/PPS），AAC音频加ADTS头；
+ * 关键帧前和每隔100ms写一次PAT/PMT，每个视频PES的第一个TS包带PCR。
+ * TS包直接写入Output提供的数据报缓冲区，每个数据报最多7个TS包，帧数据按读取方视图批量拷贝，不分配内存。
+ *
+ * 由发送线程依次调用，非线程安全
+ */
+public class TsMuxer {
+    public static final int PACKET_SIZE = 188;
+    public static final int PACKETS_PER_DATAGRAM = 7;
+    public static final int DATAGRAM_SIZE = PACKET_SIZE * PACKETS_PER_DATAGRAM;
+    public static final byte SYNC_BYTE = 0x47;
+
+    public static final int PID_PAT = 0;
+    public static final int PID_PMT = 0x1000;
+    public static final int PID_VIDEO = 0x100;
+    public static final int PID_AUDIO = 0x101;
+
+    private static final int STREAM_TYPE_H264 = 0x1B;
+    private static final int STREAM_TYPE_AAC_ADTS = 0x0F;
+    private static final int STREAM_ID_VIDEO = 0xE0;
+    private static final int STREAM_ID_AUDIO = 0xC0;
+    private static final int PAYLOAD_SIZE = PACKET_SIZE - 4;
+    private static final int PCR_ADAPTATION_SIZE = 8;
+    private static final int ADTS_HEADER_SIZE = 7;
+    private static final long TIMESTAMP_MASK = (1L << 33) - 1;
+    // PTS/DTS比PCR超前700ms，与FFmpeg默认的muxdelay相同，音频早于第一个视频帧时也不为负
+    private static final long TIMESTAMP_OFFSET = 63000;
+    private static final long TABLE_INTERVAL = 9000; // 100ms @90kHz
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    // 须在PAT/PMT之前初始化
+    private static final int[] CRC_TABLE = crcTable();
+    private static final byte[] AUD = {0, 0, 0, 1, AvcNalUnits.NAL_AUD, (byte) 0xF0};
+    private static final byte[] PAT = section(new byte[]{
+            0x00, (byte) 0xB0, 13, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+            0x00, 0x01, (byte) (0xE0 | PID_PMT >> 8), (byte) PID_PMT});
+    private static final byte[] PMT = section(new byte[]{
+            0x02, (byte) 0xB0, 23, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+            (byte) (0xE0 | PID_VIDEO >> 8), (byte) PID_VIDEO, (byte) 0xF0, 0x00,
+            STREAM_TYPE_H264, (byte) (0xE0 | PID_VIDEO >> 8), (byte) PID_VIDEO, (byte) 0xF0, 0x00,
+            STREAM_TYPE_AAC_ADTS, (byte) (0xE0 | PID_AUDIO >> 8), (byte) PID_AUDIO, (byte) 0xF0, 0x00});
+
+    /**
+     * 数据报去向
+     */
+    public interface Output {
+        /**
+         * 获取下一个数据报缓冲区，从position开始写入，剩余空间至少为DATAGRAM_SIZE
+         */
+        ByteBuffer acquire() throws IOException;
+
+        /**
+         * 提交写好的数据报，写入的TS包位于acquire()时的position到当前position之间
+         */
+        void commit(ByteBuffer datagram) throws IOException;
+    }
+
+    private final Output output;
+    private final byte[] pesHeader = new byte[19];
+    private final byte[] adtsHeader = new byte[ADTS_HEADER_SIZE];
+    private int reader;
+    private ByteBuffer datagram;
+    private int patCounter;
+    private int pmtCounter;
+    private int videoCounter;
+    private int audioCounter;
+    // 当前PES未写出的字节数和当前TS包剩余的负载空间
+    private int pesPid;
+    private int pesRemaining;
+    private int packetRemaining;
+    private long baseUs = -1;
+    private long lastTableTime = -1;
+    private byte[] parameterSets;
+    private int audioObjectType;
+    private int sampleRateIndex = -1;
+    private int channelConfig;
+
+    public TsMuxer(Output output) {
+        this.output = output;
+    }
+
+    /**
+     * @see MediaFrame#view(int, int)
+     */
+    public void setFrameReader(int reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 封装一帧，配置帧只更新SPS/PPS和AudioSpecificConfig，不产生输出
+     * 帧的最后一个数据报可能未写满，需要立即发出时调用flush()
+     */
+    public void writeFrame(MediaFrame frame) throws IOException {
+        if (frame.isConfig()) {
+            if (frame.isVideo()) {
+                parseDecoderConfigurationRecord(frame.view(reader, 0));
+            } else {
+                parseAudioSpecificConfig(frame.view(reader, 0));
+            }
+            return;
+        }
+        if (baseUs < 0) {
+            baseUs = frame.getDtsUs();
+        }
+        long dts = toTimestamp(frame.getDtsUs());
+        if (lastTableTime < 0 || frame.isKeyFrame() || dts - lastTableTime >= TABLE_INTERVAL
+                || dts < lastTableTime) {
+            writeTables();
+            lastTableTime = dts;
+        }
+        if (frame.isVideo()) {
+            writeVideo(frame, toTimestamp(frame.getPtsUs()), dts);
+        } else {
+            writeAudio(frame, toTimestamp(frame.getPtsUs()));
+        }
+    }
+
+    /**
+     * 提交未写满的数据报
+     */
+    public void flush() throws IOException {
+        if (datagram != null) {
+            ByteBuffer pending = datagram;
+            datagram = null;
+            output.commit(pending);
+        }
+    }
+
+    private void writeVideo(MediaFrame frame, long pts, long dts) throws IOException {
+        ByteBuffer data = frame.view(reader, 0);
+        int end = data.limit();
+        boolean keyFrame = frame.isKeyFrame();
+        byte[] sets = keyFrame ? parameterSets : null;
+
+        // AVCC的4字节长度前缀替换为4字节起始码，Annex-B的大小与AVCC相同
+        int nalBytes = 0;
+        for (int offset = 0; offset + 4 <= end; ) {
+            int length = data.getInt(offset);
+            if (length <= 0 || offset + 4 + length > end) {
+                break;
+            }
+            nalBytes = offset + 4 + length;
+            offset = nalBytes;
+        }
+        int payloadSize = AUD.length + (sets != null ? sets.length : 0) + nalBytes;
+        int headerSize = writePesHeader(STREAM_ID_VIDEO, pts, dts, payloadSize);
+
+        beginPes(PID_VIDEO, headerSize + payloadSize, dts, keyFrame);
+        putBytes(pesHeader, 0, headerSize);
+        putBytes(AUD, 0, AUD.length);
+        if (sets != null) {
+            putBytes(sets, 0, sets.length);
+        }
+        for (int offset = 0; offset < nalBytes; ) {
+            int length = data.getInt(offset);
+            putBytes(START_CODE, 0, START_CODE.length);
+            data.limit(offset + 4 + length).position(offset + 4);
+            putBuffer(data);
+            data.limit(end);
+            offset += 4 + length;
+        }
+    }
+
+    private void writeAudio(MediaFrame frame, long pts) throws IOException {
+        if (sampleRateIndex < 0) {
+            return;
+        }
+        ByteBuffer data = frame.view(reader, 0);
+        int frameLength = ADTS_HEADER_SIZE + data.remaining();
+        adtsHeader[0] = (byte) 0xFF;
+        adtsHeader[1] = (byte) 0xF1; // MPEG-4, 无CRC
+        adtsHeader[2] = (byte) ((audioObjectType - 1) << 6 | sampleRateIndex << 2 | channelConfig >> 2);
+        adtsHeader[3] = (byte) ((channelConfig & 3) << 6 | frameLength >> 11);
+        adtsHeader[4] = (byte) (frameLength >> 3);
+        adtsHeader[5] = (byte) ((frameLength & 7) << 5 | 0x1F);
+        adtsHeader[6] = (byte) 0xFC;
+
+        int headerSize = writePesHeader(STREAM_ID_AUDIO, pts, pts, frameLength);
+        beginPes(PID_AUDIO, headerSize + frameLength, -1, true);
+        putBytes(pesHeader, 0, headerSize);
+        putBytes(adtsHeader, 0, ADTS_HEADER_SIZE);
+        putBuffer(data);
+    }
+
+    /**
+     * PES头写入pesHeader
+     * @param payloadSize PES负载大小，超过PES_packet_length的范围时写0（不限长度，只出现在视频大关键帧）
+     * @return PES头大小
+     */
+    private int writePesHeader(int streamId, long pts, long dts, int payloadSize) {
+        boolean hasDts = dts != pts;
+        int headerDataLength = hasDts ? 10 : 5;
+        int packetLength = payloadSize > 0 ? 3 + headerDataLength + payloadSize : 0;
+        if (packetLength > 0xFFFF) {
+            packetLength = 0;
+        }
+        pesHeader[0] = 0;
+        pesHeader[1] = 0;
+        pesHeader[2] = 1;
+        pesHeader[3] = (byte) streamId;
+        pesHeader[4] = (byte) (packetLength >> 8);
+        pesHeader[5] = (byte) packetLength;
+        pesHeader[6] = (byte) 0x80;
+        pesHeader[7] = (byte) (hasDts ? 0xC0 : 0x80);
+        pesHeader[8] = (byte) headerDataLength;
+        writeTimestamp(pesHeader, 9, hasDts ? 3 : 2, pts);
+        if (hasDts) {
+            writeTimestamp(pesHeader, 14, 1, dts);
+        }
+        return 9 + headerDataLength;
+    }
+
+    private void writeTables() throws IOException {
+        writeSection(PID_PAT, patCounter, PAT);
+        patCounter = (patCounter + 1) & 0xF;
+        writeSection(PID_PMT, pmtCounter, PMT);
+        pmtCounter = (pmtCounter + 1) & 0xF;
+    }
+
+    private void writeSection(int pid, int counter, byte[] section) throws IOException {
+        ByteBuffer dst = ensureDatagram();
+        dst.put(SYNC_BYTE);
+        dst.put((byte) (0x40 | pid >> 8));
+        dst.put((byte) pid);
+        dst.put((byte) (0x10 | counter));
+        dst.put((byte) 0); // pointer_field
+        dst.put(section);
+        for (int i = 5 + section.length; i < PACKET_SIZE; i++) {
+            dst.put((byte) 0xFF);
+        }
+        endPacket();
+    }
+
+    /**
+     * 开始一个PES，写出第一个TS包的包头
+     * @param pcrTime 带PCR时为对应的DTS，否则为-1
+     */
+    private void beginPes(int pid, int size, long pcrTime, boolean randomAccess) throws IOException {
+        pesPid = pid;
+        pesRemaining = size;
+        startPacket(true, pcrTime, randomAccess);
+    }
+
+    /**
+     * 写出TS包头和自适应字段，PES剩余数据不足一个包时用自适应字段填充
+     */
+    private void startPacket(boolean unitStart, long pcrTime, boolean randomAccess) throws IOException {
+        ByteBuffer dst = ensureDatagram();
+        int adaptationSize = pcrTime >= 0 ? PCR_ADAPTATION_SIZE : randomAccess && unitStart ? 2 : 0;
+        int stuffing = Math.max(0, PAYLOAD_SIZE - adaptationSize - pesRemaining);
+        if (adaptationSize == 0 && stuffing > 0) {
+            // 只需1字节时为长度为0的自适应字段
+            adaptationSize = stuffing == 1 ? 1 : 2;
+            stuffing -= adaptationSize;
+        }
+        int counter;
+        if (pesPid == PID_VIDEO) {
+            counter = videoCounter;
+            videoCounter = (videoCounter + 1) & 0xF;
+        } else {
+            counter = audioCounter;
+            audioCounter = (audioCounter + 1) & 0xF;
+        }
+
+        dst.put(SYNC_BYTE);
+        dst.put((byte) ((unitStart ? 0x40 : 0) | pesPid >> 8));
+        dst.put((byte) pesPid);
+        dst.put((byte) ((adaptationSize > 0 ? 0x30 : 0x10) | counter));
+        if (adaptationSize > 0) {
+            int total = adaptationSize + stuffing;
+            dst.put((byte) (total - 1));
+            if (total > 1) {
+                int flags = (randomAccess && unitStart ? 0x40 : 0) | (pcrTime >= 0 ? 0x10 : 0);
+                dst.put((byte) flags);
+                if (pcrTime >= 0) {
+                    long pcrBase = (pcrTime - TIMESTAMP_OFFSET) & TIMESTAMP_MASK;
+                    dst.putInt((int) (pcrBase >>> 1));
+                    dst.put((byte) ((pcrBase & 1) << 7 | 0x7E));
+                    dst.put((byte) 0);
+                }
+                for (int i = 0; i < stuffing; i++) {
+                    dst.put((byte) 0xFF);
+                }
+            }
+            packetRemaining = PAYLOAD_SIZE - total;
+        } else {
+            packetRemaining = PAYLOAD_SIZE;
+        }
+    }
+
+    private void putBytes(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (packetRemaining == 0) {
+                startPacket(false, -1, false);
+            }
+            int n = Math.min(length, packetRemaining);
+            datagram.put(src, offset, n);
+            offset += n;
+            length -= n;
+            advance(n);
+        }
+    }
+
+    private void putBuffer(ByteBuffer src) throws IOException {
+        int end = src.limit();
+        while (src.hasRemaining()) {
+            if (packetRemaining == 0) {
+                startPacket(false, -1, false);
+            }
+            int n = Math.min(src.remaining(), packetRemaining);
+            src.limit(src.position() + n);
+            datagram.put(src);
+            src.limit(end);
+            advance(n);
+        }
+    }
+
+    private void advance(int n) throws IOException {
+        packetRemaining -= n;
+        pesRemaining -= n;
+        if (packetRemaining == 0) {
+            endPacket();
+        }
+    }
+
+    private ByteBuffer ensureDatagram() throws IOException {
+        if (datagram == null) {
+            datagram = output.acquire();
+        }
+        return datagram;
+    }
+
+    /**
+     * 一个TS包写完，数据报写满时提交
+     */
+    private void endPacket() throws IOException {
+        if (datagram.remaining() < PACKET_SIZE) {
+            flush();
+        }
+    }
+
+    private long toTimestamp(long us) {
+        return ((us - baseUs) * 9 / 100 + TIMESTAMP_OFFSET) & TIMESTAMP_MASK;
+    }
+
+    /**
+     * AVCDecoderConfigurationRecord中的SPS/PPS转为带起始码的Annex-B，关键帧前发送
+     */
+    private void parseDecoderConfigurationRecord(ByteBuffer record) {
+        int size = copyParameterSets(record, null);
+        if (size < 0) {
+            return;
+        }
+        parameterSets = new byte[size];
+        copyParameterSets(record, parameterSets);
+    }
+
+    /**
+     * @param dst 为null时只计算大小
+     * @return Annex-B格式的SPS/PPS总大小，记录格式错误时返回-1
+     */
+    private static int copyParameterSets(ByteBuffer record, byte[] dst) {
+        int end = record.limit();
+        if (end < 6) {
+            return -1;
+        }
+        int size = 0;
+        int offset = 5;
+        // 先是numOfSequenceParameterSets，SPS之后是numOfPictureParameterSets
+        for (int set = 0; set < 2; set++) {
+            if (offset >= end) {
+                return -1;
+            }
+            int count = record.get(offset++) & (set == 0 ? 0x1F : 0xFF);
+            for (int i = 0; i < count; i++) {
+                if (offset + 2 > end) {
+                    return -1;
+                }
+                int length = record.getShort(offset) & 0xFFFF;
+                offset += 2;
+                if (offset + length > end) {
+                    return -1;
+                }
+                if (dst != null) {
+                    System.arraycopy(START_CODE, 0, dst, size, START_CODE.length);
+                    for (int b = 0; b < length; b++) {
+                        dst[size + START_CODE.length + b] = record.get(offset + b);
+                    }
+                }
+                size += START_CODE.length + length;
+                offset += length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 从AudioSpecificConfig取ADTS头所需的编码类型、采样率序号和声道配置
+     */
+    private void parseAudioSpecificConfig(ByteBuffer config) {
+        if (config.limit() < 2) {
+            return;
+        }
+        int b0 = config.get(0) & 0xFF;
+        int b1 = config.get(1) & 0xFF;
+        int objectType = b0 >> 3;
+        int rateIndex = (b0 & 7) << 1 | b1 >> 7;
+        // ADTS只能表示AAC-LC等前4种编码类型和标准采样率
+        if (objectType < 1 || objectType > 4 || rateIndex > 12) {
+            sampleRateIndex = -1;
+            return;
+        }
+        audioObjectType = objectType;
+        sampleRateIndex = rateIndex;
+        channelConfig = (b1 >> 3) & 0xF;
+    }
+
+    private static void writeTimestamp(byte[] dst, int offset, int prefix, long ts) {
+        dst[offset] = (byte) (prefix << 4 | (ts >> 29) & 0x0E | 1);
+        dst[offset + 1] = (byte) (ts >> 22);
+        dst[offset + 2] = (byte) ((ts >> 14) & 0xFE | 1);
+        dst[offset + 3] = (byte) (ts >> 7);
+        dst[offset + 4] = (byte) ((ts << 1) & 0xFE | 1);
+    }
+
+    /**
+     * 在PSI段末尾追加CRC32
+     */
+    private static byte[] section(byte[] body) {
+        byte[] section = new byte[body.length + 4];
+        System.arraycopy(body, 0, section, 0, body.length);
+        int crc = crc32(body, 0, body.length);
+        section[body.length] = (byte) (crc >>> 24);
+        section[body.length + 1] = (byte) (crc >>> 16);
+        section[body.length + 2] = (byte) (crc >>> 8);
+        section[body.length + 3] = (byte) crc;
+        return section;
+    }
+
+    private static int[] crcTable() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            table[i] = crc;
+        }
+        return table;
+    }
+
+    /**
+     * MPEG-2 CRC32，PSI段校验用
+     */
+    public static int crc32(byte[] data, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+}
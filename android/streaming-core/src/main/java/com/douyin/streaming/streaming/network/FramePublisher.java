@@ -0,0 +1,112 @@
+package com.douyin.streaming.streaming.network;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 编码帧发布器
+ * 把编码帧封装为某种传输格式发送到服务器，由FrameSender在发送线程上依次调用，非线程安全。
+ * 每次连接和重连都创建新的发布器。
+ */
+public interface FramePublisher extends Closeable {
+
+    /**
+     * 推流地址，为每次连接创建发布器，toString()用于日志和界面提示
+     */
+    interface Endpoint {
+        FramePublisher create(ConnectionListener connectionListener, SendListener sendListener);
+    }
+
+    /**
+     * 连接事件，在传输层的接收线程上回调
+     */
+    interface ConnectionListener {
+        /**
+         * 连接建立后的异常断开
+         */
+        void onDisconnected(IOException e);
+
+        /**
+         * 对端请求关键帧 (WebRTC的PLI/FIR)，其他传输不回调
+         */
+        void onKeyFrameRequested();
+    }
+
+    /**
+     * 每个数据包发送完成后回调，在发送线程上调用
+     */
+    interface SendListener {
+        /**
+         * @param bytes 写出的字节数（含传输层头）
+         * @param sendNanos 写入套接字耗时
+         */
+        void onPacketSent(MediaFrame frame, long bytes, long sendNanos);
+    }
+
+    /**
+     * 同一帧同时发往多个服务器时，每个发布器使用不同的读取方编号
+     * @see MediaFrame#view(int, int)
+     */
+    void setFrameReader(int reader);
+
+    /**
+     * 媒体数据按令牌桶节拍写出，连接前调用；自带节拍的传输可忽略
+     * @param pacer 为null时不限速
+     */
+    void setPacer(TokenBucketPacer pacer);
+
+    void connect(int timeoutMs) throws IOException;
+
+    long getBytesSent();
+
+    /**
+     * 平滑后的往返时延 (毫秒)，尚无数据时返回-1
+     */
+    double getRttMs();
+
+    double getMinRttMs();
+
+    /**
+     * 传输层的发送端带宽估计 (kbps)，只有带拥塞控制反馈的传输 (WebRTC) 可用，其余返回-1
+     */
+    int getEstimatedBitrateKbps();
+
+    /**
+     * 传输层发出的数据包数（不含重传），传输层不可见时返回0
+     */
+    long getPacketsSent();
+
+    /**
+     * 对端报告丢失的数据包数，TCP由内核重传，不可见时返回0
+     */
+    long getPacketsLost();
+
+    /**
+     * 重传的数据包数，不可见时返回0
+     */
+    long getPacketsRetransmitted();
+
+    /**
+     * 发送流元数据，需在第一帧之前调用；传输格式没有元数据时不发送
+     * @param videoBitrate 视频码率 (kbps)
+     * @param audioBitrate 音频码率 (kbps)
+     */
+    void sendMetaData(int width, int height, int fps, int videoBitrate,
+                      int audioBitrate, int audioSampleRate, int audioChannels) throws IOException;
+
+    /**
+     * 暂停期间没有音视频数据时发送保活，防止服务器按空闲超时断开
+     */
+    void sendKeepAlive() throws IOException;
+
+    /**
+     * 发送一帧，配置帧作为序列头发送或缓存到下一个关键帧
+     * 调用方负责在返回后释放帧
+     */
+    void sendFrame(MediaFrame frame) throws IOException;
+
+    @Override
+    void close();
+}
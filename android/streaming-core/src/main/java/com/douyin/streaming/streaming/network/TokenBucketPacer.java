@@ -0,0 +1,189 @@
+package com.douyin.streaming.streaming.network;
+
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 令牌桶发送节拍
+ * 桶深为目标码率下一个帧间隔的字节数，平均大小的帧从满桶中直接发出；令牌按目标码率的4倍补充，
+ * 关键帧等大帧超出桶深的部分按补充速率分散写出，不再一次性压入套接字造成排队和蜂窝网络丢包。
+ * 每帧的补充速率至少为帧大小除以帧间隔的80%，一帧总在下一帧到来前发完，延迟不逐帧累积。
+ * 传输层每次写出前调用acquire()等待令牌、写出后调用onSent()扣除，帧内的等待时间累计为该帧的节拍排队时延。
+ *
+ * 只在发送线程上调用，目标码率和排队时延可在其他线程设置和读取
+ */
+public final class TokenBucketPacer {
+    // 补充速率为目标码率的倍数
+    private static final double PACING_GAIN = 4;
+    // 一帧在帧间隔的80%内发完，留出余量使排期不会越积越晚
+    private static final double FRAME_WINDOW_RATIO = 0.8;
+    // 聚合写的最小放行量，避免大帧被切成过多的小写入
+    private static final int MIN_GRANT_BYTES = 4096;
+
+    private final long frameIntervalNanos;
+    private final Clock clock;
+    private volatile int targetBitrateKbps;
+    // 统计周期内单帧的最大排队时延，发送线程更新，统计线程取走
+    private final AtomicLong maxQueueDelayNanos = new AtomicLong();
+
+    // 以下只在发送线程上访问
+    private double tokens;
+    private long lastRefillNanos;
+    private double bytesPerNano;
+    private long frameWaitNanos;
+
+    /**
+     * @param fps 视频帧率，决定桶深和每帧的发送窗口
+     */
+    public TokenBucketPacer(int fps) {
+        this(fps, Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock 补充令牌和计算等待时间使用的时钟，等待期间须随实际时间前进
+     */
+    public TokenBucketPacer(int fps, Clock clock) {
+        this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+        this.clock = clock;
+    }
+
+    /**
+     * 设置目标码率，自适应码率调整后同步更新
+     * @param bitrateKbps 音视频总码率 (kbps)，0表示不限速
+     */
+    public void setTargetBitrate(int bitrateKbps) {
+        this.targetBitrateKbps = bitrateKbps;
+    }
+
+    /**
+     * 上次调用以来单帧的最大节拍排队时延 (毫秒)，读取后清零，统计线程每周期调用一次
+     */
+    public double pollMaxQueueDelayMs() {
+        return maxQueueDelayNanos.getAndSet(0) / 1000000.0;
+    }
+
+    /**
+     * 开始发送一帧，按帧大小确定本帧的补充速率
+     * @param frameBytes 帧数据的字节数，不含传输层头
+     */
+    public void beginFrame(int frameBytes) {
+        frameWaitNanos = 0;
+        bytesPerNano = Math.max(baseBytesPerNano(),
+                frameBytes / (frameIntervalNanos * FRAME_WINDOW_RATIO));
+    }
+
+    /**
+     * 一帧发送完成，记录本帧的排队时延，之后的写出按目标码率补充
+     */
+    public void endFrame() {
+        long max;
+        while (frameWaitNanos > (max = maxQueueDelayNanos.get())
+                && !maxQueueDelayNanos.compareAndSet(max, frameWaitNanos)) {
+            // 与统计线程的清零竞争时重试
+        }
+        frameWaitNanos = 0;
+        bytesPerNano = baseBytesPerNano();
+    }
+
+    /**
+     * 等待令牌足够写出min(wanted, 最小放行量)字节，不扣除令牌
+     * @return 可以写出的字节数，不超过wanted；不限速时为wanted
+     */
+    public int acquire(int wanted) {
+        double capacity = capacityBytes();
+        if (capacity <= 0) {
+            lastRefillNanos = 0;
+            return wanted;
+        }
+        // 码率很低时桶深可能小于放行量，按计算的等待时间放行
+        double needed = Math.min(wanted, MIN_GRANT_BYTES);
+        long now = refill(clock.nanoTime(), capacity);
+        if (tokens < needed) {
+            double rate = bytesPerNano > 0 ? bytesPerNano : baseBytesPerNano();
+            long deadline = now + (long) Math.ceil((needed - tokens) / rate);
+            long wait;
+            while ((wait = deadline - clock.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+            frameWaitNanos += refill(clock.nanoTime(), capacity) - now;
+            tokens = Math.max(tokens, needed);
+        }
+        return (int) Math.min(wanted, (long) tokens);
+    }
+
+    /**
+     * 扣除实际写出的字节数
+     */
+    public void onSent(long bytes) {
+        if (lastRefillNanos != 0) {
+            tokens -= bytes;
+        }
+    }
+
+    /**
+     * 按令牌写出srcs[offset..offset+length)，语义同GatheringByteChannel.write：可能只写出一部分
+     * 不限速时直接写出
+     */
+    public long write(GatheringByteChannel channel, ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long remaining = 0;
+        for (int i = offset; i < offset + length; i++) {
+            remaining += srcs[i].remaining();
+        }
+        int allowed = acquire((int) Math.min(remaining, Integer.MAX_VALUE));
+        if (allowed >= remaining) {
+            long written = channel.write(srcs, offset, length);
+            onSent(written);
+            return written;
+        }
+        // 在放行量处临时截断，写出后恢复
+        int last = offset;
+        long before = 0;
+        while (before + srcs[last].remaining() < allowed) {
+            before += srcs[last].remaining();
+            last++;
+        }
+        ByteBuffer cut = srcs[last];
+        int limit = cut.limit();
+        cut.limit(cut.position() + (int) (allowed - before));
+        long written;
+        try {
+            written = channel.write(srcs, offset, last - offset + 1);
+        } finally {
+            cut.limit(limit);
+        }
+        onSent(written);
+        return written;
+    }
+
+    /**
+     * @return now
+     */
+    private long refill(long now, double capacity) {
+        if (lastRefillNanos == 0) {
+            // 开始限速时从满桶开始
+            tokens = capacity;
+        } else {
+            double rate = bytesPerNano > 0 ? bytesPerNano : baseBytesPerNano();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate);
+        }
+        lastRefillNanos = now;
+        return now;
+    }
+
+    private double baseBytesPerNano() {
+        return targetBitrateKbps * 1000 / 8.0 * PACING_GAIN / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * 目标码率下一个帧间隔的字节数
+     */
+    private double capacityBytes() {
+        return targetBitrateKbps * 1000 / 8.0 * frameIntervalNanos / TimeUnit.SECONDS.toNanos(1);
+    }
+}
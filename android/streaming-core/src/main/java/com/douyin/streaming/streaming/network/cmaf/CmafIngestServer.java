@@ -0,0 +1,465 @@
+package com.douyin.streaming.streaming.network.cmaf;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内CMAF上传接收端 (HTTP sink)
+ * 只监听本机回环地址，接受持久连接上的PUT/POST上传 (Content-Length或分块传输编码)，边收边解析分片MP4：
+ * 从初始化段的moov得到各轨类型，按moof中trun的样本大小拆分mdat，每个样本连同到达时间交给Listener，
+ * 每个请求的请求体收完后回复201。检查moof序号连续。
+ * 用于在没有真实服务器时测试CmafPublisher和FFmpeg的分片MP4输出，按box分配缓冲区，只用于测试和压测，不用于生产。
+ */
+public class CmafIngestServer implements Closeable {
+    private static final String TAG = "CmafIngestServer";
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_BOX_SIZE = 16 * 1024 * 1024;
+    private static final byte[] RESPONSE = "HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n".getBytes();
+
+    /**
+     * 接收事件，在连接线程上回调
+     */
+    public interface Listener {
+        /**
+         * 开始接收一个上传请求
+         */
+        void onUpload(String method, String path);
+
+        /**
+         * 收到一个完整样本
+         * @param video 样本所在轨为视频轨
+         * @param sample AVCC视频帧或原始音频帧，回调返回后失效
+         * @param arrivalNanos 样本最后一个字节读入的时间
+         */
+        void onSample(boolean video, ByteBuffer sample, long arrivalNanos);
+
+        /**
+         * 连接结束
+         * @param e 异常断开时不为null
+         */
+        void onClosed(IOException e);
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+    private final Set<SocketChannel> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<SocketChannel, Boolean>());
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean closed;
+    private volatile long uploads;
+    private volatile long sequenceErrors;
+
+    public CmafIngestServer(Listener listener, Clock clock) {
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * 在回环地址上开始监听
+     * @param port 端口，0表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        acceptThread = new Thread(this::acceptLoop, "CmafIngestAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        StreamingLog.i(TAG, "CMAF接收端已启动: " + getUrl());
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 上传地址，推流码拼接在后面
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort() + "/live";
+    }
+
+    /**
+     * 已收完的上传请求数
+     */
+    public long getUploads() {
+        return uploads;
+    }
+
+    /**
+     * moof序号不连续的次数
+     */
+    public long getSequenceErrors() {
+        return sequenceErrors;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(serverChannel);
+        for (SocketChannel channel : connections) {
+            closeQuietly(channel);
+        }
+        if (acceptThread != null) {
+            try {
+                acceptThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        int index = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    StreamingLog.e(TAG, "接受连接失败", e);
+                }
+                return;
+            }
+            connections.add(channel);
+            Thread thread = new Thread(() -> serve(channel), "CmafIngest-" + (++index));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        IOException error = null;
+        try {
+            channel.socket().setTcpNoDelay(true);
+            new Session(channel).run();
+        } catch (EOFException e) {
+            // 客户端关闭连接
+        } catch (IOException e) {
+            if (!closed) {
+                error = e;
+            }
+        } finally {
+            connections.remove(channel);
+            closeQuietly(channel);
+        }
+        listener.onClosed(error);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    /**
+     * 单个连接的请求处理，只在连接线程上访问
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private final InputStream input;
+        private final StringBuilder line = new StringBuilder();
+        private final byte[] boxHeader = new byte[8];
+        // 轨道号到是否为视频轨，跨请求保留
+        private final Map<Integer, Boolean> videoTracks = new HashMap<>();
+        // 最近一个moof中的样本
+        private int sampleTrack;
+        private int sampleCount;
+        private int[] sampleSizes = new int[16];
+        private int lastSequence = -1;
+        // 当前请求体：分块传输时为当前分块的剩余字节，否则为Content-Length的剩余字节
+        private boolean chunked;
+        private long bodyRemaining;
+        private boolean bodyEnded;
+
+        Session(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.input = new BufferedInputStream(channel.socket().getInputStream());
+        }
+
+        void run() throws IOException {
+            while (!closed) {
+                String request = readLine();
+                if (request.isEmpty()) {
+                    continue;
+                }
+                String[] parts = request.split(" ");
+                if (parts.length < 3) {
+                    throw new IOException("无效的HTTP请求: " + request);
+                }
+                long contentLength = 0;
+                chunked = false;
+                String header;
+                while (!(header = readLine()).isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon <= 0) {
+                        continue;
+                    }
+                    String name = header.substring(0, colon).trim();
+                    String value = header.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("Content-Length")) {
+                        contentLength = Long.parseLong(value);
+                    } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                        chunked = value.toLowerCase().contains("chunked");
+                    }
+                }
+                listener.onUpload(parts[0], parts[1]);
+                bodyRemaining = chunked ? 0 : contentLength;
+                bodyEnded = !chunked && contentLength == 0;
+                while (readBox()) {
+                    // 逐个box处理直到请求体结束
+                }
+                uploads++;
+                channel.write(ByteBuffer.wrap(RESPONSE));
+            }
+        }
+
+        /**
+         * 读取并处理一个顶层box
+         * @return 请求体已结束时返回false
+         */
+        private boolean readBox() throws IOException {
+            if (!readBody(boxHeader, 0, 8, true)) {
+                return false;
+            }
+            long size = ByteBuffer.wrap(boxHeader).getInt() & 0xFFFFFFFFL;
+            String type = new String(boxHeader, 4, 4, "US-ASCII");
+            if (size < 8 || size > MAX_BOX_SIZE) {
+                throw new IOException("不支持的box大小: " + type + " " + size);
+            }
+            byte[] body = new byte[(int) size - 8];
+            readBody(body, 0, body.length, false);
+            long arrivalNanos = clock.nanoTime();
+            ByteBuffer payload = ByteBuffer.wrap(body);
+            if (type.equals("moov")) {
+                parseMoov(payload);
+            } else if (type.equals("moof")) {
+                parseMoof(payload);
+            } else if (type.equals("mdat")) {
+                deliverSamples(payload, arrivalNanos);
+            }
+            return true;
+        }
+
+        private void parseMoov(ByteBuffer moov) {
+            videoTracks.clear();
+            for (ByteBuffer trak = child(moov, "trak"); trak != null; trak = child(moov, "trak")) {
+                ByteBuffer tkhd = child(trak, "tkhd");
+                ByteBuffer mdia = child(trak, "mdia");
+                ByteBuffer hdlr = mdia != null ? child(mdia, "hdlr") : null;
+                if (tkhd == null || hdlr == null) {
+                    continue;
+                }
+                int version = tkhd.get(tkhd.position()) & 0xFF;
+                int trackId = tkhd.getInt(tkhd.position() + (version == 1 ? 20 : 12));
+                boolean video = hdlr.getInt(hdlr.position() + 8) == 0x76696465; // vide
+                videoTracks.put(trackId, video);
+            }
+        }
+
+        private void parseMoof(ByteBuffer moof) {
+            sampleCount = 0;
+            ByteBuffer mfhd = child(moof, "mfhd");
+            if (mfhd != null) {
+                int sequence = mfhd.getInt(mfhd.position() + 4);
+                if (lastSequence >= 0 && sequence != lastSequence + 1) {
+                    sequenceErrors++;
+                }
+                lastSequence = sequence;
+            }
+            ByteBuffer traf = child(moof, "traf");
+            if (traf == null) {
+                return;
+            }
+            ByteBuffer tfhd = child(traf, "tfhd");
+            ByteBuffer trun = child(traf, "trun");
+            if (tfhd == null || trun == null) {
+                return;
+            }
+            int tfhdFlags = tfhd.getInt() & 0xFFFFFF;
+            sampleTrack = tfhd.getInt();
+            if ((tfhdFlags & 0x01) != 0) {
+                tfhd.getLong(); // base_data_offset
+            }
+            if ((tfhdFlags & 0x02) != 0) {
+                tfhd.getInt(); // sample_description_index
+            }
+            if ((tfhdFlags & 0x08) != 0) {
+                tfhd.getInt(); // default_sample_duration
+            }
+            int defaultSize = (tfhdFlags & 0x10) != 0 ? tfhd.getInt() : 0;
+
+            int trunFlags = trun.getInt() & 0xFFFFFF;
+            int count = trun.getInt();
+            if ((trunFlags & 0x01) != 0) {
+                trun.getInt();
+            }
+            if ((trunFlags & 0x04) != 0) {
+                trun.getInt();
+            }
+            if (count > sampleSizes.length) {
+                sampleSizes = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                if ((trunFlags & 0x100) != 0) {
+                    trun.getInt();
+                }
+                sampleSizes[i] = (trunFlags & 0x200) != 0 ? trun.getInt() : defaultSize;
+                if ((trunFlags & 0x400) != 0) {
+                    trun.getInt();
+                }
+                if ((trunFlags & 0x800) != 0) {
+                    trun.getInt();
+                }
+            }
+            sampleCount = count;
+        }
+
+        /**
+         * 按最近一个moof的样本大小拆分mdat，只处理单个traf且数据紧跟在moof之后的常见布局
+         */
+        private void deliverSamples(ByteBuffer mdat, long arrivalNanos) {
+            Boolean video = videoTracks.get(sampleTrack);
+            if (video == null) {
+                sampleCount = 0;
+                return;
+            }
+            int offset = mdat.position();
+            for (int i = 0; i < sampleCount && offset + sampleSizes[i] <= mdat.limit(); i++) {
+                mdat.limit(offset + sampleSizes[i]).position(offset);
+                listener.onSample(video, mdat.slice(), arrivalNanos);
+                offset += sampleSizes[i];
+                mdat.limit(mdat.capacity());
+            }
+            sampleCount = 0;
+        }
+
+        /**
+         * 从请求体读取length字节，分块传输时跨越分块边界
+         * @param atBoxStart 在box边界上，请求体在此结束时返回false
+         */
+        private boolean readBody(byte[] dst, int offset, int length, boolean atBoxStart) throws IOException {
+            int done = 0;
+            while (done < length) {
+                if (bodyRemaining == 0) {
+                    if (!chunked || bodyEnded) {
+                        if (atBoxStart && done == 0) {
+                            return false;
+                        }
+                        throw new IOException("请求体在box中间结束");
+                    }
+                    if (!nextChunk()) {
+                        if (atBoxStart && done == 0) {
+                            return false;
+                        }
+                        throw new IOException("请求体在box中间结束");
+                    }
+                    continue;
+                }
+                int read = input.read(dst, offset + done, (int) Math.min(length - done, bodyRemaining));
+                if (read < 0) {
+                    throw new EOFException("客户端关闭了连接");
+                }
+                done += read;
+                bodyRemaining -= read;
+                if (bodyRemaining == 0 && chunked) {
+                    readLine(); // 分块末尾的CRLF
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 读取下一个分块的长度行
+         * @return 遇到结束块时返回false
+         */
+        private boolean nextChunk() throws IOException {
+            String sizeLine = readLine();
+            int extension = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("分块大小无效: " + sizeLine);
+            }
+            if (size == 0) {
+                while (!readLine().isEmpty()) {
+                    // 跳过尾部头字段
+                }
+                bodyEnded = true;
+                return false;
+            }
+            bodyRemaining = size;
+            return true;
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+            while (true) {
+                int b = input.read();
+                if (b < 0) {
+                    throw new EOFException("客户端关闭了连接");
+                }
+                if (b == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    return line.toString();
+                }
+                if (line.length() >= MAX_LINE_LENGTH) {
+                    throw new IOException("请求行过长");
+                }
+                line.append((char) b);
+            }
+        }
+    }
+
+    /**
+     * 在parent的position之后查找下一个指定类型的子box，找到时parent的position移到其后
+     * @return 子box的内容，position为0；没有时返回null
+     */
+    private static ByteBuffer child(ByteBuffer parent, String type) {
+        int wanted = type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+        while (parent.remaining() >= 8) {
+            int start = parent.position();
+            int size = parent.getInt(start);
+            int boxType = parent.getInt(start + 4);
+            if (size < 8 || size > parent.remaining()) {
+                return null;
+            }
+            parent.position(start + size);
+            if (boxType == wanted) {
+                ByteBuffer box = parent.duplicate();
+                box.limit(start + size).position(start + 8);
+                return box.slice();
+            }
+        }
+        return null;
+    }
+}
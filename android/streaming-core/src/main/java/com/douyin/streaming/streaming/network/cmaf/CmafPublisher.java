@@ -0,0 +1,329 @@
+package com.douyin.streaming.streaming.network.cmaf;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.muxer.Fmp4Writer;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * CMAF分块上传发布器
+ * 每个GOP为一个媒体段，以关键帧开始一个HTTP分块传输编码的PUT请求，段内每帧为一个CMAF块 (moof + mdat)，
+ * 作为一个HTTP分块立即写出，不等段结束，服务器收到即可转发。初始化段在第一个关键帧前以单独的PUT上传，
+ * 解码配置变化时在下一个关键帧前重新上传。
+ * 分块头、moof和mdat头写入复用的直接缓冲区，帧数据以聚合写直接从帧池的缓冲区发送。
+ *
+ * 由发送线程依次调用，非线程安全
+ */
+public class CmafPublisher implements FramePublisher {
+    private static final String TAG = "CmafPublisher";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    private static final byte[] INIT_NAME = {'i', 'n', 'i', 't', '.', 'm', 'p', '4'};
+    private static final byte[] SEGMENT_SUFFIX = {'.', 'm', '4', 's'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final int INIT_SEGMENT_BASE_SIZE = 2048;
+    private static final int DEFAULT_FPS = 30;
+
+    private final CmafUploadConnection connection;
+    private final SendListener sendListener;
+    // 请求行和头中不变的部分
+    private final byte[] requestPrefix;
+    private final byte[] segmentHeaders;
+    private final byte[] initHeaders;
+    private final byte[] requestSuffix;
+    private final ByteBuffer header;
+    private final ByteBuffer trailer = ByteBuffer.allocateDirect(CRLF.length);
+    private final ByteBuffer[] srcs = new ByteBuffer[3];
+    private int reader;
+
+    private ByteBuffer videoConfig;
+    private ByteBuffer audioConfig;
+    private int audioSampleRate = -1;
+    private boolean initDirty;
+    private boolean segmentOpen;
+    private long segmentNumber;
+    private int chunkSequence;
+    private long baseDtsUs = -1;
+    private long lastVideoDtsUs = -1;
+    private int videoDuration = Fmp4Writer.VIDEO_TIMESCALE / DEFAULT_FPS;
+    private int width;
+    private int height;
+
+    public CmafPublisher(CmafUrl url, final ConnectionListener connectionListener, SendListener sendListener) {
+        this.connection = new CmafUploadConnection(url, connectionListener::onDisconnected);
+        this.sendListener = sendListener;
+        this.requestPrefix = ("PUT " + url.getPath() + "/").getBytes(ASCII);
+        String query = url.getQuery() != null ? "?" + url.getQuery() : "";
+        this.requestSuffix = (query + " HTTP/1.1\r\nHost: " + url.getHostHeader() + "\r\n").getBytes(ASCII);
+        this.segmentHeaders = "Content-Type: video/mp4\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(ASCII);
+        this.initHeaders = "Content-Type: video/mp4\r\nContent-Length: ".getBytes(ASCII);
+        // 结束块 + 请求行和头 + 分块长度行 + moof和mdat头，序号和长度各留20字节
+        this.header = ByteBuffer.allocateDirect(LAST_CHUNK.length + requestPrefix.length + 20 + SEGMENT_SUFFIX.length
+                + requestSuffix.length + segmentHeaders.length + 20 + Fmp4Writer.VIDEO_CHUNK_HEADER_SIZE);
+        trailer.put(CRLF).flip();
+    }
+
+    @Override
+    public void setFrameReader(int reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @see CmafUploadConnection#setPacer(TokenBucketPacer)
+     */
+    @Override
+    public void setPacer(TokenBucketPacer pacer) {
+        connection.setPacer(pacer);
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+        connection.connect(timeoutMs);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return connection.getBytesSent();
+    }
+
+    /**
+     * 请求结束到收到响应的时间，每段一个样本
+     */
+    @Override
+    public double getRttMs() {
+        return connection.getRttMs();
+    }
+
+    @Override
+    public double getMinRttMs() {
+        return connection.getMinRttMs();
+    }
+
+    /**
+     * 没有拥塞控制反馈，不可用
+     */
+    @Override
+    public int getEstimatedBitrateKbps() {
+        return -1;
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return 0;
+    }
+
+    @Override
+    public long getPacketsLost() {
+        return 0;
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return 0;
+    }
+
+    /**
+     * 不发送元数据，只记下初始化段需要的视频尺寸和帧率
+     */
+    @Override
+    public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                             int audioBitrate, int audioSampleRate, int audioChannels) {
+        this.width = width;
+        this.height = height;
+        if (fps > 0) {
+            videoDuration = Fmp4Writer.VIDEO_TIMESCALE / fps;
+        }
+    }
+
+    /**
+     * 暂停时结束当前段，使服务器收到完整的段；恢复后从关键帧开始新段
+     */
+    @Override
+    public void sendKeepAlive() throws IOException {
+        if (segmentOpen) {
+            header.clear();
+            header.put(LAST_CHUNK);
+            header.flip();
+            srcs[0] = header;
+            connection.write(srcs, 1);
+            connection.endRequest(System.nanoTime());
+            segmentOpen = false;
+        }
+    }
+
+    /**
+     * 发送一帧，配置帧缓存到下一个关键帧前的初始化段
+     * 调用方负责在返回后释放帧
+     */
+    @Override
+    public void sendFrame(MediaFrame frame) throws IOException {
+        if (frame.isConfig()) {
+            updateConfig(frame);
+            return;
+        }
+        boolean startSegment = frame.isVideo() && frame.isKeyFrame();
+        if (startSegment && videoConfig == null) {
+            StreamingLog.w(TAG, "缺少视频解码配置，丢弃关键帧");
+            return;
+        }
+        if (!segmentOpen && !startSegment) {
+            // 段只能从关键帧开始
+            return;
+        }
+        if (baseDtsUs < 0) {
+            baseDtsUs = frame.getDtsUs();
+        }
+        if (frame.getDtsUs() < baseDtsUs || (frame.isAudio() && audioSampleRate < 0)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long bytes = 0;
+        if (startSegment && initDirty) {
+            bytes += writeInitSegment();
+        }
+        header.clear();
+        if (startSegment) {
+            connection.checkPending();
+            // 上一段的结束块与新请求一起写出
+            if (segmentOpen) {
+                header.put(LAST_CHUNK);
+            }
+            header.put(requestPrefix);
+            putDecimal(header, segmentNumber++);
+            header.put(SEGMENT_SUFFIX);
+            header.put(requestSuffix);
+            header.put(segmentHeaders);
+        }
+
+        ByteBuffer data = frame.view(reader, 0);
+        int size = data.remaining();
+        if (frame.isVideo()) {
+            putChunkSize(header, Fmp4Writer.VIDEO_CHUNK_HEADER_SIZE + size);
+            if (lastVideoDtsUs >= 0 && frame.getDtsUs() > lastVideoDtsUs) {
+                videoDuration = (int) toVideoTime(frame.getDtsUs() - lastVideoDtsUs);
+            }
+            lastVideoDtsUs = frame.getDtsUs();
+            Fmp4Writer.writeVideoChunkHeader(header, ++chunkSequence, toVideoTime(frame.getDtsUs() - baseDtsUs),
+                    videoDuration, size, frame.isKeyFrame(), (int) toVideoTime(frame.getPtsUs() - frame.getDtsUs()));
+        } else {
+            putChunkSize(header, Fmp4Writer.AUDIO_CHUNK_HEADER_SIZE + size);
+            Fmp4Writer.writeAudioChunkHeader(header, ++chunkSequence,
+                    (frame.getDtsUs() - baseDtsUs) * audioSampleRate / 1000000L, size);
+        }
+        header.flip();
+        trailer.rewind();
+        srcs[0] = header;
+        srcs[1] = data;
+        srcs[2] = trailer;
+        bytes += connection.write(srcs, 3);
+        if (startSegment) {
+            if (segmentOpen) {
+                connection.endRequest(System.nanoTime());
+            }
+            segmentOpen = true;
+        }
+        if (sendListener != null) {
+            sendListener.onPacketSent(frame, bytes, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * 解码配置变化时记下，在下一个关键帧前重新上传初始化段
+     */
+    private void updateConfig(MediaFrame frame) {
+        ByteBuffer data = frame.view(reader, 0);
+        ByteBuffer current = frame.isVideo() ? videoConfig : audioConfig;
+        if (current != null && current.equals(data)) {
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data).flip();
+        if (frame.isVideo()) {
+            videoConfig = copy;
+        } else {
+            int sampleRate = Fmp4Writer.aacSampleRate(copy);
+            if (sampleRate < 0) {
+                StreamingLog.w(TAG, "不支持的音频配置，不上传音频");
+                return;
+            }
+            audioConfig = copy;
+        }
+        initDirty = true;
+    }
+
+    /**
+     * 结束上一段并以Content-Length上传初始化段，音频采样率随之生效
+     */
+    private long writeInitSegment() throws IOException {
+        connection.checkPending();
+        int configSize = videoConfig.remaining() + (audioConfig != null ? audioConfig.remaining() : 0);
+        ByteBuffer body = ByteBuffer.allocate(INIT_SEGMENT_BASE_SIZE + configSize);
+        Fmp4Writer.writeInitSegment(body, videoConfig, width, height, audioConfig);
+        body.flip();
+        if (audioConfig != null) {
+            audioSampleRate = Fmp4Writer.aacSampleRate(audioConfig);
+        }
+
+        header.clear();
+        if (segmentOpen) {
+            header.put(LAST_CHUNK);
+        }
+        header.put(requestPrefix);
+        header.put(INIT_NAME);
+        header.put(requestSuffix);
+        header.put(initHeaders);
+        putDecimal(header, body.remaining());
+        header.put(CRLF).put(CRLF);
+        header.flip();
+        srcs[0] = header;
+        srcs[1] = body;
+        long written = connection.write(srcs, 2);
+        long now = System.nanoTime();
+        if (segmentOpen) {
+            connection.endRequest(now);
+            segmentOpen = false;
+        }
+        connection.endRequest(now);
+        initDirty = false;
+        StreamingLog.d(TAG, "已上传初始化段，" + body.limit() + "字节");
+        return written;
+    }
+
+    private long toVideoTime(long us) {
+        return us * Fmp4Writer.VIDEO_TIMESCALE / 1000000L;
+    }
+
+    /**
+     * HTTP分块的长度行
+     */
+    private static void putChunkSize(ByteBuffer dst, int size) {
+        int shift = 28;
+        while (shift > 0 && (size >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            dst.put(HEX[(size >>> shift) & 0xF]);
+        }
+        dst.put(CRLF);
+    }
+
+    private static void putDecimal(ByteBuffer dst, long value) {
+        if (value >= 10) {
+            putDecimal(dst, value / 10);
+        }
+        dst.put((byte) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,321 @@
+package com.douyin.streaming.streaming.network.cmaf;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * CMAF上传的HTTP/1.1持久连接
+ * 发送线程依次写出请求，不等待响应即开始下一个请求，接收线程按顺序读取响应，非2xx或服务器关闭连接时回调断开。
+ * 明文连接以SocketChannel聚合写直接发送调用方的缓冲区；HTTPS经SSLSocket发送，数据经复用的数组拷贝一次。
+ * 请求结束到收到响应的时间作为往返时延，包含服务器处理时间和发送缓冲区中的排队时间。
+ */
+final class CmafUploadConnection implements Closeable {
+    private static final String TAG = "CmafUpload";
+
+    // 未收到响应的请求数上限，超过时认为服务器已不响应
+    private static final int MAX_PENDING_REQUESTS = 4;
+    private static final int TLS_COPY_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * 连接事件，在接收线程上回调
+     */
+    interface Listener {
+        void onDisconnected(IOException e);
+    }
+
+    private final CmafUrl url;
+    private final Listener listener;
+    private final long[] requestEndNanos = new long[MAX_PENDING_REQUESTS];
+    private final StringBuilder line = new StringBuilder();
+
+    private SocketChannel channel;
+    private SSLSocket tlsSocket;
+    private OutputStream tlsOutput;
+    private byte[] copyBuffer;
+    private InputStream input;
+    private TokenBucketPacer pacer;
+    private Thread readerThread;
+    private volatile boolean closed;
+
+    // 已结束的请求数只在发送线程上修改，已收到的响应数只在接收线程上修改
+    private volatile int requestsEnded;
+    private volatile int responsesReceived;
+    private volatile long bytesSent;
+    private double smoothedRttMs = -1;
+    private double minRttMs = -1;
+
+    CmafUploadConnection(CmafUrl url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    void connect(int timeoutMs) throws IOException {
+        try {
+            InetSocketAddress address = new InetSocketAddress(url.getHost(), url.getPort());
+            if (url.isSecure()) {
+                Socket plain = new Socket();
+                plain.setTcpNoDelay(true);
+                plain.connect(address, timeoutMs);
+                tlsSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(plain, url.getHost(), url.getPort(), true);
+                tlsSocket.setSoTimeout(timeoutMs);
+                tlsSocket.startHandshake();
+                tlsSocket.setSoTimeout(0);
+                tlsOutput = tlsSocket.getOutputStream();
+                copyBuffer = new byte[TLS_COPY_BUFFER_SIZE];
+                input = new BufferedInputStream(tlsSocket.getInputStream());
+            } else {
+                channel = SocketChannel.open();
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().connect(address, timeoutMs);
+                input = new BufferedInputStream(channel.socket().getInputStream());
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        readerThread = new Thread(this::readLoop, "CmafUploadReader");
+        readerThread.start();
+        StreamingLog.i(TAG, "CMAF上传连接已建立: " + url);
+    }
+
+    /**
+     * 设置写出的节拍，连接前在发送线程上调用，为null时不限速
+     */
+    void setPacer(TokenBucketPacer pacer) {
+        this.pacer = pacer;
+    }
+
+    /**
+     * 开始新请求前调用，等待响应的请求过多时抛出异常
+     */
+    void checkPending() throws IOException {
+        if (requestsEnded - responsesReceived >= MAX_PENDING_REQUESTS) {
+            throw new IOException("服务器未响应上传请求");
+        }
+    }
+
+    /**
+     * 依次写出srcs[0..count)，全部写出后返回
+     * @return 写出的字节数
+     */
+    long write(ByteBuffer[] srcs, int count) throws IOException {
+        long written = 0;
+        if (channel != null) {
+            int first = 0;
+            while (first < count) {
+                written += pacer != null ? pacer.write(channel, srcs, first, count - first)
+                        : channel.write(srcs, first, count - first);
+                while (first < count && !srcs[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                ByteBuffer src = srcs[i];
+                while (src.hasRemaining()) {
+                    int length = Math.min(src.remaining(), copyBuffer.length);
+                    if (pacer != null) {
+                        length = pacer.acquire(length);
+                    }
+                    src.get(copyBuffer, 0, length);
+                    tlsOutput.write(copyBuffer, 0, length);
+                    if (pacer != null) {
+                        pacer.onSent(length);
+                    }
+                    written += length;
+                }
+            }
+            tlsOutput.flush();
+        }
+        bytesSent += written;
+        return written;
+    }
+
+    /**
+     * 一个请求已完整写出，开始等待其响应
+     */
+    void endRequest(long nowNanos) {
+        requestEndNanos[requestsEnded % MAX_PENDING_REQUESTS] = nowNanos;
+        requestsEnded++;
+    }
+
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    synchronized double getRttMs() {
+        return smoothedRttMs;
+    }
+
+    synchronized double getMinRttMs() {
+        return minRttMs;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (tlsSocket != null) {
+                tlsSocket.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭CMAF上传连接失败", e);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                readResponse();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                StreamingLog.e(TAG, "CMAF上传连接断开", e);
+                listener.onDisconnected(e);
+            }
+        }
+    }
+
+    /**
+     * 读取一个响应并跳过响应体，1xx临时响应不计数
+     */
+    private void readResponse() throws IOException {
+        String status = readLine();
+        int code = parseStatusCode(status);
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean connectionClose = false;
+        String header;
+        while (!(header = readLine()).isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = header.substring(0, colon).trim();
+            String value = header.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.toLowerCase().contains("chunked");
+            } else if (name.equalsIgnoreCase("Connection")) {
+                connectionClose = value.equalsIgnoreCase("close");
+            }
+        }
+        if (code < 200) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (chunked) {
+            skipChunkedBody();
+        } else if (contentLength > 0) {
+            skip(contentLength);
+        }
+
+        int index = responsesReceived;
+        if (index < requestsEnded) {
+            updateRtt((now - requestEndNanos[index % MAX_PENDING_REQUESTS]) / 1000000.0);
+        }
+        responsesReceived = index + 1;
+        if (code >= 300) {
+            throw new IOException("服务器拒绝上传: " + status);
+        }
+        if (connectionClose) {
+            throw new EOFException("服务器关闭了上传连接");
+        }
+    }
+
+    private void skipChunkedBody() throws IOException {
+        while (true) {
+            String sizeLine = readLine();
+            int extension = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("响应分块大小无效: " + sizeLine);
+            }
+            if (size == 0) {
+                // 跳过尾部头字段
+                while (!readLine().isEmpty()) {
+                    // 忽略
+                }
+                return;
+            }
+            skip(size);
+            readLine();
+        }
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = input.skip(bytes);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("服务器关闭了上传连接");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException("服务器关闭了上传连接");
+            }
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("响应行过长");
+            }
+            line.append((char) b);
+        }
+    }
+
+    private static int parseStatusCode(String status) throws IOException {
+        // HTTP/1.1 200 OK
+        if (!status.startsWith("HTTP/") || status.length() < 12) {
+            throw new IOException("无效的HTTP响应: " + status);
+        }
+        try {
+            return Integer.parseInt(status.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new IOException("无效的HTTP响应: " + status);
+        }
+    }
+
+    private synchronized void updateRtt(double rttMs) {
+        smoothedRttMs = smoothedRttMs < 0 ? rttMs : smoothedRttMs * 0.875 + rttMs * 0.125;
+        minRttMs = minRttMs < 0 ? rttMs : Math.min(minRttMs, rttMs);
+    }
+}
@@ -0,0 +1,103 @@
+package com.douyin.streaming.streaming.network.cmaf;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * CMAF分块上传地址
+ * 格式: http(s)://host[:port]/path[?query]，推流码作为最后一级路径拼接在后面；
+ * 初始化段上传到{path}/init.mp4，媒体段上传到{path}/{序号}.m4s，查询参数 (如鉴权令牌) 附在每个上传请求上
+ */
+public final class CmafUrl implements FramePublisher.Endpoint {
+    private final boolean secure;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final String query;
+
+    private CmafUrl(boolean secure, String host, int port, String path, String query) {
+        this.secure = secure;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.query = query;
+    }
+
+    public static boolean isSupported(String url) {
+        try {
+            parse(url, null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param streamKey 推流码，为null或空时地址已完整
+     */
+    public static CmafUrl parse(String url, String streamKey) {
+        if (url == null || !(url.regionMatches(true, 0, "http://", 0, 7)
+                || url.regionMatches(true, 0, "https://", 0, 8))) {
+            throw new IllegalArgumentException("不支持的推流地址: " + url);
+        }
+        URL parsed;
+        try {
+            parsed = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("CMAF上传地址无效: " + url);
+        }
+        if (parsed.getHost() == null || parsed.getHost().isEmpty()) {
+            throw new IllegalArgumentException("CMAF上传地址缺少主机名: " + url);
+        }
+        String path = parsed.getPath();
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (streamKey != null && !streamKey.isEmpty()) {
+            path = path + "/" + streamKey;
+        }
+        boolean secure = "https".equalsIgnoreCase(parsed.getProtocol());
+        int port = parsed.getPort() > 0 ? parsed.getPort() : parsed.getDefaultPort();
+        return new CmafUrl(secure, parsed.getHost(), port, path, parsed.getQuery());
+    }
+
+    public boolean isSecure() { return secure; }
+
+    public String getHost() { return host; }
+
+    public int getPort() { return port; }
+
+    /**
+     * 上传目录，不以/结尾，可能为空串
+     */
+    public String getPath() { return path; }
+
+    /**
+     * 查询参数，不含?，没有时为null
+     */
+    public String getQuery() { return query; }
+
+    /**
+     * Host请求头，端口为默认端口时省略
+     */
+    String getHostHeader() {
+        String address = host.indexOf(':') >= 0 ? "[" + host + "]" : host;
+        return port == (secure ? 443 : 80) ? address : address + ":" + port;
+    }
+
+    @Override
+    public FramePublisher create(FramePublisher.ConnectionListener connectionListener,
+                                 FramePublisher.SendListener sendListener) {
+        return new CmafPublisher(this, connectionListener, sendListener);
+    }
+
+    /**
+     * 不含查询参数，避免在日志中输出令牌
+     */
+    @Override
+    public String toString() {
+        return (secure ? "https://" : "http://") + getHostHeader() + path;
+    }
+}
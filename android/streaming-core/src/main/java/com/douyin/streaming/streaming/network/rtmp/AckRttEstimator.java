@@ -0,0 +1,87 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+/**
+ * 基于RTMP Acknowledgement估算往返时延
+ * 发送时按字节进度记录时间点，服务器回复已接收字节数后，取写出这些字节的时间计算时延。
+ * 结果包含套接字发送缓冲区中的排队时间，能反映上行拥塞。
+ */
+final class AckRttEstimator {
+    // 每写出该字节数记录一个时间点
+    private static final long SAMPLE_INTERVAL_BYTES = 16 * 1024;
+    private static final int MAX_SAMPLES = 64;
+
+    private final long[] sampleBytes = new long[MAX_SAMPLES];
+    private final long[] sampleNanos = new long[MAX_SAMPLES];
+    private int first;
+    private int count;
+    private long nextSampleBytes;
+
+    private double smoothedRttMs = -1;
+    private double minRttMs = -1;
+
+    /**
+     * 写出数据后调用
+     * @param totalBytesSent 累计已写出字节数
+     */
+    synchronized void onSent(long totalBytesSent, long nowNanos) {
+        if (totalBytesSent < nextSampleBytes) {
+            return;
+        }
+        nextSampleBytes = totalBytesSent + SAMPLE_INTERVAL_BYTES;
+        if (count == MAX_SAMPLES) {
+            first = (first + 1) % MAX_SAMPLES;
+            count--;
+        }
+        int index = (first + count) % MAX_SAMPLES;
+        sampleBytes[index] = totalBytesSent;
+        sampleNanos[index] = nowNanos;
+        count++;
+    }
+
+    /**
+     * 收到服务器Acknowledgement时调用
+     * @param sequenceNumber 服务器已接收字节数的低32位
+     */
+    synchronized void onAcknowledgement(long sequenceNumber, long nowNanos) {
+        while (count > 0) {
+            long sent = sampleBytes[first];
+            // 序列号只有32位，按最近的写出进度展开
+            long acked = (sent & ~0xFFFFFFFFL) | (sequenceNumber & 0xFFFFFFFFL);
+            if (acked > sent + 0x80000000L) {
+                acked -= 0x100000000L;
+            } else if (acked < sent - 0x80000000L) {
+                acked += 0x100000000L;
+            }
+            if (sent > acked) {
+                return;
+            }
+            long nanos = sampleNanos[first];
+            first = (first + 1) % MAX_SAMPLES;
+            count--;
+            // 取最后一个已被确认的时间点
+            if (count == 0 || sampleBytes[first] > acked) {
+                update((nowNanos - nanos) / 1000000.0);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 平滑后的往返时延 (毫秒)，尚无样本时返回-1
+     */
+    synchronized double getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    /**
+     * 会话内观测到的最小往返时延 (毫秒)，尚无样本时返回-1
+     */
+    synchronized double getMinRttMs() {
+        return minRttMs;
+    }
+
+    private void update(double rttMs) {
+        smoothedRttMs = smoothedRttMs < 0 ? rttMs : smoothedRttMs * 0.875 + rttMs * 0.125;
+        minRttMs = minRttMs < 0 ? rttMs : Math.min(minRttMs, rttMs);
+    }
+}
@@ -0,0 +1,136 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import com.douyin.streaming.streaming.muxer.Amf0;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推流前的上行带宽探测
+ * 与推流服务器完成握手和connect后，不创建流，在消息流0上连续写出填充数据消息，
+ * 以服务器Acknowledgement确认的字节数和时间计算实际到达速率。
+ * 服务器不回复确认时没有结果：写出速率只反映套接字缓冲区填满的速度，在慢速上行上可能高出数倍，不能作为带宽。
+ * 探测数据是服务器未请求的消息，部分服务器会拒绝或断开，由StreamingConfig.isEnableBandwidthProbe()开启，默认关闭。
+ */
+public class RtmpBandwidthProbe {
+    private static final String TAG = "RtmpBandwidthProbe";
+    // 服务器找不到处理函数的数据消息会被忽略
+    private static final String PROBE_MESSAGE = "onBandwidthProbe";
+    private static final int MESSAGE_SIZE = 8 * 1024;
+    private static final long ACK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final long ACK_POLL_MILLIS = 10;
+    // 确认字节数不足时结果不可信
+    private static final long MIN_ACKED_BYTES = 64 * 1024;
+
+    /**
+     * 探测结果
+     */
+    public static final class Result {
+        private final int kbps;
+        private final long bytesSent;
+        private final long durationMs;
+        private final boolean acknowledged;
+
+        Result(int kbps, long bytesSent, long durationMs, boolean acknowledged) {
+            this.kbps = kbps;
+            this.bytesSent = bytesSent;
+            this.durationMs = durationMs;
+            this.acknowledged = acknowledged;
+        }
+
+        /**
+         * 服务器确认的上行带宽 (kbps)，没有确认时为-1
+         */
+        public int getKbps() { return kbps; }
+
+        public long getBytesSent() { return bytesSent; }
+
+        public long getDurationMs() { return durationMs; }
+
+        /**
+         * 服务器是否确认了足够的数据，false时没有带宽结果，不应据此调整参数
+         */
+        public boolean isAcknowledged() { return acknowledged; }
+    }
+
+    private final RtmpUrl url;
+    private final int timeoutMs;
+    private final int durationMs;
+    private final long maxBytes;
+
+    /**
+     * @param timeoutMs 建连超时
+     * @param durationMs 写出填充数据的最长时间
+     * @param maxKbps 探测上限，达到该速率对应的数据量后提前结束
+     */
+    public RtmpBandwidthProbe(RtmpUrl url, int timeoutMs, int durationMs, int maxKbps) {
+        this.url = url;
+        this.timeoutMs = timeoutMs;
+        this.durationMs = durationMs;
+        this.maxBytes = (long) maxKbps * durationMs / 8;
+    }
+
+    public Result run() throws IOException {
+        RtmpConnection connection = new RtmpConnection(url, e -> { });
+        try {
+            connection.connectWithoutPublish(timeoutMs);
+            ByteBuffer body = buildMessage();
+
+            long startBytes = connection.getBytesSent();
+            long startNanos = System.nanoTime();
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMs);
+            while (connection.getBytesSent() - startBytes < maxBytes && System.nanoTime() < deadlineNanos) {
+                body.clear();
+                connection.writeData(body);
+            }
+            long endBytes = connection.getBytesSent();
+            long writeNanos = System.nanoTime() - startNanos;
+
+            // 服务器每收到一个确认窗口回复一次，等待覆盖最后一个完整窗口的确认
+            long lastWindowBytes = endBytes - (endBytes - startBytes) % RtmpConnection.OUT_WINDOW_ACK_SIZE;
+            long waitDeadline = System.nanoTime() + ACK_WAIT_NANOS;
+            while (connection.getBytesAcknowledged() < lastWindowBytes && System.nanoTime() < waitDeadline) {
+                try {
+                    Thread.sleep(ACK_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("带宽探测被中断");
+                }
+            }
+
+            long sent = endBytes - startBytes;
+            long acked = connection.getBytesAcknowledged() - startBytes;
+            if (acked < MIN_ACKED_BYTES) {
+                StreamingLog.w(TAG, String.format("上行带宽探测: 写出%dKB, 耗时%dms, 服务器确认%dKB，无结果",
+                        sent / 1024, TimeUnit.NANOSECONDS.toMillis(writeNanos), Math.max(0, acked) / 1024));
+                return new Result(-1, sent, TimeUnit.NANOSECONDS.toMillis(writeNanos), false);
+            }
+            long ackNanos = Math.max(1, connection.getLastAckNanos() - startNanos);
+            Result result = new Result(toKbps(acked, ackNanos), sent, TimeUnit.NANOSECONDS.toMillis(ackNanos), true);
+            StreamingLog.i(TAG, String.format("上行带宽探测: %dkbps, 写出%dKB, 服务器确认%dKB, 耗时%dms",
+                    result.getKbps(), sent / 1024, acked / 1024, result.getDurationMs()));
+            return result;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static ByteBuffer buildMessage() {
+        ByteBuffer body = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+        Amf0.writeString(body, PROBE_MESSAGE);
+        // 剩余空间填充为长字符串
+        body.put((byte) Amf0.TYPE_LONG_STRING);
+        body.putInt(body.remaining() - 4);
+        while (body.hasRemaining()) {
+            body.put((byte) 0);
+        }
+        return body;
+    }
+
+    private static int toKbps(long bytes, long nanos) {
+        return (int) (bytes * 8 * 1000000L / Math.max(1, nanos));
+    }
+}
@@ -0,0 +1,183 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RTMP消息分块读取
+ * 推流端只接收服务器的控制消息和命令响应，数据量很小，这里按消息分配缓冲区
+ */
+final class RtmpChunkReader {
+    private static final int EXTENDED_TIMESTAMP = 0xFFFFFF;
+
+    /**
+     * 数据来源，至少读入1字节，连接关闭时返回-1
+     */
+    interface Source {
+        int read(ByteBuffer dst) throws IOException;
+    }
+
+    static final class Message {
+        final int type;
+        final int streamId;
+        final int timestamp;
+        final ByteBuffer payload;
+
+        Message(int type, int streamId, int timestamp, ByteBuffer payload) {
+            this.type = type;
+            this.streamId = streamId;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+    }
+
+    private static final class ChunkStream {
+        int timestamp;
+        int delta;
+        int length;
+        int type;
+        int streamId;
+        boolean extended;
+        ByteBuffer payload;
+    }
+
+    private final ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+    private final Map<Integer, ChunkStream> streams = new HashMap<>();
+    private int chunkSize = RtmpChunkWriter.DEFAULT_CHUNK_SIZE;
+    private long bytesReceived;
+
+    RtmpChunkReader() {
+        in.flip();
+    }
+
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 已接收的总字节数，用于发送Acknowledgement
+     */
+    long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * 读取下一条完整消息
+     */
+    Message readMessage(Source source) throws IOException {
+        while (true) {
+            Message message = readChunk(source);
+            if (message != null) {
+                return message;
+            }
+        }
+    }
+
+    private Message readChunk(Source source) throws IOException {
+        int b0 = readByte(source);
+        int fmt = b0 >>> 6;
+        int csid = b0 & 0x3F;
+        if (csid == 0) {
+            csid = 64 + readByte(source);
+        } else if (csid == 1) {
+            csid = 64 + readByte(source) + (readByte(source) << 8);
+        }
+
+        ChunkStream stream = streams.get(csid);
+        if (stream == null) {
+            if (fmt != 0) {
+                throw new IOException("块流" + csid + "缺少fmt0块头");
+            }
+            stream = new ChunkStream();
+            streams.put(csid, stream);
+        }
+
+        if (fmt <= 2) {
+            int time = readInt24(source);
+            if (fmt <= 1) {
+                stream.length = readInt24(source);
+                stream.type = readByte(source);
+            }
+            if (fmt == 0) {
+                stream.streamId = readByte(source) | readByte(source) << 8
+                        | readByte(source) << 16 | readByte(source) << 24;
+            }
+            stream.extended = time == EXTENDED_TIMESTAMP;
+            if (stream.extended) {
+                time = readInt32(source);
+            }
+            if (fmt == 0) {
+                stream.timestamp = time;
+                stream.delta = 0;
+            } else {
+                stream.delta = time;
+                stream.timestamp += time;
+            }
+        } else {
+            if (stream.extended) {
+                readInt32(source);
+            }
+            if (stream.payload == null) {
+                stream.timestamp += stream.delta;
+            }
+        }
+
+        if (stream.payload == null) {
+            stream.payload = ByteBuffer.allocate(stream.length);
+        }
+        ByteBuffer payload = stream.payload;
+        int n = Math.min(chunkSize, payload.remaining());
+        while (n > 0) {
+            ensure(source, 1);
+            int copy = Math.min(n, in.remaining());
+            int limit = in.limit();
+            in.limit(in.position() + copy);
+            payload.put(in);
+            in.limit(limit);
+            n -= copy;
+        }
+
+        if (payload.hasRemaining()) {
+            return null;
+        }
+        stream.payload = null;
+        payload.flip();
+        return new Message(stream.type, stream.streamId, stream.timestamp, payload);
+    }
+
+    private int readByte(Source source) throws IOException {
+        ensure(source, 1);
+        return in.get() & 0xFF;
+    }
+
+    private int readInt24(Source source) throws IOException {
+        ensure(source, 3);
+        return (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 8 | (in.get() & 0xFF);
+    }
+
+    private int readInt32(Source source) throws IOException {
+        ensure(source, 4);
+        return in.getInt();
+    }
+
+    private void ensure(Source source, int count) throws IOException {
+        if (in.remaining() >= count) {
+            return;
+        }
+        in.compact();
+        try {
+            while (in.position() < count) {
+                int read = source.read(in);
+                if (read < 0) {
+                    throw new EOFException("RTMP连接已关闭");
+                }
+                bytesReceived += read;
+            }
+        } finally {
+            in.flip();
+        }
+    }
+}
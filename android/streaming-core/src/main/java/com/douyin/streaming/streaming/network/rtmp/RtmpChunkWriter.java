@@ -0,0 +1,198 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RTMP消息分块写入
+ * 每条消息组装成 [块头, 前缀, 数据片段, 块头, 数据片段...] 的缓冲区数组，以一次聚合写发出，
+ * 帧数据通过MediaFrame视图引用，不做拷贝。块头写在预分配的直接内存中，稳态下不分配内存。
+ *
+ * 非线程安全，由RtmpConnection在写锁内调用
+ */
+final class RtmpChunkWriter {
+    static final int DEFAULT_CHUNK_SIZE = 128;
+
+    // fmt0基本头1字节 + 消息头11字节 + 扩展时间戳4字节
+    private static final int MAX_CHUNK_HEADER_SIZE = 16;
+    private static final int MAX_CSID = 64;
+    private static final int EXTENDED_TIMESTAMP = 0xFFFFFF;
+    private static final int NO_EXTENDED_TIMESTAMP = -1;
+
+    /**
+     * 聚合写出目标，语义同GatheringByteChannel.write
+     */
+    interface Output {
+        long write(ByteBuffer[] srcs, int offset, int length) throws IOException;
+    }
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    // 取帧视图时使用的读取方编号，多个连接并发发送同一帧时各不相同
+    private int frameReader;
+
+    // 按块流ID记录上一条消息的头信息，用于块头压缩
+    private final boolean[] started = new boolean[MAX_CSID];
+    private final int[] lastTimestamp = new int[MAX_CSID];
+    private final int[] lastLength = new int[MAX_CSID];
+    private final int[] lastType = new int[MAX_CSID];
+    private final int[] lastStreamId = new int[MAX_CSID];
+
+    private ByteBuffer headers;
+    private ByteBuffer[] headerViews = new ByteBuffer[0];
+    private ByteBuffer[] iov = new ByteBuffer[0];
+    private int iovCount;
+
+    RtmpChunkWriter() {
+        ensureChunkCapacity(8);
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    void setFrameReader(int frameReader) {
+        this.frameReader = frameReader;
+    }
+
+    /**
+     * 写入一条消息
+     * @param prefix 消息体前缀（如FLV标签头），可为null，长度须小于块大小
+     * @param frame 帧数据，与body二选一
+     * @param body 普通消息体，与frame二选一，写出后position和limit会被修改
+     * @return 写出的字节数（含块头）
+     */
+    long write(Output output, int csid, int type, int streamId, int timestamp,
+               ByteBuffer prefix, MediaFrame frame, ByteBuffer body) throws IOException {
+        build(csid, type, streamId, timestamp, prefix, frame, body);
+        long total = 0;
+        int offset = 0;
+        while (offset < iovCount) {
+            total += output.write(iov, offset, iovCount - offset);
+            while (offset < iovCount && !iov[offset].hasRemaining()) {
+                iov[offset] = null;
+                offset++;
+            }
+        }
+        return total;
+    }
+
+    private void build(int csid, int type, int streamId, int timestamp,
+                       ByteBuffer prefix, MediaFrame frame, ByteBuffer body) {
+        int prefixLength = prefix != null ? prefix.remaining() : 0;
+        int bodyLength = frame != null ? frame.size() : body.remaining();
+        int length = prefixLength + bodyLength;
+        int chunkCount = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        ensureChunkCapacity(chunkCount);
+
+        headers.clear();
+        iovCount = 0;
+        int extendedTime = writeFirstHeader(csid, type, streamId, timestamp, length);
+        int bodyStart = body != null ? body.position() : 0;
+        int bodyOffset = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            if (chunk > 0) {
+                int headerStart = headers.position();
+                headers.put((byte) (0xC0 | csid));
+                if (extendedTime != NO_EXTENDED_TIMESTAMP) {
+                    headers.putInt(extendedTime);
+                }
+                addHeader(chunk, headerStart);
+            }
+
+            int room = chunkSize;
+            if (chunk == 0 && prefixLength > 0) {
+                iov[iovCount++] = prefix;
+                room -= prefixLength;
+            }
+            int n = Math.min(room, bodyLength - bodyOffset);
+            if (n > 0) {
+                ByteBuffer slice = frame != null ? frame.view(frameReader, chunk) : bodyView(body, chunk);
+                slice.limit(bodyStart + bodyOffset + n);
+                slice.position(bodyStart + bodyOffset);
+                iov[iovCount++] = slice;
+                bodyOffset += n;
+            }
+        }
+    }
+
+    /**
+     * 写入第一个块的块头，按与上一条消息的差异选择fmt0/1/2
+     * @return 扩展时间戳，后续块需重复写入；不使用扩展时间戳时返回NO_EXTENDED_TIMESTAMP
+     */
+    private int writeFirstHeader(int csid, int type, int streamId, int timestamp, int length) {
+        int fmt;
+        int time;
+        if (!started[csid] || streamId != lastStreamId[csid] || timestamp < lastTimestamp[csid]) {
+            fmt = 0;
+            time = timestamp;
+        } else if (length != lastLength[csid] || type != lastType[csid]) {
+            fmt = 1;
+            time = timestamp - lastTimestamp[csid];
+        } else {
+            fmt = 2;
+            time = timestamp - lastTimestamp[csid];
+        }
+        started[csid] = true;
+        lastTimestamp[csid] = timestamp;
+        lastLength[csid] = length;
+        lastType[csid] = type;
+        lastStreamId[csid] = streamId;
+
+        boolean extended = (time & 0xFFFFFFFFL) >= EXTENDED_TIMESTAMP;
+        headers.put((byte) (fmt << 6 | csid));
+        writeInt24(headers, extended ? EXTENDED_TIMESTAMP : time);
+        if (fmt <= 1) {
+            writeInt24(headers, length);
+            headers.put((byte) type);
+        }
+        if (fmt == 0) {
+            // 消息流ID为小端序
+            headers.put((byte) streamId);
+            headers.put((byte) (streamId >>> 8));
+            headers.put((byte) (streamId >>> 16));
+            headers.put((byte) (streamId >>> 24));
+        }
+        if (extended) {
+            headers.putInt(time);
+        }
+        addHeader(0, 0);
+        return extended ? time : NO_EXTENDED_TIMESTAMP;
+    }
+
+    private void addHeader(int chunk, int headerStart) {
+        ByteBuffer view = headerViews[chunk];
+        view.limit(headers.position());
+        view.position(headerStart);
+        iov[iovCount++] = view;
+    }
+
+    private ByteBuffer bodyView(ByteBuffer body, int chunk) {
+        return chunk == 0 ? body : body.duplicate();
+    }
+
+    private void ensureChunkCapacity(int chunkCount) {
+        if (chunkCount <= headerViews.length) {
+            return;
+        }
+        int count = Math.max(chunkCount, headerViews.length * 2);
+        headers = ByteBuffer.allocateDirect(count * MAX_CHUNK_HEADER_SIZE);
+        headerViews = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            headerViews[i] = headers.duplicate();
+        }
+        // 每块最多: 块头 + 前缀 + 数据片段
+        iov = new ByteBuffer[count * 3];
+    }
+
+    private static void writeInt24(ByteBuffer dst, int value) {
+        dst.put((byte) (value >>> 16));
+        dst.put((byte) (value >>> 8));
+        dst.put((byte) value);
+    }
+}
@@ -0,0 +1,560 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+import com.douyin.streaming.streaming.muxer.Amf0;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * RTMP推流连接
+ * 建连阶段（TCP连接、握手、connect/createStream/publish）使用非阻塞模式，整体受超时限制；
+ * 发布成功后切换为阻塞模式，由发送线程直接写入，接收线程处理服务器的控制消息。
+ */
+public class RtmpConnection implements Closeable {
+    private static final String TAG = "RtmpConnection";
+
+    static final int MSG_SET_CHUNK_SIZE = 1;
+    static final int MSG_ACKNOWLEDGEMENT = 3;
+    static final int MSG_USER_CONTROL = 4;
+    static final int MSG_WINDOW_ACK_SIZE = 5;
+    static final int MSG_SET_PEER_BANDWIDTH = 6;
+    static final int MSG_AUDIO = 8;
+    static final int MSG_VIDEO = 9;
+    static final int MSG_DATA_AMF0 = 18;
+    static final int MSG_COMMAND_AMF0 = 20;
+
+    private static final int CSID_CONTROL = 2;
+    private static final int CSID_COMMAND = 3;
+    private static final int CSID_AUDIO = 4;
+    private static final int CSID_DATA = 5;
+    private static final int CSID_VIDEO = 6;
+
+    private static final int USER_CONTROL_PING_REQUEST = 6;
+    private static final int USER_CONTROL_PING_RESPONSE = 7;
+
+    private static final int HANDSHAKE_SIZE = 1536;
+    private static final int RTMP_VERSION = 3;
+    private static final int OUT_CHUNK_SIZE = 4096;
+    // 窗口较小使服务器频繁回复Acknowledgement，用于估算往返时延
+    static final int OUT_WINDOW_ACK_SIZE = 128 * 1024;
+
+    private static final int TXN_CONNECT = 1;
+    private static final int TXN_RELEASE_STREAM = 2;
+    private static final int TXN_FC_PUBLISH = 3;
+    private static final int TXN_CREATE_STREAM = 4;
+    private static final int TXN_PUBLISH = 5;
+
+    /**
+     * 连接事件，在接收线程上回调
+     */
+    public interface Listener {
+        /**
+         * 发布后连接断开或服务器报错
+         */
+        void onDisconnected(IOException e);
+    }
+
+    private final RtmpUrl url;
+    private final Listener listener;
+    private final Object writeLock = new Object();
+    private final RtmpChunkWriter chunkWriter = new RtmpChunkWriter();
+    private final RtmpChunkReader chunkReader = new RtmpChunkReader();
+    private final ByteBuffer commandBuffer = ByteBuffer.allocate(4096);
+    private final ByteBuffer controlBuffer = ByteBuffer.allocate(16);
+    private final AckRttEstimator rttEstimator = new AckRttEstimator();
+
+    private SocketChannel channel;
+    private TokenBucketPacer pacer;
+    private Selector selector;
+    private SelectionKey selectionKey;
+    private long setupDeadlineNanos;
+    private Thread readerThread;
+    private int streamId;
+    private long peerWindowSize;
+    private long lastAckSent;
+    private volatile long bytesSent;
+    private volatile long lastAckSequence = -1;
+    private volatile long lastAckNanos;
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+    // 建连阶段的非阻塞读写，等待就绪时受整体超时限制
+    private final RtmpChunkWriter.Output setupOutput = (srcs, offset, length) -> {
+        long written = channel.write(srcs, offset, length);
+        if (written == 0) {
+            awaitReady(SelectionKey.OP_WRITE);
+        }
+        return written;
+    };
+    private final RtmpChunkReader.Source setupSource = dst -> {
+        int read = channel.read(dst);
+        if (read == 0) {
+            awaitReady(SelectionKey.OP_READ);
+        }
+        return read;
+    };
+
+    // 发布后的阻塞读写，音视频消息按节拍写出
+    private final RtmpChunkWriter.Output streamOutput = (srcs, offset, length) -> channel.write(srcs, offset, length);
+    private final RtmpChunkWriter.Output pacedOutput =
+            (srcs, offset, length) -> pacer.write(channel, srcs, offset, length);
+    private final RtmpChunkReader.Source streamSource = dst -> channel.read(dst);
+
+    private RtmpChunkWriter.Output output = setupOutput;
+
+    public RtmpConnection(RtmpUrl url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /**
+     * 连接服务器并开始发布
+     * @param timeoutMs 建连总超时
+     */
+    public void connect(int timeoutMs) throws IOException {
+        open(timeoutMs, true);
+    }
+
+    /**
+     * 只完成握手和connect命令，不创建流也不发布，用于带宽探测
+     */
+    public void connectWithoutPublish(int timeoutMs) throws IOException {
+        open(timeoutMs, false);
+    }
+
+    private void open(int timeoutMs, boolean publish) throws IOException {
+        setupDeadlineNanos = System.nanoTime() + timeoutMs * 1000000L;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            selector = Selector.open();
+            selectionKey = channel.register(selector, 0);
+
+            if (!channel.connect(new InetSocketAddress(url.getHost(), url.getPort()))) {
+                do {
+                    awaitReady(SelectionKey.OP_CONNECT);
+                } while (!channel.finishConnect());
+            }
+
+            handshake();
+            setupSession(publish);
+
+            // 切换为阻塞模式，关闭Selector会注销通道
+            selector.close();
+            selector = null;
+            channel.configureBlocking(true);
+            output = streamOutput;
+            connected = true;
+
+            readerThread = new Thread(this::readLoop, "RtmpReader");
+            readerThread.start();
+            StreamingLog.i(TAG, (publish ? "RTMP发布成功: " : "RTMP连接成功: ") + url);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public boolean isConnected() {
+        return connected && !closed;
+    }
+
+    /**
+     * 已发送的总字节数（含块头）
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * 服务器最近一次确认已接收的总字节数，尚未收到确认时返回-1
+     */
+    public long getBytesAcknowledged() {
+        long sequence = lastAckSequence;
+        if (sequence < 0) {
+            return -1;
+        }
+        // 序列号只有32位，按已发送字节数展开
+        long sent = bytesSent;
+        long acked = (sent & ~0xFFFFFFFFL) | sequence;
+        return acked > sent ? acked - 0x100000000L : acked;
+    }
+
+    /**
+     * 最近一次收到确认的时间 (System.nanoTime)
+     */
+    public long getLastAckNanos() {
+        return lastAckNanos;
+    }
+
+    /**
+     * 平滑后的往返时延 (毫秒)，服务器尚未回复Acknowledgement时返回-1
+     */
+    public double getRttMs() {
+        return rttEstimator.getSmoothedRttMs();
+    }
+
+    /**
+     * 会话内最小往返时延 (毫秒)，作为无排队时的基准
+     */
+    public double getMinRttMs() {
+        return rttEstimator.getMinRttMs();
+    }
+
+    /**
+     * 设置读取帧数据时使用的读取方编号，同一帧同时发往多个连接时每个连接使用不同的编号
+     * @param reader 0到MediaFrame.MAX_READERS-1
+     */
+    public void setFrameReader(int reader) {
+        synchronized (writeLock) {
+            chunkWriter.setFrameReader(reader);
+        }
+    }
+
+    /**
+     * 设置音视频消息的发送节拍，为null时不限速；控制和命令消息不受限制
+     */
+    public void setPacer(TokenBucketPacer pacer) {
+        synchronized (writeLock) {
+            this.pacer = pacer;
+        }
+    }
+
+    /**
+     * 发送音视频消息
+     * @param tagHeader FLV标签头
+     * @return 写出的字节数（含块头）
+     */
+    public long writeMedia(int type, int timestamp, ByteBuffer tagHeader, MediaFrame frame) throws IOException {
+        int csid = type == MSG_VIDEO ? CSID_VIDEO : CSID_AUDIO;
+        return write(csid, type, streamId, timestamp, tagHeader, frame, null);
+    }
+
+    /**
+     * 发送数据消息（如@setDataFrame元数据）
+     */
+    public long writeData(ByteBuffer body) throws IOException {
+        return write(CSID_DATA, MSG_DATA_AMF0, streamId, 0, null, null, body);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        connected = false;
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭Selector失败", e);
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭连接失败", e);
+        }
+    }
+
+    private long write(int csid, int type, int messageStreamId, int timestamp,
+                       ByteBuffer prefix, MediaFrame frame, ByteBuffer body) throws IOException {
+        synchronized (writeLock) {
+            RtmpChunkWriter.Output target = frame != null && pacer != null && output == streamOutput
+                    ? pacedOutput : output;
+            long written = chunkWriter.write(target, csid, type, messageStreamId, timestamp, prefix, frame, body);
+            bytesSent += written;
+            rttEstimator.onSent(bytesSent, System.nanoTime());
+            return written;
+        }
+    }
+
+    private void handshake() throws IOException {
+        // C0 + C1: 版本号，4字节时间，4字节0，1528字节随机数
+        ByteBuffer c0c1 = ByteBuffer.allocate(1 + HANDSHAKE_SIZE);
+        c0c1.put((byte) RTMP_VERSION);
+        c0c1.putInt(0);
+        c0c1.putInt(0);
+        byte[] random = new byte[HANDSHAKE_SIZE - 8];
+        new Random().nextBytes(random);
+        c0c1.put(random);
+        c0c1.flip();
+        writeFully(c0c1);
+
+        ByteBuffer s0s1s2 = ByteBuffer.allocate(1 + HANDSHAKE_SIZE * 2);
+        while (s0s1s2.hasRemaining()) {
+            if (setupSource.read(s0s1s2) < 0) {
+                throw new IOException("握手时连接被关闭");
+            }
+        }
+        if (s0s1s2.get(0) != RTMP_VERSION) {
+            throw new IOException("不支持的RTMP版本: " + s0s1s2.get(0));
+        }
+
+        // C2回显S1
+        writeFully(ByteBuffer.wrap(s0s1s2.array(), 1, HANDSHAKE_SIZE));
+    }
+
+    private void setupSession(boolean publish) throws IOException {
+        controlBuffer.clear();
+        controlBuffer.putInt(OUT_CHUNK_SIZE).flip();
+        write(CSID_CONTROL, MSG_SET_CHUNK_SIZE, 0, 0, null, null, controlBuffer);
+        chunkWriter.setChunkSize(OUT_CHUNK_SIZE);
+
+        ByteBuffer body = beginCommand("connect", TXN_CONNECT);
+        Amf0.writeObjectStart(body);
+        Amf0.writeKey(body, "app");
+        Amf0.writeString(body, url.getApp());
+        Amf0.writeKey(body, "type");
+        Amf0.writeString(body, "nonprivate");
+        Amf0.writeKey(body, "flashVer");
+        Amf0.writeString(body, "FMLE/3.0 (compatible; FMSc/1.0)");
+        Amf0.writeKey(body, "tcUrl");
+        Amf0.writeString(body, url.getTcUrl());
+        Amf0.writeObjectEnd(body);
+        sendCommand(body, 0);
+        awaitResult(TXN_CONNECT);
+
+        // 请求服务器按窗口大小回复Acknowledgement
+        controlBuffer.clear();
+        controlBuffer.putInt(OUT_WINDOW_ACK_SIZE).flip();
+        write(CSID_CONTROL, MSG_WINDOW_ACK_SIZE, 0, 0, null, null, controlBuffer);
+        if (!publish) {
+            return;
+        }
+
+        body = beginCommand("releaseStream", TXN_RELEASE_STREAM);
+        Amf0.writeNull(body);
+        Amf0.writeString(body, url.getStreamName());
+        sendCommand(body, 0);
+
+        body = beginCommand("FCPublish", TXN_FC_PUBLISH);
+        Amf0.writeNull(body);
+        Amf0.writeString(body, url.getStreamName());
+        sendCommand(body, 0);
+
+        body = beginCommand("createStream", TXN_CREATE_STREAM);
+        Amf0.writeNull(body);
+        sendCommand(body, 0);
+        List<Object> result = awaitResult(TXN_CREATE_STREAM);
+        if (result.size() < 4 || !(result.get(3) instanceof Double)) {
+            throw new IOException("createStream响应无效");
+        }
+        streamId = ((Double) result.get(3)).intValue();
+
+        body = beginCommand("publish", TXN_PUBLISH);
+        Amf0.writeNull(body);
+        Amf0.writeString(body, url.getStreamName());
+        Amf0.writeString(body, "live");
+        sendCommand(body, streamId);
+        awaitPublishStart();
+    }
+
+    private ByteBuffer beginCommand(String name, int transactionId) {
+        commandBuffer.clear();
+        Amf0.writeString(commandBuffer, name);
+        Amf0.writeNumber(commandBuffer, transactionId);
+        return commandBuffer;
+    }
+
+    private void sendCommand(ByteBuffer body, int messageStreamId) throws IOException {
+        body.flip();
+        write(CSID_COMMAND, MSG_COMMAND_AMF0, messageStreamId, 0, null, null, body);
+    }
+
+    /**
+     * 等待指定事务的_result，期间处理控制消息
+     */
+    private List<Object> awaitResult(int transactionId) throws IOException {
+        while (true) {
+            RtmpChunkReader.Message message = chunkReader.readMessage(setupSource);
+            if (!handleMessage(message)) {
+                continue;
+            }
+            List<Object> command = readCommand(message.payload);
+            String name = command.isEmpty() ? null : String.valueOf(command.get(0));
+            Object txn = command.size() > 1 ? command.get(1) : null;
+            if (!(txn instanceof Double) || ((Double) txn).intValue() != transactionId) {
+                continue;
+            }
+            if ("_result".equals(name)) {
+                return command;
+            }
+            if ("_error".equals(name)) {
+                throw new IOException("RTMP命令失败: " + describeStatus(command));
+            }
+        }
+    }
+
+    private void awaitPublishStart() throws IOException {
+        while (true) {
+            RtmpChunkReader.Message message = chunkReader.readMessage(setupSource);
+            if (!handleMessage(message)) {
+                continue;
+            }
+            List<Object> command = readCommand(message.payload);
+            if (command.isEmpty()) {
+                continue;
+            }
+            Object name = command.get(0);
+            if ("onStatus".equals(name)) {
+                Map<?, ?> info = statusInfo(command);
+                Object code = info != null ? info.get("code") : null;
+                if ("NetStream.Publish.Start".equals(code)) {
+                    return;
+                }
+                if (info != null && "error".equals(info.get("level"))) {
+                    throw new IOException("发布失败: " + describeStatus(command));
+                }
+            } else if ("_error".equals(name)) {
+                throw new IOException("发布失败: " + describeStatus(command));
+            }
+        }
+    }
+
+    /**
+     * 处理协议控制消息
+     * @return 是否为需要调用方处理的AMF0命令消息
+     */
+    private boolean handleMessage(RtmpChunkReader.Message message) throws IOException {
+        ByteBuffer payload = message.payload;
+        switch (message.type) {
+            case MSG_SET_CHUNK_SIZE:
+                chunkReader.setChunkSize(payload.getInt() & 0x7FFFFFFF);
+                break;
+            case MSG_WINDOW_ACK_SIZE:
+                peerWindowSize = payload.getInt() & 0xFFFFFFFFL;
+                break;
+            case MSG_USER_CONTROL:
+                if (payload.remaining() >= 6 && payload.getShort() == USER_CONTROL_PING_REQUEST) {
+                    sendPingResponse(payload.getInt());
+                }
+                break;
+            case MSG_ACKNOWLEDGEMENT: {
+                long sequence = payload.getInt() & 0xFFFFFFFFL;
+                long now = System.nanoTime();
+                rttEstimator.onAcknowledgement(sequence, now);
+                lastAckNanos = now;
+                lastAckSequence = sequence;
+                break;
+            }
+            case MSG_SET_PEER_BANDWIDTH:
+                break;
+            case MSG_COMMAND_AMF0:
+                sendAcknowledgementIfNeeded();
+                return true;
+            default:
+                break;
+        }
+        sendAcknowledgementIfNeeded();
+        return false;
+    }
+
+    private void sendPingResponse(int timestamp) throws IOException {
+        synchronized (writeLock) {
+            controlBuffer.clear();
+            controlBuffer.putShort((short) USER_CONTROL_PING_RESPONSE).putInt(timestamp).flip();
+            write(CSID_CONTROL, MSG_USER_CONTROL, 0, 0, null, null, controlBuffer);
+        }
+    }
+
+    private void sendAcknowledgementIfNeeded() throws IOException {
+        long received = chunkReader.getBytesReceived();
+        if (peerWindowSize <= 0 || received - lastAckSent < peerWindowSize) {
+            return;
+        }
+        lastAckSent = received;
+        synchronized (writeLock) {
+            controlBuffer.clear();
+            controlBuffer.putInt((int) received).flip();
+            write(CSID_CONTROL, MSG_ACKNOWLEDGEMENT, 0, 0, null, null, controlBuffer);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                RtmpChunkReader.Message message = chunkReader.readMessage(streamSource);
+                if (handleMessage(message)) {
+                    handleStreamCommand(readCommand(message.payload));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                StreamingLog.e(TAG, "RTMP连接断开", e);
+                listener.onDisconnected(e instanceof IOException ? (IOException) e : new IOException(e));
+            }
+        }
+    }
+
+    private void handleStreamCommand(List<Object> command) throws IOException {
+        if (command.isEmpty() || !"onStatus".equals(command.get(0))) {
+            return;
+        }
+        Map<?, ?> info = statusInfo(command);
+        if (info != null && "error".equals(info.get("level"))) {
+            throw new IOException("服务器报错: " + describeStatus(command));
+        }
+        StreamingLog.d(TAG, "服务器状态: " + describeStatus(command));
+    }
+
+    private void awaitReady(int ops) throws IOException {
+        long remainingMs = (setupDeadlineNanos - System.nanoTime()) / 1000000L;
+        if (remainingMs <= 0) {
+            throw new SocketTimeoutException("RTMP连接超时");
+        }
+        selectionKey.interestOps(ops);
+        selector.select(remainingMs);
+        selector.selectedKeys().clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        ByteBuffer[] srcs = {buffer};
+        while (buffer.hasRemaining()) {
+            output.write(srcs, 0, 1);
+        }
+    }
+
+    private static List<Object> readCommand(ByteBuffer payload) {
+        List<Object> values = new ArrayList<>();
+        while (payload.hasRemaining()) {
+            values.add(Amf0.read(payload));
+        }
+        return values;
+    }
+
+    private static Map<?, ?> statusInfo(List<Object> command) {
+        for (int i = command.size() - 1; i >= 2; i--) {
+            if (command.get(i) instanceof Map) {
+                return (Map<?, ?>) command.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static String describeStatus(List<Object> command) {
+        Map<?, ?> info = statusInfo(command);
+        if (info == null) {
+            return String.valueOf(command);
+        }
+        return info.get("code") + " " + info.get("description");
+    }
+}
@@ -0,0 +1,357 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.muxer.Amf0;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内RTMP接收端
+ * 只监听本机回环地址，完成握手、connect、createStream和publish，按客户端设置的窗口回复
+ * Acknowledgement，收到的音视频消息连同到达时间交给Listener。用于在没有真实推流服务器时
+ * 测量推流链路各环节的延迟，接收RtmpPublisher和FFmpeg输出的FLV/RTMP流。
+ * 消息按条分配缓冲区，只用于测试和压测，不用于生产。
+ */
+public class RtmpIngestServer implements Closeable {
+    private static final String TAG = "RtmpIngestServer";
+
+    private static final int HANDSHAKE_SIZE = 1536;
+    private static final int RTMP_VERSION = 3;
+    private static final int CSID_CONTROL = 2;
+    private static final int CSID_COMMAND = 3;
+    private static final int STREAM_ID = 1;
+    private static final int SERVER_WINDOW_ACK_SIZE = 2500000;
+    private static final int PEER_BANDWIDTH_DYNAMIC = 2;
+
+    /**
+     * 接收事件，在连接线程上回调
+     */
+    public interface Listener {
+        /**
+         * 客户端开始发布
+         */
+        void onPublish(String app, String streamName);
+
+        /**
+         * 收到一条音视频消息
+         * @param type RTMP消息类型，8为音频，9为视频
+         * @param timestamp RTMP时间戳 (毫秒)
+         * @param body FLV标签体 (含音视频标签头)，回调返回后失效
+         * @param arrivalNanos 消息最后一个字节读入的时间
+         */
+        void onMedia(int type, int timestamp, ByteBuffer body, long arrivalNanos);
+
+        /**
+         * 连接结束
+         * @param e 异常断开时不为null
+         */
+        void onClosed(IOException e);
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+    private final Set<SocketChannel> connections =
+            Collections.newSetFromMap(new ConcurrentHashMap<SocketChannel, Boolean>());
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private volatile boolean closed;
+
+    public RtmpIngestServer(Listener listener, Clock clock) {
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * 在回环地址上开始监听
+     * @param port 端口，0表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        acceptThread = new Thread(this::acceptLoop, "RtmpIngestAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        StreamingLog.i(TAG, "RTMP接收端已启动: " + getUrl("live", "test"));
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 推流地址
+     */
+    public String getUrl(String app, String streamName) {
+        return "rtmp://127.0.0.1:" + getPort() + "/" + app + "/" + streamName;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(serverChannel);
+        for (SocketChannel channel : connections) {
+            closeQuietly(channel);
+        }
+        if (acceptThread != null) {
+            try {
+                acceptThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        int index = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    StreamingLog.e(TAG, "接受连接失败", e);
+                }
+                return;
+            }
+            connections.add(channel);
+            Thread thread = new Thread(() -> serve(channel), "RtmpIngest-" + (++index));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        IOException error = null;
+        try {
+            channel.socket().setTcpNoDelay(true);
+            new Session(channel).run();
+        } catch (EOFException e) {
+            // 客户端关闭连接
+        } catch (IOException e) {
+            if (!closed) {
+                error = e;
+            }
+        } finally {
+            connections.remove(channel);
+            closeQuietly(channel);
+        }
+        listener.onClosed(error);
+    }
+
+    /**
+     * 单个连接的协议处理，只在连接线程上访问
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private final RtmpChunkReader reader = new RtmpChunkReader();
+        private final RtmpChunkWriter writer = new RtmpChunkWriter();
+        private final ByteBuffer command = ByteBuffer.allocate(1024);
+        private final ByteBuffer control = ByteBuffer.allocate(16);
+        private final RtmpChunkReader.Source source;
+        private final RtmpChunkWriter.Output output;
+        private String app = "";
+        private long clientWindowSize;
+        private long lastAckSent;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            this.source = channel::read;
+            this.output = channel::write;
+        }
+
+        void run() throws IOException {
+            handshake();
+            while (!closed) {
+                RtmpChunkReader.Message message = reader.readMessage(source);
+                long arrivalNanos = clock.nanoTime();
+                handle(message, arrivalNanos);
+                acknowledgeIfNeeded();
+            }
+        }
+
+        private void handshake() throws IOException {
+            ByteBuffer c0c1 = ByteBuffer.allocate(1 + HANDSHAKE_SIZE);
+            readFully(c0c1);
+            if (c0c1.get(0) != RTMP_VERSION) {
+                throw new IOException("不支持的RTMP版本: " + c0c1.get(0));
+            }
+
+            // S0 + S1 + S2，S2回显C1
+            ByteBuffer s0s1s2 = ByteBuffer.allocate(1 + HANDSHAKE_SIZE * 2);
+            s0s1s2.put((byte) RTMP_VERSION);
+            s0s1s2.putInt(0);
+            s0s1s2.putInt(0);
+            byte[] random = new byte[HANDSHAKE_SIZE - 8];
+            new Random().nextBytes(random);
+            s0s1s2.put(random);
+            s0s1s2.put(c0c1.array(), 1, HANDSHAKE_SIZE);
+            s0s1s2.flip();
+            while (s0s1s2.hasRemaining()) {
+                channel.write(s0s1s2);
+            }
+
+            readFully(ByteBuffer.allocate(HANDSHAKE_SIZE));
+        }
+
+        private void handle(RtmpChunkReader.Message message, long arrivalNanos) throws IOException {
+            ByteBuffer payload = message.payload;
+            switch (message.type) {
+                case RtmpConnection.MSG_SET_CHUNK_SIZE:
+                    reader.setChunkSize(payload.getInt() & 0x7FFFFFFF);
+                    break;
+                case RtmpConnection.MSG_WINDOW_ACK_SIZE:
+                    clientWindowSize = payload.getInt() & 0xFFFFFFFFL;
+                    break;
+                case RtmpConnection.MSG_AUDIO:
+                case RtmpConnection.MSG_VIDEO:
+                    listener.onMedia(message.type, message.timestamp, payload, arrivalNanos);
+                    break;
+                case RtmpConnection.MSG_COMMAND_AMF0:
+                    handleCommand(payload);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void handleCommand(ByteBuffer payload) throws IOException {
+            List<Object> values = new ArrayList<>();
+            while (payload.hasRemaining()) {
+                values.add(Amf0.read(payload));
+            }
+            if (values.size() < 2 || !(values.get(0) instanceof String)) {
+                return;
+            }
+            String name = (String) values.get(0);
+            double txn = values.get(1) instanceof Double ? (Double) values.get(1) : 0;
+            switch (name) {
+                case "connect":
+                    onConnect(values, txn);
+                    break;
+                case "createStream":
+                    beginCommand("_result", txn);
+                    Amf0.writeNull(command);
+                    Amf0.writeNumber(command, STREAM_ID);
+                    sendCommand(0);
+                    break;
+                case "publish": {
+                    String streamName = values.size() > 3 ? String.valueOf(values.get(3)) : "";
+                    beginCommand("onStatus", 0);
+                    Amf0.writeNull(command);
+                    writeStatus("status", "NetStream.Publish.Start", "Start publishing");
+                    sendCommand(STREAM_ID);
+                    StreamingLog.d(TAG, "开始接收: " + app + "/" + streamName);
+                    listener.onPublish(app, streamName);
+                    break;
+                }
+                case "releaseStream":
+                case "FCPublish":
+                    beginCommand("_result", txn);
+                    Amf0.writeNull(command);
+                    sendCommand(0);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void onConnect(List<Object> values, double txn) throws IOException {
+            Object properties = values.size() > 2 ? values.get(2) : null;
+            if (properties instanceof Map) {
+                Object value = ((Map<?, ?>) properties).get("app");
+                app = value != null ? value.toString() : "";
+            }
+
+            control.clear();
+            control.putInt(SERVER_WINDOW_ACK_SIZE).flip();
+            writer.write(output, CSID_CONTROL, RtmpConnection.MSG_WINDOW_ACK_SIZE, 0, 0, null, null, control);
+            control.clear();
+            control.putInt(SERVER_WINDOW_ACK_SIZE).put((byte) PEER_BANDWIDTH_DYNAMIC).flip();
+            writer.write(output, CSID_CONTROL, RtmpConnection.MSG_SET_PEER_BANDWIDTH, 0, 0, null, null, control);
+
+            beginCommand("_result", txn);
+            Amf0.writeObjectStart(command);
+            Amf0.writeKey(command, "fmsVer");
+            Amf0.writeString(command, "FMS/3,0,1,123");
+            Amf0.writeKey(command, "capabilities");
+            Amf0.writeNumber(command, 31);
+            Amf0.writeObjectEnd(command);
+            writeStatus("status", "NetConnection.Connect.Success", "Connection succeeded.");
+            sendCommand(0);
+        }
+
+        private void beginCommand(String name, double txn) {
+            command.clear();
+            Amf0.writeString(command, name);
+            Amf0.writeNumber(command, txn);
+        }
+
+        private void writeStatus(String level, String code, String description) {
+            Amf0.writeObjectStart(command);
+            Amf0.writeKey(command, "level");
+            Amf0.writeString(command, level);
+            Amf0.writeKey(command, "code");
+            Amf0.writeString(command, code);
+            Amf0.writeKey(command, "description");
+            Amf0.writeString(command, description);
+            Amf0.writeObjectEnd(command);
+        }
+
+        private void sendCommand(int messageStreamId) throws IOException {
+            command.flip();
+            writer.write(output, CSID_COMMAND, RtmpConnection.MSG_COMMAND_AMF0, messageStreamId, 0,
+                    null, null, command);
+        }
+
+        /**
+         * 按客户端设置的窗口回复Acknowledgement，客户端据此估算往返时延
+         */
+        private void acknowledgeIfNeeded() throws IOException {
+            long received = reader.getBytesReceived();
+            if (clientWindowSize <= 0 || received - lastAckSent < clientWindowSize) {
+                return;
+            }
+            lastAckSent = received;
+            control.clear();
+            control.putInt((int) received).flip();
+            writer.write(output, CSID_CONTROL, RtmpConnection.MSG_ACKNOWLEDGEMENT, 0, 0, null, null, control);
+        }
+
+        private void readFully(ByteBuffer dst) throws IOException {
+            while (dst.hasRemaining()) {
+                if (channel.read(dst) < 0) {
+                    throw new IOException("握手时连接被关闭");
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭连接失败", e);
+        }
+    }
+}
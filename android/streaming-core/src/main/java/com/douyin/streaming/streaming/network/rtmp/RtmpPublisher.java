@@ -0,0 +1,157 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.muxer.Amf0;
+import com.douyin.streaming.streaming.muxer.FlvTagWriter;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * FLV over RTMP发布器
+ * 把编码帧封装为FLV标签发送，标签头写入复用的直接缓冲区，帧数据以聚合写直接发送
+ *
+ * 元数据和帧由同一个发送线程依次发送，非线程安全
+ */
+public class RtmpPublisher implements FramePublisher {
+    // 播放端和服务器都会忽略未知名称的数据消息
+    private static final String KEEP_ALIVE_MESSAGE = "onKeepAlive";
+
+    private final RtmpConnection connection;
+    private final SendListener sendListener;
+    private final ByteBuffer tagHeader = ByteBuffer.allocateDirect(FlvTagWriter.VIDEO_TAG_HEADER_SIZE);
+    private final ByteBuffer metaData = ByteBuffer.allocate(512);
+    private final ByteBuffer keepAlive = ByteBuffer.allocate(32);
+    private long baseDtsUs = -1;
+
+    public RtmpPublisher(RtmpUrl url, RtmpConnection.Listener connectionListener, SendListener sendListener) {
+        this.connection = new RtmpConnection(url, connectionListener);
+        this.sendListener = sendListener;
+    }
+
+    /**
+     * @see RtmpConnection#setFrameReader(int)
+     */
+    @Override
+    public void setFrameReader(int reader) {
+        connection.setFrameReader(reader);
+    }
+
+    /**
+     * @see RtmpConnection#setPacer(TokenBucketPacer)
+     */
+    @Override
+    public void setPacer(TokenBucketPacer pacer) {
+        connection.setPacer(pacer);
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+        connection.connect(timeoutMs);
+    }
+
+    public boolean isConnected() {
+        return connection.isConnected();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return connection.getBytesSent();
+    }
+
+    @Override
+    public double getRttMs() {
+        return connection.getRttMs();
+    }
+
+    @Override
+    public double getMinRttMs() {
+        return connection.getMinRttMs();
+    }
+
+    /**
+     * 没有拥塞控制反馈，不可用
+     */
+    @Override
+    public int getEstimatedBitrateKbps() {
+        return -1;
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return 0;
+    }
+
+    @Override
+    public long getPacketsLost() {
+        return 0;
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return 0;
+    }
+
+    /**
+     * 发送onMetaData，需在第一帧之前调用
+     * @param videoBitrate 视频码率 (kbps)
+     * @param audioBitrate 音频码率 (kbps)
+     */
+    @Override
+    public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                             int audioBitrate, int audioSampleRate, int audioChannels) throws IOException {
+        metaData.clear();
+        FlvTagWriter.writeMetaData(metaData, true, width, height, fps,
+                videoBitrate, audioBitrate, audioSampleRate, audioChannels);
+        metaData.flip();
+        connection.writeData(metaData);
+    }
+
+    /**
+     * 发送保活数据消息，暂停期间没有音视频数据时防止服务器按空闲超时断开
+     */
+    @Override
+    public void sendKeepAlive() throws IOException {
+        keepAlive.clear();
+        Amf0.writeString(keepAlive, KEEP_ALIVE_MESSAGE);
+        keepAlive.flip();
+        connection.writeData(keepAlive);
+    }
+
+    /**
+     * 发送一帧，配置帧作为序列头发送
+     * 调用方负责在返回后释放帧
+     */
+    @Override
+    public void sendFrame(MediaFrame frame) throws IOException {
+        if (baseDtsUs < 0 && !frame.isConfig()) {
+            baseDtsUs = frame.getDtsUs();
+        }
+        int timestamp = baseDtsUs < 0 ? 0 : (int) Math.max(0, (frame.getDtsUs() - baseDtsUs) / 1000);
+
+        tagHeader.clear();
+        int type;
+        if (frame.isVideo()) {
+            int compositionTime = (int) ((frame.getPtsUs() - frame.getDtsUs()) / 1000);
+            FlvTagWriter.writeVideoTagHeader(tagHeader, frame.isKeyFrame(), frame.isConfig(), compositionTime);
+            type = RtmpConnection.MSG_VIDEO;
+        } else {
+            FlvTagWriter.writeAudioTagHeader(tagHeader, frame.isConfig());
+            type = RtmpConnection.MSG_AUDIO;
+        }
+        tagHeader.flip();
+
+        long start = System.nanoTime();
+        long bytes = connection.writeMedia(type, timestamp, tagHeader, frame);
+        if (sendListener != null) {
+            sendListener.onPacketSent(frame, bytes, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+}
@@ -0,0 +1,94 @@
+package com.douyin.streaming.streaming.network.rtmp;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+/**
+ * RTMP推流地址
+ * 格式: rtmp://host[:port]/app[/instance]/streamName[?query]
+ */
+public final class RtmpUrl implements FramePublisher.Endpoint {
+    public static final int DEFAULT_PORT = 1935;
+    private static final String SCHEME = "rtmp://";
+
+    private final String host;
+    private final int port;
+    private final String app;
+    private final String streamName;
+
+    private RtmpUrl(String host, int port, String app, String streamName) {
+        this.host = host;
+        this.port = port;
+        this.app = app;
+        this.streamName = streamName;
+    }
+
+    /**
+     * 是否为进程内推流支持的地址（不支持rtmps等加密地址）
+     */
+    public static boolean isSupported(String url) {
+        try {
+            parse(url);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static RtmpUrl parse(String url) {
+        if (url == null || !url.regionMatches(true, 0, SCHEME, 0, SCHEME.length())) {
+            throw new IllegalArgumentException("不支持的推流地址: " + url);
+        }
+
+        String rest = url.substring(SCHEME.length());
+        int pathStart = rest.indexOf('/');
+        if (pathStart <= 0) {
+            throw new IllegalArgumentException("推流地址缺少应用名: " + url);
+        }
+
+        String authority = rest.substring(0, pathStart);
+        String host = authority;
+        int port = DEFAULT_PORT;
+        int colon = authority.lastIndexOf(':');
+        if (colon > 0 && authority.indexOf(']') < colon) {
+            host = authority.substring(0, colon);
+            try {
+                port = Integer.parseInt(authority.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("推流地址端口无效: " + url);
+            }
+        }
+
+        // 流名称可能带查询参数，查询参数中也可能有'/'，因此只在'?'之前查找最后一个'/'
+        String path = rest.substring(pathStart + 1);
+        int query = path.indexOf('?');
+        int slash = (query < 0 ? path : path.substring(0, query)).lastIndexOf('/');
+        if (slash <= 0 || slash == path.length() - 1) {
+            throw new IllegalArgumentException("推流地址缺少流名称: " + url);
+        }
+
+        return new RtmpUrl(host, port, path.substring(0, slash), path.substring(slash + 1));
+    }
+
+    public String getHost() { return host; }
+
+    public int getPort() { return port; }
+
+    public String getApp() { return app; }
+
+    public String getStreamName() { return streamName; }
+
+    public String getTcUrl() {
+        return SCHEME + host + ":" + port + "/" + app;
+    }
+
+    @Override
+    public FramePublisher create(FramePublisher.ConnectionListener connectionListener,
+                                 FramePublisher.SendListener sendListener) {
+        return new RtmpPublisher(this, connectionListener::onDisconnected, sendListener);
+    }
+
+    @Override
+    public String toString() {
+        return getTcUrl() + "/" + streamName;
+    }
+}
@@ -0,0 +1,211 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * SRT负载加密
+ * 数据包负载以AES-CTR加密，计数器块为盐的前112位与包序号异或；流密钥 (SEK) 由密码经PBKDF2导出的
+ * 密钥加密密钥 (KEK) 按RFC 3394包装后，放在握手的KMREQ中交给对端。
+ * 只使用偶数密钥，不做密钥轮换。CTR的密钥流由ECB加密计数器块得到，每包不分配内存。
+ */
+final class SrtCrypto {
+    static final int SALT_SIZE = 16;
+    // 密钥材料消息头: 版本1、类型KMmsg、签名"HAI"、偶数密钥、AES-CTR、直播流
+    private static final int KM_HEADER_SIZE = 16;
+    private static final int KM_CIPHER_CTR = 2;
+    private static final int KM_SE_LIVE = 2;
+    private static final int PBKDF2_ITERATIONS = 2048;
+    private static final int WRAP_OVERHEAD = 8;
+    private static final byte[] WRAP_IV = {
+            (byte) 0xA6, (byte) 0xA6, (byte) 0xA6, (byte) 0xA6,
+            (byte) 0xA6, (byte) 0xA6, (byte) 0xA6, (byte) 0xA6};
+    private static final int BLOCK = 16;
+    private static final int MAX_BLOCKS = (SrtPacket.MAX_PAYLOAD + BLOCK - 1) / BLOCK;
+
+    private final byte[] salt;
+    private final byte[] wrappedKey;
+    private final Cipher ecb;
+    private final byte[] counterBlocks = new byte[MAX_BLOCKS * BLOCK];
+    private final byte[] keyStream = new byte[MAX_BLOCKS * BLOCK];
+
+    private SrtCrypto(byte[] salt, byte[] key, byte[] wrappedKey) throws GeneralSecurityException {
+        this.salt = salt;
+        this.wrappedKey = wrappedKey;
+        this.ecb = Cipher.getInstance("AES/ECB/NoPadding");
+        ecb.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+    }
+
+    /**
+     * 发送端：随机生成盐和流密钥
+     */
+    static SrtCrypto generate(String passphrase, int keyLength) throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] key = new byte[keyLength];
+        random.nextBytes(salt);
+        random.nextBytes(key);
+        byte[] kek = deriveKek(passphrase, salt, keyLength);
+        return new SrtCrypto(salt, key, wrap(kek, key));
+    }
+
+    /**
+     * 接收端：用密码解开对端的密钥材料
+     * @param km KMREQ扩展块内容，position到limit
+     * @throws GeneralSecurityException 密码不匹配或消息格式错误
+     */
+    static SrtCrypto fromKeyMaterial(String passphrase, ByteBuffer km) throws GeneralSecurityException {
+        int start = km.position();
+        if (km.remaining() < KM_HEADER_SIZE || (km.get(start) & 0xFF) != 0x12
+                || km.get(start + 8) != KM_CIPHER_CTR) {
+            throw new GeneralSecurityException("不支持的密钥材料");
+        }
+        int saltLength = (km.get(start + 14) & 0xFF) * 4;
+        int keyLength = (km.get(start + 15) & 0xFF) * 4;
+        if (saltLength != SALT_SIZE || km.remaining() < KM_HEADER_SIZE + saltLength + keyLength + WRAP_OVERHEAD) {
+            throw new GeneralSecurityException("密钥材料长度错误");
+        }
+        byte[] salt = new byte[saltLength];
+        byte[] wrapped = new byte[keyLength + WRAP_OVERHEAD];
+        km.position(start + KM_HEADER_SIZE);
+        km.get(salt);
+        km.get(wrapped);
+        km.position(start);
+        byte[] key = unwrap(deriveKek(passphrase, salt, keyLength), wrapped);
+        return new SrtCrypto(salt, key, wrapped);
+    }
+
+    /**
+     * 握手加密字段: 密钥长度/8
+     */
+    int getEncryptionField() {
+        return (wrappedKey.length - WRAP_OVERHEAD) / 8;
+    }
+
+    /**
+     * 密钥材料消息的字数 (4字节)
+     */
+    int getKeyMaterialWords() {
+        return (KM_HEADER_SIZE + SALT_SIZE + wrappedKey.length) / 4;
+    }
+
+    void writeKeyMaterial(ByteBuffer dst) {
+        dst.put((byte) 0x12);
+        dst.put((byte) 0x20);
+        dst.put((byte) 0x29);
+        dst.put((byte) 1); // 偶数密钥
+        dst.putInt(0); // KEKI
+        dst.put((byte) KM_CIPHER_CTR);
+        dst.put((byte) 0); // 无认证
+        dst.put((byte) KM_SE_LIVE);
+        dst.put((byte) 0);
+        dst.putShort((short) 0);
+        dst.put((byte) (SALT_SIZE / 4));
+        dst.put((byte) ((wrappedKey.length - WRAP_OVERHEAD) / 4));
+        dst.put(salt);
+        dst.put(wrappedKey);
+    }
+
+    /**
+     * 原地加密或解密一个数据包的负载
+     * @param seq 包序号，参与计数器块
+     */
+    void crypt(int seq, ByteBuffer packet, int offset, int length) throws IOException {
+        int blocks = (length + BLOCK - 1) / BLOCK;
+        for (int b = 0; b < blocks; b++) {
+            int base = b * BLOCK;
+            System.arraycopy(salt, 0, counterBlocks, base, 14);
+            counterBlocks[base + 10] ^= (byte) (seq >>> 24);
+            counterBlocks[base + 11] ^= (byte) (seq >>> 16);
+            counterBlocks[base + 12] ^= (byte) (seq >>> 8);
+            counterBlocks[base + 13] ^= (byte) seq;
+            counterBlocks[base + 14] = (byte) (b >>> 8);
+            counterBlocks[base + 15] = (byte) b;
+        }
+        try {
+            ecb.doFinal(counterBlocks, 0, blocks * BLOCK, keyStream, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("SRT加密失败", e);
+        }
+        for (int i = 0; i < length; i++) {
+            packet.put(offset + i, (byte) (packet.get(offset + i) ^ keyStream[i]));
+        }
+    }
+
+    /**
+     * KEK = PBKDF2-HMAC-SHA1(密码, 盐的后64位, 2048次)
+     */
+    private static byte[] deriveKek(String passphrase, byte[] salt, int keyLength)
+            throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(passphrase.toCharArray(), Arrays.copyOfRange(salt, 8, 16),
+                PBKDF2_ITERATIONS, keyLength * 8);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * RFC 3394 AES密钥包装
+     */
+    static byte[] wrap(byte[] kek, byte[] key) throws GeneralSecurityException {
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(kek, "AES"));
+        int n = key.length / 8;
+        byte[] a = WRAP_IV.clone();
+        byte[] r = key.clone();
+        byte[] block = new byte[BLOCK];
+        for (int j = 0; j < 6; j++) {
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(a, 0, block, 0, 8);
+                System.arraycopy(r, i * 8, block, 8, 8);
+                block = aes.doFinal(block);
+                System.arraycopy(block, 0, a, 0, 8);
+                xorCounter(a, n * j + i + 1);
+                System.arraycopy(block, 8, r, i * 8, 8);
+            }
+        }
+        byte[] wrapped = new byte[key.length + WRAP_OVERHEAD];
+        System.arraycopy(a, 0, wrapped, 0, 8);
+        System.arraycopy(r, 0, wrapped, 8, key.length);
+        return wrapped;
+    }
+
+    static byte[] unwrap(byte[] kek, byte[] wrapped) throws GeneralSecurityException {
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(kek, "AES"));
+        int n = wrapped.length / 8 - 1;
+        byte[] a = Arrays.copyOfRange(wrapped, 0, 8);
+        byte[] r = Arrays.copyOfRange(wrapped, 8, wrapped.length);
+        byte[] block = new byte[BLOCK];
+        for (int j = 5; j >= 0; j--) {
+            for (int i = n - 1; i >= 0; i--) {
+                xorCounter(a, n * j + i + 1);
+                System.arraycopy(a, 0, block, 0, 8);
+                System.arraycopy(r, i * 8, block, 8, 8);
+                block = aes.doFinal(block);
+                System.arraycopy(block, 0, a, 0, 8);
+                System.arraycopy(block, 8, r, i * 8, 8);
+            }
+        }
+        if (!Arrays.equals(a, WRAP_IV)) {
+            throw new GeneralSecurityException("密码错误");
+        }
+        return r;
+    }
+
+    private static void xorCounter(byte[] a, long t) {
+        for (int k = 0; k < 8; k++) {
+            a[7 - k] ^= (byte) (t >>> (8 * k));
+        }
+    }
+}
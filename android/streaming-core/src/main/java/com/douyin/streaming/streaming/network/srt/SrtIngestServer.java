@@ -0,0 +1,607 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内SRT接收端 (listener)
+ * 只监听本机回环地址，完成HSv5握手（可要求密码），每10ms回复带往返时延的ACK，发现序号空洞时立即
+ * 并周期性地发送NAK，空洞等待超过延迟窗口后跳过。收到的负载解密后按序号顺序连同交付时间交给Listener。
+ * 收到即交付，不按TSBPD延迟交付，便于测量链路本身的延迟；可按比例随机丢弃收到的数据包以模拟丢包。
+ * 用于在没有真实SRT服务器时测试SrtPublisher和FFmpeg的SRT输出，按包分配缓冲区，只用于测试和压测，不用于生产。
+ */
+public class SrtIngestServer implements Closeable {
+    private static final String TAG = "SrtIngestServer";
+
+    private static final int RECEIVE_BUFFER_PACKETS = 8192;
+    private static final long TICK_MS = 10;
+    private static final long ACK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long NAK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long KEEPALIVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PEER_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // 一个NAK最多携带的丢失区间数
+    private static final int MAX_NAK_RANGES = 64;
+    // 握手前的默认往返时延，与libsrt相同
+    private static final double INITIAL_RTT_US = 100000;
+    // 拒绝原因，握手类型为1000+原因
+    private static final int REJECT_ROGUE = 4;
+    private static final int REJECT_VERSION = 8;
+    private static final int REJECT_UNSECURE = 11;
+    private static final int KM_NO_SECRET = 3;
+    private static final int KM_BAD_SECRET = 4;
+
+    /**
+     * 接收事件，在接收线程上回调
+     */
+    public interface Listener {
+        /**
+         * 握手完成
+         * @param streamId 呼叫端的流ID，没有时为空串
+         */
+        void onConnected(String streamId);
+
+        /**
+         * 按序交付一个数据包的负载
+         * @param payload 解密后的负载，回调返回后失效
+         * @param deliveryNanos 交付时间
+         */
+        void onPayload(ByteBuffer payload, long deliveryNanos);
+
+        /**
+         * 连接结束
+         * @param e 异常断开时不为null
+         */
+        void onClosed(IOException e);
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+    private final int latencyMs;
+    private final String passphrase;
+    private final Random random = new Random();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(SrtPacket.MTU);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(SrtPacket.MTU);
+    // 只在接收线程上访问
+    private final Map<SocketAddress, Session> sessions = new HashMap<>();
+    private final int cookieSecret = random.nextInt();
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread receiverThread;
+    private volatile boolean closed;
+    private volatile double lossRate;
+
+    /**
+     * @param latencyMs 接收端延迟窗口，与呼叫端的取较大值
+     * @param passphrase 为空表示不加密
+     */
+    public SrtIngestServer(Listener listener, Clock clock, int latencyMs, String passphrase) {
+        this.listener = listener;
+        this.clock = clock;
+        this.latencyMs = latencyMs;
+        this.passphrase = passphrase != null ? passphrase : "";
+    }
+
+    /**
+     * 在回环地址上开始监听
+     * @param port 端口，0表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        channel = DatagramChannel.open();
+        channel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        receiverThread = new Thread(this::receiveLoop, "SrtIngest");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        StreamingLog.i(TAG, "SRT接收端已启动: " + getUrl());
+    }
+
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * 推流地址，不含流ID和密码
+     */
+    public String getUrl() {
+        return "srt://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * 模拟丢包，按比例随机丢弃收到的数据包（含重传包）
+     * @param lossRate 0到1
+     */
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (receiverThread != null) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭SRT接收端失败", e);
+        }
+    }
+
+    private void receiveLoop() {
+        try {
+            while (!closed) {
+                selector.select(TICK_MS);
+                selector.selectedKeys().clear();
+                SocketAddress from;
+                while (!closed && (from = receive()) != null) {
+                    handlePacket(from, receiveBuffer);
+                }
+                long now = clock.nanoTime();
+                for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+                    Session session = it.next();
+                    if (!session.tick(now)) {
+                        it.remove();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                StreamingLog.e(TAG, "SRT接收端出错", e);
+            }
+        }
+        for (Session session : sessions.values()) {
+            session.close(null);
+        }
+        sessions.clear();
+    }
+
+    private void handlePacket(SocketAddress from, ByteBuffer packet) throws IOException {
+        Session session = sessions.get(from);
+        if (SrtPacket.isControl(packet) && SrtPacket.controlType(packet) == SrtPacket.CONTROL_HANDSHAKE) {
+            if (packet.limit() < SrtPacket.HEADER_SIZE + SrtPacket.HANDSHAKE_CIF_SIZE) {
+                return;
+            }
+            int type = packet.getInt(SrtPacket.HEADER_SIZE + 20);
+            if (type == SrtPacket.HS_TYPE_INDUCTION) {
+                replyInduction(from, packet);
+            } else if (type == SrtPacket.HS_TYPE_CONCLUSION) {
+                if (session == null) {
+                    session = conclude(from, packet);
+                    if (session != null) {
+                        sessions.put(from, session);
+                    }
+                } else {
+                    // 呼叫端未收到回复时会重发结论
+                    session.resendConclusion();
+                }
+            }
+            return;
+        }
+        if (session == null) {
+            return;
+        }
+        if (SrtPacket.isControl(packet)) {
+            if (!session.onControl(packet)) {
+                sessions.remove(from);
+            }
+        } else {
+            if (lossRate > 0 && random.nextDouble() < lossRate) {
+                session.lastReceiveNanos = clock.nanoTime();
+                return;
+            }
+            session.onData(packet);
+        }
+    }
+
+    /**
+     * 回复诱导：版本5、SRT魔数和由地址导出的cookie
+     */
+    private void replyInduction(SocketAddress from, ByteBuffer request) throws IOException {
+        int peerSocketId = request.getInt(SrtPacket.HEADER_SIZE + 24);
+        int initialSeq = request.getInt(SrtPacket.HEADER_SIZE + 8);
+        sendBuffer.clear();
+        SrtPacket.writeControlHeader(sendBuffer, SrtPacket.CONTROL_HANDSHAKE, 0, 0, peerSocketId);
+        SrtPacket.writeHandshake(sendBuffer, SrtPacket.HS_VERSION_SRT, 0, SrtPacket.HS_MAGIC, initialSeq,
+                SrtPacket.HS_TYPE_INDUCTION, 0, cookie(from));
+        sendBuffer.flip();
+        channel.send(sendBuffer, from);
+    }
+
+    /**
+     * 处理结论握手，协商延迟、加密和流ID
+     * @return 新连接，拒绝时返回null
+     */
+    private Session conclude(SocketAddress from, ByteBuffer request) throws IOException {
+        int base = SrtPacket.HEADER_SIZE;
+        int peerSocketId = request.getInt(base + 24);
+        if (request.getInt(base) != SrtPacket.HS_VERSION_SRT) {
+            reject(from, peerSocketId, request, REJECT_VERSION);
+            return null;
+        }
+        if (request.getInt(base + 28) != cookie(from)) {
+            reject(from, peerSocketId, request, REJECT_ROGUE);
+            return null;
+        }
+        int initialSeq = request.getInt(base + 8) & SrtPacket.SEQ_MASK;
+        int peerLatencyMs = 0;
+        String streamId = "";
+        ByteBuffer keyMaterial = null;
+        int offset = base + SrtPacket.HANDSHAKE_CIF_SIZE;
+        while (offset + 4 <= request.limit()) {
+            int type = request.getShort(offset) & 0xFFFF;
+            int words = request.getShort(offset + 2) & 0xFFFF;
+            int content = offset + 4;
+            if (content + words * 4 > request.limit()) {
+                break;
+            }
+            if (type == SrtPacket.EXT_HSREQ && words >= 3) {
+                // 低16位为发送端建议的延迟
+                peerLatencyMs = request.getInt(content + 8) & 0xFFFF;
+            } else if (type == SrtPacket.EXT_KMREQ) {
+                keyMaterial = request.duplicate();
+                keyMaterial.limit(content + words * 4).position(content);
+                keyMaterial = keyMaterial.slice();
+            } else if (type == SrtPacket.EXT_SID) {
+                streamId = SrtPacket.readStreamId(request, content, words);
+            }
+            offset = content + words * 4;
+        }
+
+        SrtCrypto crypto = null;
+        int keyError = 0;
+        if (keyMaterial != null) {
+            if (passphrase.isEmpty()) {
+                keyError = KM_NO_SECRET;
+            } else {
+                try {
+                    crypto = SrtCrypto.fromKeyMaterial(passphrase, keyMaterial);
+                } catch (GeneralSecurityException e) {
+                    keyError = KM_BAD_SECRET;
+                }
+            }
+        } else if (!passphrase.isEmpty()) {
+            reject(from, peerSocketId, request, REJECT_UNSECURE);
+            return null;
+        }
+
+        Session session = new Session(from, peerSocketId, initialSeq, Math.max(latencyMs, peerLatencyMs), crypto);
+        ByteBuffer response = ByteBuffer.allocate(SrtPacket.MTU);
+        SrtPacket.writeControlHeader(response, SrtPacket.CONTROL_HANDSHAKE, 0, 0, peerSocketId);
+        SrtPacket.writeHandshake(response, SrtPacket.HS_VERSION_SRT, request.getShort(base + 4),
+                SrtPacket.HS_EXT_HSREQ | (keyMaterial != null ? SrtPacket.HS_EXT_KMREQ : 0), initialSeq,
+                SrtPacket.HS_TYPE_CONCLUSION, session.socketId, 0);
+        response.putShort((short) SrtPacket.EXT_HSRSP);
+        response.putShort((short) 3);
+        response.putInt(SrtPacket.SRT_VERSION);
+        response.putInt(SrtPacket.FLAG_TSBPDSND | SrtPacket.FLAG_TSBPDRCV | SrtPacket.FLAG_TLPKTDROP
+                | SrtPacket.FLAG_PERIODICNAK | SrtPacket.FLAG_REXMITFLG
+                | (crypto != null ? SrtPacket.FLAG_CRYPT : 0));
+        response.putInt(session.latencyMs << 16 | session.latencyMs);
+        if (keyMaterial != null) {
+            response.putShort((short) SrtPacket.EXT_KMRSP);
+            if (crypto != null) {
+                // 成功时原样返回密钥材料
+                response.putShort((short) (keyMaterial.remaining() / 4));
+                response.put(keyMaterial.duplicate());
+            } else {
+                response.putShort((short) 1);
+                response.putInt(keyError);
+            }
+        }
+        response.flip();
+        session.conclusion = response;
+        session.resendConclusion();
+        if (keyError != 0) {
+            // 密钥错误时仍回复结论，由呼叫端按KMRSP报告原因
+            StreamingLog.w(TAG, "呼叫端密钥材料无效: " + keyError);
+            return null;
+        }
+        StreamingLog.d(TAG, "开始接收: " + streamId + "，延迟窗口" + session.latencyMs + "ms"
+                + (crypto != null ? "，已加密" : ""));
+        listener.onConnected(streamId);
+        return session;
+    }
+
+    private void reject(SocketAddress from, int peerSocketId, ByteBuffer request, int reason) throws IOException {
+        sendBuffer.clear();
+        SrtPacket.writeControlHeader(sendBuffer, SrtPacket.CONTROL_HANDSHAKE, 0, 0, peerSocketId);
+        SrtPacket.writeHandshake(sendBuffer, SrtPacket.HS_VERSION_SRT, 0, 0,
+                request.getInt(SrtPacket.HEADER_SIZE + 8), SrtPacket.HS_REJECT_BASE + reason, 0, 0);
+        sendBuffer.flip();
+        channel.send(sendBuffer, from);
+    }
+
+    private int cookie(SocketAddress from) {
+        return from.hashCode() * 31 + cookieSecret;
+    }
+
+    /**
+     * 读取一个报文，没有时返回null
+     */
+    private SocketAddress receive() throws IOException {
+        receiveBuffer.clear();
+        SocketAddress from = channel.receive(receiveBuffer);
+        if (from == null) {
+            return null;
+        }
+        receiveBuffer.flip();
+        return receiveBuffer.limit() >= SrtPacket.HEADER_SIZE ? from : receive();
+    }
+
+    /**
+     * 单个呼叫端的接收状态，只在接收线程上访问
+     */
+    private final class Session {
+        private final SocketAddress address;
+        private final int peerSocketId;
+        private final int socketId = random.nextInt() & SrtPacket.SEQ_MASK;
+        private final int latencyMs;
+        private final SrtCrypto crypto;
+        private final long startNanos = clock.nanoTime();
+        private final ByteBuffer[] packets = new ByteBuffer[RECEIVE_BUFFER_PACKETS];
+        private final long[] ackSentNanos = new long[RECEIVE_BUFFER_PACKETS];
+        private ByteBuffer conclusion;
+        // 下一个待交付的序号和已收到的最大序号+1
+        private int nextDeliver;
+        private int nextExpected;
+        private long gapSinceNanos = -1;
+        private long lastReceiveNanos = startNanos;
+        private long lastSendNanos = startNanos;
+        private long lastAckNanos;
+        private long lastNakNanos;
+        private int lastAckedSeq = -1;
+        private int ackNumber;
+        private boolean rttMeasured;
+        private double rttUs = INITIAL_RTT_US;
+        private double rttVarUs = INITIAL_RTT_US / 2;
+
+        Session(SocketAddress address, int peerSocketId, int initialSeq, int latencyMs, SrtCrypto crypto) {
+            this.address = address;
+            this.peerSocketId = peerSocketId;
+            this.latencyMs = latencyMs;
+            this.crypto = crypto;
+            this.nextDeliver = initialSeq;
+            this.nextExpected = initialSeq;
+        }
+
+        void resendConclusion() throws IOException {
+            conclusion.rewind();
+            channel.send(conclusion, address);
+        }
+
+        void onData(ByteBuffer packet) throws IOException {
+            long now = clock.nanoTime();
+            lastReceiveNanos = now;
+            int seq = packet.getInt(0) & SrtPacket.SEQ_MASK;
+            if (SrtPacket.seqDiff(seq, nextDeliver) < 0
+                    || SrtPacket.seqDiff(seq, nextDeliver) >= RECEIVE_BUFFER_PACKETS) {
+                return;
+            }
+            int index = seq & (RECEIVE_BUFFER_PACKETS - 1);
+            if (packets[index] != null) {
+                return;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(packet.limit() - SrtPacket.HEADER_SIZE);
+            packet.position(SrtPacket.HEADER_SIZE);
+            copy.put(packet).flip();
+            if (crypto != null && (packet.getInt(4) & SrtPacket.MSG_KEY_MASK) != 0) {
+                crypto.crypt(seq, copy, 0, copy.limit());
+            }
+            packets[index] = copy;
+
+            int gap = SrtPacket.seqDiff(seq, nextExpected);
+            if (gap > 0) {
+                // 新出现的空洞立即NAK
+                sendNak(nextExpected, SrtPacket.seqAdd(seq, -1));
+            }
+            if (gap >= 0) {
+                nextExpected = SrtPacket.seqAdd(seq, 1);
+            }
+            deliver(now);
+        }
+
+        /**
+         * @return false表示连接已结束
+         */
+        boolean onControl(ByteBuffer packet) {
+            lastReceiveNanos = clock.nanoTime();
+            switch (SrtPacket.controlType(packet)) {
+                case SrtPacket.CONTROL_ACKACK:
+                    onAckAck(SrtPacket.typeInfo(packet));
+                    return true;
+                case SrtPacket.CONTROL_SHUTDOWN:
+                    close(null);
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * 周期处理：跳过超时的空洞、ACK、NAK和保活
+         * @return false表示连接已结束
+         */
+        boolean tick(long now) throws IOException {
+            if (now - lastReceiveNanos > PEER_IDLE_TIMEOUT_NANOS) {
+                close(new SocketTimeoutException("SRT呼叫端无响应"));
+                return false;
+            }
+            deliver(now);
+            if (now - lastAckNanos >= ACK_INTERVAL_NANOS && nextDeliver != lastAckedSeq) {
+                sendAck(now);
+            }
+            if (now - lastNakNanos >= NAK_INTERVAL_NANOS && nextDeliver != nextExpected) {
+                sendPeriodicNak(now);
+            }
+            if (now - lastSendNanos >= KEEPALIVE_INTERVAL_NANOS) {
+                sendControl(SrtPacket.CONTROL_KEEPALIVE, 0, 0);
+            }
+            return true;
+        }
+
+        void close(IOException e) {
+            listener.onClosed(e);
+        }
+
+        /**
+         * 按序交付连续的包，空洞等待超过延迟窗口后跳过，连续丢失的包一起跳过
+         */
+        private void deliver(long now) {
+            while (nextDeliver != nextExpected) {
+                int index = nextDeliver & (RECEIVE_BUFFER_PACKETS - 1);
+                ByteBuffer payload = packets[index];
+                if (payload == null) {
+                    if (gapSinceNanos < 0) {
+                        gapSinceNanos = now;
+                    }
+                    if (now - gapSinceNanos < TimeUnit.MILLISECONDS.toNanos(latencyMs)) {
+                        return;
+                    }
+                    StreamingLog.d(TAG, "跳过未收到的包: " + nextDeliver);
+                } else {
+                    packets[index] = null;
+                    gapSinceNanos = -1;
+                    listener.onPayload(payload, now);
+                }
+                nextDeliver = SrtPacket.seqAdd(nextDeliver, 1);
+            }
+        }
+
+        /**
+         * 完整ACK: 下一个待收序号、往返时延及其方差 (微秒)、可用缓冲、接收速率
+         */
+        private void sendAck(long now) throws IOException {
+            ackNumber++;
+            ackSentNanos[ackNumber & (RECEIVE_BUFFER_PACKETS - 1)] = now;
+            sendBuffer.clear();
+            SrtPacket.writeControlHeader(sendBuffer, SrtPacket.CONTROL_ACK, ackNumber, timestamp(now), peerSocketId);
+            sendBuffer.putInt(nextDeliver);
+            sendBuffer.putInt((int) rttUs);
+            sendBuffer.putInt((int) rttVarUs);
+            sendBuffer.putInt(RECEIVE_BUFFER_PACKETS - SrtPacket.seqDiff(nextExpected, nextDeliver));
+            sendBuffer.putInt(0);
+            sendBuffer.putInt(0);
+            sendBuffer.putInt(0);
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            lastAckedSeq = nextDeliver;
+            lastAckNanos = now;
+            lastSendNanos = now;
+        }
+
+        /**
+         * ACKACK对应的ACK发出到收到的时间为一次往返时延样本，按RFC 6298平滑
+         */
+        private void onAckAck(int number) {
+            if (number > ackNumber || ackNumber - number >= RECEIVE_BUFFER_PACKETS) {
+                return;
+            }
+            double sampleUs = (clock.nanoTime() - ackSentNanos[number & (RECEIVE_BUFFER_PACKETS - 1)]) / 1000.0;
+            if (!rttMeasured) {
+                rttMeasured = true;
+                rttUs = sampleUs;
+                rttVarUs = sampleUs / 2;
+            } else {
+                rttVarUs = rttVarUs * 3 / 4 + Math.abs(rttUs - sampleUs) / 4;
+                rttUs = rttUs * 7 / 8 + sampleUs / 8;
+            }
+        }
+
+        /**
+         * 重新报告延迟窗口内仍未收到的包
+         */
+        private void sendPeriodicNak(long now) throws IOException {
+            sendBuffer.clear();
+            SrtPacket.writeControlHeader(sendBuffer, SrtPacket.CONTROL_NAK, 0, timestamp(now), peerSocketId);
+            int ranges = 0;
+            int seq = nextDeliver;
+            while (seq != nextExpected && ranges < MAX_NAK_RANGES) {
+                if (packets[seq & (RECEIVE_BUFFER_PACKETS - 1)] != null) {
+                    seq = SrtPacket.seqAdd(seq, 1);
+                    continue;
+                }
+                int first = seq;
+                while (seq != nextExpected && packets[seq & (RECEIVE_BUFFER_PACKETS - 1)] == null) {
+                    seq = SrtPacket.seqAdd(seq, 1);
+                }
+                putLossRange(first, SrtPacket.seqAdd(seq, -1));
+                ranges++;
+            }
+            lastNakNanos = now;
+            if (ranges == 0) {
+                return;
+            }
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            lastSendNanos = now;
+        }
+
+        private void sendNak(int first, int last) throws IOException {
+            long now = clock.nanoTime();
+            sendBuffer.clear();
+            SrtPacket.writeControlHeader(sendBuffer, SrtPacket.CONTROL_NAK, 0, timestamp(now), peerSocketId);
+            putLossRange(first, last);
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            lastNakNanos = now;
+            lastSendNanos = now;
+        }
+
+        private void putLossRange(int first, int last) {
+            if (first == last) {
+                sendBuffer.putInt(first);
+            } else {
+                sendBuffer.putInt(first | SrtPacket.LOSS_RANGE);
+                sendBuffer.putInt(last);
+            }
+        }
+
+        private void sendControl(int type, int typeInfo, int content) throws IOException {
+            long now = clock.nanoTime();
+            sendBuffer.clear();
+            SrtPacket.writeControlHeader(sendBuffer, type, typeInfo, timestamp(now), peerSocketId);
+            sendBuffer.putInt(content);
+            sendBuffer.flip();
+            channel.send(sendBuffer, address);
+            lastSendNanos = now;
+        }
+
+        private int timestamp(long nanos) {
+            return (int) TimeUnit.NANOSECONDS.toMicros(nanos - startNanos);
+        }
+    }
+}
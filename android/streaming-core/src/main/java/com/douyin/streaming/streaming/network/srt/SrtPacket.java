@@ -0,0 +1,160 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * SRT报文格式
+ * 所有报文以16字节头开始: 数据包为序号、消息字段、时间戳和目的套接字ID；
+ * 控制包首位为1，之后是15位控制类型、16位子类型、类型相关信息、时间戳和目的套接字ID。
+ * 序号为31位，按回绕比较。
+ */
+final class SrtPacket {
+    static final int HEADER_SIZE = 16;
+    // 直播模式每个数据包最多7个TS包
+    static final int MAX_PAYLOAD = TsMuxer.DATAGRAM_SIZE;
+    static final int MAX_PACKET = HEADER_SIZE + MAX_PAYLOAD;
+    static final int MTU = 1500;
+    static final int FLOW_WINDOW = 8192;
+
+    static final int CONTROL_HANDSHAKE = 0;
+    static final int CONTROL_KEEPALIVE = 1;
+    static final int CONTROL_ACK = 2;
+    static final int CONTROL_NAK = 3;
+    static final int CONTROL_SHUTDOWN = 5;
+    static final int CONTROL_ACKACK = 6;
+
+    // 握手
+    static final int HANDSHAKE_CIF_SIZE = 48;
+    static final int HS_VERSION_UDT = 4;
+    static final int HS_VERSION_SRT = 5;
+    static final int HS_TYPE_INDUCTION = 1;
+    static final int HS_TYPE_CONCLUSION = -1;
+    // 握手类型不小于此值时为拒绝原因
+    static final int HS_REJECT_BASE = 1000;
+    static final int HS_MAGIC = 0x4A17;
+    static final int HS_UDT_DGRAM = 2;
+    static final int HS_EXT_HSREQ = 1;
+    static final int HS_EXT_KMREQ = 2;
+    static final int HS_EXT_CONFIG = 4;
+
+    // 握手扩展块类型
+    static final int EXT_HSREQ = 1;
+    static final int EXT_HSRSP = 2;
+    static final int EXT_KMREQ = 3;
+    static final int EXT_KMRSP = 4;
+    static final int EXT_SID = 5;
+
+    // HSREQ标志
+    static final int FLAG_TSBPDSND = 0x01;
+    static final int FLAG_TSBPDRCV = 0x02;
+    static final int FLAG_CRYPT = 0x04;
+    static final int FLAG_TLPKTDROP = 0x08;
+    static final int FLAG_PERIODICNAK = 0x10;
+    static final int FLAG_REXMITFLG = 0x20;
+    static final int SRT_VERSION = 0x010500;
+
+    // 数据包消息字段: 2位包位置 (11为单独一个包)、1位按序交付、2位加密密钥、1位重传标志、26位消息号
+    static final int MSG_SOLO = 0xC0000000;
+    static final int MSG_KEY_EVEN = 0x08000000;
+    static final int MSG_KEY_MASK = 0x18000000;
+    static final int MSG_RETRANSMITTED = 0x04000000;
+    static final int MSG_NUMBER_MASK = 0x03FFFFFF;
+
+    static final int SEQ_MASK = 0x7FFFFFFF;
+    // NAK丢失列表中首位为1表示区间起点，下一项为区间终点
+    static final int LOSS_RANGE = 0x80000000;
+
+    private SrtPacket() {
+    }
+
+    static boolean isControl(ByteBuffer packet) {
+        return packet.getInt(0) < 0;
+    }
+
+    static int controlType(ByteBuffer packet) {
+        return (packet.getInt(0) >>> 16) & 0x7FFF;
+    }
+
+    static int typeInfo(ByteBuffer packet) {
+        return packet.getInt(4);
+    }
+
+    static int destinationSocket(ByteBuffer packet) {
+        return packet.getInt(12);
+    }
+
+    static void writeControlHeader(ByteBuffer dst, int type, int typeInfo, int timestamp, int socketId) {
+        dst.putInt(0x80000000 | type << 16);
+        dst.putInt(typeInfo);
+        dst.putInt(timestamp);
+        dst.putInt(socketId);
+    }
+
+    /**
+     * 握手信息，扩展块由调用方接着写入
+     */
+    static void writeHandshake(ByteBuffer dst, int version, int encryption, int extension, int initialSeq,
+                               int type, int socketId, int cookie) {
+        dst.putInt(version);
+        dst.putShort((short) encryption);
+        dst.putShort((short) extension);
+        dst.putInt(initialSeq);
+        dst.putInt(MTU);
+        dst.putInt(FLOW_WINDOW);
+        dst.putInt(type);
+        dst.putInt(socketId);
+        dst.putInt(cookie);
+        // 对端IP只用于诊断，回环和NAT下没有意义，填0
+        for (int i = 0; i < 4; i++) {
+            dst.putInt(0);
+        }
+    }
+
+    /**
+     * 流ID扩展块，按规范每4字节按小端存放
+     */
+    static void writeStreamId(ByteBuffer dst, byte[] streamId) {
+        int words = (streamId.length + 3) / 4;
+        dst.putShort((short) EXT_SID);
+        dst.putShort((short) words);
+        for (int word = 0; word < words; word++) {
+            for (int i = 3; i >= 0; i--) {
+                int index = word * 4 + i;
+                dst.put(index < streamId.length ? streamId[index] : 0);
+            }
+        }
+    }
+
+    static String readStreamId(ByteBuffer src, int offset, int words) {
+        byte[] bytes = new byte[words * 4];
+        int length = 0;
+        for (int word = 0; word < words; word++) {
+            for (int i = 0; i < 4; i++) {
+                byte b = src.get(offset + word * 4 + 3 - i);
+                bytes[word * 4 + i] = b;
+                if (b != 0) {
+                    length = word * 4 + i + 1;
+                }
+            }
+        }
+        try {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * a - b，按31位序号回绕
+     */
+    static int seqDiff(int a, int b) {
+        return ((a - b) << 1) >> 1;
+    }
+
+    static int seqAdd(int seq, int n) {
+        return (seq + n) & SEQ_MASK;
+    }
+}
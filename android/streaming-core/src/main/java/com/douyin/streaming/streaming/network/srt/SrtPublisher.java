@@ -0,0 +1,116 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.IOException;
+
+/**
+ * MPEG-TS over SRT发布器
+ * 帧由TsMuxer直接封装进SRT发送缓冲的数据包，每帧结束时发出未写满的最后一个包，不等待后续帧凑满7个TS包。
+ * TS没有元数据消息，PAT/PMT随关键帧发送。
+ *
+ * 由发送线程依次调用，非线程安全
+ */
+public class SrtPublisher implements FramePublisher {
+    private final SrtSocket socket;
+    private final TsMuxer muxer;
+    private final SendListener sendListener;
+
+    public SrtPublisher(SrtUrl url, ConnectionListener connectionListener, SendListener sendListener) {
+        this.socket = new SrtSocket(url, connectionListener::onDisconnected);
+        this.muxer = new TsMuxer(socket);
+        this.sendListener = sendListener;
+    }
+
+    @Override
+    public void setFrameReader(int reader) {
+        muxer.setFrameReader(reader);
+    }
+
+    /**
+     * @see SrtSocket#setPacer(TokenBucketPacer)
+     */
+    @Override
+    public void setPacer(TokenBucketPacer pacer) {
+        socket.setPacer(pacer);
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+        socket.connect(timeoutMs);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return socket.getBytesSent();
+    }
+
+    @Override
+    public double getRttMs() {
+        return socket.getRttMs();
+    }
+
+    @Override
+    public double getMinRttMs() {
+        return socket.getMinRttMs();
+    }
+
+    /**
+     * 没有拥塞控制反馈，不可用
+     */
+    @Override
+    public int getEstimatedBitrateKbps() {
+        return -1;
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return socket.getPacketsSent();
+    }
+
+    @Override
+    public long getPacketsLost() {
+        return socket.getPacketsLost();
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return socket.getPacketsRetransmitted();
+    }
+
+    /**
+     * TS没有元数据消息，不发送
+     */
+    @Override
+    public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                             int audioBitrate, int audioSampleRate, int audioChannels) {
+    }
+
+    @Override
+    public void sendKeepAlive() throws IOException {
+        socket.sendKeepAlive();
+    }
+
+    /**
+     * 封装并发送一帧，配置帧只更新封装参数
+     * 调用方负责在返回后释放帧
+     */
+    @Override
+    public void sendFrame(MediaFrame frame) throws IOException {
+        long start = System.nanoTime();
+        long bytesBefore = socket.getBytesSent();
+        muxer.writeFrame(frame);
+        muxer.flush();
+        if (sendListener != null) {
+            sendListener.onPacketSent(frame, socket.getBytesSent() - bytesBefore, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
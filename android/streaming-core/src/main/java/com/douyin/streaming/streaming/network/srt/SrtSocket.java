@@ -0,0 +1,584 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SRT呼叫端 (caller) 套接字，直播模式，只发送
+ * 建连时完成HSv5握手（诱导、结论，携带HSREQ、KMREQ和流ID扩展）。数据包写入前先放入发送缓冲，
+ * 收到NAK时按丢失列表重传并置重传标志，收到ACK时释放已确认的包并回复ACKACK，由对端据此测量往返时延。
+ * 超过对端延迟窗口的包不再重传，直接从缓冲中丢弃。
+ *
+ * 数据包由发送线程写入，控制包由接收线程处理，重传也在接收线程上进行，二者以发送缓冲的锁互斥。
+ * 发送缓冲中的包在首次发送前加密，重传时原样发出。
+ */
+public class SrtSocket implements Closeable, TsMuxer.Output {
+    private static final String TAG = "SrtSocket";
+
+    // 发送缓冲的包数，2.5Mbps下约4秒，远超延迟窗口
+    private static final int SEND_BUFFER_PACKETS = 1024;
+    private static final long HANDSHAKE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long RECEIVE_POLL_MS = 10;
+    // 空闲1秒发保活，对端5秒无任何报文视为断开
+    private static final long KEEPALIVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PEER_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // 超过对端延迟窗口的1.25倍不再重传，最少1秒，同libsrt的TLPKTDROP
+    private static final long MIN_DROP_THRESHOLD_MS = 1000;
+
+    /**
+     * 连接事件，在接收线程上回调
+     */
+    public interface Listener {
+        /**
+         * 连接建立后对端关闭或超时
+         */
+        void onDisconnected(IOException e);
+    }
+
+    private final SrtUrl url;
+    private final Listener listener;
+    private final Object sendLock = new Object();
+    private final ByteBuffer[] slots = new ByteBuffer[SEND_BUFFER_PACKETS];
+    private final long[] slotSentNanos = new long[SEND_BUFFER_PACKETS];
+    // 控制包由sendLock保护，接收缓冲只在建连线程和接收线程上依次使用
+    private final ByteBuffer controlBuffer = ByteBuffer.allocateDirect(SrtPacket.MTU);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(SrtPacket.MTU);
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread receiverThread;
+    private SrtCrypto crypto;
+    // 只在发送线程上使用
+    private TokenBucketPacer pacer;
+    private volatile boolean closed;
+    private long startNanos;
+    private int socketId;
+    private int peerSocketId;
+    private long dropThresholdNanos;
+    // 以下由sendLock保护
+    private int firstUnacked;
+    private int nextSeq;
+    private int messageNumber = 1;
+    private long lastSendNanos;
+
+    private volatile long lastReceiveNanos;
+    private volatile long bytesSent;
+    private volatile long packetsSent;
+    private volatile long packetsLost;
+    private volatile long packetsRetransmitted;
+    private volatile long packetsDropped;
+    private volatile double rttMs = -1;
+    private volatile double minRttMs = -1;
+
+    public SrtSocket(SrtUrl url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /**
+     * 握手建立连接，整体受超时限制
+     */
+    public void connect(int timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Random random = new Random();
+        socketId = random.nextInt() & SrtPacket.SEQ_MASK;
+        int initialSeq = random.nextInt() & SrtPacket.SEQ_MASK;
+        if (url.isEncrypted()) {
+            try {
+                crypto = SrtCrypto.generate(url.getPassphrase(), url.getKeyLength());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("生成SRT密钥失败", e);
+            }
+        }
+
+        startNanos = System.nanoTime();
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress(url.getHost(), url.getPort()));
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        // 诱导：对端回复版本5、SRT魔数和SYN cookie
+        ByteBuffer reply = handshake(deadline, HandshakeStep.INDUCTION, initialSeq, 0);
+        int cookie = reply.getInt(SrtPacket.HEADER_SIZE + 28);
+        if (reply.getInt(SrtPacket.HEADER_SIZE) != SrtPacket.HS_VERSION_SRT
+                || (reply.getShort(SrtPacket.HEADER_SIZE + 6) & 0xFFFF) != SrtPacket.HS_MAGIC) {
+            throw new IOException("服务器不支持SRT v5握手");
+        }
+
+        // 结论：协商延迟、加密和流ID
+        reply = handshake(deadline, HandshakeStep.CONCLUSION, initialSeq, cookie);
+        peerSocketId = reply.getInt(SrtPacket.HEADER_SIZE + 24);
+        int peerLatencyMs = url.getLatencyMs();
+        boolean keyAccepted = crypto == null;
+        int offset = SrtPacket.HEADER_SIZE + SrtPacket.HANDSHAKE_CIF_SIZE;
+        while (offset + 4 <= reply.limit()) {
+            int type = reply.getShort(offset) & 0xFFFF;
+            int words = reply.getShort(offset + 2) & 0xFFFF;
+            int content = offset + 4;
+            if (content + words * 4 > reply.limit()) {
+                break;
+            }
+            if (type == SrtPacket.EXT_HSRSP && words >= 3) {
+                // 高16位为对端的接收延迟，即本端数据在对端等待重传的窗口
+                peerLatencyMs = Math.max(peerLatencyMs, reply.getInt(content + 8) >>> 16);
+            } else if (type == SrtPacket.EXT_KMRSP && crypto != null) {
+                if (words == 1) {
+                    throw new IOException(keyMaterialError(reply.getInt(content)));
+                }
+                keyAccepted = true;
+            }
+            offset = content + words * 4;
+        }
+        if (!keyAccepted) {
+            throw new IOException("服务器未返回密钥材料，可能不支持加密");
+        }
+
+        dropThresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(MIN_DROP_THRESHOLD_MS, peerLatencyMs * 5L / 4 + 20));
+        firstUnacked = initialSeq;
+        nextSeq = initialSeq;
+        lastReceiveNanos = System.nanoTime();
+        lastSendNanos = lastReceiveNanos;
+        StreamingLog.i(TAG, url + " 已连接，延迟窗口" + peerLatencyMs + "ms" + (crypto != null ? "，已加密" : ""));
+
+        receiverThread = new Thread(this::receiveLoop, "SrtReceiver");
+        receiverThread.start();
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * 首次发送的数据包数
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * 对端NAK报告丢失的包数，同一个包多次报告时只计一次
+     */
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    public long getPacketsRetransmitted() {
+        return packetsRetransmitted;
+    }
+
+    /**
+     * 超过延迟窗口仍未确认、不再重传的包数
+     */
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    /**
+     * 对端在ACK中报告的平滑往返时延，尚无数据时返回-1
+     */
+    public double getRttMs() {
+        return rttMs;
+    }
+
+    public double getMinRttMs() {
+        return minRttMs;
+    }
+
+    /**
+     * 设置数据包的发送节拍，连接前调用，为null时不限速；重传和控制包不受限制
+     */
+    public void setPacer(TokenBucketPacer pacer) {
+        this.pacer = pacer;
+    }
+
+    /**
+     * 获取下一个数据包的负载缓冲区，position在包头之后
+     * 发送缓冲已满时丢弃最早未确认的包
+     */
+    @Override
+    public ByteBuffer acquire() {
+        synchronized (sendLock) {
+            if (SrtPacket.seqDiff(nextSeq, firstUnacked) >= SEND_BUFFER_PACKETS) {
+                firstUnacked = SrtPacket.seqAdd(firstUnacked, 1);
+                packetsDropped++;
+            }
+            int index = nextSeq & (SEND_BUFFER_PACKETS - 1);
+            ByteBuffer slot = slots[index];
+            if (slot == null) {
+                slot = ByteBuffer.allocateDirect(SrtPacket.MAX_PACKET);
+                slots[index] = slot;
+            }
+            slot.clear();
+            slot.position(SrtPacket.HEADER_SIZE);
+            return slot;
+        }
+    }
+
+    /**
+     * 填写包头、加密并发送acquire()取得的数据包
+     */
+    @Override
+    public void commit(ByteBuffer packet) throws IOException {
+        int length = packet.position();
+        if (length <= SrtPacket.HEADER_SIZE) {
+            return;
+        }
+        // 在锁外等待令牌，不阻塞接收线程的重传
+        if (pacer != null) {
+            pacer.acquire(length);
+        }
+        synchronized (sendLock) {
+            long now = System.nanoTime();
+            int seq = nextSeq;
+            packet.putInt(0, seq);
+            packet.putInt(4, SrtPacket.MSG_SOLO | (crypto != null ? SrtPacket.MSG_KEY_EVEN : 0)
+                    | messageNumber);
+            packet.putInt(8, timestamp(now));
+            packet.putInt(12, peerSocketId);
+            if (crypto != null) {
+                crypto.crypt(seq, packet, SrtPacket.HEADER_SIZE, length - SrtPacket.HEADER_SIZE);
+            }
+            packet.limit(length).position(0);
+            slotSentNanos[seq & (SEND_BUFFER_PACKETS - 1)] = now;
+            nextSeq = SrtPacket.seqAdd(seq, 1);
+            messageNumber = (messageNumber & SrtPacket.MSG_NUMBER_MASK) + 1;
+            write(packet);
+            packetsSent++;
+            bytesSent += length;
+            lastSendNanos = now;
+        }
+        if (pacer != null) {
+            pacer.onSent(length);
+        }
+    }
+
+    public void sendKeepAlive() throws IOException {
+        synchronized (sendLock) {
+            sendControl(SrtPacket.CONTROL_KEEPALIVE, 0, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (channel != null && channel.isConnected() && peerSocketId != 0) {
+            try {
+                synchronized (sendLock) {
+                    sendControl(SrtPacket.CONTROL_SHUTDOWN, 0, null);
+                }
+            } catch (IOException e) {
+                StreamingLog.d(TAG, "发送SHUTDOWN失败: " + e.getMessage());
+            }
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (receiverThread != null && receiverThread != Thread.currentThread()) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭SRT套接字失败", e);
+        }
+    }
+
+    private enum HandshakeStep {
+        INDUCTION,
+        CONCLUSION
+    }
+
+    /**
+     * 发送握手并等待对应的回复，超时前每250ms重发一次
+     * @return 回复报文，position为0
+     */
+    private ByteBuffer handshake(long deadline, HandshakeStep step, int initialSeq, int cookie) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(SrtPacket.MTU);
+        SrtPacket.writeControlHeader(request, SrtPacket.CONTROL_HANDSHAKE, 0, timestamp(System.nanoTime()), 0);
+        if (step == HandshakeStep.INDUCTION) {
+            SrtPacket.writeHandshake(request, SrtPacket.HS_VERSION_UDT, 0, SrtPacket.HS_UDT_DGRAM, initialSeq,
+                    SrtPacket.HS_TYPE_INDUCTION, socketId, 0);
+        } else {
+            byte[] streamId = url.getStreamId() != null ? url.getStreamId().getBytes("UTF-8") : null;
+            int extensions = SrtPacket.HS_EXT_HSREQ | (crypto != null ? SrtPacket.HS_EXT_KMREQ : 0)
+                    | (streamId != null ? SrtPacket.HS_EXT_CONFIG : 0);
+            SrtPacket.writeHandshake(request, SrtPacket.HS_VERSION_SRT,
+                    crypto != null ? crypto.getEncryptionField() : 0, extensions, initialSeq,
+                    SrtPacket.HS_TYPE_CONCLUSION, socketId, cookie);
+            request.putShort((short) SrtPacket.EXT_HSREQ);
+            request.putShort((short) 3);
+            request.putInt(SrtPacket.SRT_VERSION);
+            request.putInt(SrtPacket.FLAG_TSBPDSND | SrtPacket.FLAG_TSBPDRCV | SrtPacket.FLAG_TLPKTDROP
+                    | SrtPacket.FLAG_PERIODICNAK | SrtPacket.FLAG_REXMITFLG
+                    | (crypto != null ? SrtPacket.FLAG_CRYPT : 0));
+            request.putInt(url.getLatencyMs() << 16 | url.getLatencyMs());
+            if (crypto != null) {
+                request.putShort((short) SrtPacket.EXT_KMREQ);
+                request.putShort((short) crypto.getKeyMaterialWords());
+                crypto.writeKeyMaterial(request);
+            }
+            if (streamId != null) {
+                SrtPacket.writeStreamId(request, streamId);
+            }
+        }
+        request.flip();
+
+        int expectedType = step == HandshakeStep.INDUCTION
+                ? SrtPacket.HS_TYPE_INDUCTION : SrtPacket.HS_TYPE_CONCLUSION;
+        long nextSend = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                throw new SocketTimeoutException("SRT握手超时");
+            }
+            if (now >= nextSend) {
+                request.rewind();
+                channel.write(request);
+                nextSend = now + HANDSHAKE_RETRY_NANOS;
+            }
+            long waitMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(deadline, nextSend) - now));
+            selector.select(waitMs);
+            selector.selectedKeys().clear();
+            ByteBuffer reply;
+            while ((reply = receive()) != null) {
+                if (!SrtPacket.isControl(reply) || SrtPacket.controlType(reply) != SrtPacket.CONTROL_HANDSHAKE
+                        || reply.limit() < SrtPacket.HEADER_SIZE + SrtPacket.HANDSHAKE_CIF_SIZE) {
+                    continue;
+                }
+                int type = reply.getInt(SrtPacket.HEADER_SIZE + 20);
+                if (type >= SrtPacket.HS_REJECT_BASE) {
+                    throw new IOException("服务器拒绝连接: " + rejectReason(type));
+                }
+                if (type == expectedType) {
+                    return reply;
+                }
+            }
+        }
+    }
+
+    private void receiveLoop() {
+        IOException error = null;
+        try {
+            while (!closed) {
+                selector.select(RECEIVE_POLL_MS);
+                selector.selectedKeys().clear();
+                ByteBuffer packet;
+                while (!closed && (packet = receive()) != null) {
+                    lastReceiveNanos = System.nanoTime();
+                    if (SrtPacket.isControl(packet)) {
+                        handleControl(packet);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - lastReceiveNanos > PEER_IDLE_TIMEOUT_NANOS) {
+                    throw new SocketTimeoutException("SRT对端无响应");
+                }
+                synchronized (sendLock) {
+                    dropExpired(now);
+                    if (now - lastSendNanos > KEEPALIVE_INTERVAL_NANOS) {
+                        sendControl(SrtPacket.CONTROL_KEEPALIVE, 0, null);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+        if (!closed && error != null) {
+            StreamingLog.w(TAG, url + " 连接断开: " + error.getMessage());
+            listener.onDisconnected(error);
+        }
+    }
+
+    private void handleControl(ByteBuffer packet) throws IOException {
+        int type = SrtPacket.controlType(packet);
+        switch (type) {
+            case SrtPacket.CONTROL_ACK:
+                onAck(packet);
+                break;
+            case SrtPacket.CONTROL_NAK:
+                onNak(packet);
+                break;
+            case SrtPacket.CONTROL_SHUTDOWN:
+                throw new IOException("服务器关闭了连接");
+            default:
+                // 保活和其他控制包只用于刷新对端活跃时间
+                break;
+        }
+    }
+
+    /**
+     * 释放已确认的包；完整ACK带往返时延，回复ACKACK
+     */
+    private void onAck(ByteBuffer packet) throws IOException {
+        if (packet.limit() < SrtPacket.HEADER_SIZE + 4) {
+            return;
+        }
+        int ackSeq = packet.getInt(SrtPacket.HEADER_SIZE) & SrtPacket.SEQ_MASK;
+        synchronized (sendLock) {
+            if (SrtPacket.seqDiff(ackSeq, firstUnacked) > 0 && SrtPacket.seqDiff(ackSeq, nextSeq) <= 0) {
+                firstUnacked = ackSeq;
+            }
+            if (packet.limit() >= SrtPacket.HEADER_SIZE + 12) {
+                double rtt = packet.getInt(SrtPacket.HEADER_SIZE + 4) / 1000.0;
+                rttMs = rtt;
+                minRttMs = minRttMs < 0 ? rtt : Math.min(minRttMs, rtt);
+                sendControl(SrtPacket.CONTROL_ACKACK, SrtPacket.typeInfo(packet), null);
+            }
+        }
+    }
+
+    /**
+     * 按丢失列表重传仍在缓冲中的包
+     */
+    private void onNak(ByteBuffer packet) throws IOException {
+        int end = packet.limit();
+        synchronized (sendLock) {
+            for (int offset = SrtPacket.HEADER_SIZE; offset + 4 <= end; offset += 4) {
+                int first = packet.getInt(offset);
+                int last = first;
+                if ((first & SrtPacket.LOSS_RANGE) != 0) {
+                    if (offset + 8 > end) {
+                        break;
+                    }
+                    first &= SrtPacket.SEQ_MASK;
+                    offset += 4;
+                    last = packet.getInt(offset) & SrtPacket.SEQ_MASK;
+                }
+                int count = SrtPacket.seqDiff(last, first) + 1;
+                if (count <= 0) {
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    retransmit(SrtPacket.seqAdd(first, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 只在持有sendLock时调用
+     */
+    private void retransmit(int seq) throws IOException {
+        if (SrtPacket.seqDiff(seq, firstUnacked) < 0 || SrtPacket.seqDiff(seq, nextSeq) >= 0) {
+            return;
+        }
+        ByteBuffer slot = slots[seq & (SEND_BUFFER_PACKETS - 1)];
+        int message = slot.getInt(4);
+        if ((message & SrtPacket.MSG_RETRANSMITTED) == 0) {
+            packetsLost++;
+            slot.putInt(4, message | SrtPacket.MSG_RETRANSMITTED);
+        }
+        slot.position(0);
+        write(slot);
+        packetsRetransmitted++;
+        bytesSent += slot.limit();
+    }
+
+    /**
+     * 丢弃超过延迟窗口的包，对端已按TLPKTDROP跳过它们，只在持有sendLock时调用
+     */
+    private void dropExpired(long now) {
+        while (firstUnacked != nextSeq
+                && now - slotSentNanos[firstUnacked & (SEND_BUFFER_PACKETS - 1)] > dropThresholdNanos) {
+            firstUnacked = SrtPacket.seqAdd(firstUnacked, 1);
+            packetsDropped++;
+        }
+    }
+
+    /**
+     * 只在持有sendLock时调用
+     */
+    private void sendControl(int type, int typeInfo, ByteBuffer content) throws IOException {
+        long now = System.nanoTime();
+        controlBuffer.clear();
+        SrtPacket.writeControlHeader(controlBuffer, type, typeInfo, timestamp(now), peerSocketId);
+        if (content != null) {
+            controlBuffer.put(content);
+        } else {
+            controlBuffer.putInt(0);
+        }
+        controlBuffer.flip();
+        write(controlBuffer);
+        lastSendNanos = now;
+    }
+
+    private void write(ByteBuffer packet) throws IOException {
+        // 套接字缓冲满时UDP包直接丢失，由对端NAK触发重传
+        channel.write(packet);
+    }
+
+    /**
+     * 读取一个报文，没有时返回null
+     */
+    private ByteBuffer receive() throws IOException {
+        receiveBuffer.clear();
+        if (channel.read(receiveBuffer) <= 0) {
+            return null;
+        }
+        receiveBuffer.flip();
+        return receiveBuffer.limit() >= SrtPacket.HEADER_SIZE ? receiveBuffer : null;
+    }
+
+    /**
+     * 相对建连时间的微秒数，32位回绕
+     */
+    private int timestamp(long nanos) {
+        return (int) TimeUnit.NANOSECONDS.toMicros(nanos - startNanos);
+    }
+
+    private static String keyMaterialError(int state) {
+        switch (state) {
+            case 3:
+                return "服务器未设置SRT密码";
+            case 4:
+                return "SRT密码错误";
+            default:
+                return "服务器不接受密钥材料: " + state;
+        }
+    }
+
+    private static String rejectReason(int type) {
+        // 1000-1999为协议定义的原因，2000以上为服务器自定义，如流ID无权限
+        switch (type - SrtPacket.HS_REJECT_BASE) {
+            case 2:
+                return "对端拒绝";
+            case 8:
+                return "版本不兼容";
+            case 10:
+                return "SRT密码错误";
+            case 11:
+                return "加密设置不匹配";
+            default:
+                return "代码" + (type - SrtPacket.HS_REJECT_BASE);
+        }
+    }
+}
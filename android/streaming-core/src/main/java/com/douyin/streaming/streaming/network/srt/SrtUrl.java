@@ -0,0 +1,180 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * SRT推流地址
+ * 格式: srt://host:port[?streamid=...&latency=毫秒&passphrase=...&pbkeylen=16]
+ * 查询参数与srt-live-transmit一致，latency的单位为毫秒；未给出的参数使用调用方的默认值
+ */
+public final class SrtUrl implements FramePublisher.Endpoint {
+    private static final String SCHEME = "srt://";
+    private static final int MIN_PASSPHRASE_LENGTH = 10;
+    private static final int MAX_PASSPHRASE_LENGTH = 79;
+    // 握手扩展中的流ID最长512字节
+    private static final int MAX_STREAM_ID_LENGTH = 512;
+
+    private final String host;
+    private final int port;
+    private final String streamId;
+    private final int latencyMs;
+    private final String passphrase;
+    private final int keyLength;
+
+    private SrtUrl(String host, int port, String streamId, int latencyMs, String passphrase, int keyLength) {
+        this.host = host;
+        this.port = port;
+        this.streamId = streamId;
+        this.latencyMs = latencyMs;
+        this.passphrase = passphrase;
+        this.keyLength = keyLength;
+    }
+
+    public static boolean isSupported(String url) {
+        try {
+            parse(url, 120, "", 16);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param latencyMs 地址中没有latency参数时的延迟窗口
+     * @param passphrase 地址中没有passphrase参数时的密码，为空表示不加密
+     * @param keyLength 地址中没有pbkeylen参数时的AES密钥长度 (字节)
+     */
+    public static SrtUrl parse(String url, int latencyMs, String passphrase, int keyLength) {
+        if (url == null || !url.regionMatches(true, 0, SCHEME, 0, SCHEME.length())) {
+            throw new IllegalArgumentException("不支持的推流地址: " + url);
+        }
+
+        String rest = url.substring(SCHEME.length());
+        int queryStart = rest.indexOf('?');
+        String authority = queryStart < 0 ? rest : rest.substring(0, queryStart);
+        if (authority.endsWith("/")) {
+            authority = authority.substring(0, authority.length() - 1);
+        }
+        int colon = authority.lastIndexOf(':');
+        if (colon <= 0 || authority.indexOf(']') > colon) {
+            throw new IllegalArgumentException("推流地址缺少端口: " + url);
+        }
+        String host = authority.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(authority.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("推流地址端口无效: " + url);
+        }
+        if (port <= 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("推流地址端口无效: " + url);
+        }
+
+        String streamId = null;
+        if (queryStart >= 0) {
+            for (String param : rest.substring(queryStart + 1).split("&")) {
+                int eq = param.indexOf('=');
+                if (eq <= 0) {
+                    continue;
+                }
+                String key = param.substring(0, eq);
+                String value = decode(param.substring(eq + 1));
+                try {
+                    if (key.equals("streamid")) {
+                        streamId = value;
+                    } else if (key.equals("latency")) {
+                        latencyMs = Integer.parseInt(value);
+                    } else if (key.equals("passphrase")) {
+                        passphrase = value;
+                    } else if (key.equals("pbkeylen")) {
+                        keyLength = Integer.parseInt(value);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("推流地址参数无效: " + param);
+                }
+            }
+        }
+        return new SrtUrl(host, port, streamId, latencyMs, passphrase, keyLength).validate();
+    }
+
+    /**
+     * 地址中没有streamid参数时使用给定的流ID
+     */
+    public SrtUrl withDefaultStreamId(String defaultStreamId) {
+        if (streamId != null || defaultStreamId == null || defaultStreamId.isEmpty()) {
+            return this;
+        }
+        return new SrtUrl(host, port, defaultStreamId, latencyMs, passphrase, keyLength).validate();
+    }
+
+    /**
+     * 替换流ID，多码率阶梯各档推到同一服务器的不同流
+     */
+    public SrtUrl withStreamId(String newStreamId) {
+        return new SrtUrl(host, port, newStreamId, latencyMs, passphrase, keyLength).validate();
+    }
+
+    public String getHost() { return host; }
+
+    public int getPort() { return port; }
+
+    /**
+     * 流ID，没有时为null
+     */
+    public String getStreamId() { return streamId; }
+
+    public int getLatencyMs() { return latencyMs; }
+
+    public String getPassphrase() { return passphrase; }
+
+    public boolean isEncrypted() { return passphrase != null && !passphrase.isEmpty(); }
+
+    public int getKeyLength() { return keyLength; }
+
+    @Override
+    public FramePublisher create(FramePublisher.ConnectionListener connectionListener,
+                                 FramePublisher.SendListener sendListener) {
+        return new SrtPublisher(this, connectionListener, sendListener);
+    }
+
+    /**
+     * 不含密码
+     */
+    @Override
+    public String toString() {
+        String address = host.indexOf(':') >= 0 ? "[" + host + "]" : host;
+        return SCHEME + address + ":" + port + (streamId != null ? "?streamid=" + streamId : "");
+    }
+
+    private SrtUrl validate() {
+        if (latencyMs < 0 || latencyMs > 0xFFFF) {
+            throw new IllegalArgumentException("SRT延迟无效: " + latencyMs);
+        }
+        if (isEncrypted() && (passphrase.length() < MIN_PASSPHRASE_LENGTH
+                || passphrase.length() > MAX_PASSPHRASE_LENGTH)) {
+            throw new IllegalArgumentException("SRT密码须为" + MIN_PASSPHRASE_LENGTH + "-"
+                    + MAX_PASSPHRASE_LENGTH + "个字符");
+        }
+        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
+            throw new IllegalArgumentException("SRT密钥长度须为16、24或32: " + keyLength);
+        }
+        if (streamId != null && streamId.length() > MAX_STREAM_ID_LENGTH) {
+            throw new IllegalArgumentException("SRT流ID过长");
+        }
+        return this;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.douyin.streaming.streaming.network.udp;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * 进程内MPEG-TS over UDP接收端
+ * 只监听本机回环地址，收到的数据报连同到达时间交给Listener，不排序也不恢复丢包，丢包由TS连续计数发现。
+ * 记录最长的连续突发（相邻到达间隔都小于200微秒的数据报数），用于检查发送端的节拍。
+ * 用于在没有真实接收端时测试UdpTsPublisher和FFmpeg的UDP输出，只用于测试和压测，不用于生产。
+ */
+public class UdpIngestServer implements Closeable {
+    private static final String TAG = "UdpIngestServer";
+
+    private static final long TICK_MS = 10;
+    private static final long BURST_GAP_NANOS = 200000;
+    // 接收线程短暂停顿时由内核缓冲，避免回环上丢包
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * 接收事件，在接收线程上回调
+     */
+    public interface Listener {
+        /**
+         * @param payload 数据报，回调返回后失效
+         * @param arrivalNanos 到达时间
+         */
+        void onPayload(ByteBuffer payload, long arrivalNanos);
+
+        /**
+         * 接收结束
+         * @param e 异常结束时不为null
+         */
+        void onClosed(IOException e);
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(TsMuxer.DATAGRAM_SIZE);
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread receiverThread;
+    private volatile boolean closed;
+    private volatile long datagramsReceived;
+    private volatile int maxBurst;
+    private volatile boolean resetBurst;
+    // 只在接收线程上访问
+    private long lastArrivalNanos = -1;
+    private int burst;
+
+    public UdpIngestServer(Listener listener, Clock clock) {
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * 在回环地址上开始监听
+     * @param port 端口，0表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        channel = DatagramChannel.open();
+        channel.socket().setReceiveBufferSize(RECEIVE_BUFFER_BYTES);
+        channel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        receiverThread = new Thread(this::receiveLoop, "UdpIngest");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        StreamingLog.i(TAG, "UDP接收端已启动: " + getUrl());
+    }
+
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    public String getUrl() {
+        return "udp://127.0.0.1:" + getPort() + "?pkt_size=" + TsMuxer.DATAGRAM_SIZE;
+    }
+
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    /**
+     * 最长连续突发的数据报数
+     */
+    public int getMaxBurst() {
+        return maxBurst;
+    }
+
+    /**
+     * 清除突发统计，用于排除预热期间的数据
+     */
+    public void resetBurst() {
+        resetBurst = true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (receiverThread != null) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭UDP接收端失败", e);
+        }
+    }
+
+    private void recordArrival(long now) {
+        if (resetBurst) {
+            resetBurst = false;
+            maxBurst = 0;
+            burst = 0;
+        }
+        burst = lastArrivalNanos >= 0 && now - lastArrivalNanos < BURST_GAP_NANOS ? burst + 1 : 1;
+        lastArrivalNanos = now;
+        if (burst > maxBurst) {
+            maxBurst = burst;
+        }
+    }
+
+    private void receiveLoop() {
+        try {
+            while (!closed) {
+                selector.select(TICK_MS);
+                selector.selectedKeys().clear();
+                while (!closed) {
+                    receiveBuffer.clear();
+                    if (channel.receive(receiveBuffer) == null) {
+                        break;
+                    }
+                    receiveBuffer.flip();
+                    long now = clock.nanoTime();
+                    recordArrival(now);
+                    datagramsReceived++;
+                    listener.onPayload(receiveBuffer, now);
+                }
+            }
+            listener.onClosed(null);
+        } catch (IOException e) {
+            if (!closed) {
+                StreamingLog.e(TAG, "UDP接收端异常", e);
+                listener.onClosed(e);
+            } else {
+                listener.onClosed(null);
+            }
+        }
+    }
+}
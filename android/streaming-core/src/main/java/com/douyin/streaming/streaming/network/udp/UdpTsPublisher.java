@@ -0,0 +1,119 @@
+package com.douyin.streaming.streaming.network.udp;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.IOException;
+
+/**
+ * MPEG-TS over UDP发布器
+ * 帧由TsMuxer直接封装进UdpTsSocket的数据报池，每帧结束时交出未写满的最后一个数据报并按PCR排定发送时间。
+ * UDP没有反馈，往返时延、丢包和带宽估计均不可用。
+ *
+ * 由发送线程依次调用，非线程安全
+ */
+public class UdpTsPublisher implements FramePublisher {
+    private final UdpTsSocket socket;
+    private final TsMuxer muxer;
+    private final SendListener sendListener;
+
+    public UdpTsPublisher(UdpUrl url, ConnectionListener connectionListener, SendListener sendListener) {
+        this.socket = new UdpTsSocket(url, connectionListener::onDisconnected);
+        this.muxer = new TsMuxer(socket);
+        this.sendListener = sendListener;
+    }
+
+    @Override
+    public void setFrameReader(int reader) {
+        muxer.setFrameReader(reader);
+    }
+
+    /**
+     * UdpTsSocket已按PCR间隔分散发送，不再叠加节拍
+     */
+    @Override
+    public void setPacer(TokenBucketPacer pacer) {
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+        socket.connect(timeoutMs);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return socket.getBytesSent();
+    }
+
+    /**
+     * 没有反馈，不可用
+     */
+    @Override
+    public double getRttMs() {
+        return -1;
+    }
+
+    @Override
+    public double getMinRttMs() {
+        return -1;
+    }
+
+    @Override
+    public int getEstimatedBitrateKbps() {
+        return -1;
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return socket.getPacketsSent();
+    }
+
+    @Override
+    public long getPacketsLost() {
+        return 0;
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return 0;
+    }
+
+    /**
+     * TS没有元数据消息，不发送
+     */
+    @Override
+    public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                             int audioBitrate, int audioSampleRate, int audioChannels) {
+    }
+
+    /**
+     * 无连接，不需要保活
+     */
+    @Override
+    public void sendKeepAlive() {
+    }
+
+    /**
+     * 封装一帧并交给节拍线程，配置帧只更新封装参数
+     * 数据报由节拍线程稍后发出，回调的字节数为写入池的字节数
+     * 调用方负责在返回后释放帧
+     */
+    @Override
+    public void sendFrame(MediaFrame frame) throws IOException {
+        long start = System.nanoTime();
+        long bytesBefore = socket.getBytesQueued();
+        muxer.writeFrame(frame);
+        muxer.flush();
+        socket.endFrame(!frame.isConfig() && frame.isVideo() ? frame.getDtsUs() : -1);
+        if (sendListener != null) {
+            sendListener.onPacketSent(frame, socket.getBytesQueued() - bytesBefore, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
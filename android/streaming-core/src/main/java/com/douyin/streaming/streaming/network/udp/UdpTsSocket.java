@@ -0,0 +1,264 @@
+package com.douyin.streaming.streaming.network.udp;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MPEG-TS over UDP发送端，只发送，没有握手和反馈
+ * 7×188字节的数据报预先分配在一块直接内存中，组成环形池，稳态发送不分配内存。发送线程经TsMuxer.Output
+ * 写入，一帧写完后为该帧的数据报排定发送时间并一次交给节拍线程：按PCR时间轴统计平均速率，带PCR的视频帧以
+ * 平均速率的4倍分散发送，最长不超过与上一个PCR间隔的80%，关键帧等大帧不会瞬间突发而在交换机或接收端溢出，
+ * 普通帧只增加几毫秒延迟；音频帧紧随其后发出。节拍线程到时写出，池满时发送线程等待。
+ *
+ * 发送线程是池的唯一生产者，节拍线程是唯一消费者，以两个volatile序号交接
+ */
+public class UdpTsSocket implements Closeable, TsMuxer.Output {
+    private static final String TAG = "UdpTsSocket";
+
+    // 数据报池的大小，2.5Mbps下约2秒
+    private static final int POOL_DATAGRAMS = 512;
+    private static final int POOL_MASK = POOL_DATAGRAMS - 1;
+    // 节拍速率为平均速率的倍数
+    private static final double PACING_GAIN = 4;
+    // 一帧的数据报分布在PCR间隔的80%内，留出余量使排期不会越积越晚
+    private static final double PACING_RATIO = 0.8;
+    // 平均速率的平滑系数，约0.5秒
+    private static final double RATE_ALPHA = 1.0 / 16;
+    // 丢帧或暂停使PCR间隔过大时按该值分布
+    private static final long MAX_PACING_WINDOW_US = 100000;
+    // 排期超前当前时间的上限，超过后不再顺延，突发后尽快追上
+    private static final long MAX_SCHEDULE_AHEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long POOL_FULL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final int SEND_BUFFER_BYTES = 256 * 1024;
+
+    /**
+     * 发送出错，在节拍线程上回调
+     */
+    public interface Listener {
+        void onDisconnected(IOException e);
+    }
+
+    private final UdpUrl url;
+    private final Listener listener;
+    private final ByteBuffer[] slots = new ByteBuffer[POOL_DATAGRAMS];
+    private final long[] releaseNanos = new long[POOL_DATAGRAMS];
+
+    private DatagramChannel channel;
+    private Thread pacerThread;
+    private volatile boolean closed;
+    private volatile IOException error;
+
+    // 以下只在发送线程上访问
+    private int writeIndex;
+    private long nextReleaseNanos;
+    private long lastPcrUs = -1;
+    private int lastPcrIndex;
+    // PCR时间轴上的平均速率 (数据报/微秒)，尚无数据时为0
+    private double datagramsPerUs;
+    private long bytesQueued;
+
+    // 已交给节拍线程的序号和已发出的序号
+    private volatile int published;
+    private volatile int sent;
+
+    private volatile long bytesSent;
+    private volatile long packetsSent;
+    private volatile boolean unreachableWarned;
+
+    public UdpTsSocket(UdpUrl url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+        ByteBuffer pool = ByteBuffer.allocateDirect(POOL_DATAGRAMS * TsMuxer.DATAGRAM_SIZE);
+        for (int i = 0; i < POOL_DATAGRAMS; i++) {
+            pool.limit((i + 1) * TsMuxer.DATAGRAM_SIZE).position(i * TsMuxer.DATAGRAM_SIZE);
+            slots[i] = pool.slice();
+        }
+    }
+
+    /**
+     * UDP无连接，只解析地址、打开套接字并启动节拍线程，超时不适用
+     */
+    public void connect(int timeoutMs) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(url.getHost(), url.getPort());
+        if (address.isUnresolved()) {
+            throw new UnknownHostException("无法解析推流地址: " + url.getHost());
+        }
+        channel = DatagramChannel.open();
+        channel.socket().setSendBufferSize(SEND_BUFFER_BYTES);
+        channel.connect(address);
+        pacerThread = new Thread(this::paceLoop, "UdpTsPacer");
+        pacerThread.start();
+        StreamingLog.d(TAG, "UDP套接字已打开: " + url);
+    }
+
+    /**
+     * 池满时等待节拍线程发出，当前帧已占满整个池时先将已写的数据报立即发出
+     */
+    @Override
+    public ByteBuffer acquire() throws IOException {
+        if (writeIndex - sent >= POOL_DATAGRAMS) {
+            waitForSpace();
+        }
+        ByteBuffer slot = slots[writeIndex & POOL_MASK];
+        slot.clear();
+        return slot;
+    }
+
+    @Override
+    public void commit(ByteBuffer datagram) {
+        datagram.flip();
+        bytesQueued += datagram.remaining();
+        writeIndex++;
+    }
+
+    /**
+     * 一帧写完后排定其数据报的发送时间并交给节拍线程
+     * @param pcrUs 带PCR的视频帧为其DTS (微秒)，其余为-1，数据报不分散
+     */
+    public void endFrame(long pcrUs) throws IOException {
+        IOException e = error;
+        if (e != null) {
+            throw e;
+        }
+        long windowNanos = 0;
+        if (pcrUs >= 0) {
+            if (lastPcrUs >= 0 && pcrUs > lastPcrUs) {
+                long intervalUs = Math.min(pcrUs - lastPcrUs, MAX_PACING_WINDOW_US);
+                double sample = (double) (writeIndex - lastPcrIndex) / intervalUs;
+                datagramsPerUs = datagramsPerUs > 0 ? datagramsPerUs + (sample - datagramsPerUs) * RATE_ALPHA : sample;
+                double windowUs = intervalUs * PACING_RATIO;
+                windowUs = Math.min(windowUs, (writeIndex - published) / (datagramsPerUs * PACING_GAIN));
+                windowNanos = (long) (windowUs * 1000);
+            }
+            lastPcrUs = pcrUs;
+            lastPcrIndex = writeIndex;
+        }
+        schedule(windowNanos);
+    }
+
+    /**
+     * 写入池的字节数，发送线程上调用
+     */
+    public long getBytesQueued() {
+        return bytesQueued;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pacerThread != null) {
+            LockSupport.unpark(pacerThread);
+            try {
+                pacerThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                StreamingLog.w(TAG, "关闭UDP套接字失败", e);
+            }
+        }
+    }
+
+    /**
+     * 未交出的数据报均匀分布在从排期起点开始的窗口内
+     */
+    private void schedule(long windowNanos) {
+        int count = writeIndex - published;
+        if (count == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long start = Math.min(Math.max(now, nextReleaseNanos), now + MAX_SCHEDULE_AHEAD_NANOS);
+        int first = published;
+        for (int i = 0; i < count; i++) {
+            releaseNanos[(first + i) & POOL_MASK] = start + windowNanos * i / count;
+        }
+        nextReleaseNanos = start + windowNanos * (count - 1) / count;
+        published = writeIndex;
+        LockSupport.unpark(pacerThread);
+    }
+
+    private void waitForSpace() throws IOException {
+        if (published == writeIndex - POOL_DATAGRAMS) {
+            schedule(0);
+        }
+        long deadline = System.nanoTime() + POOL_FULL_TIMEOUT_NANOS;
+        while (writeIndex - sent >= POOL_DATAGRAMS) {
+            IOException e = error;
+            if (e != null) {
+                throw e;
+            }
+            if (closed) {
+                throw new IOException("UDP套接字已关闭");
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("UDP发送缓冲已满");
+            }
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    private void paceLoop() {
+        try {
+            while (!closed) {
+                int index = sent;
+                if (index == published) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                long wait = releaseNanos[index & POOL_MASK] - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                ByteBuffer slot = slots[index & POOL_MASK];
+                int length = slot.remaining();
+                try {
+                    channel.write(slot);
+                    bytesSent += length;
+                    packetsSent++;
+                } catch (PortUnreachableException e) {
+                    // 对端未监听时系统回报ICMP不可达，UDP推流不因此中断
+                    if (!unreachableWarned) {
+                        unreachableWarned = true;
+                        StreamingLog.w(TAG, url + " 端口不可达，继续发送");
+                    }
+                }
+                sent = index + 1;
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                error = e;
+                StreamingLog.e(TAG, "UDP发送失败", e);
+                listener.onDisconnected(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.douyin.streaming.streaming.network.udp;
+
+import com.douyin.streaming.streaming.muxer.TsMuxer;
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+/**
+ * MPEG-TS over UDP推流地址
+ * 格式: udp://host:port[?pkt_size=1316]，host可为单播或组播地址。
+ * 数据报固定为7个TS包 (1316字节)，pkt_size只接受该值，以便与FFmpeg的地址通用；其他查询参数忽略
+ */
+public final class UdpUrl implements FramePublisher.Endpoint {
+    private static final String SCHEME = "udp://";
+
+    private final String host;
+    private final int port;
+
+    private UdpUrl(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static boolean isSupported(String url) {
+        try {
+            parse(url);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static UdpUrl parse(String url) {
+        if (url == null || !url.regionMatches(true, 0, SCHEME, 0, SCHEME.length())) {
+            throw new IllegalArgumentException("不支持的推流地址: " + url);
+        }
+
+        String rest = url.substring(SCHEME.length());
+        int queryStart = rest.indexOf('?');
+        String authority = queryStart < 0 ? rest : rest.substring(0, queryStart);
+        if (authority.endsWith("/")) {
+            authority = authority.substring(0, authority.length() - 1);
+        }
+        int colon = authority.lastIndexOf(':');
+        if (colon <= 0 || authority.indexOf(']') > colon) {
+            throw new IllegalArgumentException("推流地址缺少端口: " + url);
+        }
+        String host = authority.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(authority.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("推流地址端口无效: " + url);
+        }
+        if (port <= 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("推流地址端口无效: " + url);
+        }
+
+        if (queryStart >= 0) {
+            for (String param : rest.substring(queryStart + 1).split("&")) {
+                if (param.startsWith("pkt_size=") && !param.equals("pkt_size=" + TsMuxer.DATAGRAM_SIZE)) {
+                    throw new IllegalArgumentException("UDP数据报大小只支持" + TsMuxer.DATAGRAM_SIZE + ": " + param);
+                }
+            }
+        }
+        return new UdpUrl(host, port);
+    }
+
+    /**
+     * 同一主机的另一端口，UDP没有流ID，多码率阶梯各档推到相邻端口
+     */
+    public UdpUrl withPort(int newPort) {
+        if (newPort <= 0 || newPort > 0xFFFF) {
+            throw new IllegalArgumentException("推流地址端口无效: " + newPort);
+        }
+        return new UdpUrl(host, newPort);
+    }
+
+    public String getHost() { return host; }
+
+    public int getPort() { return port; }
+
+    @Override
+    public FramePublisher create(FramePublisher.ConnectionListener connectionListener,
+                                 FramePublisher.SendListener sendListener) {
+        return new UdpTsPublisher(this, connectionListener, sendListener);
+    }
+
+    @Override
+    public String toString() {
+        String address = host.indexOf(':') >= 0 ? "[" + host + "]" : host;
+        return SCHEME + address + ":" + port;
+    }
+}
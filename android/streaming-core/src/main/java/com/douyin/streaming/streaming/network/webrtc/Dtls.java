@@ -0,0 +1,1040 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * DTLS 1.2握手 (RFC 6347)，只用于协商DTLS-SRTP密钥 (RFC 5764)
+ * 实现WebRTC所需的最小子集: TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256、P-256、双向证书认证、
+ * use_srtp (SRTP_AES128_CM_HMAC_SHA1_80) 和extended_master_secret。证书以SDP中的摘要校验，
+ * 支持HelloVerifyRequest、分片重组和按flight超时重发；握手完成后只处理警报，不承载应用数据。
+ * 客户端和服务端共用，服务端只用于本机接收端，不发送HelloVerifyRequest。
+ *
+ * 非线程安全，由调用方在接收线程上依次调用
+ */
+final class Dtls {
+    static final int SRTP_AES128_CM_HMAC_SHA1_80 = 0x0001;
+    // 每个方向16字节主密钥和14字节主盐
+    static final int SRTP_KEY_SIZE = 16;
+    static final int SRTP_SALT_SIZE = 14;
+
+    private static final int CONTENT_CHANGE_CIPHER_SPEC = 20;
+    private static final int CONTENT_ALERT = 21;
+    private static final int CONTENT_HANDSHAKE = 22;
+
+    private static final int CLIENT_HELLO = 1;
+    private static final int SERVER_HELLO = 2;
+    private static final int HELLO_VERIFY_REQUEST = 3;
+    private static final int CERTIFICATE = 11;
+    private static final int SERVER_KEY_EXCHANGE = 12;
+    private static final int CERTIFICATE_REQUEST = 13;
+    private static final int SERVER_HELLO_DONE = 14;
+    private static final int CERTIFICATE_VERIFY = 15;
+    private static final int CLIENT_KEY_EXCHANGE = 16;
+    private static final int FINISHED = 20;
+
+    private static final int VERSION_DTLS12 = 0xFEFD;
+    private static final int CIPHER_ECDHE_ECDSA_AES128_GCM_SHA256 = 0xC02B;
+    private static final int CURVE_SECP256R1 = 23;
+    private static final int SIGNATURE_ECDSA_SHA256 = 0x0403;
+    private static final int CERT_TYPE_ECDSA_SIGN = 64;
+    private static final int EXT_SUPPORTED_GROUPS = 10;
+    private static final int EXT_EC_POINT_FORMATS = 11;
+    private static final int EXT_SIGNATURE_ALGORITHMS = 13;
+    private static final int EXT_USE_SRTP = 14;
+    private static final int EXT_EXTENDED_MASTER_SECRET = 23;
+    // 不支持重协商，只声明安全重协商以满足要求该扩展的实现
+    private static final int EXT_RENEGOTIATION_INFO = 0xFF01;
+
+    private static final int ALERT_CLOSE_NOTIFY = 0;
+    private static final int ALERT_LEVEL_FATAL = 2;
+
+    private static final int RECORD_HEADER_SIZE = 13;
+    private static final int HANDSHAKE_HEADER_SIZE = 12;
+    private static final int RANDOM_SIZE = 32;
+    private static final int POINT_SIZE = 65;
+    private static final int GCM_EXPLICIT_NONCE_SIZE = 8;
+    private static final int GCM_TAG_SIZE = 16;
+    private static final int VERIFY_DATA_SIZE = 12;
+    private static final int MAX_DATAGRAM = 1200;
+    // 对端消息序号领先过多时视为异常，不缓存
+    private static final int MAX_PENDING_MESSAGES = 16;
+    private static final long INITIAL_RETRANSMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long MAX_RETRANSMIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * 数据报出口
+     */
+    interface Transport {
+        void send(ByteBuffer datagram) throws IOException;
+    }
+
+    private enum State {
+        AWAIT_SERVER_HELLO,
+        AWAIT_SERVER_HELLO_DONE,
+        AWAIT_CLIENT_HELLO,
+        AWAIT_CLIENT_FINISHED,
+        AWAIT_SERVER_FINISHED,
+        CONNECTED,
+        CLOSED
+    }
+
+    private final boolean client;
+    private final DtlsCertificate certificate;
+    private final String remoteFingerprint;
+    private final Transport transport;
+    private final SecureRandom random = new SecureRandom();
+    private final ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+    private final Map<Integer, Message> pending = new HashMap<>();
+    private final ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM);
+
+    private State state;
+    private byte[] clientRandom;
+    private byte[] serverRandom;
+    private byte[] lastClientHello;
+    private KeyPair ecdhKeys;
+    private PublicKey peerPublicKey;
+    private byte[] peerPoint;
+    private boolean certificateRequested;
+    private boolean extendedMasterSecret;
+    private byte[] masterSecret;
+    private byte[] writeKey;
+    private byte[] writeIv;
+    private byte[] readKey;
+    private byte[] readIv;
+    private boolean readEncrypted;
+
+    private int sendMessageSeq;
+    private int nextReceiveSeq;
+    // 各纪元的下一个记录序号，重发时继续递增
+    private long epochZeroRecordSeq;
+    private long epochOneRecordSeq;
+
+    // 最近一次发出的flight，超时或收到对端重发时重发
+    private final List<Record> lastFlight = new ArrayList<>();
+    private long retransmitAt;
+    private long retransmitNanos = INITIAL_RETRANSMIT_NANOS;
+    private long lastPeerRetransmitNanos;
+
+    /**
+     * @param client true为DTLS客户端 (SDP协商的setup:active一方)
+     * @param remoteFingerprint 对端SDP中的SHA-256证书摘要
+     */
+    Dtls(boolean client, DtlsCertificate certificate, String remoteFingerprint, Transport transport) {
+        this.client = client;
+        this.certificate = certificate;
+        this.remoteFingerprint = remoteFingerprint;
+        this.transport = transport;
+        this.state = client ? State.AWAIT_SERVER_HELLO : State.AWAIT_CLIENT_HELLO;
+    }
+
+    boolean isClient() {
+        return client;
+    }
+
+    boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * 客户端发送ClientHello，服务端等待对端
+     */
+    void start(long nowNanos) throws IOException {
+        if (client) {
+            clientRandom = newRandom();
+            sendClientHello(new byte[0], nowNanos);
+        }
+    }
+
+    /**
+     * 按RFC 7983，首字节20-63为DTLS
+     */
+    static boolean isDtls(ByteBuffer packet) {
+        int first = packet.get(0) & 0xFF;
+        return first >= 20 && first <= 63;
+    }
+
+    /**
+     * 处理一个DTLS数据报
+     * 对端发来close_notify时isClosed()变为true
+     * @throws IOException 握手失败或收到致命警报
+     */
+    void receive(ByteBuffer packet, long nowNanos) throws IOException {
+        int offset = packet.position();
+        int end = packet.limit();
+        while (offset + RECORD_HEADER_SIZE <= end && state != State.CLOSED) {
+            int type = packet.get(offset) & 0xFF;
+            int epoch = packet.getShort(offset + 3) & 0xFFFF;
+            int length = packet.getShort(offset + 11) & 0xFFFF;
+            int fragment = offset + RECORD_HEADER_SIZE;
+            if (fragment + length > end) {
+                return;
+            }
+            byte[] plain = new byte[length];
+            for (int i = 0; i < length; i++) {
+                plain[i] = packet.get(fragment + i);
+            }
+            if (epoch > 0) {
+                plain = readEncrypted && epoch == 1 ? decrypt(packet, offset, plain) : null;
+            }
+            offset = fragment + length;
+            if (plain == null) {
+                continue;
+            }
+            switch (type) {
+                case CONTENT_HANDSHAKE:
+                    onHandshakeRecord(plain, nowNanos);
+                    break;
+                case CONTENT_CHANGE_CIPHER_SPEC:
+                    // 密钥在处理完对端的ClientKeyExchange或本端发出之后才就绪，提前到达的由对端重发
+                    if (readKey != null) {
+                        readEncrypted = true;
+                    }
+                    break;
+                case CONTENT_ALERT:
+                    onAlert(plain);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 定时调用，未收到对端下一个flight时按指数退避重发
+     */
+    void poll(long nowNanos) throws IOException {
+        if (retransmitAt != 0 && nowNanos >= retransmitAt && state != State.CONNECTED && state != State.CLOSED) {
+            retransmitNanos = Math.min(MAX_RETRANSMIT_NANOS, retransmitNanos * 2);
+            sendFlight(nowNanos);
+        }
+    }
+
+    /**
+     * DTLS-SRTP密钥材料: 客户端主密钥、服务端主密钥、客户端主盐、服务端主盐
+     */
+    byte[] exportSrtpKeyingMaterial() throws IOException {
+        if (state != State.CONNECTED) {
+            throw new IOException("DTLS尚未连接");
+        }
+        return prf(masterSecret, "EXTRACTOR-dtls_srtp", concat(clientRandom, serverRandom),
+                2 * (SRTP_KEY_SIZE + SRTP_SALT_SIZE));
+    }
+
+    /**
+     * 连接状态下发送close_notify
+     */
+    void close() {
+        if (state == State.CONNECTED) {
+            try {
+                lastFlight.clear();
+                lastFlight.add(new Record(CONTENT_ALERT, new byte[]{1, ALERT_CLOSE_NOTIFY}));
+                sendFlight(0);
+            } catch (IOException e) {
+                // 关闭时忽略
+            }
+        }
+        state = State.CLOSED;
+        retransmitAt = 0;
+    }
+
+    private void onAlert(byte[] alert) throws IOException {
+        if (alert.length < 2) {
+            return;
+        }
+        int description = alert[1] & 0xFF;
+        if (description == ALERT_CLOSE_NOTIFY) {
+            // 正常关闭，由调用方检查isClosed()
+            state = State.CLOSED;
+            return;
+        }
+        if ((alert[0] & 0xFF) == ALERT_LEVEL_FATAL) {
+            state = State.CLOSED;
+            throw new IOException("DTLS握手失败，对端警报: " + description);
+        }
+    }
+
+    /**
+     * 记录中可能有多个握手消息分片
+     */
+    private void onHandshakeRecord(byte[] record, long nowNanos) throws IOException {
+        int offset = 0;
+        while (offset + HANDSHAKE_HEADER_SIZE <= record.length) {
+            int type = record[offset] & 0xFF;
+            int length = uint24(record, offset + 1);
+            int seq = uint16(record, offset + 4);
+            int fragmentOffset = uint24(record, offset + 6);
+            int fragmentLength = uint24(record, offset + 9);
+            int body = offset + HANDSHAKE_HEADER_SIZE;
+            if (body + fragmentLength > record.length || fragmentOffset + fragmentLength > length) {
+                return;
+            }
+            offset = body + fragmentLength;
+
+            if (seq < nextReceiveSeq || state == State.CONNECTED) {
+                // 对端重发了上一个flight，说明本端的回复丢失
+                onPeerRetransmit(nowNanos);
+                continue;
+            }
+            if (seq >= nextReceiveSeq + MAX_PENDING_MESSAGES) {
+                continue;
+            }
+            Message message = pending.get(seq);
+            if (message == null) {
+                message = new Message(type, length);
+                pending.put(seq, message);
+            }
+            message.add(record, body, fragmentOffset, fragmentLength);
+        }
+        processPending(nowNanos);
+    }
+
+    private void onPeerRetransmit(long nowNanos) throws IOException {
+        if (lastFlight.isEmpty() || nowNanos - lastPeerRetransmitNanos < INITIAL_RETRANSMIT_NANOS / 2) {
+            return;
+        }
+        lastPeerRetransmitNanos = nowNanos;
+        sendFlight(nowNanos);
+    }
+
+    private void processPending(long nowNanos) throws IOException {
+        if (state == State.AWAIT_SERVER_HELLO && !isComplete(nextReceiveSeq)) {
+            // ServerHello的序号取决于服务端是否发送过HelloVerifyRequest
+            for (Map.Entry<Integer, Message> entry : pending.entrySet()) {
+                Message message = entry.getValue();
+                if (message.isComplete() && (message.type == SERVER_HELLO || message.type == HELLO_VERIFY_REQUEST)) {
+                    nextReceiveSeq = entry.getKey();
+                    break;
+                }
+            }
+        }
+        while (isComplete(nextReceiveSeq) && state != State.CLOSED) {
+            Message message = pending.remove(nextReceiveSeq);
+            int seq = nextReceiveSeq++;
+            handleMessage(message, seq, nowNanos);
+        }
+    }
+
+    private boolean isComplete(int seq) {
+        Message message = pending.get(seq);
+        return message != null && message.isComplete();
+    }
+
+    private void handleMessage(Message message, int seq, long nowNanos) throws IOException {
+        ByteBuffer body = ByteBuffer.wrap(message.body);
+        switch (state) {
+            case AWAIT_SERVER_HELLO:
+                if (message.type == HELLO_VERIFY_REQUEST) {
+                    // 不计入握手摘要，带cookie重发ClientHello
+                    body.getShort();
+                    byte[] cookie = new byte[body.get() & 0xFF];
+                    body.get(cookie);
+                    pending.clear();
+                    sendClientHello(cookie, nowNanos);
+                    return;
+                }
+                expect(message, SERVER_HELLO);
+                transcript.write(lastClientHello, 0, lastClientHello.length);
+                appendTranscript(message, seq);
+                onServerHello(body);
+                state = State.AWAIT_SERVER_HELLO_DONE;
+                break;
+            case AWAIT_SERVER_HELLO_DONE:
+                appendTranscript(message, seq);
+                if (message.type == CERTIFICATE) {
+                    peerPublicKey = readCertificate(body);
+                } else if (message.type == SERVER_KEY_EXCHANGE) {
+                    onServerKeyExchange(body);
+                } else if (message.type == CERTIFICATE_REQUEST) {
+                    certificateRequested = true;
+                } else if (message.type == SERVER_HELLO_DONE) {
+                    if (peerPublicKey == null || peerPoint == null) {
+                        throw new IOException("DTLS服务端缺少证书或密钥交换");
+                    }
+                    sendClientFinishedFlight(nowNanos);
+                    state = State.AWAIT_SERVER_FINISHED;
+                } else {
+                    throw new IOException("DTLS握手消息顺序错误: " + message.type);
+                }
+                break;
+            case AWAIT_SERVER_FINISHED:
+                expect(message, FINISHED);
+                checkFinished(body, "server finished");
+                state = State.CONNECTED;
+                retransmitAt = 0;
+                break;
+            case AWAIT_CLIENT_HELLO:
+                expect(message, CLIENT_HELLO);
+                appendTranscript(message, seq);
+                onClientHello(body);
+                sendServerHelloFlight(nowNanos);
+                state = State.AWAIT_CLIENT_FINISHED;
+                break;
+            case AWAIT_CLIENT_FINISHED:
+                if (message.type == CERTIFICATE) {
+                    appendTranscript(message, seq);
+                    peerPublicKey = readCertificate(body);
+                } else if (message.type == CLIENT_KEY_EXCHANGE) {
+                    appendTranscript(message, seq);
+                    byte[] point = new byte[body.get() & 0xFF];
+                    body.get(point);
+                    peerPoint = point;
+                    deriveKeys();
+                } else if (message.type == CERTIFICATE_VERIFY) {
+                    if (peerPublicKey == null) {
+                        throw new IOException("DTLS客户端未发送证书");
+                    }
+                    verifySignature(body, transcript.toByteArray(), "CertificateVerify");
+                    appendTranscript(message, seq);
+                } else if (message.type == FINISHED) {
+                    if (peerPublicKey == null || masterSecret == null) {
+                        throw new IOException("DTLS客户端未完成认证");
+                    }
+                    checkFinished(body, "client finished");
+                    appendTranscript(message, seq);
+                    sendServerFinishedFlight();
+                    state = State.CONNECTED;
+                } else {
+                    throw new IOException("DTLS握手消息顺序错误: " + message.type);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // ---- 客户端 ----
+
+    private void sendClientHello(byte[] cookie, long nowNanos) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(256);
+        body.putShort((short) VERSION_DTLS12);
+        body.put(clientRandom);
+        body.put((byte) 0); // session_id
+        body.put((byte) cookie.length);
+        body.put(cookie);
+        body.putShort((short) 2);
+        body.putShort((short) CIPHER_ECDHE_ECDSA_AES128_GCM_SHA256);
+        body.put((byte) 1);
+        body.put((byte) 0); // 不压缩
+        int extensionsStart = body.position();
+        body.putShort((short) 0);
+        body.putShort((short) EXT_SUPPORTED_GROUPS).putShort((short) 4).putShort((short) 2)
+                .putShort((short) CURVE_SECP256R1);
+        body.putShort((short) EXT_EC_POINT_FORMATS).putShort((short) 2).put((byte) 1).put((byte) 0);
+        body.putShort((short) EXT_SIGNATURE_ALGORITHMS).putShort((short) 4).putShort((short) 2)
+                .putShort((short) SIGNATURE_ECDSA_SHA256);
+        putUseSrtp(body);
+        body.putShort((short) EXT_EXTENDED_MASTER_SECRET).putShort((short) 0);
+        body.putShort((short) EXT_RENEGOTIATION_INFO).putShort((short) 1).put((byte) 0);
+        body.putShort(extensionsStart, (short) (body.position() - extensionsStart - 2));
+
+        lastClientHello = handshakeMessage(CLIENT_HELLO, toArray(body));
+        lastFlight.clear();
+        lastFlight.add(new Record(CONTENT_HANDSHAKE, lastClientHello));
+        retransmitNanos = INITIAL_RETRANSMIT_NANOS;
+        sendFlight(nowNanos);
+    }
+
+    private void onServerHello(ByteBuffer body) throws IOException {
+        body.getShort();
+        serverRandom = new byte[RANDOM_SIZE];
+        body.get(serverRandom);
+        skipVector8(body);
+        int cipher = body.getShort() & 0xFFFF;
+        if (cipher != CIPHER_ECDHE_ECDSA_AES128_GCM_SHA256) {
+            throw new IOException("DTLS服务端选择了不支持的密码套件: " + Integer.toHexString(cipher));
+        }
+        body.get();
+        boolean srtp = false;
+        if (body.remaining() >= 2) {
+            int end = body.position() + 2 + (body.getShort() & 0xFFFF);
+            while (body.position() + 4 <= end) {
+                int type = body.getShort() & 0xFFFF;
+                int length = body.getShort() & 0xFFFF;
+                int next = body.position() + length;
+                if (type == EXT_USE_SRTP && length >= 4) {
+                    body.getShort();
+                    srtp = (body.getShort() & 0xFFFF) == SRTP_AES128_CM_HMAC_SHA1_80;
+                } else if (type == EXT_EXTENDED_MASTER_SECRET) {
+                    extendedMasterSecret = true;
+                }
+                body.position(next);
+            }
+        }
+        if (!srtp) {
+            throw new IOException("DTLS服务端未协商SRTP_AES128_CM_HMAC_SHA1_80");
+        }
+    }
+
+    private void onServerKeyExchange(ByteBuffer body) throws IOException {
+        int paramsStart = body.position();
+        if ((body.get() & 0xFF) != 3 || (body.getShort() & 0xFFFF) != CURVE_SECP256R1) {
+            throw new IOException("DTLS服务端使用了不支持的椭圆曲线");
+        }
+        byte[] point = new byte[body.get() & 0xFF];
+        body.get(point);
+        byte[] params = new byte[body.position() - paramsStart];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = body.get(paramsStart + i);
+        }
+        if (peerPublicKey == null) {
+            throw new IOException("DTLS服务端未发送证书");
+        }
+        verifySignature(body, concat(clientRandom, serverRandom, params), "ServerKeyExchange");
+        peerPoint = point;
+    }
+
+    private void sendClientFinishedFlight(long nowNanos) throws IOException {
+        lastFlight.clear();
+        if (certificateRequested) {
+            addHandshake(CERTIFICATE, certificateBody());
+        }
+        ecdhKeys = generateEcdhKeys();
+        byte[] point = encodePoint((ECPublicKey) ecdhKeys.getPublic());
+        ByteBuffer exchange = ByteBuffer.allocate(1 + point.length);
+        exchange.put((byte) point.length).put(point);
+        addHandshake(CLIENT_KEY_EXCHANGE, exchange.array());
+        deriveKeys();
+        if (certificateRequested) {
+            addHandshake(CERTIFICATE_VERIFY, signatureBody(transcript.toByteArray()));
+        }
+        lastFlight.add(new Record(CONTENT_CHANGE_CIPHER_SPEC, new byte[]{1}));
+        byte[] finished = prf(masterSecret, "client finished", sha256(transcript.toByteArray()), VERIFY_DATA_SIZE);
+        addHandshake(FINISHED, finished);
+        retransmitNanos = INITIAL_RETRANSMIT_NANOS;
+        sendFlight(nowNanos);
+    }
+
+    // ---- 服务端 ----
+
+    private void onClientHello(ByteBuffer body) throws IOException {
+        body.getShort();
+        clientRandom = new byte[RANDOM_SIZE];
+        body.get(clientRandom);
+        skipVector8(body);
+        skipVector8(body);
+        int suitesLength = body.getShort() & 0xFFFF;
+        boolean suite = false;
+        for (int i = 0; i < suitesLength; i += 2) {
+            suite |= (body.getShort() & 0xFFFF) == CIPHER_ECDHE_ECDSA_AES128_GCM_SHA256;
+        }
+        if (!suite) {
+            throw new IOException("DTLS客户端不支持ECDHE_ECDSA_WITH_AES_128_GCM_SHA256");
+        }
+        skipVector8(body);
+        boolean srtp = false;
+        if (body.remaining() >= 2) {
+            int end = body.position() + 2 + (body.getShort() & 0xFFFF);
+            while (body.position() + 4 <= end) {
+                int type = body.getShort() & 0xFFFF;
+                int length = body.getShort() & 0xFFFF;
+                int next = body.position() + length;
+                if (type == EXT_USE_SRTP && length >= 2) {
+                    int profiles = body.getShort() & 0xFFFF;
+                    for (int i = 0; i + 2 <= profiles; i += 2) {
+                        srtp |= (body.getShort() & 0xFFFF) == SRTP_AES128_CM_HMAC_SHA1_80;
+                    }
+                } else if (type == EXT_EXTENDED_MASTER_SECRET) {
+                    extendedMasterSecret = true;
+                }
+                body.position(next);
+            }
+        }
+        if (!srtp) {
+            throw new IOException("DTLS客户端不支持SRTP_AES128_CM_HMAC_SHA1_80");
+        }
+    }
+
+    private void sendServerHelloFlight(long nowNanos) throws IOException {
+        serverRandom = newRandom();
+        lastFlight.clear();
+
+        ByteBuffer hello = ByteBuffer.allocate(128);
+        hello.putShort((short) VERSION_DTLS12);
+        hello.put(serverRandom);
+        hello.put((byte) 0);
+        hello.putShort((short) CIPHER_ECDHE_ECDSA_AES128_GCM_SHA256);
+        hello.put((byte) 0);
+        int extensionsStart = hello.position();
+        hello.putShort((short) 0);
+        hello.putShort((short) EXT_USE_SRTP).putShort((short) 5).putShort((short) 2)
+                .putShort((short) SRTP_AES128_CM_HMAC_SHA1_80).put((byte) 0);
+        if (extendedMasterSecret) {
+            hello.putShort((short) EXT_EXTENDED_MASTER_SECRET).putShort((short) 0);
+        }
+        hello.putShort((short) EXT_RENEGOTIATION_INFO).putShort((short) 1).put((byte) 0);
+        hello.putShort(extensionsStart, (short) (hello.position() - extensionsStart - 2));
+        addHandshake(SERVER_HELLO, toArray(hello));
+        addHandshake(CERTIFICATE, certificateBody());
+
+        ecdhKeys = generateEcdhKeys();
+        byte[] point = encodePoint((ECPublicKey) ecdhKeys.getPublic());
+        ByteBuffer params = ByteBuffer.allocate(4 + point.length);
+        params.put((byte) 3).putShort((short) CURVE_SECP256R1).put((byte) point.length).put(point);
+        byte[] signature = signatureBody(concat(clientRandom, serverRandom, params.array()));
+        addHandshake(SERVER_KEY_EXCHANGE, concat(params.array(), signature));
+
+        ByteBuffer request = ByteBuffer.allocate(8);
+        request.put((byte) 1).put((byte) CERT_TYPE_ECDSA_SIGN);
+        request.putShort((short) 2).putShort((short) SIGNATURE_ECDSA_SHA256);
+        request.putShort((short) 0);
+        addHandshake(CERTIFICATE_REQUEST, request.array());
+        addHandshake(SERVER_HELLO_DONE, new byte[0]);
+        retransmitNanos = INITIAL_RETRANSMIT_NANOS;
+        sendFlight(nowNanos);
+    }
+
+    /**
+     * 服务端最后一个flight不设重发定时器，客户端重发时再发送
+     */
+    private void sendServerFinishedFlight() throws IOException {
+        lastFlight.clear();
+        lastFlight.add(new Record(CONTENT_CHANGE_CIPHER_SPEC, new byte[]{1}));
+        byte[] finished = prf(masterSecret, "server finished", sha256(transcript.toByteArray()), VERIFY_DATA_SIZE);
+        addHandshake(FINISHED, finished);
+        sendFlight(0);
+        retransmitAt = 0;
+    }
+
+    // ---- 共用 ----
+
+    private void putUseSrtp(ByteBuffer body) {
+        body.putShort((short) EXT_USE_SRTP);
+        body.putShort((short) 5);
+        body.putShort((short) 2);
+        body.putShort((short) SRTP_AES128_CM_HMAC_SHA1_80);
+        body.put((byte) 0); // 无MKI
+    }
+
+    private byte[] certificateBody() {
+        byte[] der = certificate.getEncoded();
+        ByteBuffer body = ByteBuffer.allocate(6 + der.length);
+        putUint24(body, 3 + der.length);
+        putUint24(body, der.length);
+        body.put(der);
+        return body.array();
+    }
+
+    /**
+     * 校验对端证书摘要并取出公钥
+     */
+    private PublicKey readCertificate(ByteBuffer body) throws IOException {
+        if (body.remaining() < 6) {
+            throw new IOException("DTLS对端证书为空");
+        }
+        uint24(body);
+        byte[] der = new byte[uint24(body)];
+        body.get(der);
+        try {
+            String actual = DtlsCertificate.fingerprint(der);
+            if (!actual.equalsIgnoreCase(remoteFingerprint)) {
+                throw new IOException("DTLS对端证书与SDP中的摘要不符");
+            }
+            return DtlsCertificate.publicKey(der);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("DTLS对端证书无效", e);
+        }
+    }
+
+    private byte[] signatureBody(byte[] signed) throws IOException {
+        try {
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(certificate.getPrivateKey());
+            signer.update(signed);
+            byte[] signature = signer.sign();
+            ByteBuffer body = ByteBuffer.allocate(4 + signature.length);
+            body.putShort((short) SIGNATURE_ECDSA_SHA256).putShort((short) signature.length).put(signature);
+            return body.array();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("DTLS签名失败", e);
+        }
+    }
+
+    private void verifySignature(ByteBuffer body, byte[] signed, String what) throws IOException {
+        int algorithm = body.getShort() & 0xFFFF;
+        byte[] signature = new byte[body.getShort() & 0xFFFF];
+        body.get(signature);
+        if (algorithm != SIGNATURE_ECDSA_SHA256) {
+            throw new IOException("DTLS " + what + "使用了不支持的签名算法: " + Integer.toHexString(algorithm));
+        }
+        try {
+            Signature verifier = Signature.getInstance("SHA256withECDSA");
+            verifier.initVerify(peerPublicKey);
+            verifier.update(signed);
+            if (!verifier.verify(signature)) {
+                throw new IOException("DTLS " + what + "签名校验失败");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("DTLS " + what + "签名校验失败", e);
+        }
+    }
+
+    private void checkFinished(ByteBuffer body, String label) throws IOException {
+        byte[] expected = prf(masterSecret, label, sha256(transcript.toByteArray()), VERIFY_DATA_SIZE);
+        byte[] actual = new byte[body.remaining()];
+        body.get(actual);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new IOException("DTLS Finished校验失败");
+        }
+    }
+
+    /**
+     * 由ECDHE共享密钥导出主密钥和记录层密钥，在ClientKeyExchange计入握手摘要之后调用
+     */
+    private void deriveKeys() throws IOException {
+        if (ecdhKeys == null || peerPoint == null) {
+            throw new IOException("DTLS密钥交换不完整");
+        }
+        byte[] preMaster;
+        try {
+            KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+            agreement.init(ecdhKeys.getPrivate());
+            agreement.doPhase(decodePoint(peerPoint, (ECPublicKey) ecdhKeys.getPublic()), true);
+            preMaster = agreement.generateSecret();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("DTLS密钥交换失败", e);
+        }
+        masterSecret = extendedMasterSecret
+                ? prf(preMaster, "extended master secret", sha256(transcript.toByteArray()), 48)
+                : prf(preMaster, "master secret", concat(clientRandom, serverRandom), 48);
+        // AES-128-GCM: 双方各16字节密钥和4字节隐式IV
+        byte[] block = prf(masterSecret, "key expansion", concat(serverRandom, clientRandom), 40);
+        byte[] clientKey = slice(block, 0, 16);
+        byte[] serverKey = slice(block, 16, 16);
+        byte[] clientIv = slice(block, 32, 4);
+        byte[] serverIv = slice(block, 36, 4);
+        writeKey = client ? clientKey : serverKey;
+        writeIv = client ? clientIv : serverIv;
+        readKey = client ? serverKey : clientKey;
+        readIv = client ? serverIv : clientIv;
+    }
+
+    private void addHandshake(int type, byte[] body) {
+        byte[] message = handshakeMessage(type, body);
+        lastFlight.add(new Record(CONTENT_HANDSHAKE, message));
+        // 本端发出的消息同时计入握手摘要
+        transcript.write(message, 0, message.length);
+    }
+
+    private byte[] handshakeMessage(int type, byte[] body) {
+        ByteBuffer message = ByteBuffer.allocate(HANDSHAKE_HEADER_SIZE + body.length);
+        message.put((byte) type);
+        putUint24(message, body.length);
+        message.putShort((short) sendMessageSeq++);
+        putUint24(message, 0);
+        putUint24(message, body.length);
+        message.put(body);
+        return message.array();
+    }
+
+    /**
+     * 握手摘要使用未分片的完整消息
+     */
+    private void appendTranscript(Message message, int seq) {
+        ByteBuffer header = ByteBuffer.allocate(HANDSHAKE_HEADER_SIZE);
+        header.put((byte) message.type);
+        putUint24(header, message.body.length);
+        header.putShort((short) seq);
+        putUint24(header, 0);
+        putUint24(header, message.body.length);
+        transcript.write(header.array(), 0, HANDSHAKE_HEADER_SIZE);
+        transcript.write(message.body, 0, message.body.length);
+    }
+
+    /**
+     * 发送lastFlight，ChangeCipherSpec之后的记录以纪元1加密；重发时使用新的记录序号
+     */
+    private void sendFlight(long nowNanos) throws IOException {
+        boolean encrypted = false;
+        datagram.clear();
+        for (Record record : lastFlight) {
+            // 警报只在连接后发送
+            boolean sealed = encrypted || record.type == CONTENT_ALERT;
+            int size = RECORD_HEADER_SIZE + record.data.length
+                    + (sealed ? GCM_EXPLICIT_NONCE_SIZE + GCM_TAG_SIZE : 0);
+            if (datagram.position() > 0 && datagram.position() + size > MAX_DATAGRAM) {
+                flushDatagram();
+            }
+            if (sealed) {
+                writeEncryptedRecord(record, 1, epochOneRecordSeq++);
+            } else {
+                writePlainRecord(record, epochZeroRecordSeq++);
+            }
+            if (record.type == CONTENT_CHANGE_CIPHER_SPEC) {
+                encrypted = true;
+            }
+        }
+        flushDatagram();
+        retransmitAt = nowNanos != 0 ? nowNanos + retransmitNanos : 0;
+    }
+
+    private void writePlainRecord(Record record, long seq) {
+        datagram.put((byte) record.type);
+        datagram.putShort((short) VERSION_DTLS12);
+        datagram.putShort((short) 0);
+        putUint48(datagram, seq);
+        datagram.putShort((short) record.data.length);
+        datagram.put(record.data);
+    }
+
+    private void writeEncryptedRecord(Record record, int epoch, long seq) throws IOException {
+        byte[] explicitNonce = new byte[GCM_EXPLICIT_NONCE_SIZE];
+        ByteBuffer.wrap(explicitNonce).putShort((short) epoch).putShort((short) (seq >>> 32)).putInt((int) seq);
+        byte[] aad = additionalData(explicitNonce, record.type, record.data.length);
+        byte[] sealed;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(writeKey, "AES"),
+                    new GCMParameterSpec(GCM_TAG_SIZE * 8, concat(writeIv, explicitNonce)));
+            cipher.updateAAD(aad);
+            sealed = cipher.doFinal(record.data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("DTLS加密失败", e);
+        }
+        datagram.put((byte) record.type);
+        datagram.putShort((short) VERSION_DTLS12);
+        datagram.put(explicitNonce);
+        datagram.putShort((short) (GCM_EXPLICIT_NONCE_SIZE + sealed.length));
+        datagram.put(explicitNonce);
+        datagram.put(sealed);
+    }
+
+    /**
+     * 解密纪元1的记录，认证失败时返回null
+     */
+    private byte[] decrypt(ByteBuffer packet, int recordStart, byte[] fragment) {
+        if (fragment.length < GCM_EXPLICIT_NONCE_SIZE + GCM_TAG_SIZE) {
+            return null;
+        }
+        byte[] sequence = new byte[GCM_EXPLICIT_NONCE_SIZE];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = packet.get(recordStart + 3 + i);
+        }
+        int type = packet.get(recordStart) & 0xFF;
+        byte[] aad = additionalData(sequence, type, fragment.length - GCM_EXPLICIT_NONCE_SIZE - GCM_TAG_SIZE);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(readKey, "AES"),
+                    new GCMParameterSpec(GCM_TAG_SIZE * 8, concat(readIv, slice(fragment, 0, GCM_EXPLICIT_NONCE_SIZE))));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(fragment, GCM_EXPLICIT_NONCE_SIZE, fragment.length - GCM_EXPLICIT_NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static byte[] additionalData(byte[] epochAndSeq, int type, int length) {
+        ByteBuffer aad = ByteBuffer.allocate(13);
+        aad.put(epochAndSeq);
+        aad.put((byte) type);
+        aad.putShort((short) VERSION_DTLS12);
+        aad.putShort((short) length);
+        return aad.array();
+    }
+
+    private void flushDatagram() throws IOException {
+        if (datagram.position() == 0) {
+            return;
+        }
+        datagram.flip();
+        transport.send(datagram);
+        datagram.clear();
+    }
+
+    private void expect(Message message, int type) throws IOException {
+        if (message.type != type) {
+            throw new IOException("DTLS握手消息顺序错误: 期望" + type + "，收到" + message.type);
+        }
+    }
+
+    private byte[] newRandom() {
+        byte[] value = new byte[RANDOM_SIZE];
+        random.nextBytes(value);
+        long seconds = System.currentTimeMillis() / 1000;
+        ByteBuffer.wrap(value).putInt((int) seconds);
+        return value;
+    }
+
+    private static KeyPair generateEcdhKeys() throws IOException {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("生成ECDHE密钥失败", e);
+        }
+    }
+
+    /**
+     * 未压缩格式: 04 || X || Y
+     */
+    private static byte[] encodePoint(ECPublicKey key) {
+        byte[] point = new byte[POINT_SIZE];
+        point[0] = 4;
+        putCoordinate(key.getW().getAffineX(), point, 1);
+        putCoordinate(key.getW().getAffineY(), point, 33);
+        return point;
+    }
+
+    private static PublicKey decodePoint(byte[] point, ECPublicKey curve) throws GeneralSecurityException {
+        if (point.length != POINT_SIZE || point[0] != 4) {
+            throw new GeneralSecurityException("不支持的椭圆曲线点格式");
+        }
+        ECPoint w = new ECPoint(new BigInteger(1, slice(point, 1, 32)), new BigInteger(1, slice(point, 33, 32)));
+        return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(w, curve.getParams()));
+    }
+
+    private static void putCoordinate(BigInteger value, byte[] dst, int offset) {
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, dst, offset + 32 - length, length);
+    }
+
+    /**
+     * TLS 1.2 PRF，P_SHA256
+     */
+    static byte[] prf(byte[] secret, String label, byte[] seed, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            byte[] labelSeed = concat(Stun.utf8Bytes(label), seed);
+            byte[] out = new byte[length];
+            byte[] a = labelSeed;
+            for (int offset = 0; offset < length; ) {
+                a = mac.doFinal(a);
+                mac.update(a);
+                byte[] chunk = mac.doFinal(labelSeed);
+                int n = Math.min(chunk.length, length - offset);
+                System.arraycopy(chunk, 0, out, offset, n);
+                offset += n;
+            }
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, offset, part.length);
+            offset += part.length;
+        }
+        return out;
+    }
+
+    private static byte[] slice(byte[] src, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(src, offset, out, 0, length);
+        return out;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        return slice(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * 跳过以1字节长度开头的向量
+     */
+    private static void skipVector8(ByteBuffer src) {
+        int length = src.get() & 0xFF;
+        src.position(src.position() + length);
+    }
+
+    private static int uint16(byte[] src, int offset) {
+        return (src[offset] & 0xFF) << 8 | src[offset + 1] & 0xFF;
+    }
+
+    private static int uint24(byte[] src, int offset) {
+        return (src[offset] & 0xFF) << 16 | (src[offset + 1] & 0xFF) << 8 | src[offset + 2] & 0xFF;
+    }
+
+    private static int uint24(ByteBuffer src) {
+        return (src.get() & 0xFF) << 16 | (src.get() & 0xFF) << 8 | src.get() & 0xFF;
+    }
+
+    private static void putUint24(ByteBuffer dst, int value) {
+        dst.put((byte) (value >> 16)).put((byte) (value >> 8)).put((byte) value);
+    }
+
+    private static void putUint48(ByteBuffer dst, long value) {
+        dst.putShort((short) (value >>> 32)).putInt((int) value);
+    }
+
+    private static final class Record {
+        final int type;
+        final byte[] data;
+
+        Record(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    /**
+     * 按分片重组的握手消息
+     */
+    private static final class Message {
+        final int type;
+        final byte[] body;
+        final BitSet received;
+
+        Message(int type, int length) {
+            this.type = type;
+            this.body = new byte[length];
+            this.received = new BitSet(length);
+        }
+
+        void add(byte[] src, int offset, int fragmentOffset, int fragmentLength) {
+            System.arraycopy(src, offset, body, fragmentOffset, fragmentLength);
+            received.set(fragmentOffset, fragmentOffset + fragmentLength);
+        }
+
+        boolean isComplete() {
+            return received.cardinality() == body.length;
+        }
+    }
+}
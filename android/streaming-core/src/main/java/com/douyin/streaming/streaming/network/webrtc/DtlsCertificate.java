@@ -0,0 +1,136 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTLS自签名证书
+ * WebRTC不校验证书链，只比对SDP中a=fingerprint给出的SHA-256摘要，因此每个连接生成一对P-256密钥和
+ * 一张最简的X.509 v1证书 (无扩展)，按DER手工编码，不依赖平台的证书生成接口。
+ */
+final class DtlsCertificate {
+    private static final byte[] OID_ECDSA_SHA256 = {0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x04, 0x03, 0x02};
+    private static final byte[] OID_COMMON_NAME = {0x55, 0x04, 0x03};
+    private static final long VALIDITY_DAYS = 30;
+
+    private final PrivateKey privateKey;
+    private final byte[] encoded;
+    private final String fingerprint;
+
+    private DtlsCertificate(PrivateKey privateKey, byte[] encoded) throws GeneralSecurityException {
+        this.privateKey = privateKey;
+        this.encoded = encoded;
+        this.fingerprint = fingerprint(encoded);
+    }
+
+    static DtlsCertificate generate(String commonName) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        byte[] serial = new byte[8];
+        new SecureRandom().nextBytes(serial);
+        serial[0] &= 0x7F;
+        byte[] algorithm = der(0x30, der(0x06, OID_ECDSA_SHA256));
+        byte[] name = der(0x30, der(0x31, der(0x30, der(0x06, OID_COMMON_NAME),
+                der(0x0C, Stun.utf8Bytes(commonName)))));
+        // 前一天生效，避免两端时钟偏差
+        long now = System.currentTimeMillis();
+        byte[] validity = der(0x30, utcTime(now - TimeUnit.DAYS.toMillis(1)),
+                utcTime(now + TimeUnit.DAYS.toMillis(VALIDITY_DAYS)));
+        byte[] tbs = der(0x30, der(0x02, serial), algorithm, name, validity, name,
+                keyPair.getPublic().getEncoded());
+
+        Signature signer = Signature.getInstance("SHA256withECDSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(tbs);
+        byte[] signature = signer.sign();
+        byte[] bitString = new byte[signature.length + 1];
+        System.arraycopy(signature, 0, bitString, 1, signature.length);
+        return new DtlsCertificate(keyPair.getPrivate(), der(0x30, tbs, algorithm, der(0x03, bitString)));
+    }
+
+    PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    byte[] getEncoded() {
+        return encoded;
+    }
+
+    /**
+     * SDP格式的SHA-256摘要，大写十六进制以冒号分隔
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    static String fingerprint(byte[] certificate) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(certificate);
+        StringBuilder sb = new StringBuilder(digest.length * 3);
+        for (byte b : digest) {
+            if (sb.length() > 0) {
+                sb.append(':');
+            }
+            sb.append(String.format(Locale.US, "%02X", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析对端证书取出公钥，用于校验ServerKeyExchange和CertificateVerify的签名
+     */
+    static PublicKey publicKey(byte[] certificate) throws GeneralSecurityException {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        X509Certificate parsed = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(certificate));
+        return parsed.getPublicKey();
+    }
+
+    private static byte[] utcTime(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyMMddHHmmss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return der(0x17, format.format(new Date(millis)).getBytes());
+    }
+
+    /**
+     * DER编码一个TLV，内容为各部分依次拼接
+     */
+    private static byte[] der(int tag, byte[]... parts) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            content.write(part, 0, part.length);
+        }
+        int length = content.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 4);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else if (length < 0x100) {
+            out.write(0x81);
+            out.write(length);
+        } else {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length);
+        }
+        byte[] bytes = content.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+}
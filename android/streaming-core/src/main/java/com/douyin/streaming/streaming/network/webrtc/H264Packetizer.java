@@ -0,0 +1,154 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.media.AvcNalUnits;
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 RTP打包 (RFC 6184，packetization-mode=1)
+ * 关键帧前用一个STAP-A发送配置帧中的SPS/PPS；放得下的NAL单元单独成包，超过负载上限的按FU-A分片。
+ * 帧的最后一个包置标记位。AUD不发送。
+ *
+ * 由发送线程调用，非线程安全
+ */
+final class H264Packetizer {
+    private static final int NAL_STAP_A = 24;
+    private static final int NAL_FU_A = 28;
+    private static final int FU_START = 0x80;
+    private static final int FU_END = 0x40;
+
+    private byte[] sps;
+    private byte[] pps;
+
+    /**
+     * 从AVCDecoderConfigurationRecord取第一个SPS和PPS
+     */
+    void setDecoderConfigurationRecord(ByteBuffer record) {
+        int end = record.limit();
+        if (end < 8) {
+            return;
+        }
+        int offset = 5;
+        int spsCount = record.get(offset++) & 0x1F;
+        for (int i = 0; i < spsCount && offset + 2 <= end; i++) {
+            int length = record.getShort(offset) & 0xFFFF;
+            offset += 2;
+            if (offset + length > end) {
+                return;
+            }
+            if (i == 0) {
+                sps = copy(record, offset, length);
+            }
+            offset += length;
+        }
+        if (offset >= end) {
+            return;
+        }
+        int ppsCount = record.get(offset++) & 0xFF;
+        for (int i = 0; i < ppsCount && offset + 2 <= end; i++) {
+            int length = record.getShort(offset) & 0xFFFF;
+            offset += 2;
+            if (offset + length > end) {
+                return;
+            }
+            if (i == 0) {
+                pps = copy(record, offset, length);
+            }
+            offset += length;
+        }
+    }
+
+    boolean hasParameterSets() {
+        return sps != null && pps != null;
+    }
+
+    /**
+     * 打包一帧AVCC数据
+     * @param avcc position到limit为长度前缀的NAL单元，不修改position
+     */
+    void packetize(ByteBuffer avcc, boolean keyFrame, int timestamp, RtcTransport transport) throws IOException {
+        int end = avcc.limit();
+        if (keyFrame && hasParameterSets()) {
+            writeParameterSets(timestamp, transport);
+        }
+        int offset = avcc.position();
+        while (offset + 4 < end) {
+            int length = avcc.getInt(offset);
+            offset += 4;
+            if (length <= 0 || offset + length > end) {
+                break;
+            }
+            int nalStart = offset;
+            offset += length;
+            if (AvcNalUnits.nalType(avcc.get(nalStart)) == AvcNalUnits.NAL_AUD) {
+                continue;
+            }
+            boolean last = offset + 4 >= end;
+            if (length <= RtcTransport.MAX_PAYLOAD) {
+                ByteBuffer packet = transport.acquire(MediaFrame.Track.VIDEO);
+                putRange(packet, avcc, nalStart, length);
+                transport.commit(MediaFrame.Track.VIDEO, packet, last, timestamp);
+            } else {
+                writeFragments(avcc, nalStart, length, last, timestamp, transport);
+            }
+        }
+    }
+
+    private void writeParameterSets(int timestamp, RtcTransport transport) throws IOException {
+        int size = 1 + 2 + sps.length + 2 + pps.length;
+        if (size > RtcTransport.MAX_PAYLOAD) {
+            return;
+        }
+        ByteBuffer packet = transport.acquire(MediaFrame.Track.VIDEO);
+        // STAP-A的NRI取各单元的最大值，SPS/PPS均为3
+        packet.put((byte) (0x60 | NAL_STAP_A));
+        packet.putShort((short) sps.length);
+        packet.put(sps);
+        packet.putShort((short) pps.length);
+        packet.put(pps);
+        transport.commit(MediaFrame.Track.VIDEO, packet, false, timestamp);
+    }
+
+    /**
+     * FU-A分片：去掉原NAL头，指示字节保留F和NRI，分片头带S/E标志和原NAL类型
+     */
+    private void writeFragments(ByteBuffer avcc, int nalStart, int length, boolean last, int timestamp,
+                                RtcTransport transport) throws IOException {
+        int header = avcc.get(nalStart) & 0xFF;
+        int indicator = (header & 0xE0) | NAL_FU_A;
+        int type = header & 0x1F;
+        int maxFragment = RtcTransport.MAX_PAYLOAD - 2;
+        int offset = nalStart + 1;
+        int end = nalStart + length;
+        boolean first = true;
+        while (offset < end) {
+            int size = Math.min(maxFragment, end - offset);
+            boolean lastFragment = offset + size == end;
+            ByteBuffer packet = transport.acquire(MediaFrame.Track.VIDEO);
+            packet.put((byte) indicator);
+            packet.put((byte) ((first ? FU_START : 0) | (lastFragment ? FU_END : 0) | type));
+            putRange(packet, avcc, offset, size);
+            transport.commit(MediaFrame.Track.VIDEO, packet, last && lastFragment, timestamp);
+            offset += size;
+            first = false;
+        }
+    }
+
+    private static void putRange(ByteBuffer dst, ByteBuffer src, int offset, int length) {
+        int limit = src.limit();
+        int position = src.position();
+        src.limit(offset + length).position(offset);
+        dst.put(src);
+        src.limit(limit).position(position);
+    }
+
+    private static byte[] copy(ByteBuffer src, int offset, int length) {
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = src.get(offset + i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,768 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WHIP发布端的WebRTC传输
+ * 建连时POST SDP offer取得answer，以ICE控制方向服务器候选地址发连通性检查 (激进提名)，
+ * 按answer的setup属性完成DTLS握手并导出SRTP密钥，之后音视频RTP和RTCP都复用同一个UDP端口。
+ * 每个RTP包带传输层序号和mid扩展头；收到传输层反馈时更新发送端带宽估计，收到NACK时从最近1024个
+ * 视频包中重传 (不使用RTX)，收到PLI/FIR时请求关键帧。每秒发送SR和SDES，由RR计算往返时延。
+ *
+ * 数据包由发送线程写入，ICE、DTLS和RTCP由接收线程处理，重传也在接收线程上进行，二者以sendLock互斥。
+ */
+final class RtcTransport implements Closeable, Rtcp.Handler {
+    private static final String TAG = "RtcTransport";
+
+    // 扩展头: 0xBEDE和长度，传输层序号 (1+2字节)，mid (1+1字节)，补齐到8字节
+    private static final int EXTENSION_SIZE = 4 + 8;
+    static final int PAYLOAD_OFFSET = Rtp.HEADER_SIZE + EXTENSION_SIZE;
+    static final int MAX_PAYLOAD = Rtp.MTU - PAYLOAD_OFFSET - Srtp.AUTH_TAG_SIZE;
+
+    // 2.5Mbps下约4秒，远超重传有意义的时间
+    private static final int HISTORY_PACKETS = 1024;
+    private static final long RECEIVE_POLL_MS = 10;
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // RFC 7675的同意检查，对端10秒无任何报文视为断开
+    private static final long CONSENT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long PEER_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long KEY_FRAME_REQUEST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MIN_RETRANSMIT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int CLOSE_TIMEOUT_MS = 2000;
+    // 对端反射候选的优先级: (110 << 24) | (65535 << 8) | 255
+    private static final int PEER_REFLEXIVE_PRIORITY = 0x6EFFFFFF;
+    private static final long NTP_EPOCH_OFFSET_SECONDS = 2208988800L;
+    private static final String TOKEN_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * 连接事件，在接收线程上回调
+     */
+    interface Listener {
+        /**
+         * 连接建立后对端关闭、DTLS警报或超时
+         */
+        void onDisconnected(IOException e);
+
+        /**
+         * 对端发来PLI或FIR，500ms内只回调一次
+         */
+        void onKeyFrameRequested();
+    }
+
+    private final WhipUrl url;
+    private final Listener listener;
+    private final SecureRandom random = new SecureRandom();
+    private final Object sendLock = new Object();
+    private final ByteBuffer[] history = new ByteBuffer[HISTORY_PACKETS];
+    private final long[] historyRetransmitNanos = new long[HISTORY_PACKETS];
+    private final boolean[] historyLost = new boolean[HISTORY_PACKETS];
+    // 以下缓冲由sendLock保护，接收缓冲只在建连线程和接收线程上依次使用
+    private final ByteBuffer audioPacket = ByteBuffer.allocateDirect(Rtp.MTU);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(Rtp.MTU + Srtp.AUTH_TAG_SIZE);
+    private final ByteBuffer controlBuffer = ByteBuffer.allocateDirect(Rtp.MTU);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(1500);
+    private final byte[] checkTransaction = new byte[Stun.TRANSACTION_ID_SIZE];
+    private final String cname;
+    private final byte[] cnameBytes;
+
+    private WhipClient whip;
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread receiverThread;
+    private volatile boolean closed;
+    private Dtls dtls;
+    private Srtp sendSrtp;
+    private Srtp receiveSrtp;
+    private String localUfrag;
+    private byte[] localPwd;
+    private byte[] remotePwd;
+    private byte[] checkUsername;
+    private long tieBreaker;
+    private int audioSsrc;
+    private int videoSsrc;
+    private int audioPayloadType;
+    private int videoPayloadType;
+    private int transportCcExtensionId;
+    private int midExtensionId;
+    private long wallClockBaseNanos;
+    private long monotonicBaseNanos;
+
+    // 以下由sendLock保护
+    private SendSideBandwidthEstimator estimator = new SendSideBandwidthEstimator(1000, 100, 2000);
+    private boolean feedbackReceived;
+    private int audioSeq;
+    private int videoSeq;
+    private int transportSeq;
+    // 下标0为音频，1为视频
+    private final int[] timestampBases = new int[2];
+    private final int[] lastTimestamps = new int[2];
+    private final long[] lastTimestampNanos = new long[2];
+    private final long[] streamPackets = new long[2];
+    private final long[] streamOctets = new long[2];
+    private long lastConsentNanos;
+    private long lastReportNanos;
+
+    private long lastKeyFrameRequestNanos;
+    // 只在发送线程上使用
+    private TokenBucketPacer pacer;
+    private volatile long lastReceiveNanos;
+    private volatile long bytesSent;
+    private volatile long packetsSent;
+    private volatile long packetsLost;
+    private volatile long packetsRetransmitted;
+    private volatile double rttMs = -1;
+    private volatile double minRttMs = -1;
+    private volatile int estimatedKbps = -1;
+
+    RtcTransport(WhipUrl url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+        this.cname = randomToken(16);
+        this.cnameBytes = Stun.utf8Bytes(cname);
+    }
+
+    /**
+     * 信令、ICE和DTLS依次完成，整体受超时限制
+     */
+    void connect(int timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        DtlsCertificate certificate;
+        try {
+            certificate = DtlsCertificate.generate("WebRTC");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("生成DTLS证书失败", e);
+        }
+        localUfrag = randomToken(8);
+        String pwd = randomToken(24);
+        localPwd = Stun.utf8Bytes(pwd);
+        tieBreaker = random.nextLong();
+        audioSsrc = random.nextInt() | 1;
+        videoSsrc = audioSsrc + 2;
+        audioSeq = random.nextInt() & 0x7FFF;
+        videoSeq = random.nextInt() & 0x7FFF;
+        timestampBases[0] = random.nextInt();
+        timestampBases[1] = random.nextInt();
+
+        channel = DatagramChannel.open();
+        channel.socket().bind(new InetSocketAddress(0));
+        channel.configureBlocking(false);
+
+        whip = new WhipClient(url);
+        String offer = Sdp.createOffer(localUfrag, pwd, certificate.getFingerprint(), audioSsrc, videoSsrc,
+                cname, localCandidate());
+        Sdp answer = Sdp.parseAnswer(whip.publish(offer, remainingMs(deadline)));
+        remotePwd = Stun.utf8Bytes(answer.getIcePwd());
+        checkUsername = Stun.utf8Bytes(answer.getIceUfrag() + ":" + localUfrag);
+        audioPayloadType = answer.getAudioPayloadType();
+        videoPayloadType = answer.getVideoPayloadType();
+        transportCcExtensionId = answer.getTransportCcExtensionId();
+        midExtensionId = answer.getMidExtensionId();
+
+        channel.connect(answer.getCandidate());
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        dtls = new Dtls(!answer.isRemoteDtlsClient(), certificate, answer.getFingerprint(), this::write);
+        handshake(deadline);
+
+        byte[] material = dtls.exportSrtpKeyingMaterial();
+        try {
+            sendSrtp = Srtp.fromKeyingMaterial(material, dtls.isClient());
+            receiveSrtp = Srtp.fromKeyingMaterial(material, !dtls.isClient());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("创建SRTP上下文失败", e);
+        }
+        monotonicBaseNanos = System.nanoTime();
+        wallClockBaseNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        lastReceiveNanos = monotonicBaseNanos;
+        lastConsentNanos = monotonicBaseNanos;
+        lastReportNanos = monotonicBaseNanos;
+        StreamingLog.i(TAG, url + " 已连接，候选地址" + answer.getCandidate()
+                + (transportCcExtensionId > 0 ? "，传输层反馈" : "，服务器不支持传输层反馈"));
+
+        receiverThread = new Thread(this::receiveLoop, "RtcReceiver");
+        receiverThread.start();
+    }
+
+    /**
+     * 按音视频码率设置带宽估计的起点和范围，在收到第一个反馈之前调用
+     * @param initialKbps 音视频总码率
+     */
+    void setInitialBitrate(int initialKbps) {
+        synchronized (sendLock) {
+            if (!feedbackReceived && initialKbps > 0) {
+                estimator = new SendSideBandwidthEstimator(initialKbps, Math.max(50, initialKbps / 10),
+                        initialKbps * 2);
+            }
+        }
+    }
+
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * 首次发送的RTP包数
+     */
+    long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * 对端NACK报告丢失的视频包数，同一个包多次报告时只计一次
+     */
+    long getPacketsLost() {
+        return packetsLost;
+    }
+
+    long getPacketsRetransmitted() {
+        return packetsRetransmitted;
+    }
+
+    /**
+     * 由RR计算的平滑往返时延，尚无数据时返回-1
+     */
+    double getRttMs() {
+        return rttMs;
+    }
+
+    double getMinRttMs() {
+        return minRttMs;
+    }
+
+    /**
+     * 发送端带宽估计 (kbps)，尚未收到反馈时返回-1
+     */
+    int getEstimatedBitrateKbps() {
+        return estimatedKbps;
+    }
+
+    /**
+     * 设置媒体包的发送节拍，连接前调用，为null时不限速；重传、RTCP和STUN不受限制
+     */
+    void setPacer(TokenBucketPacer pacer) {
+        this.pacer = pacer;
+    }
+
+    /**
+     * 获取下一个RTP包的缓冲区，position在负载起始处
+     * 视频包放在重传历史中，音频包不重传
+     */
+    ByteBuffer acquire(MediaFrame.Track track) {
+        synchronized (sendLock) {
+            ByteBuffer packet;
+            if (track == MediaFrame.Track.VIDEO) {
+                int index = videoSeq & (HISTORY_PACKETS - 1);
+                packet = history[index];
+                if (packet == null) {
+                    packet = ByteBuffer.allocateDirect(Rtp.MTU);
+                    history[index] = packet;
+                }
+                historyLost[index] = false;
+                historyRetransmitNanos[index] = 0;
+            } else {
+                packet = audioPacket;
+            }
+            packet.clear();
+            packet.position(PAYLOAD_OFFSET);
+            return packet;
+        }
+    }
+
+    /**
+     * 填写RTP头和扩展头，加密并发送acquire()取得的包
+     * @param timestamp RTP时间戳，不含随机起点
+     */
+    void commit(MediaFrame.Track track, ByteBuffer packet, boolean marker, int timestamp) throws IOException {
+        int length = packet.position();
+        if (length <= PAYLOAD_OFFSET) {
+            return;
+        }
+        boolean video = track == MediaFrame.Track.VIDEO;
+        int stream = video ? 1 : 0;
+        // 在锁外等待令牌，不阻塞接收线程的重传
+        if (pacer != null) {
+            pacer.acquire(length);
+        }
+        synchronized (sendLock) {
+            long now = System.nanoTime();
+            int seq = video ? videoSeq : audioSeq;
+            int rtpTimestamp = timestamp + timestampBases[stream];
+            Rtp.writeHeader(packet, true, marker, video ? videoPayloadType : audioPayloadType, seq, rtpTimestamp,
+                    video ? videoSsrc : audioSsrc);
+            writeExtension(packet, video ? Sdp.VIDEO_MID : Sdp.AUDIO_MID);
+            packet.limit(length);
+            if (video) {
+                videoSeq = (seq + 1) & 0xFFFF;
+            } else {
+                audioSeq = (seq + 1) & 0xFFFF;
+            }
+            lastTimestamps[stream] = rtpTimestamp;
+            lastTimestampNanos[stream] = now;
+            streamPackets[stream]++;
+            streamOctets[stream] += length - PAYLOAD_OFFSET;
+            send(packet, now);
+            packetsSent++;
+        }
+        if (pacer != null) {
+            pacer.onSent(length);
+        }
+    }
+
+    /**
+     * 保活由接收线程的同意检查完成，这里只在长时间没有媒体时补发一次检查
+     */
+    void sendKeepAlive() throws IOException {
+        synchronized (sendLock) {
+            long now = System.nanoTime();
+            if (now - lastConsentNanos > CONSENT_INTERVAL_NANOS) {
+                sendBindingRequest();
+                lastConsentNanos = now;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (dtls != null && channel != null && channel.isConnected()) {
+            synchronized (sendLock) {
+                dtls.close();
+            }
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (receiverThread != null && receiverThread != Thread.currentThread()) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭WebRTC传输失败", e);
+        }
+        final WhipClient session = whip;
+        if (session != null) {
+            // 可能在主线程上关闭，HTTP请求放到后台线程
+            Thread deleter = new Thread(() -> session.delete(CLOSE_TIMEOUT_MS), "WhipDelete");
+            deleter.setDaemon(true);
+            deleter.start();
+        }
+    }
+
+    // ---- Rtcp.Handler，在接收线程上调用 ----
+
+    @Override
+    public void onSenderReport(int ssrc, long ntp, long receivedNanos) {
+    }
+
+    @Override
+    public void onReportBlock(int ssrc, int fractionLost, int cumulativeLost, int lastSr, int delaySinceLastSr) {
+        if (ssrc != videoSsrc && ssrc != audioSsrc) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (lastSr != 0) {
+            // 以1/65536秒为单位，32位回绕
+            long units = (Rtcp.compactNtp(ntpTime(now)) - lastSr - delaySinceLastSr) & 0xFFFFFFFFL;
+            if (units < 0x80000000L) {
+                double rtt = units * 1000.0 / 65536;
+                rttMs = rttMs < 0 ? rtt : rttMs * 0.875 + rtt * 0.125;
+                minRttMs = minRttMs < 0 ? rtt : Math.min(minRttMs, rtt);
+            }
+        }
+        if (ssrc == videoSsrc) {
+            synchronized (sendLock) {
+                if (!feedbackReceived) {
+                    estimator.onReceiverReportLoss(fractionLost, now);
+                    estimatedKbps = estimator.getTargetKbps();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onNack(int mediaSsrc, int seq) {
+        if (mediaSsrc != videoSsrc) {
+            return;
+        }
+        synchronized (sendLock) {
+            try {
+                retransmit(seq, System.nanoTime());
+            } catch (IOException e) {
+                StreamingLog.d(TAG, "重传失败: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onKeyFrameRequest(int mediaSsrc) {
+        long now = System.nanoTime();
+        if (mediaSsrc != videoSsrc || now - lastKeyFrameRequestNanos < KEY_FRAME_REQUEST_INTERVAL_NANOS) {
+            return;
+        }
+        lastKeyFrameRequestNanos = now;
+        listener.onKeyFrameRequested();
+    }
+
+    @Override
+    public void onTransportFeedback(ByteBuffer packet, int offset, int length) {
+        synchronized (sendLock) {
+            feedbackReceived = true;
+            estimator.onTransportFeedback(packet, offset, length, System.nanoTime());
+            estimatedKbps = estimator.getTargetKbps();
+        }
+    }
+
+    @Override
+    public void onRemb(long bitrateBps) {
+        synchronized (sendLock) {
+            estimator.onRemb(bitrateBps);
+            if (estimatedKbps >= 0) {
+                estimatedKbps = estimator.getTargetKbps();
+            }
+        }
+    }
+
+    /**
+     * ICE连通性检查成功后 (客户端角色时发起) 完成DTLS握手
+     */
+    private void handshake(long deadline) throws IOException {
+        boolean iceConnected = false;
+        long nextCheck = 0;
+        while (!dtls.isConnected()) {
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                throw new SocketTimeoutException(iceConnected ? "DTLS握手超时" : "ICE连通性检查超时");
+            }
+            if (!iceConnected && now >= nextCheck) {
+                synchronized (sendLock) {
+                    sendBindingRequest();
+                }
+                nextCheck = now + CHECK_INTERVAL_NANOS;
+            }
+            selector.select(RECEIVE_POLL_MS);
+            selector.selectedKeys().clear();
+            ByteBuffer packet;
+            while ((packet = receive()) != null) {
+                now = System.nanoTime();
+                if (Stun.isStun(packet)) {
+                    if (handleStun(packet) && !iceConnected) {
+                        iceConnected = true;
+                        dtls.start(now);
+                    }
+                } else if (Dtls.isDtls(packet)) {
+                    dtls.receive(packet, now);
+                    if (dtls.isClosed()) {
+                        throw new IOException("服务器关闭了连接");
+                    }
+                }
+            }
+            dtls.poll(System.nanoTime());
+        }
+    }
+
+    private void receiveLoop() {
+        IOException error = null;
+        try {
+            while (!closed) {
+                selector.select(RECEIVE_POLL_MS);
+                selector.selectedKeys().clear();
+                ByteBuffer packet;
+                while (!closed && (packet = receive()) != null) {
+                    long now = System.nanoTime();
+                    lastReceiveNanos = now;
+                    if (Stun.isStun(packet)) {
+                        handleStun(packet);
+                    } else if (Dtls.isDtls(packet)) {
+                        synchronized (sendLock) {
+                            dtls.receive(packet, now);
+                        }
+                        if (dtls.isClosed()) {
+                            throw new IOException("服务器关闭了连接");
+                        }
+                    } else if (Rtp.isRtpOrRtcp(packet) && Rtp.isRtcp(packet)) {
+                        onRtcp(packet, now);
+                    }
+                }
+                long now = System.nanoTime();
+                if (now - lastReceiveNanos > PEER_IDLE_TIMEOUT_NANOS) {
+                    throw new SocketTimeoutException("WebRTC对端无响应");
+                }
+                synchronized (sendLock) {
+                    if (now - lastConsentNanos > CONSENT_INTERVAL_NANOS) {
+                        sendBindingRequest();
+                        lastConsentNanos = now;
+                    }
+                    if (now - lastReportNanos > REPORT_INTERVAL_NANOS) {
+                        sendReports(now);
+                        lastReportNanos = now;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+        if (!closed && error != null) {
+            StreamingLog.w(TAG, url + " 连接断开: " + error.getMessage());
+            listener.onDisconnected(error);
+        }
+    }
+
+    private void onRtcp(ByteBuffer packet, long now) {
+        int length;
+        try {
+            length = receiveSrtp.unprotectRtcp(packet, packet.limit());
+        } catch (GeneralSecurityException e) {
+            return;
+        }
+        if (length > 0) {
+            Rtcp.parse(packet, length, this, now);
+        }
+    }
+
+    /**
+     * 回复对端的检查请求
+     * @return 是否为本端检查的成功响应
+     */
+    private boolean handleStun(ByteBuffer packet) throws IOException {
+        int type = Stun.type(packet);
+        if (type == Stun.BINDING_REQUEST) {
+            int username = Stun.findAttribute(packet, Stun.ATTR_USERNAME);
+            if (username < 0 || !Stun.readString(packet, username).startsWith(localUfrag + ":")
+                    || !Stun.checkIntegrity(packet, localPwd)) {
+                return false;
+            }
+            byte[] transaction = new byte[Stun.TRANSACTION_ID_SIZE];
+            Stun.transactionId(packet, transaction);
+            synchronized (sendLock) {
+                controlBuffer.clear();
+                Stun.writeHeader(controlBuffer, Stun.BINDING_SUCCESS, transaction);
+                Stun.putXorMappedAddress(controlBuffer, (InetSocketAddress) channel.socket().getRemoteSocketAddress());
+                finishStun(localPwd);
+                write(controlBuffer);
+            }
+            return false;
+        }
+        if (!Stun.sameTransaction(packet, checkTransaction) || !Stun.checkIntegrity(packet, remotePwd)) {
+            return false;
+        }
+        if (type == Stun.BINDING_ERROR) {
+            throw new IOException("服务器拒绝了ICE连通性检查");
+        }
+        return type == Stun.BINDING_SUCCESS;
+    }
+
+    /**
+     * 控制方的连通性检查，带USE-CANDIDATE提名，只在持有sendLock时调用
+     */
+    private void sendBindingRequest() throws IOException {
+        random.nextBytes(checkTransaction);
+        controlBuffer.clear();
+        Stun.writeHeader(controlBuffer, Stun.BINDING_REQUEST, checkTransaction);
+        Stun.putAttribute(controlBuffer, Stun.ATTR_USERNAME, checkUsername);
+        Stun.putIntAttribute(controlBuffer, Stun.ATTR_PRIORITY, PEER_REFLEXIVE_PRIORITY);
+        Stun.putLongAttribute(controlBuffer, Stun.ATTR_ICE_CONTROLLING, tieBreaker);
+        Stun.putFlagAttribute(controlBuffer, Stun.ATTR_USE_CANDIDATE);
+        finishStun(remotePwd);
+        write(controlBuffer);
+    }
+
+    private void finishStun(byte[] key) throws IOException {
+        try {
+            Stun.finish(controlBuffer, key);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("STUN签名失败", e);
+        }
+    }
+
+    /**
+     * 单字节格式扩展头: 传输层序号在发送时填写，服务器不支持的元素以填充代替
+     */
+    private void writeExtension(ByteBuffer packet, String mid) {
+        int start = Rtp.HEADER_SIZE;
+        packet.putShort(start, (short) Rtp.ONE_BYTE_EXTENSION_PROFILE);
+        packet.putShort(start + 2, (short) (EXTENSION_SIZE / 4 - 1));
+        for (int i = start + 4; i < PAYLOAD_OFFSET; i++) {
+            packet.put(i, (byte) 0);
+        }
+        if (transportCcExtensionId > 0) {
+            packet.put(start + 4, (byte) (transportCcExtensionId << 4 | 1));
+        }
+        if (midExtensionId > 0) {
+            packet.put(start + 7, (byte) (midExtensionId << 4));
+            packet.put(start + 8, (byte) mid.charAt(0));
+        }
+    }
+
+    /**
+     * 复制到发送缓冲，填写传输层序号后加密发送，原包保留明文供重传；只在持有sendLock时调用
+     */
+    private void send(ByteBuffer packet, long now) throws IOException {
+        int length = packet.limit();
+        sendBuffer.clear();
+        packet.position(0);
+        sendBuffer.put(packet);
+        if (transportCcExtensionId > 0) {
+            int seq = transportSeq;
+            transportSeq = (seq + 1) & 0xFFFF;
+            sendBuffer.putShort(Rtp.HEADER_SIZE + 5, (short) seq);
+            estimator.onPacketSent(seq, length, now);
+        }
+        int protectedLength;
+        try {
+            protectedLength = sendSrtp.protectRtp(sendBuffer, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("SRTP加密失败", e);
+        }
+        sendBuffer.limit(protectedLength).position(0);
+        write(sendBuffer);
+        bytesSent += protectedLength;
+    }
+
+    /**
+     * 只在持有sendLock时调用
+     */
+    private void retransmit(int seq, long now) throws IOException {
+        int age = Rtp.seqDiff(videoSeq, seq);
+        if (age <= 0 || age >= HISTORY_PACKETS) {
+            return;
+        }
+        int index = seq & (HISTORY_PACKETS - 1);
+        ByteBuffer packet = history[index];
+        if (packet == null || Rtp.sequence(packet) != seq) {
+            return;
+        }
+        // 对端在一个往返时延内重复请求时不再重发，用平滑值以计入排队时延
+        double rtt = rttMs;
+        long interval = Math.max(MIN_RETRANSMIT_INTERVAL_NANOS,
+                rtt > 0 ? TimeUnit.MICROSECONDS.toNanos((long) (rtt * 1000)) : 0);
+        if (historyRetransmitNanos[index] != 0 && now - historyRetransmitNanos[index] < interval) {
+            return;
+        }
+        if (!historyLost[index]) {
+            historyLost[index] = true;
+            packetsLost++;
+        }
+        historyRetransmitNanos[index] = now;
+        send(packet, now);
+        packetsRetransmitted++;
+    }
+
+    /**
+     * 每个发过包的流一个SR和SDES组成的复合包，只在持有sendLock时调用
+     */
+    private void sendReports(long now) throws IOException {
+        long ntp = ntpTime(now);
+        for (int stream = 0; stream < 2; stream++) {
+            if (streamPackets[stream] == 0) {
+                continue;
+            }
+            int ssrc = stream == 1 ? videoSsrc : audioSsrc;
+            int clockRate = stream == 1 ? Rtp.VIDEO_CLOCK_RATE : Rtp.OPUS_CLOCK_RATE;
+            int rtpTimestamp = lastTimestamps[stream]
+                    + (int) ((now - lastTimestampNanos[stream]) * clockRate / 1000000000L);
+            controlBuffer.clear();
+            Rtcp.writeSenderReport(controlBuffer, ssrc, ntp, rtpTimestamp, streamPackets[stream],
+                    streamOctets[stream]);
+            Rtcp.writeSdes(controlBuffer, ssrc, cnameBytes);
+            int length;
+            try {
+                length = sendSrtp.protectRtcp(controlBuffer, controlBuffer.position());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("SRTCP加密失败", e);
+            }
+            controlBuffer.limit(length).position(0);
+            write(controlBuffer);
+        }
+    }
+
+    private void write(ByteBuffer packet) throws IOException {
+        // 套接字缓冲满时UDP包直接丢失，视频由对端NACK触发重传
+        channel.write(packet);
+    }
+
+    /**
+     * 读取一个报文，没有时返回null
+     */
+    private ByteBuffer receive() throws IOException {
+        receiveBuffer.clear();
+        if (channel.read(receiveBuffer) <= 0) {
+            return null;
+        }
+        receiveBuffer.flip();
+        return receiveBuffer.limit() >= 4 ? receiveBuffer : null;
+    }
+
+    /**
+     * 64位NTP时间，以建连时的系统时间为起点按单调时钟推进
+     */
+    private long ntpTime(long nanos) {
+        long unixNanos = wallClockBaseNanos + (nanos - monotonicBaseNanos);
+        long seconds = unixNanos / 1000000000L + NTP_EPOCH_OFFSET_SECONDS;
+        long fraction = ((unixNanos % 1000000000L) << 32) / 1000000000L;
+        return seconds << 32 | fraction;
+    }
+
+    /**
+     * 本机到服务器方向的出口地址，作为offer中的主机候选
+     */
+    private InetSocketAddress localCandidate() {
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.connect(InetAddress.getByName(url.getHost()), 9);
+            InetAddress address = probe.getLocalAddress();
+            if (address == null || address.isAnyLocalAddress()) {
+                return null;
+            }
+            return new InetSocketAddress(address, channel.socket().getLocalPort());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String randomToken(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(TOKEN_CHARS.charAt(random.nextInt(TOKEN_CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+    private static int remainingMs(long deadline) throws SocketTimeoutException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("WHIP连接超时");
+        }
+        return (int) remaining;
+    }
+}
@@ -0,0 +1,226 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RTCP报文 (RFC 3550/4585/5104)
+ * 每个包以4字节头开始: 版本、填充、计数或反馈类型 (FMT)、包类型和以32位字减1计的长度，
+ * 多个包组成复合包。发送端写SR和SDES，接收端写RR、NACK、PLI和传输层反馈；
+ * 解析时按类型回调Handler，未知类型跳过。
+ */
+final class Rtcp {
+    static final int TYPE_SR = 200;
+    static final int TYPE_RR = 201;
+    static final int TYPE_SDES = 202;
+    static final int TYPE_BYE = 203;
+    static final int TYPE_RTPFB = 205;
+    static final int TYPE_PSFB = 206;
+
+    static final int FMT_NACK = 1;
+    static final int FMT_TRANSPORT_CC = 15;
+    static final int FMT_PLI = 1;
+    static final int FMT_FIR = 4;
+    static final int FMT_AFB = 15;
+
+    private static final int REPORT_BLOCK_SIZE = 24;
+    private static final int SDES_CNAME = 1;
+    private static final int REMB_IDENTIFIER = 0x52454D42; // "REMB"
+
+    /**
+     * 解析回调，在接收线程上调用
+     */
+    interface Handler {
+        /**
+         * SR中的发送端时间，接收端据此在RR中填写LSR
+         * @param ntp 64位NTP时间
+         */
+        void onSenderReport(int ssrc, long ntp, long receivedNanos);
+
+        /**
+         * SR或RR中的接收报告块
+         * @param fractionLost 上一个报告以来的丢包比例，8位定点数
+         * @param lastSr 最近一个SR的NTP时间中间32位，没有时为0
+         * @param delaySinceLastSr 收到该SR到发出本报告的间隔 (1/65536秒)
+         */
+        void onReportBlock(int ssrc, int fractionLost, int cumulativeLost, int lastSr, int delaySinceLastSr);
+
+        void onNack(int mediaSsrc, int seq);
+
+        /**
+         * PLI或FIR
+         */
+        void onKeyFrameRequest(int mediaSsrc);
+
+        /**
+         * 传输层拥塞控制反馈，packet的offset到offset+length为完整的RTCP包
+         */
+        void onTransportFeedback(ByteBuffer packet, int offset, int length);
+
+        void onRemb(long bitrateBps);
+    }
+
+    private Rtcp() {
+    }
+
+    /**
+     * 解析复合包，0到length
+     */
+    static void parse(ByteBuffer packet, int length, Handler handler, long receivedNanos) {
+        int offset = 0;
+        while (offset + 4 <= length) {
+            int first = packet.get(offset) & 0xFF;
+            if ((first >> 6) != 2) {
+                return;
+            }
+            int count = first & 0x1F;
+            int type = packet.get(offset + 1) & 0xFF;
+            int size = 4 * ((packet.getShort(offset + 2) & 0xFFFF) + 1);
+            if (offset + size > length) {
+                return;
+            }
+            switch (type) {
+                case TYPE_SR:
+                    if (size >= 28) {
+                        handler.onSenderReport(packet.getInt(offset + 4), packet.getLong(offset + 8), receivedNanos);
+                        parseReportBlocks(packet, offset + 28, offset + size, count, handler);
+                    }
+                    break;
+                case TYPE_RR:
+                    parseReportBlocks(packet, offset + 8, offset + size, count, handler);
+                    break;
+                case TYPE_RTPFB:
+                    if (size >= 12 && count == FMT_NACK) {
+                        int mediaSsrc = packet.getInt(offset + 8);
+                        for (int item = offset + 12; item + 4 <= offset + size; item += 4) {
+                            int pid = packet.getShort(item) & 0xFFFF;
+                            int bitmask = packet.getShort(item + 2) & 0xFFFF;
+                            handler.onNack(mediaSsrc, pid);
+                            for (int bit = 0; bit < 16; bit++) {
+                                if ((bitmask & (1 << bit)) != 0) {
+                                    handler.onNack(mediaSsrc, (pid + bit + 1) & 0xFFFF);
+                                }
+                            }
+                        }
+                    } else if (size >= 20 && count == FMT_TRANSPORT_CC) {
+                        handler.onTransportFeedback(packet, offset, size);
+                    }
+                    break;
+                case TYPE_PSFB:
+                    if (size >= 12 && count == FMT_PLI) {
+                        handler.onKeyFrameRequest(packet.getInt(offset + 8));
+                    } else if (size >= 20 && count == FMT_FIR) {
+                        handler.onKeyFrameRequest(packet.getInt(offset + 12));
+                    } else if (size >= 20 && count == FMT_AFB && packet.getInt(offset + 12) == REMB_IDENTIFIER) {
+                        int value = packet.getInt(offset + 16);
+                        int exponent = (value >>> 18) & 0x3F;
+                        long mantissa = value & 0x3FFFF;
+                        handler.onRemb(mantissa << exponent);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            offset += size;
+        }
+    }
+
+    private static void parseReportBlocks(ByteBuffer packet, int offset, int end, int count, Handler handler) {
+        for (int i = 0; i < count && offset + REPORT_BLOCK_SIZE <= end; i++, offset += REPORT_BLOCK_SIZE) {
+            int lost = packet.getInt(offset + 4);
+            // 累计丢包数为24位有符号数
+            handler.onReportBlock(packet.getInt(offset), lost >>> 24, (lost << 8) >> 8,
+                    packet.getInt(offset + 16), packet.getInt(offset + 20));
+        }
+    }
+
+    static void writeSenderReport(ByteBuffer dst, int ssrc, long ntp, int rtpTimestamp,
+                                  long packetCount, long octetCount) {
+        writeHeader(dst, 0, TYPE_SR, 28);
+        dst.putInt(ssrc);
+        dst.putLong(ntp);
+        dst.putInt(rtpTimestamp);
+        dst.putInt((int) packetCount);
+        dst.putInt((int) octetCount);
+    }
+
+    /**
+     * 只有CNAME的SDES
+     */
+    static void writeSdes(ByteBuffer dst, int ssrc, byte[] cname) {
+        int size = (4 + 4 + 2 + cname.length + 1 + 3) & ~3;
+        int start = dst.position();
+        writeHeader(dst, 1, TYPE_SDES, size);
+        dst.putInt(ssrc);
+        dst.put((byte) SDES_CNAME);
+        dst.put((byte) cname.length);
+        dst.put(cname);
+        while (dst.position() < start + size) {
+            dst.put((byte) 0);
+        }
+    }
+
+    /**
+     * 只有一个报告块的RR
+     */
+    static void writeReceiverReport(ByteBuffer dst, int senderSsrc, int mediaSsrc, int fractionLost,
+                                    int cumulativeLost, int extendedHighestSeq, int jitter,
+                                    int lastSr, int delaySinceLastSr) {
+        writeHeader(dst, 1, TYPE_RR, 8 + REPORT_BLOCK_SIZE);
+        dst.putInt(senderSsrc);
+        dst.putInt(mediaSsrc);
+        dst.putInt(fractionLost << 24 | (cumulativeLost & 0xFFFFFF));
+        dst.putInt(extendedHighestSeq);
+        dst.putInt(jitter);
+        dst.putInt(lastSr);
+        dst.putInt(delaySinceLastSr);
+    }
+
+    /**
+     * 通用NACK，相邻16个以内的丢失序号合并为一项
+     * @param seqs 按递增顺序排列的丢失序号
+     */
+    static void writeNack(ByteBuffer dst, int senderSsrc, int mediaSsrc, int[] seqs, int count) {
+        int start = dst.position();
+        writeHeader(dst, FMT_NACK, TYPE_RTPFB, 12);
+        dst.putInt(senderSsrc);
+        dst.putInt(mediaSsrc);
+        int i = 0;
+        while (i < count) {
+            int pid = seqs[i++];
+            int bitmask = 0;
+            while (i < count) {
+                int diff = Rtp.seqDiff(seqs[i], pid);
+                if (diff < 1 || diff > 16) {
+                    break;
+                }
+                bitmask |= 1 << (diff - 1);
+                i++;
+            }
+            dst.putShort((short) pid);
+            dst.putShort((short) bitmask);
+        }
+        dst.putShort(start + 2, (short) ((dst.position() - start) / 4 - 1));
+    }
+
+    static void writePli(ByteBuffer dst, int senderSsrc, int mediaSsrc) {
+        writeHeader(dst, FMT_PLI, TYPE_PSFB, 12);
+        dst.putInt(senderSsrc);
+        dst.putInt(mediaSsrc);
+    }
+
+    /**
+     * @param size 以字节计的包长度，须为4的倍数
+     */
+    static void writeHeader(ByteBuffer dst, int countOrFormat, int type, int size) {
+        dst.put((byte) (0x80 | countOrFormat));
+        dst.put((byte) type);
+        dst.putShort((short) (size / 4 - 1));
+    }
+
+    /**
+     * NTP时间的中间32位，用于LSR和往返时延计算
+     */
+    static int compactNtp(long ntp) {
+        return (int) (ntp >>> 16);
+    }
+}
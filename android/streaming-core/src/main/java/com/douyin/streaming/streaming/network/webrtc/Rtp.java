@@ -0,0 +1,122 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RTP包格式 (RFC 3550)
+ * 12字节固定头: 版本、填充、扩展、CSRC数、标记位、负载类型、序号、时间戳和SSRC；
+ * 扩展头使用RFC 8285的单字节格式 (0xBEDE)，每个元素为4位ID、4位长度减1和数据，整体按4字节对齐。
+ * 与RTCP复用同一端口时按第二字节区分 (RFC 5761)。
+ */
+final class Rtp {
+    static final int HEADER_SIZE = 12;
+    // 包括SRTP标签，不超过常见隧道和移动网络的路径MTU
+    static final int MTU = 1200;
+    static final int ONE_BYTE_EXTENSION_PROFILE = 0xBEDE;
+    static final int VIDEO_CLOCK_RATE = 90000;
+    static final int OPUS_CLOCK_RATE = 48000;
+
+    private Rtp() {
+    }
+
+    /**
+     * RTCP的负载类型为192-223，RTP负载类型去掉标记位后不会落在该范围
+     */
+    static boolean isRtcp(ByteBuffer packet) {
+        int type = packet.get(1) & 0xFF;
+        return type >= 192 && type <= 223;
+    }
+
+    /**
+     * 按RFC 7983，首字节128-191为RTP/RTCP
+     */
+    static boolean isRtpOrRtcp(ByteBuffer packet) {
+        int first = packet.get(0) & 0xFF;
+        return first >= 128 && first <= 191 && packet.limit() >= HEADER_SIZE;
+    }
+
+    static int sequence(ByteBuffer packet) {
+        return packet.getShort(2) & 0xFFFF;
+    }
+
+    static int timestamp(ByteBuffer packet) {
+        return packet.getInt(4);
+    }
+
+    static int ssrc(ByteBuffer packet) {
+        return packet.getInt(8);
+    }
+
+    static int payloadType(ByteBuffer packet) {
+        return packet.get(1) & 0x7F;
+    }
+
+    static boolean marker(ByteBuffer packet) {
+        return (packet.get(1) & 0x80) != 0;
+    }
+
+    /**
+     * 包头长度，包括CSRC列表和扩展头
+     */
+    static int headerSize(ByteBuffer packet) {
+        int first = packet.get(0) & 0xFF;
+        int size = HEADER_SIZE + 4 * (first & 0x0F);
+        if ((first & 0x10) != 0 && packet.limit() >= size + 4) {
+            size += 4 + 4 * (packet.getShort(size + 2) & 0xFFFF);
+        }
+        return size;
+    }
+
+    /**
+     * 写固定头，不含扩展
+     */
+    static void writeHeader(ByteBuffer dst, boolean extension, boolean marker, int payloadType,
+                            int seq, int timestamp, int ssrc) {
+        dst.put(0, (byte) (0x80 | (extension ? 0x10 : 0)));
+        dst.put(1, (byte) ((marker ? 0x80 : 0) | payloadType));
+        dst.putShort(2, (short) seq);
+        dst.putInt(4, timestamp);
+        dst.putInt(8, ssrc);
+    }
+
+    /**
+     * 查找单字节格式扩展元素
+     * @return 元素数据的位置，没有时返回-1
+     */
+    static int findExtension(ByteBuffer packet, int id) {
+        int first = packet.get(0) & 0xFF;
+        if ((first & 0x10) == 0) {
+            return -1;
+        }
+        int start = HEADER_SIZE + 4 * (first & 0x0F);
+        if (packet.limit() < start + 4 || (packet.getShort(start) & 0xFFFF) != ONE_BYTE_EXTENSION_PROFILE) {
+            return -1;
+        }
+        int end = Math.min(packet.limit(), start + 4 + 4 * (packet.getShort(start + 2) & 0xFFFF));
+        int offset = start + 4;
+        while (offset < end) {
+            int header = packet.get(offset) & 0xFF;
+            if (header == 0) {
+                offset++;
+                continue;
+            }
+            int elementId = header >> 4;
+            int length = (header & 0x0F) + 1;
+            if (elementId == 15) {
+                return -1;
+            }
+            if (elementId == id) {
+                return offset + 1;
+            }
+            offset += 1 + length;
+        }
+        return -1;
+    }
+
+    /**
+     * 16位序号按回绕比较
+     */
+    static int seqDiff(int a, int b) {
+        return (short) (a - b);
+    }
+}
@@ -0,0 +1,317 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+/**
+ * WHIP使用的SDP offer/answer (RFC 8829/9725)
+ * offer固定为两个BUNDLE在一起的sendonly媒体段: mid 0为Opus音频，mid 1为H.264视频
+ * (packetization-mode=1)，共用一个ICE/DTLS传输和rtcp-mux；视频启用NACK、PLI和传输层反馈。
+ * answer只解析建连需要的字段: ICE凭证、证书指纹、DTLS角色、候选地址、负载类型和扩展头ID。
+ * 另可生成对应的ice-lite answer，供进程内接收端使用。
+ */
+final class Sdp {
+    static final int OPUS_PAYLOAD_TYPE = 111;
+    static final int H264_PAYLOAD_TYPE = 96;
+    static final int TRANSPORT_CC_EXTENSION_ID = 1;
+    static final int MID_EXTENSION_ID = 2;
+    static final String AUDIO_MID = "0";
+    static final String VIDEO_MID = "1";
+
+    private static final String MID_EXTENSION_URI = "urn:ietf:params:rtp-hdrext:sdes:mid";
+    private static final String CRLF = "\r\n";
+
+    private String iceUfrag;
+    private String icePwd;
+    private String fingerprint;
+    private String setup;
+    private boolean iceLite;
+    private InetSocketAddress candidate;
+    private long candidatePriority = -1;
+    private boolean audioAccepted;
+    private boolean videoAccepted;
+    private int audioPayloadType = OPUS_PAYLOAD_TYPE;
+    private int videoPayloadType = H264_PAYLOAD_TYPE;
+    private int transportCcExtensionId = -1;
+    private int midExtensionId = -1;
+
+    private Sdp() {
+    }
+
+    /**
+     * @param candidate 本端主机候选地址，为null时不写候选
+     */
+    static String createOffer(String iceUfrag, String icePwd, String fingerprint, int audioSsrc, int videoSsrc,
+                              String cname, InetSocketAddress candidate) {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("v=0").append(CRLF);
+        sb.append("o=- ").append(System.currentTimeMillis()).append(" 2 IN IP4 127.0.0.1").append(CRLF);
+        sb.append("s=-").append(CRLF);
+        sb.append("t=0 0").append(CRLF);
+        sb.append("a=group:BUNDLE ").append(AUDIO_MID).append(' ').append(VIDEO_MID).append(CRLF);
+        sb.append("a=msid-semantic: WMS ").append(cname).append(CRLF);
+
+        appendMedia(sb, "audio", OPUS_PAYLOAD_TYPE, AUDIO_MID, iceUfrag, icePwd, fingerprint, "actpass", "sendonly",
+                candidate);
+        sb.append("a=rtpmap:").append(OPUS_PAYLOAD_TYPE).append(" opus/48000/2").append(CRLF);
+        sb.append("a=fmtp:").append(OPUS_PAYLOAD_TYPE).append(" minptime=10;useinbandfec=1").append(CRLF);
+        sb.append("a=rtcp-fb:").append(OPUS_PAYLOAD_TYPE).append(" transport-cc").append(CRLF);
+        appendSsrc(sb, audioSsrc, cname, "audio");
+
+        appendMedia(sb, "video", H264_PAYLOAD_TYPE, VIDEO_MID, iceUfrag, icePwd, fingerprint, "actpass", "sendonly",
+                candidate);
+        appendH264(sb);
+        sb.append("a=rtcp-fb:").append(H264_PAYLOAD_TYPE).append(" ccm fir").append(CRLF);
+        sb.append("a=rtcp-fb:").append(H264_PAYLOAD_TYPE).append(" goog-remb").append(CRLF);
+        appendSsrc(sb, videoSsrc, cname, "video");
+        return sb.toString();
+    }
+
+    /**
+     * 接收端的answer: ice-lite，两个媒体段都为recvonly，负载类型和扩展头ID与offer相同
+     * @param dtlsClient true时为setup:active，由接收端发起DTLS握手
+     */
+    static String createAnswer(String iceUfrag, String icePwd, String fingerprint, boolean dtlsClient,
+                               InetSocketAddress candidate) {
+        String setup = dtlsClient ? "active" : "passive";
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("v=0").append(CRLF);
+        sb.append("o=- ").append(System.currentTimeMillis()).append(" 2 IN IP4 127.0.0.1").append(CRLF);
+        sb.append("s=-").append(CRLF);
+        sb.append("t=0 0").append(CRLF);
+        sb.append("a=ice-lite").append(CRLF);
+        sb.append("a=group:BUNDLE ").append(AUDIO_MID).append(' ').append(VIDEO_MID).append(CRLF);
+        appendMedia(sb, "audio", OPUS_PAYLOAD_TYPE, AUDIO_MID, iceUfrag, icePwd, fingerprint, setup, "recvonly",
+                candidate);
+        sb.append("a=rtpmap:").append(OPUS_PAYLOAD_TYPE).append(" opus/48000/2").append(CRLF);
+        sb.append("a=rtcp-fb:").append(OPUS_PAYLOAD_TYPE).append(" transport-cc").append(CRLF);
+        appendMedia(sb, "video", H264_PAYLOAD_TYPE, VIDEO_MID, iceUfrag, icePwd, fingerprint, setup, "recvonly",
+                candidate);
+        appendH264(sb);
+        return sb.toString();
+    }
+
+    private static void appendH264(StringBuilder sb) {
+        sb.append("a=rtpmap:").append(H264_PAYLOAD_TYPE).append(" H264/90000").append(CRLF);
+        sb.append("a=fmtp:").append(H264_PAYLOAD_TYPE)
+                .append(" level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f").append(CRLF);
+        sb.append("a=rtcp-fb:").append(H264_PAYLOAD_TYPE).append(" nack").append(CRLF);
+        sb.append("a=rtcp-fb:").append(H264_PAYLOAD_TYPE).append(" nack pli").append(CRLF);
+        sb.append("a=rtcp-fb:").append(H264_PAYLOAD_TYPE).append(" transport-cc").append(CRLF);
+    }
+
+    private static void appendMedia(StringBuilder sb, String kind, int payloadType, String mid, String iceUfrag,
+                                    String icePwd, String fingerprint, String setup, String direction,
+                                    InetSocketAddress candidate) {
+        String address = candidate != null ? candidate.getAddress().getHostAddress() : "0.0.0.0";
+        int port = candidate != null ? candidate.getPort() : 9;
+        sb.append("m=").append(kind).append(' ').append(port).append(" UDP/TLS/RTP/SAVPF ").append(payloadType)
+                .append(CRLF);
+        sb.append(address.indexOf(':') >= 0 ? "c=IN IP6 " : "c=IN IP4 ").append(address).append(CRLF);
+        sb.append("a=rtcp:9 IN IP4 0.0.0.0").append(CRLF);
+        sb.append("a=ice-ufrag:").append(iceUfrag).append(CRLF);
+        sb.append("a=ice-pwd:").append(icePwd).append(CRLF);
+        sb.append("a=fingerprint:sha-256 ").append(fingerprint).append(CRLF);
+        sb.append("a=setup:").append(setup).append(CRLF);
+        sb.append("a=mid:").append(mid).append(CRLF);
+        sb.append("a=extmap:").append(TRANSPORT_CC_EXTENSION_ID).append(' ')
+                .append(TransportFeedback.EXTENSION_URI).append(CRLF);
+        sb.append("a=extmap:").append(MID_EXTENSION_ID).append(' ').append(MID_EXTENSION_URI).append(CRLF);
+        sb.append("a=").append(direction).append(CRLF);
+        sb.append("a=rtcp-mux").append(CRLF);
+        sb.append("a=rtcp-rsize").append(CRLF);
+        if (candidate != null) {
+            // 主机候选，优先级按RFC 8445: (126 << 24) | (65535 << 8) | (256 - 组件ID)
+            sb.append("a=candidate:1 1 udp 2130706431 ").append(address).append(' ').append(port)
+                    .append(" typ host").append(CRLF);
+            sb.append("a=end-of-candidates").append(CRLF);
+        }
+    }
+
+    private static void appendSsrc(StringBuilder sb, int ssrc, String cname, String track) {
+        long value = ssrc & 0xFFFFFFFFL;
+        sb.append("a=msid:").append(cname).append(' ').append(track).append(CRLF);
+        sb.append("a=ssrc:").append(value).append(" cname:").append(cname).append(CRLF);
+        sb.append("a=ssrc:").append(value).append(" msid:").append(cname).append(' ').append(track).append(CRLF);
+    }
+
+    /**
+     * 解析服务器的answer
+     * @throws IOException 缺少ICE凭证、指纹或可用的候选地址，或视频被拒绝
+     */
+    static Sdp parseAnswer(String answer) throws IOException {
+        Sdp sdp = parse(answer);
+        if (sdp.iceUfrag == null || sdp.icePwd == null) {
+            throw new IOException("WHIP应答缺少ICE凭证");
+        }
+        if (sdp.fingerprint == null) {
+            throw new IOException("WHIP应答缺少sha-256证书指纹");
+        }
+        if (sdp.candidate == null) {
+            throw new IOException("WHIP应答没有可用的UDP候选地址");
+        }
+        if (!sdp.videoAccepted) {
+            throw new IOException("服务器拒绝了H.264视频");
+        }
+        return sdp;
+    }
+
+    /**
+     * 解析发布端的offer，接收端从连通性检查得知对端地址，不要求候选
+     * @throws IOException 缺少ICE凭证或指纹
+     */
+    static Sdp parseOffer(String offer) throws IOException {
+        Sdp sdp = parse(offer);
+        if (sdp.iceUfrag == null || sdp.icePwd == null || sdp.fingerprint == null) {
+            throw new IOException("WHIP offer缺少ICE凭证或证书指纹");
+        }
+        return sdp;
+    }
+
+    private static Sdp parse(String description) {
+        Sdp sdp = new Sdp();
+        String media = null;
+        for (String rawLine : description.split("\n")) {
+            String line = rawLine.trim();
+            if (line.startsWith("m=")) {
+                String[] fields = line.substring(2).split(" ");
+                media = fields[0];
+                boolean accepted = fields.length > 1 && !fields[1].equals("0");
+                if (media.equals("audio")) {
+                    sdp.audioAccepted = accepted;
+                } else if (media.equals("video")) {
+                    sdp.videoAccepted = accepted;
+                }
+            } else if (line.startsWith("a=ice-ufrag:")) {
+                sdp.iceUfrag = line.substring("a=ice-ufrag:".length());
+            } else if (line.startsWith("a=ice-pwd:")) {
+                sdp.icePwd = line.substring("a=ice-pwd:".length());
+            } else if (line.equals("a=ice-lite")) {
+                sdp.iceLite = true;
+            } else if (line.startsWith("a=fingerprint:")) {
+                String[] fields = line.substring("a=fingerprint:".length()).split(" ");
+                if (fields.length == 2 && fields[0].equalsIgnoreCase("sha-256")) {
+                    sdp.fingerprint = fields[1].toUpperCase(Locale.US);
+                }
+            } else if (line.startsWith("a=setup:")) {
+                sdp.setup = line.substring("a=setup:".length());
+            } else if (line.startsWith("a=candidate:")) {
+                sdp.parseCandidate(line.substring("a=candidate:".length()));
+            } else if (line.startsWith("a=rtpmap:")) {
+                sdp.parseRtpMap(line.substring("a=rtpmap:".length()));
+            } else if (line.startsWith("a=extmap:")) {
+                sdp.parseExtMap(line.substring("a=extmap:".length()));
+            }
+        }
+        return sdp;
+    }
+
+    /**
+     * foundation component transport priority address port typ type ...，只取组件1的UDP候选，
+     * IPv4优先，其次按优先级
+     */
+    private void parseCandidate(String value) {
+        String[] fields = value.split(" ");
+        if (fields.length < 8 || !fields[1].equals("1") || !fields[2].equalsIgnoreCase("udp")) {
+            return;
+        }
+        long priority;
+        int port;
+        InetAddress address;
+        try {
+            priority = Long.parseLong(fields[3]);
+            port = Integer.parseInt(fields[5]);
+            // 只接受IP字面量，不做DNS解析；mDNS候选 (.local) 无法使用
+            if (!fields[4].matches("[0-9a-fA-F:.]+")) {
+                return;
+            }
+            address = InetAddress.getByName(fields[4]);
+        } catch (NumberFormatException | UnknownHostException e) {
+            return;
+        }
+        if (address.getAddress().length == 4) {
+            priority += 1L << 32;
+        }
+        if (priority > candidatePriority) {
+            candidatePriority = priority;
+            candidate = new InetSocketAddress(address, port);
+        }
+    }
+
+    private void parseRtpMap(String value) {
+        int space = value.indexOf(' ');
+        if (space <= 0) {
+            return;
+        }
+        int payloadType;
+        try {
+            payloadType = Integer.parseInt(value.substring(0, space));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String codec = value.substring(space + 1).toLowerCase(Locale.US);
+        if (codec.startsWith("opus/")) {
+            audioPayloadType = payloadType;
+        } else if (codec.startsWith("h264/")) {
+            videoPayloadType = payloadType;
+        }
+    }
+
+    private void parseExtMap(String value) {
+        String[] fields = value.split(" ");
+        if (fields.length < 2) {
+            return;
+        }
+        int id;
+        try {
+            int slash = fields[0].indexOf('/');
+            id = Integer.parseInt(slash < 0 ? fields[0] : fields[0].substring(0, slash));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (id < 1 || id > 14) {
+            return;
+        }
+        if (fields[1].equals(TransportFeedback.EXTENSION_URI)) {
+            transportCcExtensionId = id;
+        } else if (fields[1].equals(MID_EXTENSION_URI)) {
+            midExtensionId = id;
+        }
+    }
+
+    String getIceUfrag() { return iceUfrag; }
+
+    String getIcePwd() { return icePwd; }
+
+    String getFingerprint() { return fingerprint; }
+
+    boolean isIceLite() { return iceLite; }
+
+    /**
+     * 服务器作为DTLS客户端 (setup:active) 时本端为服务端；passive或未给出时本端为客户端
+     */
+    boolean isRemoteDtlsClient() {
+        return "active".equals(setup);
+    }
+
+    InetSocketAddress getCandidate() { return candidate; }
+
+    boolean isAudioAccepted() { return audioAccepted; }
+
+    int getAudioPayloadType() { return audioPayloadType; }
+
+    int getVideoPayloadType() { return videoPayloadType; }
+
+    /**
+     * 传输层序号扩展头ID，服务器不支持时为-1
+     */
+    int getTransportCcExtensionId() { return transportCcExtensionId; }
+
+    /**
+     * mid扩展头ID，服务器不支持时为-1
+     */
+    int getMidExtensionId() { return midExtensionId; }
+}
@@ -0,0 +1,368 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送端带宽估计，按Google拥塞控制 (draft-ietf-rmcat-gcc) 的结构实现
+ * 延迟部分: 传输层反馈给出每个包的到达时间，按发送时间把5ms内的包归为一组，相邻两组的到达间隔减去
+ * 发送间隔为单向排队时延的变化；累积并平滑后对最近20个点做线性回归，斜率乘以增益即排队趋势。
+ * 趋势超过自适应阈值并持续10ms判为过载，以实测接收速率的0.85倍乘性下调；低于负阈值判为欠载，保持；
+ * 其余时间每秒上调8%，但不超过实测接收速率的1.5倍，避免编码码率低于带宽时估计无限增长。
+ * 丢包部分: 丢包率超过10%时按 (1 - 0.5 * 丢包率) 下调上限，两次下调至少间隔300ms，使发送端来得及降速；
+ * 低于2%时每个周期上调8%。
+ * 对端的REMB作为额外的上限。结果为三者的最小值。
+ *
+ * 非线程安全，发送记录和反馈处理由调用方加锁
+ */
+final class SendSideBandwidthEstimator implements TransportFeedback.Listener {
+    private static final int HISTORY_SIZE = 4096;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+    private static final long BURST_US = 5000;
+    private static final int TRENDLINE_WINDOW = 20;
+    private static final double TRENDLINE_SMOOTHING = 0.9;
+    private static final double TRENDLINE_GAIN = 4;
+    private static final int MAX_DELTAS_FOR_GAIN = 60;
+    private static final double INITIAL_THRESHOLD_MS = 12.5;
+    private static final double MIN_THRESHOLD_MS = 6;
+    private static final double MAX_THRESHOLD_MS = 600;
+    private static final double THRESHOLD_UP_RATE = 0.0087;
+    private static final double THRESHOLD_DOWN_RATE = 0.039;
+    private static final double OVERUSE_TIME_MS = 10;
+    private static final double DECREASE_FACTOR = 0.85;
+    private static final double INCREASE_PER_SECOND = 1.08;
+    private static final double MAX_ACKED_RATIO = 1.5;
+    private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final double ACKED_RATE_SMOOTHING = 0.25;
+    private static final int LOSS_PERIOD_PACKETS = 50;
+    private static final long LOSS_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double HIGH_LOSS = 0.10;
+    private static final double LOW_LOSS = 0.02;
+    private static final long LOSS_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
+    private enum Usage {
+        NORMAL,
+        OVERUSING,
+        UNDERUSING
+    }
+
+    private final int minKbps;
+    private final int maxKbps;
+    private final int[] historySeqs = new int[HISTORY_SIZE];
+    private final long[] historySendUs = new long[HISTORY_SIZE];
+    private final int[] historySizes = new int[HISTORY_SIZE];
+
+    // 到达组
+    private boolean groupStarted;
+    private long groupFirstSendUs;
+    private long groupLastSendUs;
+    private long groupLastArrivalUs;
+    private boolean hasPreviousGroup;
+    private long previousGroupSendUs;
+    private long previousGroupArrivalUs;
+
+    // 趋势线
+    private final double[] windowX = new double[TRENDLINE_WINDOW];
+    private final double[] windowY = new double[TRENDLINE_WINDOW];
+    private int windowCount;
+    private int windowNext;
+    private long firstArrivalUs = -1;
+    private int numDeltas;
+    private double accumulatedDelayMs;
+    private double smoothedDelayMs;
+
+    // 过载检测
+    private Usage usage = Usage.NORMAL;
+    private double thresholdMs = INITIAL_THRESHOLD_MS;
+    private long lastThresholdUpdateUs = -1;
+    private double timeOverUsingMs = -1;
+    private int overuseCounter;
+    private double previousTrend;
+
+    // 码率
+    private double delayBasedKbps;
+    private double lossBasedKbps;
+    private double rembKbps = -1;
+    private double ackedKbps = -1;
+    private long lastRateUpdateNanos;
+    private long lastDecreaseNanos;
+    private int target;
+
+    // 本次反馈
+    private long feedbackBytes;
+    private long feedbackFirstArrivalUs;
+    private long feedbackLastArrivalUs;
+
+    // 丢包周期
+    private int periodLost;
+    private int periodReceived;
+    private long periodStartNanos;
+    private double lossRate;
+    private long lastLossDecreaseNanos;
+
+    /**
+     * @param initialKbps 起始估计，通常为配置的音视频总码率
+     */
+    SendSideBandwidthEstimator(int initialKbps, int minKbps, int maxKbps) {
+        this.minKbps = minKbps;
+        this.maxKbps = Math.max(minKbps, maxKbps);
+        this.delayBasedKbps = initialKbps;
+        this.lossBasedKbps = this.maxKbps;
+        this.target = clamp(initialKbps);
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            historySeqs[i] = -1;
+        }
+    }
+
+    /**
+     * 记录带传输层序号的包
+     * @param size RTP包长度，不含UDP/IP头
+     */
+    void onPacketSent(int transportSeq, int size, long sendNanos) {
+        int slot = transportSeq & HISTORY_MASK;
+        historySeqs[slot] = transportSeq;
+        historySendUs[slot] = TimeUnit.NANOSECONDS.toMicros(sendNanos);
+        historySizes[slot] = size;
+    }
+
+    /**
+     * 处理一个传输层反馈包
+     */
+    void onTransportFeedback(ByteBuffer packet, int offset, int length, long nowNanos) {
+        feedbackBytes = 0;
+        feedbackFirstArrivalUs = -1;
+        feedbackLastArrivalUs = -1;
+        if (TransportFeedback.parse(packet, offset, length, this) < 0) {
+            return;
+        }
+        if (feedbackLastArrivalUs > feedbackFirstArrivalUs && feedbackBytes > 0) {
+            double kbps = feedbackBytes * 8.0 * 1000 / (feedbackLastArrivalUs - feedbackFirstArrivalUs);
+            ackedKbps = ackedKbps < 0 ? kbps : ackedKbps + ACKED_RATE_SMOOTHING * (kbps - ackedKbps);
+        }
+        updateLossBased(nowNanos);
+        updateDelayBased(nowNanos);
+    }
+
+    @Override
+    public void onPacketStatus(int transportSeq, long arrivalUs) {
+        int slot = transportSeq & HISTORY_MASK;
+        if (historySeqs[slot] != transportSeq) {
+            return;
+        }
+        if (arrivalUs < 0) {
+            periodLost++;
+            return;
+        }
+        periodReceived++;
+        feedbackBytes += historySizes[slot];
+        if (feedbackFirstArrivalUs < 0) {
+            feedbackFirstArrivalUs = arrivalUs;
+        }
+        feedbackLastArrivalUs = arrivalUs;
+        onArrival(historySendUs[slot], arrivalUs);
+    }
+
+    /**
+     * 接收端REMB给出的码率上限
+     */
+    void onRemb(long bitrateBps) {
+        rembKbps = bitrateBps / 1000.0;
+        target = computeTarget();
+    }
+
+    /**
+     * 没有传输层反馈时，以RR中的丢包比例更新丢包部分
+     * @param fractionLost 8位定点数
+     */
+    void onReceiverReportLoss(int fractionLost, long nowNanos) {
+        lossRate = fractionLost / 256.0;
+        applyLoss(lossRate, nowNanos);
+        periodStartNanos = nowNanos;
+        target = computeTarget();
+    }
+
+    /**
+     * 当前的带宽估计 (kbps)
+     */
+    int getTargetKbps() {
+        return target;
+    }
+
+    /**
+     * 最近一个周期的丢包率 (0-1)
+     */
+    double getLossRate() {
+        return lossRate;
+    }
+
+    private void onArrival(long sendUs, long arrivalUs) {
+        if (!groupStarted) {
+            startGroup(sendUs, arrivalUs);
+            return;
+        }
+        if (sendUs - groupFirstSendUs <= BURST_US) {
+            groupLastSendUs = Math.max(groupLastSendUs, sendUs);
+            groupLastArrivalUs = Math.max(groupLastArrivalUs, arrivalUs);
+            return;
+        }
+        if (hasPreviousGroup) {
+            double sendDeltaMs = (groupLastSendUs - previousGroupSendUs) / 1000.0;
+            double arrivalDeltaMs = (groupLastArrivalUs - previousGroupArrivalUs) / 1000.0;
+            updateTrendline(arrivalDeltaMs - sendDeltaMs, sendDeltaMs, groupLastArrivalUs);
+        }
+        hasPreviousGroup = true;
+        previousGroupSendUs = groupLastSendUs;
+        previousGroupArrivalUs = groupLastArrivalUs;
+        startGroup(sendUs, arrivalUs);
+    }
+
+    private void startGroup(long sendUs, long arrivalUs) {
+        groupStarted = true;
+        groupFirstSendUs = sendUs;
+        groupLastSendUs = sendUs;
+        groupLastArrivalUs = arrivalUs;
+    }
+
+    private void updateTrendline(double delayDeltaMs, double sendDeltaMs, long arrivalUs) {
+        if (firstArrivalUs < 0) {
+            firstArrivalUs = arrivalUs;
+        }
+        numDeltas = Math.min(numDeltas + 1, 1000);
+        accumulatedDelayMs += delayDeltaMs;
+        smoothedDelayMs = TRENDLINE_SMOOTHING * smoothedDelayMs + (1 - TRENDLINE_SMOOTHING) * accumulatedDelayMs;
+        windowX[windowNext] = (arrivalUs - firstArrivalUs) / 1000.0;
+        windowY[windowNext] = smoothedDelayMs;
+        windowNext = (windowNext + 1) % TRENDLINE_WINDOW;
+        windowCount = Math.min(windowCount + 1, TRENDLINE_WINDOW);
+        if (windowCount < TRENDLINE_WINDOW) {
+            return;
+        }
+        double trend = slope() * Math.min(numDeltas, MAX_DELTAS_FOR_GAIN) * TRENDLINE_GAIN;
+        detect(trend, sendDeltaMs, arrivalUs);
+    }
+
+    /**
+     * 最小二乘斜率
+     */
+    private double slope() {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < windowCount; i++) {
+            meanX += windowX[i];
+            meanY += windowY[i];
+        }
+        meanX /= windowCount;
+        meanY /= windowCount;
+        double numerator = 0;
+        double denominator = 0;
+        for (int i = 0; i < windowCount; i++) {
+            double dx = windowX[i] - meanX;
+            numerator += dx * (windowY[i] - meanY);
+            denominator += dx * dx;
+        }
+        return denominator > 0 ? numerator / denominator : 0;
+    }
+
+    private void detect(double trend, double sendDeltaMs, long arrivalUs) {
+        if (trend > thresholdMs) {
+            timeOverUsingMs = timeOverUsingMs < 0 ? sendDeltaMs / 2 : timeOverUsingMs + sendDeltaMs;
+            overuseCounter++;
+            if (timeOverUsingMs > OVERUSE_TIME_MS && overuseCounter > 1 && trend >= previousTrend) {
+                timeOverUsingMs = 0;
+                overuseCounter = 0;
+                usage = Usage.OVERUSING;
+            }
+        } else if (trend < -thresholdMs) {
+            timeOverUsingMs = -1;
+            overuseCounter = 0;
+            usage = Usage.UNDERUSING;
+        } else {
+            timeOverUsingMs = -1;
+            overuseCounter = 0;
+            usage = Usage.NORMAL;
+        }
+        previousTrend = trend;
+        updateThreshold(trend, arrivalUs);
+    }
+
+    /**
+     * 阈值向趋势的绝对值靠拢，上调慢于下调；突发的大趋势不参与
+     */
+    private void updateThreshold(double trend, long arrivalUs) {
+        if (lastThresholdUpdateUs < 0) {
+            lastThresholdUpdateUs = arrivalUs;
+        }
+        double magnitude = Math.abs(trend);
+        if (magnitude > thresholdMs + 15) {
+            lastThresholdUpdateUs = arrivalUs;
+            return;
+        }
+        double rate = magnitude < thresholdMs ? THRESHOLD_DOWN_RATE : THRESHOLD_UP_RATE;
+        double elapsedMs = Math.min((arrivalUs - lastThresholdUpdateUs) / 1000.0, 100);
+        thresholdMs += rate * (magnitude - thresholdMs) * elapsedMs;
+        thresholdMs = Math.max(MIN_THRESHOLD_MS, Math.min(MAX_THRESHOLD_MS, thresholdMs));
+        lastThresholdUpdateUs = arrivalUs;
+    }
+
+    private void updateDelayBased(long nowNanos) {
+        if (lastRateUpdateNanos == 0) {
+            lastRateUpdateNanos = nowNanos;
+        }
+        double elapsedSeconds = Math.min(1.0, (nowNanos - lastRateUpdateNanos) / 1e9);
+        lastRateUpdateNanos = nowNanos;
+        if (usage == Usage.OVERUSING) {
+            if (nowNanos - lastDecreaseNanos >= MIN_DECREASE_INTERVAL_NANOS) {
+                // 以实测接收速率为基准，估计已经低于它时不再下调，避免发送速率超出估计时估计被逐次压低
+                delayBasedKbps = ackedKbps > 0 ? Math.min(delayBasedKbps, ackedKbps * DECREASE_FACTOR)
+                        : delayBasedKbps * DECREASE_FACTOR;
+                lastDecreaseNanos = nowNanos;
+            }
+        } else if (usage == Usage.NORMAL) {
+            double limit = ackedKbps > 0 ? ackedKbps * MAX_ACKED_RATIO + 10 : maxKbps;
+            if (delayBasedKbps < limit) {
+                delayBasedKbps = Math.min(limit, delayBasedKbps * Math.pow(INCREASE_PER_SECOND, elapsedSeconds));
+            }
+        }
+        delayBasedKbps = Math.max(minKbps, Math.min(maxKbps, delayBasedKbps));
+        target = computeTarget();
+    }
+
+    private void updateLossBased(long nowNanos) {
+        if (periodStartNanos == 0) {
+            periodStartNanos = nowNanos;
+        }
+        int total = periodLost + periodReceived;
+        if (total < LOSS_PERIOD_PACKETS && nowNanos - periodStartNanos < LOSS_PERIOD_NANOS) {
+            return;
+        }
+        lossRate = total > 0 ? (double) periodLost / total : 0;
+        applyLoss(lossRate, nowNanos);
+        periodLost = 0;
+        periodReceived = 0;
+        periodStartNanos = nowNanos;
+    }
+
+    private void applyLoss(double loss, long nowNanos) {
+        if (loss > HIGH_LOSS) {
+            if (nowNanos - lastLossDecreaseNanos >= LOSS_DECREASE_INTERVAL_NANOS) {
+                lossBasedKbps = Math.min(lossBasedKbps, target) * (1 - 0.5 * loss);
+                lastLossDecreaseNanos = nowNanos;
+            }
+        } else if (loss < LOW_LOSS) {
+            lossBasedKbps = Math.min(maxKbps, Math.max(lossBasedKbps, target) * INCREASE_PER_SECOND);
+        }
+        lossBasedKbps = Math.max(minKbps, lossBasedKbps);
+    }
+
+    private int computeTarget() {
+        double value = Math.min(delayBasedKbps, lossBasedKbps);
+        if (rembKbps > 0) {
+            value = Math.min(value, rembKbps);
+        }
+        return clamp((int) value);
+    }
+
+    private int clamp(int kbps) {
+        return Math.max(minKbps, Math.min(maxKbps, kbps));
+    }
+}
@@ -0,0 +1,285 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 单方向的SRTP/SRTCP上下文 (RFC 3711)，AES_CM_128_HMAC_SHA1_80
+ * 会话密钥由DTLS导出的主密钥和主盐按KDF生成 (密钥导出率为0)。RTP负载以AES计数器模式加密，
+ * 计数器块为会话盐、SSRC和48位包序号 (ROC和序号) 异或；认证标签为HMAC-SHA1的前10字节，
+ * RTP计入ROC，RTCP计入E标志和31位SRTCP序号。密钥流由ECB加密计数器块得到，每包不分配内存。
+ * 每个SSRC的ROC在发送端按序号回绕递增，在接收端按RFC 3711附录A估计。
+ *
+ * 非线程安全，发送和接收各用一个实例
+ */
+final class Srtp {
+    static final int AUTH_TAG_SIZE = 10;
+    static final int SRTCP_INDEX_SIZE = 4;
+    // 最多2个SSRC (音频和视频) 之外的包不处理
+    private static final int MAX_STREAMS = 4;
+    private static final int BLOCK = 16;
+    private static final int MAX_BLOCKS = 1500 / BLOCK + 1;
+    private static final int SALT_SIZE = 14;
+    private static final int AUTH_KEY_SIZE = 20;
+    private static final int LABEL_RTP_ENCRYPTION = 0;
+    private static final int LABEL_RTP_AUTH = 1;
+    private static final int LABEL_RTP_SALT = 2;
+    private static final int LABEL_RTCP_ENCRYPTION = 3;
+    private static final int LABEL_RTCP_AUTH = 4;
+    private static final int LABEL_RTCP_SALT = 5;
+    private static final int SRTCP_ENCRYPTED = 0x80000000;
+
+    private final Cipher rtpCipher;
+    private final Cipher rtcpCipher;
+    private final Mac rtpMac;
+    private final Mac rtcpMac;
+    private final byte[] rtpSalt;
+    private final byte[] rtcpSalt;
+    private final byte[] counterBlocks = new byte[MAX_BLOCKS * BLOCK];
+    private final byte[] keyStream = new byte[MAX_BLOCKS * BLOCK];
+    private final byte[] tag = new byte[20];
+    private final byte[] rocBytes = new byte[4];
+    private final int[] ssrcs = new int[MAX_STREAMS];
+    private final int[] rocs = new int[MAX_STREAMS];
+    // 发送端为上一个序号，接收端为已收到的最大序号，-1表示尚无
+    private final int[] lastSeqs = new int[MAX_STREAMS];
+    private int streams;
+    private int srtcpIndex;
+
+    Srtp(byte[] masterKey, byte[] masterSalt) throws GeneralSecurityException {
+        Cipher kdf = Cipher.getInstance("AES/ECB/NoPadding");
+        kdf.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(masterKey, "AES"));
+        rtpCipher = ecb(derive(kdf, masterSalt, LABEL_RTP_ENCRYPTION, masterKey.length));
+        rtpMac = hmac(derive(kdf, masterSalt, LABEL_RTP_AUTH, AUTH_KEY_SIZE));
+        rtpSalt = derive(kdf, masterSalt, LABEL_RTP_SALT, SALT_SIZE);
+        rtcpCipher = ecb(derive(kdf, masterSalt, LABEL_RTCP_ENCRYPTION, masterKey.length));
+        rtcpMac = hmac(derive(kdf, masterSalt, LABEL_RTCP_AUTH, AUTH_KEY_SIZE));
+        rtcpSalt = derive(kdf, masterSalt, LABEL_RTCP_SALT, SALT_SIZE);
+    }
+
+    /**
+     * 由DTLS-SRTP密钥材料创建一个方向的上下文
+     * @param clientSide true使用DTLS客户端的密钥
+     */
+    static Srtp fromKeyingMaterial(byte[] material, boolean clientSide) throws GeneralSecurityException {
+        byte[] key = new byte[Dtls.SRTP_KEY_SIZE];
+        byte[] salt = new byte[Dtls.SRTP_SALT_SIZE];
+        System.arraycopy(material, clientSide ? 0 : Dtls.SRTP_KEY_SIZE, key, 0, key.length);
+        System.arraycopy(material, 2 * Dtls.SRTP_KEY_SIZE + (clientSide ? 0 : Dtls.SRTP_SALT_SIZE),
+                salt, 0, salt.length);
+        return new Srtp(key, salt);
+    }
+
+    /**
+     * 原地加密RTP包并追加认证标签
+     * 新包的序号须按发送顺序递增；重传的旧包按原来的ROC加密，不影响后续的包
+     * @param packet 0到length为RTP包，容量至少多AUTH_TAG_SIZE字节
+     * @return 加密后的长度
+     */
+    int protectRtp(ByteBuffer packet, int length) throws GeneralSecurityException {
+        int ssrc = packet.getInt(8);
+        int seq = packet.getShort(2) & 0xFFFF;
+        int stream = stream(ssrc);
+        int lastSeq = lastSeqs[stream];
+        int roc = rocs[stream];
+        if (lastSeq < 0) {
+            lastSeqs[stream] = seq;
+        } else if (Rtp.seqDiff(seq, lastSeq) > 0) {
+            if (seq < lastSeq) {
+                rocs[stream] = ++roc;
+            }
+            lastSeqs[stream] = seq;
+        } else if (seq > lastSeq) {
+            // 回绕之前的包
+            roc--;
+        }
+        int header = Rtp.headerSize(packet);
+        crypt(rtpCipher, rtpSalt, ssrc, (long) roc << 16 | seq, packet, header, length - header);
+        authenticate(rtpMac, packet, length, roc, true);
+        packet.position(length);
+        packet.put(tag, 0, AUTH_TAG_SIZE);
+        return length + AUTH_TAG_SIZE;
+    }
+
+    /**
+     * 校验认证标签并原地解密RTP包
+     * @return 去掉标签后的长度，认证失败时返回-1
+     */
+    int unprotectRtp(ByteBuffer packet, int length) throws GeneralSecurityException {
+        if (length < Rtp.HEADER_SIZE + AUTH_TAG_SIZE) {
+            return -1;
+        }
+        int ssrc = packet.getInt(8);
+        int seq = packet.getShort(2) & 0xFFFF;
+        int stream = stream(ssrc);
+        int lastSeq = lastSeqs[stream];
+        int roc = rocs[stream];
+        int guess = roc;
+        if (lastSeq >= 0) {
+            if (lastSeq < 0x8000) {
+                if (seq - lastSeq > 0x8000) {
+                    guess = roc - 1;
+                }
+            } else if (lastSeq - 0x8000 > seq) {
+                guess = roc + 1;
+            }
+        }
+        int payloadEnd = length - AUTH_TAG_SIZE;
+        authenticate(rtpMac, packet, payloadEnd, guess, true);
+        if (!tagMatches(packet, payloadEnd)) {
+            return -1;
+        }
+        if (lastSeq < 0 || guess > roc || (guess == roc && seq > lastSeq)) {
+            rocs[stream] = guess;
+            lastSeqs[stream] = seq;
+        }
+        int header = Rtp.headerSize(packet);
+        if (header > payloadEnd) {
+            return -1;
+        }
+        crypt(rtpCipher, rtpSalt, ssrc, (long) guess << 16 | seq, packet, header, payloadEnd - header);
+        return payloadEnd;
+    }
+
+    /**
+     * 原地加密RTCP复合包，追加E标志、SRTCP序号和认证标签
+     * @return 加密后的长度
+     */
+    int protectRtcp(ByteBuffer packet, int length) throws GeneralSecurityException {
+        int index = srtcpIndex;
+        srtcpIndex = (srtcpIndex + 1) & ~SRTCP_ENCRYPTED;
+        crypt(rtcpCipher, rtcpSalt, packet.getInt(4), index, packet, 8, length - 8);
+        packet.putInt(length, SRTCP_ENCRYPTED | index);
+        int signed = length + SRTCP_INDEX_SIZE;
+        authenticate(rtcpMac, packet, signed, 0, false);
+        packet.position(signed);
+        packet.put(tag, 0, AUTH_TAG_SIZE);
+        return signed + AUTH_TAG_SIZE;
+    }
+
+    /**
+     * @return 解密后的RTCP长度，认证失败时返回-1
+     */
+    int unprotectRtcp(ByteBuffer packet, int length) throws GeneralSecurityException {
+        if (length < 8 + SRTCP_INDEX_SIZE + AUTH_TAG_SIZE) {
+            return -1;
+        }
+        int signed = length - AUTH_TAG_SIZE;
+        authenticate(rtcpMac, packet, signed, 0, false);
+        if (!tagMatches(packet, signed)) {
+            return -1;
+        }
+        int indexField = packet.getInt(signed - SRTCP_INDEX_SIZE);
+        int end = signed - SRTCP_INDEX_SIZE;
+        if ((indexField & SRTCP_ENCRYPTED) != 0) {
+            crypt(rtcpCipher, rtcpSalt, packet.getInt(4), indexField & ~SRTCP_ENCRYPTED, packet, 8, end - 8);
+        }
+        return end;
+    }
+
+    private int stream(int ssrc) {
+        for (int i = 0; i < streams; i++) {
+            if (ssrcs[i] == ssrc) {
+                return i;
+            }
+        }
+        if (streams == MAX_STREAMS) {
+            // 超出时复用最后一个槽位
+            streams--;
+        }
+        ssrcs[streams] = ssrc;
+        rocs[streams] = 0;
+        lastSeqs[streams] = -1;
+        return streams++;
+    }
+
+    /**
+     * AES-CM: IV = (盐 << 16) ^ (SSRC << 64) ^ (index << 16)，之后按块递增
+     */
+    private void crypt(Cipher cipher, byte[] salt, int ssrc, long index, ByteBuffer packet,
+                       int offset, int length) throws ShortBufferException {
+        if (length <= 0) {
+            return;
+        }
+        int blocks = Math.min(MAX_BLOCKS, (length + BLOCK - 1) / BLOCK);
+        for (int block = 0; block < blocks; block++) {
+            int base = block * BLOCK;
+            System.arraycopy(salt, 0, counterBlocks, base, SALT_SIZE);
+            counterBlocks[base + 4] ^= (byte) (ssrc >>> 24);
+            counterBlocks[base + 5] ^= (byte) (ssrc >>> 16);
+            counterBlocks[base + 6] ^= (byte) (ssrc >>> 8);
+            counterBlocks[base + 7] ^= (byte) ssrc;
+            for (int i = 0; i < 6; i++) {
+                counterBlocks[base + 8 + i] ^= (byte) (index >>> (40 - 8 * i));
+            }
+            counterBlocks[base + 14] = (byte) (block >>> 8);
+            counterBlocks[base + 15] = (byte) block;
+        }
+        cipher.update(counterBlocks, 0, blocks * BLOCK, keyStream, 0);
+        int end = offset + Math.min(length, blocks * BLOCK);
+        for (int i = offset; i < end; i++) {
+            packet.put(i, (byte) (packet.get(i) ^ keyStream[i - offset]));
+        }
+    }
+
+    /**
+     * 计算0到length的HMAC-SHA1写入tag，RTP在末尾计入ROC
+     */
+    private void authenticate(Mac mac, ByteBuffer packet, int length, int roc, boolean rtp)
+            throws ShortBufferException {
+        ByteBuffer signed = packet.duplicate();
+        signed.limit(length).position(0);
+        mac.update(signed);
+        if (rtp) {
+            rocBytes[0] = (byte) (roc >>> 24);
+            rocBytes[1] = (byte) (roc >>> 16);
+            rocBytes[2] = (byte) (roc >>> 8);
+            rocBytes[3] = (byte) roc;
+            mac.update(rocBytes);
+        }
+        mac.doFinal(tag, 0);
+    }
+
+    private boolean tagMatches(ByteBuffer packet, int offset) {
+        int diff = 0;
+        for (int i = 0; i < AUTH_TAG_SIZE; i++) {
+            diff |= packet.get(offset + i) ^ tag[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * KDF: 以主密钥对 (主盐 ^ (label << 48)) << 16 做AES-CM，取前length字节
+     */
+    static byte[] derive(Cipher kdf, byte[] masterSalt, int label, int length)
+            throws GeneralSecurityException {
+        int blocks = (length + BLOCK - 1) / BLOCK;
+        byte[] input = new byte[blocks * BLOCK];
+        for (int block = 0; block < blocks; block++) {
+            System.arraycopy(masterSalt, 0, input, block * BLOCK, SALT_SIZE);
+            input[block * BLOCK + 7] ^= (byte) label;
+            input[block * BLOCK + 15] = (byte) block;
+        }
+        byte[] stream = kdf.doFinal(input);
+        byte[] out = new byte[length];
+        System.arraycopy(stream, 0, out, 0, length);
+        return out;
+    }
+
+    private static Cipher ecb(byte[] key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return cipher;
+    }
+
+    private static Mac hmac(byte[] key) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(key, "HmacSHA1"));
+        return mac;
+    }
+}
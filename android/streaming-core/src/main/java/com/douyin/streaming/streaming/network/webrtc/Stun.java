@@ -0,0 +1,265 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ICE连通性检查使用的STUN报文 (RFC 5389/8445)
+ * 只处理Binding请求和响应。报文头为2字节类型、2字节长度、魔数和12字节事务ID，
+ * 属性按4字节对齐；短期凭证的MESSAGE-INTEGRITY以对端 (请求) 或本端 (响应) 的ice-pwd为密钥，
+ * 最后是FINGERPRINT。
+ */
+final class Stun {
+    static final int HEADER_SIZE = 20;
+    static final int MAGIC_COOKIE = 0x2112A442;
+    static final int TRANSACTION_ID_SIZE = 12;
+
+    static final int BINDING_REQUEST = 0x0001;
+    static final int BINDING_SUCCESS = 0x0101;
+    static final int BINDING_ERROR = 0x0111;
+
+    static final int ATTR_USERNAME = 0x0006;
+    static final int ATTR_MESSAGE_INTEGRITY = 0x0008;
+    static final int ATTR_ERROR_CODE = 0x0009;
+    static final int ATTR_XOR_MAPPED_ADDRESS = 0x0020;
+    static final int ATTR_PRIORITY = 0x0024;
+    static final int ATTR_USE_CANDIDATE = 0x0025;
+    static final int ATTR_FINGERPRINT = 0x8028;
+    static final int ATTR_ICE_CONTROLLED = 0x8029;
+    static final int ATTR_ICE_CONTROLLING = 0x802A;
+
+    private static final int INTEGRITY_SIZE = 20;
+    private static final int FINGERPRINT_XOR = 0x5354554E;
+
+    private Stun() {
+    }
+
+    /**
+     * 按RFC 7983，首字节0-3为STUN
+     */
+    static boolean isStun(ByteBuffer packet) {
+        return packet.limit() >= HEADER_SIZE && (packet.get(0) & 0xC0) == 0
+                && packet.getInt(4) == MAGIC_COOKIE;
+    }
+
+    static int type(ByteBuffer packet) {
+        return packet.getShort(0) & 0xFFFF;
+    }
+
+    static void transactionId(ByteBuffer packet, byte[] dst) {
+        for (int i = 0; i < TRANSACTION_ID_SIZE; i++) {
+            dst[i] = packet.get(8 + i);
+        }
+    }
+
+    static boolean sameTransaction(ByteBuffer packet, byte[] transactionId) {
+        for (int i = 0; i < TRANSACTION_ID_SIZE; i++) {
+            if (packet.get(8 + i) != transactionId[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写报文头，长度在finish()时填写
+     */
+    static void writeHeader(ByteBuffer dst, int type, byte[] transactionId) {
+        dst.clear();
+        dst.putShort((short) type);
+        dst.putShort((short) 0);
+        dst.putInt(MAGIC_COOKIE);
+        dst.put(transactionId);
+    }
+
+    static void putAttribute(ByteBuffer dst, int type, byte[] value) {
+        dst.putShort((short) type);
+        dst.putShort((short) value.length);
+        dst.put(value);
+        pad(dst, value.length);
+    }
+
+    static void putIntAttribute(ByteBuffer dst, int type, int value) {
+        dst.putShort((short) type);
+        dst.putShort((short) 4);
+        dst.putInt(value);
+    }
+
+    static void putLongAttribute(ByteBuffer dst, int type, long value) {
+        dst.putShort((short) type);
+        dst.putShort((short) 8);
+        dst.putLong(value);
+    }
+
+    static void putFlagAttribute(ByteBuffer dst, int type) {
+        dst.putShort((short) type);
+        dst.putShort((short) 0);
+    }
+
+    /**
+     * XOR-MAPPED-ADDRESS，端口与魔数高16位异或，IPv4地址与魔数异或，IPv6地址与魔数和事务ID异或
+     */
+    static void putXorMappedAddress(ByteBuffer dst, InetSocketAddress address) {
+        byte[] ip = address.getAddress().getAddress();
+        dst.putShort((short) ATTR_XOR_MAPPED_ADDRESS);
+        dst.putShort((short) (4 + ip.length));
+        dst.put((byte) 0);
+        dst.put((byte) (ip.length == 4 ? 1 : 2));
+        dst.putShort((short) (address.getPort() ^ (MAGIC_COOKIE >>> 16)));
+        for (int i = 0; i < ip.length; i++) {
+            dst.put((byte) (ip[i] ^ dst.get(4 + i)));
+        }
+    }
+
+    /**
+     * 追加MESSAGE-INTEGRITY和FINGERPRINT并填写长度，完成后position为0
+     * @param key ice-pwd，为null时只加FINGERPRINT
+     */
+    static void finish(ByteBuffer dst, byte[] key) throws GeneralSecurityException {
+        if (key != null) {
+            int integrityStart = dst.position();
+            dst.putShort(2, (short) (integrityStart + 4 + INTEGRITY_SIZE - HEADER_SIZE));
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            ByteBuffer signed = dst.duplicate();
+            signed.flip();
+            mac.update(signed);
+            dst.putShort((short) ATTR_MESSAGE_INTEGRITY);
+            dst.putShort((short) INTEGRITY_SIZE);
+            dst.put(mac.doFinal());
+        }
+        int fingerprintStart = dst.position();
+        dst.putShort(2, (short) (fingerprintStart + 8 - HEADER_SIZE));
+        dst.putShort((short) ATTR_FINGERPRINT);
+        dst.putShort((short) 4);
+        dst.putInt(crc32(dst, fingerprintStart) ^ FINGERPRINT_XOR);
+        dst.flip();
+    }
+
+    /**
+     * 查找属性
+     * @return 属性值的起始位置，没有时返回-1，长度用attributeLength()读取
+     */
+    static int findAttribute(ByteBuffer packet, int type) {
+        int end = Math.min(packet.limit(), HEADER_SIZE + (packet.getShort(2) & 0xFFFF));
+        int offset = HEADER_SIZE;
+        while (offset + 4 <= end) {
+            int attrType = packet.getShort(offset) & 0xFFFF;
+            int length = packet.getShort(offset + 2) & 0xFFFF;
+            if (offset + 4 + length > end) {
+                return -1;
+            }
+            if (attrType == type) {
+                return offset + 4;
+            }
+            offset += 4 + ((length + 3) & ~3);
+        }
+        return -1;
+    }
+
+    static int attributeLength(ByteBuffer packet, int valueStart) {
+        return packet.getShort(valueStart - 2) & 0xFFFF;
+    }
+
+    static String readString(ByteBuffer packet, int valueStart) {
+        byte[] value = new byte[attributeLength(packet, valueStart)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = packet.get(valueStart + i);
+        }
+        return utf8(value);
+    }
+
+    static InetSocketAddress readXorMappedAddress(ByteBuffer packet) {
+        int value = findAttribute(packet, ATTR_XOR_MAPPED_ADDRESS);
+        if (value < 0 || attributeLength(packet, value) < 8) {
+            return null;
+        }
+        int family = packet.get(value + 1);
+        byte[] ip = new byte[family == 2 ? 16 : 4];
+        if (attributeLength(packet, value) < 4 + ip.length) {
+            return null;
+        }
+        int port = (packet.getShort(value + 2) ^ (MAGIC_COOKIE >>> 16)) & 0xFFFF;
+        for (int i = 0; i < ip.length; i++) {
+            ip[i] = (byte) (packet.get(value + 4 + i) ^ packet.get(4 + i));
+        }
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(ip), port);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 校验MESSAGE-INTEGRITY，忽略其后的FINGERPRINT
+     */
+    static boolean checkIntegrity(ByteBuffer packet, byte[] key) {
+        int value = findAttribute(packet, ATTR_MESSAGE_INTEGRITY);
+        if (value < 0 || attributeLength(packet, value) != INTEGRITY_SIZE) {
+            return false;
+        }
+        int integrityStart = value - 4;
+        ByteBuffer signed = packet.duplicate();
+        signed.limit(integrityStart).position(0);
+        byte[] expected;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            // 计算时长度字段截止到MESSAGE-INTEGRITY
+            byte[] header = new byte[4];
+            signed.get(header);
+            int length = integrityStart + 4 + INTEGRITY_SIZE - HEADER_SIZE;
+            header[2] = (byte) (length >> 8);
+            header[3] = (byte) length;
+            mac.update(header);
+            mac.update(signed);
+            expected = mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        byte[] actual = new byte[INTEGRITY_SIZE];
+        for (int i = 0; i < INTEGRITY_SIZE; i++) {
+            actual[i] = packet.get(value + i);
+        }
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    static byte[] utf8Bytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String utf8(byte[] value) {
+        try {
+            return new String(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int crc32(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc.update(buffer.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void pad(ByteBuffer dst, int length) {
+        for (int i = length; (i & 3) != 0; i++) {
+            dst.put((byte) 0);
+        }
+    }
+}
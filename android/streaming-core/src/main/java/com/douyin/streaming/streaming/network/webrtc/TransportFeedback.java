@@ -0,0 +1,171 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 传输层拥塞控制反馈 (draft-holmer-rmcat-transport-wide-cc-extensions-01)
+ * 发送端在每个RTP包的头扩展中写入16位传输层序号，接收端按序号报告每个包是否收到及到达时间。
+ * 反馈包在RTPFB头之后依次为基准序号、包状态数、24位参考时间 (64ms单位)、8位反馈计数，
+ * 然后是包状态块和收到的包的到达时间增量 (250微秒单位，小增量1字节，大或负增量2字节)。
+ * 状态块可以是游程块或状态向量块，写出时只用每块7个2位符号的状态向量块。
+ */
+final class TransportFeedback {
+    static final String EXTENSION_URI =
+            "http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01";
+    static final long DELTA_UNIT_US = 250;
+    static final long REFERENCE_UNIT_US = 64000;
+
+    private static final int SYMBOL_NOT_RECEIVED = 0;
+    private static final int SYMBOL_SMALL_DELTA = 1;
+    private static final int SYMBOL_LARGE_DELTA = 2;
+    private static final int SYMBOLS_PER_VECTOR = 7;
+    private static final int MAX_STATUS_COUNT = 0xFFFF;
+
+    /**
+     * 逐包回调，按序号递增顺序
+     */
+    interface Listener {
+        /**
+         * @param arrivalUs 到达时间 (接收端时钟，微秒)，未收到时为-1
+         */
+        void onPacketStatus(int transportSeq, long arrivalUs);
+    }
+
+    private TransportFeedback() {
+    }
+
+    /**
+     * 解析一个反馈包
+     * @param offset 反馈包在packet中的起始位置
+     * @param length 反馈包长度
+     * @return 反馈中的包状态数，格式错误时返回-1
+     */
+    static int parse(ByteBuffer packet, int offset, int length, Listener listener) {
+        int end = offset + length;
+        if ((packet.get(offset) & 0x20) != 0) {
+            end -= packet.get(end - 1) & 0xFF;
+        }
+        int baseSeq = packet.getShort(offset + 12) & 0xFFFF;
+        int statusCount = packet.getShort(offset + 14) & 0xFFFF;
+        int referenceTime = packet.getInt(offset + 16) >> 8;
+        int[] symbols = new int[statusCount];
+        int position = offset + 20;
+        int filled = 0;
+        while (filled < statusCount) {
+            if (position + 2 > end) {
+                return -1;
+            }
+            int chunk = packet.getShort(position) & 0xFFFF;
+            position += 2;
+            if ((chunk & 0x8000) == 0) {
+                int symbol = (chunk >> 13) & 0x3;
+                int run = chunk & 0x1FFF;
+                for (int i = 0; i < run && filled < statusCount; i++) {
+                    symbols[filled++] = symbol;
+                }
+            } else if ((chunk & 0x4000) == 0) {
+                for (int i = 13; i >= 0 && filled < statusCount; i--) {
+                    symbols[filled++] = (chunk >> i) & 0x1;
+                }
+            } else {
+                for (int i = 12; i >= 0 && filled < statusCount; i -= 2) {
+                    symbols[filled++] = (chunk >> i) & 0x3;
+                }
+            }
+        }
+        long arrivalUs = referenceTime * REFERENCE_UNIT_US;
+        for (int i = 0; i < statusCount; i++) {
+            int seq = (baseSeq + i) & 0xFFFF;
+            int symbol = symbols[i];
+            if (symbol == SYMBOL_SMALL_DELTA) {
+                if (position + 1 > end) {
+                    return -1;
+                }
+                arrivalUs += (packet.get(position) & 0xFF) * DELTA_UNIT_US;
+                position += 1;
+                listener.onPacketStatus(seq, arrivalUs);
+            } else if (symbol == SYMBOL_LARGE_DELTA) {
+                if (position + 2 > end) {
+                    return -1;
+                }
+                arrivalUs += packet.getShort(position) * DELTA_UNIT_US;
+                position += 2;
+                listener.onPacketStatus(seq, arrivalUs);
+            } else {
+                listener.onPacketStatus(seq, -1);
+            }
+        }
+        return statusCount;
+    }
+
+    /**
+     * 写出一个反馈包
+     * @param arrivalUs 从baseSeq起每个序号的到达时间 (微秒)，未收到为-1，至少有一个收到
+     * @param count 包状态数
+     */
+    static void write(ByteBuffer dst, int senderSsrc, int mediaSsrc, int baseSeq, long[] arrivalUs, int count,
+                      int feedbackCount) {
+        count = Math.min(count, MAX_STATUS_COUNT);
+        int start = dst.position();
+        Rtcp.writeHeader(dst, Rtcp.FMT_TRANSPORT_CC, Rtcp.TYPE_RTPFB, 4);
+        dst.putInt(senderSsrc);
+        dst.putInt(mediaSsrc);
+        dst.putShort((short) baseSeq);
+        dst.putShort((short) count);
+        long firstArrival = -1;
+        for (int i = 0; i < count && firstArrival < 0; i++) {
+            firstArrival = arrivalUs[i];
+        }
+        long referenceTime = Math.max(0, firstArrival) / REFERENCE_UNIT_US;
+        dst.putInt((int) (referenceTime << 8) | (feedbackCount & 0xFF));
+
+        // 按250微秒量化增量，累计量化后的时间避免误差累积
+        long previous = referenceTime * REFERENCE_UNIT_US;
+        int[] symbols = new int[count];
+        int[] deltas = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (arrivalUs[i] < 0) {
+                symbols[i] = SYMBOL_NOT_RECEIVED;
+                continue;
+            }
+            long delta = (arrivalUs[i] - previous) / DELTA_UNIT_US;
+            if (delta >= 0 && delta <= 0xFF) {
+                symbols[i] = SYMBOL_SMALL_DELTA;
+            } else {
+                symbols[i] = SYMBOL_LARGE_DELTA;
+                delta = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, delta));
+            }
+            deltas[i] = (int) delta;
+            previous += delta * DELTA_UNIT_US;
+        }
+
+        // 状态向量块
+        for (int i = 0; i < count; i += SYMBOLS_PER_VECTOR) {
+            int chunk = 0xC000;
+            for (int j = 0; j < SYMBOLS_PER_VECTOR; j++) {
+                int symbol = i + j < count ? symbols[i + j] : SYMBOL_NOT_RECEIVED;
+                chunk |= symbol << (12 - 2 * j);
+            }
+            dst.putShort((short) chunk);
+        }
+
+        // 到达时间增量
+        for (int i = 0; i < count; i++) {
+            if (symbols[i] == SYMBOL_SMALL_DELTA) {
+                dst.put((byte) deltas[i]);
+            } else if (symbols[i] == SYMBOL_LARGE_DELTA) {
+                dst.putShort((short) deltas[i]);
+            }
+        }
+
+        int padding = (4 - (dst.position() - start) % 4) % 4;
+        if (padding > 0) {
+            for (int i = 1; i < padding; i++) {
+                dst.put((byte) 0);
+            }
+            dst.put((byte) padding);
+            dst.put(start, (byte) (dst.get(start) | 0x20));
+        }
+        dst.putShort(start + 2, (short) ((dst.position() - start) / 4 - 1));
+    }
+}
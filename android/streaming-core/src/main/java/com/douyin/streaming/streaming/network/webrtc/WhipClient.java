@@ -0,0 +1,111 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * WHIP信令 (RFC 9725)
+ * POST offer (application/sdp) 到端点，服务器返回201、answer和Location头给出的会话资源地址；
+ * 结束时DELETE会话资源。不支持trickle ICE和ICE重启的PATCH。
+ */
+final class WhipClient {
+    private static final String TAG = "WhipClient";
+    private static final String CONTENT_TYPE = "application/sdp";
+    private static final int MAX_ANSWER_BYTES = 64 * 1024;
+
+    private final WhipUrl url;
+    private URL resource;
+
+    WhipClient(WhipUrl url) {
+        this.url = url;
+    }
+
+    /**
+     * 发送offer并返回answer
+     */
+    String publish(String offer, int timeoutMs) throws IOException {
+        HttpURLConnection connection = open(url.getEndpoint(), "POST", timeoutMs);
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            byte[] body = offer.getBytes("UTF-8");
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_UNAUTHORIZED || code == HttpURLConnection.HTTP_FORBIDDEN) {
+                throw new IOException("WHIP鉴权失败: HTTP " + code);
+            }
+            if (code != HttpURLConnection.HTTP_CREATED && code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("WHIP服务器拒绝推流: HTTP " + code);
+            }
+            String location = connection.getHeaderField("Location");
+            if (location != null) {
+                resource = new URL(url.getEndpoint(), location);
+            }
+            return new String(readAll(connection.getInputStream()), "UTF-8");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 删除会话资源，失败时只记录日志
+     */
+    void delete(int timeoutMs) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            HttpURLConnection connection = open(resource, "DELETE", timeoutMs);
+            try {
+                int code = connection.getResponseCode();
+                if (code >= 300) {
+                    StreamingLog.d(TAG, "删除WHIP会话返回HTTP " + code);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            StreamingLog.d(TAG, "删除WHIP会话失败: " + e.getMessage());
+        }
+        resource = null;
+    }
+
+    private HttpURLConnection open(URL target, String method, int timeoutMs) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        if (url.getBearerToken() != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + url.getBearerToken());
+        }
+        return connection;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+        byte[] buffer = new byte[2048];
+        int n;
+        try {
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_ANSWER_BYTES) {
+                    throw new IOException("WHIP应答过大");
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
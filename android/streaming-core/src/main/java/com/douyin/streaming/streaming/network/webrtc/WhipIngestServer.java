@@ -0,0 +1,1070 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.AvcNalUnits;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内WHIP接收端
+ * 只监听本机回环地址: HTTP端点接受offer并返回ice-lite的answer，UDP端口回复连通性检查、完成DTLS握手
+ * (默认为服务端)，解密SRTP后按序号重排视频包，发现空洞时立即并周期性地发送NACK，空洞等待超过延迟窗口后
+ * 跳过并发送PLI，之后丢弃到下一个关键帧；视频解包为Annex-B访问单元，音频包收到即交付。每50ms回复
+ * 传输层反馈，每秒回复RR。可模拟丢包和瓶颈带宽，用于检查WhipPublisher的重传和拥塞控制。
+ * 同一时间只接收一个发布端，新的offer替换旧会话。按包分配缓冲区，只用于测试和压测，不用于生产。
+ */
+public class WhipIngestServer implements Closeable {
+    private static final String TAG = "WhipIngestServer";
+
+    private static final String WHIP_PATH = "/whip";
+    private static final int RECEIVE_BUFFER_PACKETS = 1024;
+    private static final int FEEDBACK_HISTORY = 4096;
+    // 一个传输层反馈最多携带的包状态数，保证不超过MTU
+    private static final int MAX_FEEDBACK_STATUS = 256;
+    private static final int MAX_NACK_SEQS = 64;
+    private static final long TICK_MS = 10;
+    private static final long NACK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long FEEDBACK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PEER_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 模拟瓶颈的排队时延超过该值时丢包
+    private static final long MAX_QUEUE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final int HTTP_TIMEOUT_MS = 5000;
+    private static final int MAX_OFFER_BYTES = 64 * 1024;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    private static final int NAL_STAP_A = 24;
+    private static final int NAL_FU_A = 28;
+    private static final String TOKEN_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /**
+     * 接收事件，在接收线程上回调
+     */
+    public interface Listener {
+        /**
+         * DTLS握手完成
+         */
+        void onConnected();
+
+        /**
+         * 交付一帧
+         * @param video true为视频访问单元 (Annex-B，含SPS/PPS)，否则为一个Opus包
+         * @param frame 回调返回后失效
+         * @param deliveryNanos 交付时间，模拟瓶颈带宽时为包离开瓶颈的时间
+         */
+        void onFrame(boolean video, ByteBuffer frame, long deliveryNanos);
+
+        /**
+         * 会话结束
+         * @param e 异常断开时不为null
+         */
+        void onClosed(IOException e);
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+    private final int latencyMs;
+    private final String bearerToken;
+    private final SecureRandom random = new SecureRandom();
+    private final Random lossRandom = new Random();
+    private final AtomicReference<Session> session = new AtomicReference<>();
+    // 以下缓冲只在接收线程上访问
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(1500);
+    private final ByteBuffer sendBuffer =
+            ByteBuffer.allocateDirect(Rtp.MTU + Srtp.SRTCP_INDEX_SIZE + Srtp.AUTH_TAG_SIZE);
+    private final int[] nackSeqs = new int[MAX_NACK_SEQS];
+    private final long[] feedbackChunk = new long[MAX_FEEDBACK_STATUS];
+    private DtlsCertificate certificate;
+    private ServerSocket serverSocket;
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread httpThread;
+    private Thread receiverThread;
+    private volatile boolean closed;
+    private volatile boolean dtlsClient;
+    private volatile double lossRate;
+    private volatile int bandwidthKbps;
+    private volatile long skippedPackets;
+
+    /**
+     * @param latencyMs 视频空洞等待重传的时间
+     * @param bearerToken 要求的Bearer令牌，为null时不鉴权
+     */
+    public WhipIngestServer(Listener listener, Clock clock, int latencyMs, String bearerToken) {
+        this.listener = listener;
+        this.clock = clock;
+        this.latencyMs = latencyMs;
+        this.bearerToken = bearerToken;
+    }
+
+    /**
+     * 在回环地址上开始监听，UDP端口由系统分配
+     * @param port HTTP端口，0表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        try {
+            certificate = DtlsCertificate.generate("WhipIngest");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("生成DTLS证书失败", e);
+        }
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        serverSocket = new ServerSocket(port, 8, loopback);
+        channel = DatagramChannel.open();
+        channel.socket().bind(new InetSocketAddress(loopback, 0));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        httpThread = new Thread(this::httpLoop, "WhipIngestHttp");
+        httpThread.setDaemon(true);
+        httpThread.start();
+        receiverThread = new Thread(this::receiveLoop, "WhipIngest");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        StreamingLog.i(TAG, "WHIP接收端已启动: " + getUrl());
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + WHIP_PATH;
+    }
+
+    /**
+     * answer为setup:active，由接收端发起DTLS握手，检查发布端的DTLS服务端角色；对之后的offer生效
+     */
+    public void setDtlsClient(boolean dtlsClient) {
+        this.dtlsClient = dtlsClient;
+    }
+
+    /**
+     * 模拟丢包，按比例随机丢弃收到的RTP包（含重传包）
+     * @param lossRate 0到1
+     */
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * 模拟瓶颈带宽: SRTP包按该速率排队，离开队列后才处理，排队超过300ms时丢弃
+     * @param kbps 0表示不限
+     */
+    public void setBandwidthKbps(int kbps) {
+        this.bandwidthKbps = kbps;
+    }
+
+    /**
+     * 等待超过延迟窗口后跳过的视频包数
+     */
+    public long getSkippedPackets() {
+        return skippedPackets;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭WHIP端点失败", e);
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+        join(httpThread);
+        join(receiverThread);
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            StreamingLog.w(TAG, "关闭WHIP接收端失败", e);
+        }
+    }
+
+    // ---- HTTP端点，逐个处理请求 ----
+
+    private void httpLoop() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    StreamingLog.e(TAG, "接受HTTP连接失败", e);
+                }
+                return;
+            }
+            try {
+                socket.setSoTimeout(HTTP_TIMEOUT_MS);
+                serve(socket.getInputStream(), socket.getOutputStream());
+            } catch (IOException e) {
+                StreamingLog.d(TAG, "处理HTTP请求失败: " + e.getMessage());
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * POST /whip 创建会话，DELETE /whip/{id} 结束会话；每个连接只处理一个请求
+     */
+    private void serve(InputStream rawIn, OutputStream out) throws IOException {
+        InputStream in = new BufferedInputStream(rawIn);
+        String[] requestLine = readLine(in).split(" ");
+        if (requestLine.length < 2) {
+            respond(out, 400, "Bad Request", null, null);
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        int length = 0;
+        try {
+            String value = headers.get("content-length");
+            length = value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            length = -1;
+        }
+        if (length < 0 || length > MAX_OFFER_BYTES) {
+            respond(out, 413, "Payload Too Large", null, null);
+            return;
+        }
+        byte[] body = new byte[length];
+        for (int read = 0; read < length; ) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new EOFException("HTTP请求体不完整");
+            }
+            read += n;
+        }
+
+        String method = requestLine[0];
+        String path = requestLine[1];
+        if (bearerToken != null && !("Bearer " + bearerToken).equals(headers.get("authorization"))) {
+            respond(out, 401, "Unauthorized", null, null);
+        } else if (method.equals("POST") && path.equals(WHIP_PATH)) {
+            Session created;
+            String answer;
+            try {
+                Sdp offer = Sdp.parseOffer(new String(body, "UTF-8"));
+                created = new Session(offer);
+                answer = Sdp.createAnswer(created.localUfrag, created.localPwd, certificate.getFingerprint(),
+                        created.dtlsClient, (InetSocketAddress) channel.socket().getLocalSocketAddress());
+            } catch (IOException e) {
+                respond(out, 400, "Bad Request", null, null);
+                return;
+            }
+            // 接收线程发现会话变化后结束旧会话
+            session.set(created);
+            respond(out, 201, "Created", WHIP_PATH + "/" + created.id, answer);
+        } else if (method.equals("DELETE") && path.startsWith(WHIP_PATH + "/")) {
+            Session current = session.get();
+            if (current != null && path.equals(WHIP_PATH + "/" + current.id)
+                    && session.compareAndSet(current, null)) {
+                respond(out, 200, "OK", null, null);
+            } else {
+                respond(out, 404, "Not Found", null, null);
+            }
+        } else {
+            respond(out, 405, "Method Not Allowed", null, null);
+        }
+    }
+
+    private static void respond(OutputStream out, int code, String reason, String location, String answer)
+            throws IOException {
+        byte[] body = answer != null ? answer.getBytes("UTF-8") : new byte[0];
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(code).append(' ').append(reason).append("\r\n");
+        if (location != null) {
+            sb.append("Location: ").append(location).append("\r\n");
+        }
+        if (answer != null) {
+            sb.append("Content-Type: application/sdp\r\n");
+        }
+        sb.append("Content-Length: ").append(body.length).append("\r\n");
+        sb.append("Connection: close\r\n\r\n");
+        out.write(sb.toString().getBytes("ISO-8859-1"));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("HTTP请求不完整");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > 8192) {
+                throw new IOException("HTTP请求头过长");
+            }
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    // ---- UDP接收 ----
+
+    private void receiveLoop() {
+        Session current = null;
+        try {
+            while (!closed) {
+                selector.select(current != null ? current.waitMillis(clock.nanoTime()) : TICK_MS);
+                selector.selectedKeys().clear();
+                Session latest = session.get();
+                if (latest != current) {
+                    if (current != null) {
+                        current.close(null);
+                    }
+                    current = latest;
+                }
+                SocketAddress from;
+                while (!closed && (from = receive()) != null) {
+                    if (current != null) {
+                        current = guard(current, from, receiveBuffer);
+                    }
+                }
+                if (current != null) {
+                    current = guard(current, null, null);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                StreamingLog.e(TAG, "WHIP接收端出错", e);
+            }
+        }
+        if (current != null) {
+            current.close(null);
+        }
+    }
+
+    /**
+     * 处理一个报文或在packet为null时做周期处理，会话结束时返回null
+     */
+    private Session guard(Session current, SocketAddress from, ByteBuffer packet) {
+        boolean alive;
+        IOException error = null;
+        try {
+            alive = packet != null ? current.onPacket(from, packet) : current.tick(clock.nanoTime());
+        } catch (IOException e) {
+            alive = false;
+            error = e;
+        }
+        if (alive) {
+            return current;
+        }
+        current.close(error);
+        session.compareAndSet(current, null);
+        return null;
+    }
+
+    /**
+     * 读取一个报文，没有时返回null
+     */
+    private SocketAddress receive() throws IOException {
+        receiveBuffer.clear();
+        SocketAddress from = channel.receive(receiveBuffer);
+        if (from == null) {
+            return null;
+        }
+        receiveBuffer.flip();
+        return receiveBuffer.limit() >= 4 ? from : receive();
+    }
+
+    private String randomToken(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(TOKEN_CHARS.charAt(random.nextInt(TOKEN_CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单个发布端的接收状态，由HTTP线程创建，之后只在接收线程上访问
+     */
+    private final class Session implements Rtcp.Handler {
+        private final String id = randomToken(12);
+        private final String localUfrag = randomToken(8);
+        private final String localPwd = randomToken(24);
+        private final byte[] localPwdBytes = Stun.utf8Bytes(localPwd);
+        private final String expectedUsername;
+        private final String remoteFingerprint;
+        private final boolean dtlsClient = WhipIngestServer.this.dtlsClient;
+        private final int ssrc = random.nextInt();
+        private final long startNanos = clock.nanoTime();
+        private final VideoReceiver video = new VideoReceiver();
+        private final StreamStats audio = new StreamStats(Rtp.OPUS_CLOCK_RATE);
+        private final long[] feedbackArrivals = new long[FEEDBACK_HISTORY];
+        private SocketAddress peer;
+        private Dtls dtls;
+        private Srtp receiveSrtp;
+        private Srtp sendSrtp;
+        private boolean closed;
+        private long lastReceiveNanos = startNanos;
+        private long lastFeedbackNanos;
+        private long lastReportNanos;
+        // 模拟瓶颈中排队的包和各自的离开时间
+        private final ArrayDeque<ByteBuffer> linkQueue = new ArrayDeque<>();
+        private final ArrayDeque<Long> linkDepartures = new ArrayDeque<>();
+        private long linkFreeNanos;
+        private int feedbackBase = -1;
+        private int feedbackHighest;
+        private int feedbackCount;
+        private boolean feedbackPending;
+
+        Session(Sdp offer) {
+            this.expectedUsername = localUfrag + ":" + offer.getIceUfrag();
+            this.remoteFingerprint = offer.getFingerprint();
+            Arrays.fill(feedbackArrivals, -1);
+        }
+
+        /**
+         * @return false表示会话已结束
+         */
+        boolean onPacket(SocketAddress from, ByteBuffer packet) throws IOException {
+            long now = clock.nanoTime();
+            if (Stun.isStun(packet)) {
+                onStun(from, packet, now);
+                return true;
+            }
+            if (!from.equals(peer)) {
+                return true;
+            }
+            lastReceiveNanos = now;
+            if (Dtls.isDtls(packet)) {
+                return onDtls(packet, now);
+            }
+            if (receiveSrtp == null || !Rtp.isRtpOrRtcp(packet)) {
+                return true;
+            }
+            int kbps = bandwidthKbps;
+            if (kbps > 0) {
+                enqueue(packet, now, kbps);
+                drainLink(now);
+            } else {
+                onSrtp(packet, now);
+            }
+            return true;
+        }
+
+        /**
+         * 到下一个包离开模拟瓶颈或下一次周期处理的等待时间
+         */
+        long waitMillis(long now) {
+            Long departure = linkDepartures.peekFirst();
+            if (departure == null) {
+                return TICK_MS;
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(departure - now);
+            return Math.max(1, Math.min(TICK_MS, millis));
+        }
+
+        /**
+         * 包按瓶颈速率串行通过，排队时延过大时丢弃
+         */
+        private void enqueue(ByteBuffer packet, long now, int kbps) {
+            long transmitNanos = packet.limit() * 8L * 1000000L / kbps;
+            long departure = Math.max(now, linkFreeNanos) + transmitNanos;
+            if (departure - now > MAX_QUEUE_DELAY_NANOS) {
+                return;
+            }
+            linkFreeNanos = departure;
+            ByteBuffer copy = ByteBuffer.allocate(packet.limit());
+            copy.put(packet).flip();
+            linkQueue.addLast(copy);
+            linkDepartures.addLast(departure);
+        }
+
+        /**
+         * 处理已经离开模拟瓶颈的包，离开时间作为到达时间
+         */
+        private void drainLink(long now) throws IOException {
+            Long departure;
+            while ((departure = linkDepartures.peekFirst()) != null && departure <= now) {
+                linkDepartures.removeFirst();
+                onSrtp(linkQueue.removeFirst(), departure);
+            }
+        }
+
+        private void onSrtp(ByteBuffer packet, long now) throws IOException {
+            if (Rtp.isRtcp(packet)) {
+                int length = unprotect(packet, true);
+                if (length > 0) {
+                    Rtcp.parse(packet, length, this, now);
+                }
+            } else {
+                onRtp(packet, now);
+            }
+        }
+
+        /**
+         * 周期处理: DTLS重发、跳过超时的空洞、NACK、传输层反馈和RR
+         * @return false表示会话已结束
+         */
+        boolean tick(long now) throws IOException {
+            if (now - lastReceiveNanos > PEER_IDLE_TIMEOUT_NANOS) {
+                throw new SocketTimeoutException("WHIP发布端无响应");
+            }
+            if (dtls != null && !dtls.isConnected()) {
+                dtls.poll(now);
+            }
+            if (sendSrtp == null) {
+                return true;
+            }
+            drainLink(now);
+            video.tick(now);
+            if (now - lastFeedbackNanos >= FEEDBACK_INTERVAL_NANOS) {
+                sendFeedback();
+                lastFeedbackNanos = now;
+            }
+            if (now - lastReportNanos >= REPORT_INTERVAL_NANOS) {
+                sendReports(now);
+                lastReportNanos = now;
+            }
+            return true;
+        }
+
+        void close(IOException e) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (sendSrtp != null) {
+                listener.onClosed(e);
+            } else if (e != null) {
+                StreamingLog.w(TAG, "WHIP会话建立失败: " + e.getMessage());
+            }
+        }
+
+        // ---- Rtcp.Handler ----
+
+        @Override
+        public void onSenderReport(int senderSsrc, long ntp, long receivedNanos) {
+            StreamStats stats = senderSsrc == video.stats.ssrc ? video.stats
+                    : senderSsrc == audio.ssrc ? audio : null;
+            if (stats != null) {
+                stats.lastSr = Rtcp.compactNtp(ntp);
+                stats.lastSrNanos = receivedNanos;
+            }
+        }
+
+        @Override
+        public void onReportBlock(int reportSsrc, int fractionLost, int cumulativeLost, int lastSr,
+                                  int delaySinceLastSr) {
+        }
+
+        @Override
+        public void onNack(int mediaSsrc, int seq) {
+        }
+
+        @Override
+        public void onKeyFrameRequest(int mediaSsrc) {
+        }
+
+        @Override
+        public void onTransportFeedback(ByteBuffer packet, int offset, int length) {
+        }
+
+        @Override
+        public void onRemb(long bitrateBps) {
+        }
+
+        /**
+         * ice-lite: 只回复检查，带USE-CANDIDATE的检查确定对端地址并开始DTLS
+         */
+        private void onStun(SocketAddress from, ByteBuffer packet, long now) throws IOException {
+            if (Stun.type(packet) != Stun.BINDING_REQUEST) {
+                return;
+            }
+            int username = Stun.findAttribute(packet, Stun.ATTR_USERNAME);
+            if (username < 0 || !Stun.readString(packet, username).equals(expectedUsername)
+                    || !Stun.checkIntegrity(packet, localPwdBytes)) {
+                return;
+            }
+            byte[] transaction = new byte[Stun.TRANSACTION_ID_SIZE];
+            Stun.transactionId(packet, transaction);
+            boolean nominated = Stun.findAttribute(packet, Stun.ATTR_USE_CANDIDATE) >= 0;
+            sendBuffer.clear();
+            Stun.writeHeader(sendBuffer, Stun.BINDING_SUCCESS, transaction);
+            Stun.putXorMappedAddress(sendBuffer, (InetSocketAddress) from);
+            try {
+                Stun.finish(sendBuffer, localPwdBytes);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("STUN签名失败", e);
+            }
+            channel.send(sendBuffer, from);
+            if (from.equals(peer)) {
+                lastReceiveNanos = now;
+            } else if (nominated && dtls == null) {
+                peer = from;
+                lastReceiveNanos = now;
+                final SocketAddress target = from;
+                dtls = new Dtls(dtlsClient, certificate, remoteFingerprint,
+                        datagram -> channel.send(datagram, target));
+                dtls.start(now);
+            }
+        }
+
+        /**
+         * @return false表示对端关闭了DTLS
+         */
+        private boolean onDtls(ByteBuffer packet, long now) throws IOException {
+            if (dtls == null) {
+                return true;
+            }
+            dtls.receive(packet, now);
+            if (dtls.isClosed()) {
+                return false;
+            }
+            if (dtls.isConnected() && sendSrtp == null) {
+                byte[] material = dtls.exportSrtpKeyingMaterial();
+                try {
+                    receiveSrtp = Srtp.fromKeyingMaterial(material, !dtls.isClient());
+                    sendSrtp = Srtp.fromKeyingMaterial(material, dtls.isClient());
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("创建SRTP上下文失败", e);
+                }
+                lastFeedbackNanos = now;
+                lastReportNanos = now;
+                StreamingLog.d(TAG, "WHIP发布端已连接: " + peer);
+                listener.onConnected();
+            }
+            return true;
+        }
+
+        private void onRtp(ByteBuffer packet, long now) throws IOException {
+            if (lossRate > 0 && lossRandom.nextDouble() < lossRate) {
+                return;
+            }
+            int length = unprotect(packet, false);
+            if (length <= 0) {
+                return;
+            }
+            packet.limit(length);
+            int feedback = Rtp.findExtension(packet, Sdp.TRANSPORT_CC_EXTENSION_ID);
+            if (feedback >= 0) {
+                onTransportSequence(packet.getShort(feedback) & 0xFFFF, now);
+            }
+            int header = Rtp.headerSize(packet);
+            if (header >= length) {
+                return;
+            }
+            int payloadType = Rtp.payloadType(packet);
+            if (payloadType == Sdp.H264_PAYLOAD_TYPE) {
+                video.onPacket(packet, now);
+            } else if (payloadType == Sdp.OPUS_PAYLOAD_TYPE) {
+                audio.onPacket(packet, now);
+                packet.position(header);
+                listener.onFrame(false, packet, now);
+            }
+        }
+
+        private int unprotect(ByteBuffer packet, boolean rtcp) {
+            try {
+                return rtcp ? receiveSrtp.unprotectRtcp(packet, packet.limit())
+                        : receiveSrtp.unprotectRtp(packet, packet.limit());
+            } catch (GeneralSecurityException e) {
+                return -1;
+            }
+        }
+
+        private void onTransportSequence(int seq, long arrivalNanos) {
+            if (feedbackBase < 0) {
+                feedbackBase = seq;
+                feedbackHighest = seq;
+            }
+            int offset = Rtp.seqDiff(seq, feedbackBase);
+            if (offset < 0 || offset >= FEEDBACK_HISTORY) {
+                // 已经报告过的包或跨度过大，不再报告
+                return;
+            }
+            feedbackArrivals[seq & (FEEDBACK_HISTORY - 1)] = TimeUnit.NANOSECONDS.toMicros(arrivalNanos - startNanos);
+            if (Rtp.seqDiff(seq, feedbackHighest) > 0) {
+                feedbackHighest = seq;
+            }
+            feedbackPending = true;
+        }
+
+        /**
+         * 报告上次反馈之后到最大序号的每个包，未收到的包报告为丢失，之后迟到的包不再报告
+         */
+        private void sendFeedback() throws IOException {
+            if (!feedbackPending) {
+                return;
+            }
+            feedbackPending = false;
+            int mediaSsrc = video.stats.ssrc != 0 ? video.stats.ssrc : audio.ssrc;
+            int remaining = Rtp.seqDiff(feedbackHighest, feedbackBase) + 1;
+            while (remaining > 0) {
+                int count = Math.min(remaining, MAX_FEEDBACK_STATUS);
+                boolean received = false;
+                for (int i = 0; i < count; i++) {
+                    int index = (feedbackBase + i) & (FEEDBACK_HISTORY - 1);
+                    feedbackChunk[i] = feedbackArrivals[index];
+                    feedbackArrivals[index] = -1;
+                    received |= feedbackChunk[i] >= 0;
+                }
+                if (received) {
+                    sendBuffer.clear();
+                    TransportFeedback.write(sendBuffer, ssrc, mediaSsrc, feedbackBase, feedbackChunk, count,
+                            feedbackCount++);
+                    sendRtcp();
+                }
+                feedbackBase = (feedbackBase + count) & 0xFFFF;
+                remaining -= count;
+            }
+        }
+
+        private void sendReports(long now) throws IOException {
+            for (StreamStats stats : new StreamStats[] {video.stats, audio}) {
+                if (stats.ssrc == 0) {
+                    continue;
+                }
+                sendBuffer.clear();
+                stats.writeReport(sendBuffer, ssrc, now);
+                sendRtcp();
+            }
+        }
+
+        private void sendNack(int count) throws IOException {
+            if (count == 0) {
+                return;
+            }
+            sendBuffer.clear();
+            Rtcp.writeNack(sendBuffer, ssrc, video.stats.ssrc, nackSeqs, count);
+            sendRtcp();
+        }
+
+        private void sendPli() throws IOException {
+            sendBuffer.clear();
+            Rtcp.writePli(sendBuffer, ssrc, video.stats.ssrc);
+            sendRtcp();
+        }
+
+        /**
+         * 加密sendBuffer中0到position的RTCP包并发送
+         */
+        private void sendRtcp() throws IOException {
+            int length;
+            try {
+                length = sendSrtp.protectRtcp(sendBuffer, sendBuffer.position());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("SRTCP加密失败", e);
+            }
+            sendBuffer.limit(length).position(0);
+            channel.send(sendBuffer, peer);
+        }
+
+        /**
+         * 视频重排和H.264解包 (RFC 6184，单NAL、STAP-A和FU-A)
+         */
+        private final class VideoReceiver {
+            private final StreamStats stats = new StreamStats(Rtp.VIDEO_CLOCK_RATE);
+            private final ByteBuffer[] packets = new ByteBuffer[RECEIVE_BUFFER_PACKETS];
+            // 每个缺失包发现的时间，和最近一次NAK的时间，0表示未请求过
+            private final long[] missingNanos = new long[RECEIVE_BUFFER_PACKETS];
+            private final long[] nackNanos = new long[RECEIVE_BUFFER_PACKETS];
+            private ByteBuffer accessUnit = ByteBuffer.allocate(256 * 1024);
+            private boolean started;
+            // 下一个待交付的序号和已收到的最大序号+1
+            private int nextDeliver;
+            private int nextExpected;
+            // 从NAK到收到重传包的平滑时延，同一个包在该时间内不重复NAK
+            private long repairNanos = NACK_INTERVAL_NANOS;
+            private int accessUnitTimestamp;
+            private boolean hasIdr;
+            private boolean inFragment;
+            private boolean waitingKeyFrame = true;
+
+            void onPacket(ByteBuffer packet, long now) throws IOException {
+                int seq = Rtp.sequence(packet);
+                if (!started) {
+                    started = true;
+                    nextDeliver = seq;
+                    nextExpected = seq;
+                }
+                int offset = Rtp.seqDiff(seq, nextDeliver);
+                if (offset < 0 || offset >= RECEIVE_BUFFER_PACKETS) {
+                    return;
+                }
+                int index = seq & (RECEIVE_BUFFER_PACKETS - 1);
+                if (packets[index] != null) {
+                    return;
+                }
+                stats.onPacket(packet, now);
+                if (nackNanos[index] != 0) {
+                    repairNanos = (repairNanos * 7 + (now - nackNanos[index])) / 8;
+                }
+                ByteBuffer copy = ByteBuffer.allocate(packet.limit());
+                packet.position(0);
+                copy.put(packet).flip();
+                packets[index] = copy;
+
+                int gap = Rtp.seqDiff(seq, nextExpected);
+                if (gap > 0) {
+                    // 新出现的空洞立即NAK
+                    int count = 0;
+                    for (int missing = nextExpected; missing != seq; missing = (missing + 1) & 0xFFFF) {
+                        int slot = missing & (RECEIVE_BUFFER_PACKETS - 1);
+                        missingNanos[slot] = now;
+                        if (count < MAX_NACK_SEQS) {
+                            nackSeqs[count++] = missing;
+                            nackNanos[slot] = now;
+                        }
+                    }
+                    sendNack(count);
+                }
+                if (gap >= 0) {
+                    nextExpected = (seq + 1) & 0xFFFF;
+                }
+                deliver(now);
+            }
+
+            void tick(long now) throws IOException {
+                deliver(now);
+                // 重传包可能还在路上，超过修复时延的1.5倍仍未收到才再次NAK
+                long retryNanos = Math.max(NACK_INTERVAL_NANOS, repairNanos + repairNanos / 2);
+                int count = 0;
+                for (int seq = nextDeliver; seq != nextExpected && count < MAX_NACK_SEQS;
+                     seq = (seq + 1) & 0xFFFF) {
+                    int index = seq & (RECEIVE_BUFFER_PACKETS - 1);
+                    if (packets[index] == null && now - nackNanos[index] >= retryNanos) {
+                        nackSeqs[count++] = seq;
+                        nackNanos[index] = now;
+                    }
+                }
+                sendNack(count);
+            }
+
+            /**
+             * 按序解包连续的包，空洞从发现起等待超过延迟窗口后跳过，丢弃到下一个关键帧并请求关键帧
+             */
+            private void deliver(long now) throws IOException {
+                while (nextDeliver != nextExpected) {
+                    int index = nextDeliver & (RECEIVE_BUFFER_PACKETS - 1);
+                    ByteBuffer packet = packets[index];
+                    if (packet == null) {
+                        if (missingNanos[index] == 0) {
+                            missingNanos[index] = now;
+                        }
+                        if (now - missingNanos[index] < TimeUnit.MILLISECONDS.toNanos(latencyMs)) {
+                            return;
+                        }
+                        skippedPackets++;
+                        if (!waitingKeyFrame) {
+                            StreamingLog.d(TAG, "跳过未收到的包: " + nextDeliver + "，请求关键帧");
+                            waitingKeyFrame = true;
+                            sendPli();
+                        }
+                        accessUnit.clear();
+                        inFragment = false;
+                    } else {
+                        packets[index] = null;
+                        depacketize(packet, now);
+                    }
+                    missingNanos[index] = 0;
+                    nackNanos[index] = 0;
+                    nextDeliver = (nextDeliver + 1) & 0xFFFF;
+                }
+            }
+
+            private void depacketize(ByteBuffer packet, long deliveryNanos) {
+                int timestamp = Rtp.timestamp(packet);
+                if (accessUnit.position() > 0 && timestamp != accessUnitTimestamp) {
+                    // 上一帧的最后一个包丢失
+                    flush(deliveryNanos);
+                }
+                accessUnitTimestamp = timestamp;
+                int offset = Rtp.headerSize(packet);
+                int end = packet.limit();
+                int type = packet.get(offset) & 0x1F;
+                if (type == NAL_STAP_A) {
+                    for (offset++; offset + 2 <= end; ) {
+                        int size = packet.getShort(offset) & 0xFFFF;
+                        offset += 2;
+                        if (size == 0 || offset + size > end) {
+                            break;
+                        }
+                        appendNal(packet, offset, size);
+                        offset += size;
+                    }
+                } else if (type == NAL_FU_A) {
+                    if (end - offset < 3) {
+                        return;
+                    }
+                    int indicator = packet.get(offset);
+                    int header = packet.get(offset + 1);
+                    if ((header & 0x80) != 0) {
+                        int nal = (indicator & 0xE0) | (header & 0x1F);
+                        ensure(START_CODE.length + 1);
+                        accessUnit.put(START_CODE).put((byte) nal);
+                        hasIdr |= (nal & 0x1F) == AvcNalUnits.NAL_IDR;
+                        inFragment = true;
+                    }
+                    if (inFragment) {
+                        append(packet, offset + 2, end - offset - 2);
+                    }
+                    if ((header & 0x40) != 0) {
+                        inFragment = false;
+                    }
+                } else if (type > 0 && type < NAL_STAP_A) {
+                    appendNal(packet, offset, end - offset);
+                }
+                if (Rtp.marker(packet)) {
+                    flush(deliveryNanos);
+                }
+            }
+
+            private void appendNal(ByteBuffer packet, int offset, int size) {
+                hasIdr |= (packet.get(offset) & 0x1F) == AvcNalUnits.NAL_IDR;
+                ensure(START_CODE.length);
+                accessUnit.put(START_CODE);
+                append(packet, offset, size);
+            }
+
+            private void append(ByteBuffer packet, int offset, int size) {
+                ensure(size);
+                for (int i = 0; i < size; i++) {
+                    accessUnit.put(packet.get(offset + i));
+                }
+            }
+
+            private void ensure(int size) {
+                if (accessUnit.remaining() < size) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(accessUnit.capacity() * 2,
+                            accessUnit.position() + size));
+                    accessUnit.flip();
+                    larger.put(accessUnit);
+                    accessUnit = larger;
+                }
+            }
+
+            /**
+             * 等待关键帧期间丢弃非关键帧
+             */
+            private void flush(long deliveryNanos) {
+                if (waitingKeyFrame && hasIdr) {
+                    waitingKeyFrame = false;
+                }
+                if (!waitingKeyFrame && !inFragment) {
+                    accessUnit.flip();
+                    listener.onFrame(true, accessUnit, deliveryNanos);
+                }
+                accessUnit.clear();
+                hasIdr = false;
+                inFragment = false;
+            }
+        }
+    }
+
+    /**
+     * 单个SSRC的接收统计，用于RR (RFC 3550附录A.3和A.8)
+     */
+    private static final class StreamStats {
+        private final int clockRate;
+        private int ssrc;
+        private boolean started;
+        private int baseSeq;
+        private int maxSeq;
+        private long cycles;
+        private long received;
+        private long expectedPrior;
+        private long receivedPrior;
+        private double jitter;
+        private long lastTransit;
+        private int lastSr;
+        private long lastSrNanos;
+
+        StreamStats(int clockRate) {
+            this.clockRate = clockRate;
+        }
+
+        void onPacket(ByteBuffer packet, long arrivalNanos) {
+            int seq = Rtp.sequence(packet);
+            long transit = arrivalNanos * clockRate / 1000000000L - (Rtp.timestamp(packet) & 0xFFFFFFFFL);
+            if (!started) {
+                started = true;
+                ssrc = Rtp.ssrc(packet);
+                baseSeq = seq;
+                maxSeq = seq;
+            } else {
+                if (Rtp.seqDiff(seq, maxSeq) > 0) {
+                    if (seq < maxSeq) {
+                        cycles += 1 << 16;
+                    }
+                    maxSeq = seq;
+                }
+                jitter += (Math.abs(transit - lastTransit) - jitter) / 16;
+            }
+            lastTransit = transit;
+            received++;
+        }
+
+        void writeReport(ByteBuffer dst, int senderSsrc, long now) {
+            long extendedMax = cycles + maxSeq;
+            long expected = extendedMax - baseSeq + 1;
+            long expectedInterval = expected - expectedPrior;
+            long lostInterval = expectedInterval - (received - receivedPrior);
+            expectedPrior = expected;
+            receivedPrior = received;
+            int fraction = expectedInterval <= 0 || lostInterval <= 0 ? 0 : (int) ((lostInterval << 8) / expectedInterval);
+            int delaySinceLastSr = lastSr == 0 ? 0 : (int) ((now - lastSrNanos) * 65536 / 1000000000L);
+            Rtcp.writeReceiverReport(dst, senderSsrc, ssrc, Math.min(255, fraction),
+                    (int) Math.max(0, expected - received), (int) extendedMax, (int) jitter, lastSr,
+                    delaySinceLastSr);
+        }
+    }
+}
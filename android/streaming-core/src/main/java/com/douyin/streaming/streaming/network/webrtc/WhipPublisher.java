@@ -0,0 +1,173 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * WebRTC (WHIP) 发布器
+ * 视频按RFC 6184打包为H.264 RTP，音频须为Opus，每帧一个RTP包；音频配置帧为OpusHead (或MediaCodec输出的
+ * 带AOPUSHDR标记的OpusHead) 时启用音频，为AAC的AudioSpecificConfig时WebRTC无法承载，只推视频。
+ * 时间戳由帧的PTS换算到90kHz和48kHz。
+ * 没有元数据消息，序列头随关键帧以STAP-A发送。
+ *
+ * 由发送线程依次调用，非线程安全
+ */
+public class WhipPublisher implements FramePublisher {
+    private static final String TAG = "WhipPublisher";
+    private static final byte[] OPUS_HEAD = {'O', 'p', 'u', 's', 'H', 'e', 'a', 'd'};
+    private static final byte[] MEDIACODEC_OPUS_HEAD = {'A', 'O', 'P', 'U', 'S', 'H', 'D', 'R'};
+
+    private final WhipUrl url;
+    private final RtcTransport transport;
+    private final H264Packetizer packetizer = new H264Packetizer();
+    private final SendListener sendListener;
+    private int reader;
+    private boolean opusAudio;
+    private boolean audioWarned;
+
+    public WhipPublisher(WhipUrl url, final ConnectionListener connectionListener, SendListener sendListener) {
+        this.url = url;
+        this.sendListener = sendListener;
+        this.transport = new RtcTransport(url, new RtcTransport.Listener() {
+            @Override
+            public void onDisconnected(IOException e) {
+                connectionListener.onDisconnected(e);
+            }
+
+            @Override
+            public void onKeyFrameRequested() {
+                connectionListener.onKeyFrameRequested();
+            }
+        });
+    }
+
+    @Override
+    public void setFrameReader(int reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @see RtcTransport#setPacer(TokenBucketPacer)
+     */
+    @Override
+    public void setPacer(TokenBucketPacer pacer) {
+        transport.setPacer(pacer);
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+        transport.connect(timeoutMs);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return transport.getBytesSent();
+    }
+
+    @Override
+    public double getRttMs() {
+        return transport.getRttMs();
+    }
+
+    @Override
+    public double getMinRttMs() {
+        return transport.getMinRttMs();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return transport.getPacketsSent();
+    }
+
+    @Override
+    public long getPacketsLost() {
+        return transport.getPacketsLost();
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return transport.getPacketsRetransmitted();
+    }
+
+    @Override
+    public int getEstimatedBitrateKbps() {
+        return transport.getEstimatedBitrateKbps();
+    }
+
+    /**
+     * 没有元数据消息，只用码率设置带宽估计的起点
+     */
+    @Override
+    public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                             int audioBitrate, int audioSampleRate, int audioChannels) {
+        transport.setInitialBitrate(videoBitrate + audioBitrate);
+    }
+
+    @Override
+    public void sendKeepAlive() throws IOException {
+        transport.sendKeepAlive();
+    }
+
+    /**
+     * 打包并发送一帧，配置帧只更新SPS/PPS和音频编码类型
+     * 调用方负责在返回后释放帧
+     */
+    @Override
+    public void sendFrame(MediaFrame frame) throws IOException {
+        ByteBuffer data = frame.view(reader, 0);
+        if (frame.isConfig()) {
+            if (frame.isVideo()) {
+                packetizer.setDecoderConfigurationRecord(data);
+            } else {
+                opusAudio = startsWith(data, OPUS_HEAD) || startsWith(data, MEDIACODEC_OPUS_HEAD);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        long bytesBefore = transport.getBytesSent();
+        if (frame.isVideo()) {
+            int timestamp = (int) (frame.getPtsUs() * Rtp.VIDEO_CLOCK_RATE / 1000000);
+            packetizer.packetize(data, frame.isKeyFrame(), timestamp, transport);
+        } else if (opusAudio) {
+            if (data.remaining() > RtcTransport.MAX_PAYLOAD) {
+                return;
+            }
+            int timestamp = (int) (frame.getPtsUs() * Rtp.OPUS_CLOCK_RATE / 1000000);
+            ByteBuffer packet = transport.acquire(MediaFrame.Track.AUDIO);
+            packet.put(data);
+            data.rewind();
+            transport.commit(MediaFrame.Track.AUDIO, packet, true, timestamp);
+        } else {
+            if (!audioWarned) {
+                audioWarned = true;
+                StreamingLog.w(TAG, url + " 音频不是Opus编码，WebRTC只推视频");
+            }
+            return;
+        }
+        if (sendListener != null) {
+            sendListener.onPacketSent(frame, transport.getBytesSent() - bytesBefore, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+
+    private static boolean startsWith(ByteBuffer data, byte[] prefix) {
+        if (data.limit() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
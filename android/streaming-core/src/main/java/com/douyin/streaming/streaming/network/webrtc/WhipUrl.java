@@ -0,0 +1,73 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * WHIP推流地址
+ * 格式: http(s)://host[:port]/path[?query]，即服务器的WHIP端点；鉴权令牌按RFC 9725以
+ * Authorization: Bearer发送，取自调用方给出的令牌 (通常为推流码)，为空时不鉴权
+ */
+public final class WhipUrl implements FramePublisher.Endpoint {
+    private final URL endpoint;
+    private final String bearerToken;
+
+    private WhipUrl(URL endpoint, String bearerToken) {
+        this.endpoint = endpoint;
+        this.bearerToken = bearerToken;
+    }
+
+    public static boolean isSupported(String url) {
+        try {
+            parse(url, null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param bearerToken 鉴权令牌，为null或空表示不鉴权
+     */
+    public static WhipUrl parse(String url, String bearerToken) {
+        if (url == null || !(url.regionMatches(true, 0, "http://", 0, 7)
+                || url.regionMatches(true, 0, "https://", 0, 8))) {
+            throw new IllegalArgumentException("不支持的推流地址: " + url);
+        }
+        URL endpoint;
+        try {
+            endpoint = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("WHIP地址无效: " + url);
+        }
+        if (endpoint.getHost() == null || endpoint.getHost().isEmpty()) {
+            throw new IllegalArgumentException("WHIP地址缺少主机名: " + url);
+        }
+        return new WhipUrl(endpoint, bearerToken != null && !bearerToken.isEmpty() ? bearerToken : null);
+    }
+
+    public URL getEndpoint() { return endpoint; }
+
+    public String getHost() { return endpoint.getHost(); }
+
+    /**
+     * 鉴权令牌，没有时为null
+     */
+    public String getBearerToken() { return bearerToken; }
+
+    @Override
+    public FramePublisher create(FramePublisher.ConnectionListener connectionListener,
+                                 FramePublisher.SendListener sendListener) {
+        return new WhipPublisher(this, connectionListener, sendListener);
+    }
+
+    /**
+     * 不含令牌
+     */
+    @Override
+    public String toString() {
+        return endpoint.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.douyin.streaming.streaming.pipeline;
+
+/**
+ * 运行时自适应码率控制
+ * 每个统计周期根据发送队列深度、实测发送速率和往返时延调整视频码率：
+ * 出现拥塞时以实测速率为基准乘性下调，持续稳定后小步上调，上调不超过初始码率。
+ * 传输层有带宽估计 (WebRTC) 时另以估计值为上限，通畅时直接上调到估计值。
+ */
+public class AdaptiveBitrateController {
+    // 视频队列占用超过该比例视为拥塞
+    private static final double QUEUE_CONGESTED_RATIO = 0.5;
+    // 视频队列占用低于该比例视为通畅
+    private static final double QUEUE_CLEAR_RATIO = 0.1;
+    // 往返时延超过 最小时延 * 倍数 + 余量 视为排队
+    private static final double RTT_CONGESTED_FACTOR = 2.0;
+    private static final double RTT_CONGESTED_MARGIN_MS = 50;
+    private static final double RTT_CLEAR_FACTOR = 1.25;
+
+    private static final double SEVERE_DECREASE = 0.7;
+    private static final double MILD_DECREASE = 0.85;
+    private static final double INCREASE_STEP = 0.08;
+    private static final int MIN_INCREASE_KBPS = 50;
+    // 下调后保持的周期数，避免刚下调就回升
+    private static final int HOLD_PERIODS_AFTER_DECREASE = 5;
+    // 连续通畅多少个周期后上调
+    private static final int STABLE_PERIODS_BEFORE_INCREASE = 3;
+    // 变化小于该比例时不调整，避免编码器频繁重设
+    private static final double MIN_CHANGE_RATIO = 0.05;
+
+    /**
+     * 码率调整结果
+     */
+    public static final class Decision {
+        private final int oldBitrate;
+        private final int newBitrate;
+        private final String reason;
+
+        Decision(int oldBitrate, int newBitrate, String reason) {
+            this.oldBitrate = oldBitrate;
+            this.newBitrate = newBitrate;
+            this.reason = reason;
+        }
+
+        public int getOldBitrate() { return oldBitrate; }
+
+        public int getNewBitrate() { return newBitrate; }
+
+        public String getReason() { return reason; }
+    }
+
+    private final int minBitrate;
+    private final int maxBitrate;
+    private int currentBitrate;
+    private int holdPeriods;
+    private int stablePeriods;
+
+    /**
+     * @param initialBitrate 初始码率，同时作为上限 (kbps)
+     * @param minBitrate 下限 (kbps)
+     */
+    public AdaptiveBitrateController(int initialBitrate, int minBitrate) {
+        this.currentBitrate = initialBitrate;
+        this.maxBitrate = initialBitrate;
+        this.minBitrate = Math.min(minBitrate, initialBitrate);
+    }
+
+    public int getCurrentBitrate() {
+        return currentBitrate;
+    }
+
+    /**
+     * 每个统计周期调用一次
+     * @param queueRatio 视频发送队列占用比例 (0-1)
+     * @param throughputKbps 本周期实测视频发送速率
+     * @param rttMs 平滑往返时延，未知时为负数
+     * @param minRttMs 最小往返时延，未知时为负数
+     * @param droppedFrames 本周期丢弃的帧数
+     * @return 需要调整时返回结果，否则返回null
+     */
+    public Decision update(double queueRatio, double throughputKbps, double rttMs, double minRttMs, long droppedFrames) {
+        return update(queueRatio, throughputKbps, rttMs, minRttMs, droppedFrames, -1);
+    }
+
+    /**
+     * 带传输层带宽估计的版本，估计值作为码率上限：当前码率超出估计时直接降到估计值；
+     * 估计本身已按探测逐步上调，通畅时码率直接跟到估计值
+     * @param estimatedKbps 可用于视频的带宽估计，不可用时为负数
+     */
+    public Decision update(double queueRatio, double throughputKbps, double rttMs, double minRttMs, long droppedFrames,
+                           int estimatedKbps) {
+        boolean rttKnown = rttMs >= 0 && minRttMs >= 0;
+        boolean rttCongested = rttKnown && rttMs > minRttMs * RTT_CONGESTED_FACTOR + RTT_CONGESTED_MARGIN_MS;
+        boolean rttClear = !rttKnown || rttMs <= minRttMs * RTT_CLEAR_FACTOR + RTT_CONGESTED_MARGIN_MS;
+
+        int target = currentBitrate;
+        String reason = null;
+        if (droppedFrames > 0 || queueRatio >= QUEUE_CONGESTED_RATIO) {
+            // 已经丢帧或队列过半，按实测速率大幅下调
+            target = (int) (baseForDecrease(throughputKbps) * SEVERE_DECREASE);
+            reason = droppedFrames > 0
+                    ? String.format("丢帧%d, 发送速率%.0fkbps", droppedFrames, throughputKbps)
+                    : String.format("发送队列积压%.0f%%", queueRatio * 100);
+            holdPeriods = HOLD_PERIODS_AFTER_DECREASE;
+            stablePeriods = 0;
+        } else if (rttCongested) {
+            target = (int) (baseForDecrease(throughputKbps) * MILD_DECREASE);
+            reason = String.format("往返时延%.0fms (基准%.0fms)", rttMs, minRttMs);
+            holdPeriods = HOLD_PERIODS_AFTER_DECREASE;
+            stablePeriods = 0;
+        } else if (queueRatio < QUEUE_CLEAR_RATIO && rttClear) {
+            if (holdPeriods > 0) {
+                holdPeriods--;
+            } else if (++stablePeriods >= STABLE_PERIODS_BEFORE_INCREASE) {
+                target = currentBitrate + Math.max(MIN_INCREASE_KBPS, (int) (currentBitrate * INCREASE_STEP));
+                if (estimatedKbps > target) {
+                    target = estimatedKbps;
+                }
+                reason = "网络通畅";
+                stablePeriods = 0;
+            }
+        } else {
+            stablePeriods = 0;
+            if (holdPeriods > 0) {
+                holdPeriods--;
+            }
+        }
+
+        if (estimatedKbps > 0 && target > estimatedKbps) {
+            target = estimatedKbps;
+            if (currentBitrate > estimatedKbps) {
+                reason = String.format("带宽估计%dkbps", estimatedKbps);
+                holdPeriods = HOLD_PERIODS_AFTER_DECREASE;
+                stablePeriods = 0;
+            }
+        }
+
+        target = Math.max(minBitrate, Math.min(maxBitrate, target));
+        boolean atBound = target == minBitrate || target == maxBitrate;
+        if (target == currentBitrate
+                || (!atBound && Math.abs(target - currentBitrate) < currentBitrate * MIN_CHANGE_RATIO)) {
+            return null;
+        }
+
+        Decision decision = new Decision(currentBitrate, target, reason);
+        currentBitrate = target;
+        return decision;
+    }
+
+    /**
+     * 下调以实测速率为基准，实测速率不可用或高于当前码率时使用当前码率
+     */
+    private double baseForDecrease(double throughputKbps) {
+        return throughputKbps > 0 ? Math.min(currentBitrate, throughputKbps) : currentBitrate;
+    }
+}
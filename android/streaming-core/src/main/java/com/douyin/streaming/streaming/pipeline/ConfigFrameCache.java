@@ -0,0 +1,85 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.network.FramePublisher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 缓存最近一次的音视频配置帧
+ * 编码器只在启动时输出一次SPS/PPS和AudioSpecificConfig，重连后需要在第一帧之前重新发送序列头；
+ * 多个推流目标共用一份缓存，各自在重连时发送
+ */
+public final class ConfigFrameCache {
+    // 每个目标发送时最多持有一份旧的配置帧，再加上当前缓存的一份
+    private static final int POOL_SIZE = MediaFrame.MAX_READERS + 1;
+
+    private final MediaFramePool videoPool = new MediaFramePool(MediaFrame.Track.VIDEO, POOL_SIZE, 256);
+    private final MediaFramePool audioPool = new MediaFramePool(MediaFrame.Track.AUDIO, POOL_SIZE, 16);
+    private MediaFrame videoConfig;
+    private MediaFrame audioConfig;
+
+    /**
+     * 保存配置帧的副本，原帧仍归调用方所有
+     */
+    public synchronized void update(MediaFrame frame) {
+        if (frame.isVideo()) {
+            videoConfig = copy(frame, videoConfig, videoPool);
+        } else {
+            audioConfig = copy(frame, audioConfig, audioPool);
+        }
+    }
+
+    /**
+     * 按视频、音频的顺序发送已缓存的配置帧
+     * 只在锁内持有帧的引用，网络写入在锁外进行，避免一个目标阻塞其它目标和编码线程
+     */
+    public void sendTo(FramePublisher publisher) throws IOException {
+        MediaFrame video;
+        MediaFrame audio;
+        synchronized (this) {
+            video = videoConfig != null ? videoConfig.retain() : null;
+            audio = audioConfig != null ? audioConfig.retain() : null;
+        }
+        try {
+            if (video != null) {
+                publisher.sendFrame(video);
+            }
+            if (audio != null) {
+                publisher.sendFrame(audio);
+            }
+        } finally {
+            if (video != null) {
+                video.release();
+            }
+            if (audio != null) {
+                audio.release();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        if (videoConfig != null) {
+            videoConfig.release();
+            videoConfig = null;
+        }
+        if (audioConfig != null) {
+            audioConfig.release();
+            audioConfig = null;
+        }
+    }
+
+    private static MediaFrame copy(MediaFrame frame, MediaFrame previous, MediaFramePool pool) {
+        if (previous != null) {
+            previous.release();
+        }
+        MediaFrame copy = pool.acquire();
+        ByteBuffer dst = copy.prepareWrite(frame.size());
+        dst.put(frame.data().duplicate());
+        dst.flip();
+        copy.set(frame.getPtsUs(), frame.getDtsUs(), frame.isKeyFrame(), true, frame.getCreatedNanos());
+        return copy;
+    }
+}
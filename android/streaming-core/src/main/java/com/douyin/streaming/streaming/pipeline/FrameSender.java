@@ -0,0 +1,259 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 网络发送线程
+ * 从音视频两个SPSC队列取帧发送，队列为空时挂起，由生产者入队后唤醒。
+ * 音频优先但领先量有界：音频DTS不超过队首视频DTS加MAX_AUDIO_LEAD_US时先于视频发送，超出后按DTS顺序交错，
+ * 避免只在视频上携带PCR的TS流和按时间交错的CMAF分片中音频远超视频；积压过久的视频帧按GOP丢弃。
+ * 编码线程只负责入队，网络阻塞不会反压到编码器。
+ * 有节拍器时每帧的写出由传输层按令牌桶分散，大帧不会一次性压入套接字。
+ */
+public class FrameSender {
+    private static final String TAG = "FrameSender";
+    private static final long STOP_TIMEOUT_MS = 500;
+    // 音频可领先队首视频的最大DTS差，约为低帧率下的一帧间隔
+    private static final long MAX_AUDIO_LEAD_US = 100000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    // 保活模式下没有数据发送时的保活间隔
+    private static final long KEEP_ALIVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 发送失败回调，在发送线程上调用
+     */
+    public interface ErrorListener {
+        void onSendError(IOException e);
+    }
+
+    private final SpscFrameRing videoRing;
+    private final SpscFrameRing audioRing;
+    private final FramePublisher publisher;
+    private final GopDropPolicy dropPolicy;
+    private final ErrorListener errorListener;
+    private final Clock clock;
+    private final TokenBucketPacer pacer;
+    // 统计周期内帧从编码输出到开始发送的最大等待时间，发送线程更新，统计线程取走
+    private final AtomicLong maxAudioQueueDelayNanos = new AtomicLong();
+    private final AtomicLong maxVideoQueueDelayNanos = new AtomicLong();
+
+    private Thread thread;
+    private volatile boolean running = false;
+    private volatile boolean waiting = false;
+    private volatile boolean keepAlive = false;
+    // 只在发送线程上访问
+    private long lastSendNanos;
+
+    public FrameSender(SpscFrameRing videoRing, SpscFrameRing audioRing, FramePublisher publisher,
+                       GopDropPolicy dropPolicy, ErrorListener errorListener) {
+        this(videoRing, audioRing, publisher, dropPolicy, errorListener, Clock.SYSTEM, null);
+    }
+
+    /**
+     * @param clock 判断帧积压和保活间隔使用的时钟，与帧的创建时间同一时间轴
+     * @param pacer 与发布器共用的发送节拍，按帧划定补充速率，为null时不限速
+     */
+    public FrameSender(SpscFrameRing videoRing, SpscFrameRing audioRing, FramePublisher publisher,
+                       GopDropPolicy dropPolicy, ErrorListener errorListener, Clock clock, TokenBucketPacer pacer) {
+        this.videoRing = videoRing;
+        this.audioRing = audioRing;
+        this.publisher = publisher;
+        this.dropPolicy = dropPolicy;
+        this.errorListener = errorListener;
+        this.clock = clock;
+        this.pacer = pacer;
+    }
+
+    public void start() {
+        running = true;
+        lastSendNanos = clock.nanoTime();
+        thread = new Thread(this::sendLoop, "FrameSender");
+        thread.start();
+    }
+
+    /**
+     * 停止发送线程，队列中剩余的帧由发送线程退出时释放
+     * 队列只有一个消费者，发送线程超时未退出时不在调用方线程上读取队列
+     * @return 发送线程已退出或从未启动时返回true
+     */
+    public boolean stop() {
+        running = false;
+        if (thread == null) {
+            // 没有发送线程，调用方是唯一的消费者
+            drain(videoRing);
+            drain(audioRing);
+            return true;
+        }
+        LockSupport.unpark(thread);
+        if (!awaitExit(STOP_TIMEOUT_MS)) {
+            StreamingLog.w(TAG, "发送线程未在" + STOP_TIMEOUT_MS + "ms内退出，由其退出时释放队列");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 等待已停止的发送线程退出
+     * @return 线程已退出时返回true，之后队列可交给新的发送线程
+     */
+    public boolean awaitExit(long timeoutMs) {
+        Thread t = thread;
+        if (t == null) {
+            return true;
+        }
+        try {
+            t.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) {
+            return false;
+        }
+        thread = null;
+        return true;
+    }
+
+    /**
+     * 生产者入队后调用，发送线程挂起时将其唤醒
+     * 入队的volatile写先于此处对waiting的读取，与发送线程先写waiting再读队列配对，
+     * 两方至少有一方看到对方的写入，不会出现帧已入队而发送线程挂满IDLE_PARK_NANOS
+     */
+    public void signal() {
+        if (waiting) {
+            Thread t = thread;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * 开启后队列空闲超过1秒时发送保活消息，用于暂停期间保持连接
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * 上次调用以来音频帧的最大排队时延 (毫秒)，读取后清零，统计线程每周期调用一次
+     */
+    public double pollAudioQueueDelayMs() {
+        return maxAudioQueueDelayNanos.getAndSet(0) / 1000000.0;
+    }
+
+    /**
+     * 上次调用以来视频帧的最大排队时延 (毫秒)，读取后清零，统计线程每周期调用一次
+     */
+    public double pollVideoQueueDelayMs() {
+        return maxVideoQueueDelayNanos.getAndSet(0) / 1000000.0;
+    }
+
+    private void sendLoop() {
+        while (running) {
+            MediaFrame frame = next();
+            if (frame == null) {
+                if (keepAlive && !sendKeepAlive()) {
+                    continue;
+                }
+                // 先声明等待再复查队列，避免错过生产者的唤醒
+                waiting = true;
+                if (videoRing.isEmpty() && audioRing.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+                continue;
+            }
+
+            long now = clock.nanoTime();
+            if (dropPolicy.discardStale(frame, now)) {
+                frame.release();
+                continue;
+            }
+            lastSendNanos = now;
+            if (!frame.isConfig()) {
+                updateMax(frame.isAudio() ? maxAudioQueueDelayNanos : maxVideoQueueDelayNanos,
+                        now - frame.getCreatedNanos());
+            }
+
+            if (pacer != null) {
+                pacer.beginFrame(frame.size());
+            }
+            try {
+                publisher.sendFrame(frame);
+            } catch (IOException e) {
+                running = false;
+                errorListener.onSendError(e);
+            } finally {
+                if (pacer != null) {
+                    pacer.endFrame();
+                }
+                frame.release();
+            }
+        }
+        // 发送线程是队列唯一的消费者，退出前释放剩余的帧
+        drain(videoRing);
+        drain(audioRing);
+    }
+
+    /**
+     * 距上次发送超过保活间隔时发送保活消息
+     * @return 发送失败时返回false
+     */
+    private boolean sendKeepAlive() {
+        long now = clock.nanoTime();
+        if (now - lastSendNanos < KEEP_ALIVE_INTERVAL_NANOS) {
+            return true;
+        }
+        lastSendNanos = now;
+        try {
+            publisher.sendKeepAlive();
+            return true;
+        } catch (IOException e) {
+            running = false;
+            errorListener.onSendError(e);
+            return false;
+        }
+    }
+
+    /**
+     * 音频优先取帧，视频配置帧最先发送
+     * 音频DTS领先队首视频不超过MAX_AUDIO_LEAD_US时先发音频，否则先发视频，使两路的DTS差保持有界
+     */
+    private MediaFrame next() {
+        MediaFrame video = videoRing.peek();
+        if (video != null && video.isConfig()) {
+            return videoRing.poll();
+        }
+        MediaFrame audio = audioRing.peek();
+        if (audio == null) {
+            return videoRing.poll();
+        }
+        if (video == null || audio.isConfig() || audio.getDtsUs() - video.getDtsUs() <= MAX_AUDIO_LEAD_US) {
+            return audioRing.poll();
+        }
+        return videoRing.poll();
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 与统计线程的清零竞争时重试
+        }
+    }
+
+    private static void drain(SpscFrameRing ring) {
+        MediaFrame frame;
+        while ((frame = ring.poll()) != null) {
+            frame.release();
+        }
+    }
+}
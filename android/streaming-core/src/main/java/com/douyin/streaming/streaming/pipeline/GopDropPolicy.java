@@ -0,0 +1,127 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+/**
+ * 按GOP结构丢弃视频帧
+ * 拥塞时先丢弃非参考帧，队列满或帧积压超过延迟上限后丢弃当前GOP剩余的帧直到下一个关键帧，
+ * 并请求编码器尽快输出关键帧。音频帧和配置帧从不丢弃。
+ *
+ * 入队端方法只在视频编码线程上调用，发送端方法只在发送线程上调用，两端状态互不共享。
+ */
+public class GopDropPolicy {
+    private static final String TAG = "GopDropPolicy";
+
+    /**
+     * 请求编码器输出关键帧
+     */
+    public interface KeyFrameRequester {
+        void requestKeyFrame();
+    }
+
+    private final KeyFrameRequester keyFrameRequester;
+    private final long maxLatencyNanos;
+
+    // 入队端状态
+    private boolean admitSkipping = false;
+    // 发送端状态
+    private boolean sendSkipping = false;
+
+    private volatile long nonReferenceDropped;
+    private volatile long admitGopDropped;
+    private volatile long staleGopDropped;
+
+    /**
+     * @param maxLatencyMs 帧从编码输出到发送的最大允许等待时间
+     */
+    public GopDropPolicy(KeyFrameRequester keyFrameRequester, int maxLatencyMs) {
+        this.keyFrameRequester = keyFrameRequester;
+        this.maxLatencyNanos = maxLatencyMs * 1000000L;
+    }
+
+    /**
+     * 入队前判断视频帧是否保留
+     * @param depth 当前视频队列深度
+     * @param capacity 视频队列容量
+     * @return false表示丢弃，调用方负责释放帧
+     */
+    public boolean admit(MediaFrame frame, int depth, int capacity) {
+        if (frame.isConfig() || frame.isAudio()) {
+            return true;
+        }
+        if (admitSkipping) {
+            if (!frame.isKeyFrame()) {
+                admitGopDropped++;
+                return false;
+            }
+            admitSkipping = false;
+        }
+        if (depth >= capacity) {
+            onRejected(frame);
+            return false;
+        }
+        // 队列过半时先丢弃不被其他帧参考的帧，不影响后续解码
+        if (frame.isNonReference() && depth >= capacity / 2) {
+            nonReferenceDropped++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * admit通过但入队失败（队列已满）时调用，丢弃当前帧直到下一个关键帧
+     */
+    public void onRejected(MediaFrame frame) {
+        if (frame.isConfig() || frame.isAudio()) {
+            return;
+        }
+        admitGopDropped++;
+        if (!admitSkipping) {
+            admitSkipping = true;
+            StreamingLog.w(TAG, "发送队列已满，丢弃至下一个关键帧");
+            keyFrameRequester.requestKeyFrame();
+        }
+    }
+
+    /**
+     * 发送前判断视频帧是否已积压过久
+     * @return true表示丢弃，调用方负责释放帧
+     */
+    public boolean discardStale(MediaFrame frame, long nowNanos) {
+        if (frame.isConfig() || frame.isAudio()) {
+            return false;
+        }
+        if (sendSkipping) {
+            if (!frame.isKeyFrame()) {
+                staleGopDropped++;
+                return true;
+            }
+            sendSkipping = false;
+        }
+        // 关键帧即使过期也发送，作为新GOP的起点
+        if (!frame.isKeyFrame() && nowNanos - frame.getCreatedNanos() > maxLatencyNanos) {
+            sendSkipping = true;
+            staleGopDropped++;
+            StreamingLog.w(TAG, "视频帧积压超过" + maxLatencyNanos / 1000000 + "ms，丢弃至下一个关键帧");
+            keyFrameRequester.requestKeyFrame();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 丢弃的视频帧总数
+     */
+    public long getDroppedFrames() {
+        return nonReferenceDropped + admitGopDropped + staleGopDropped;
+    }
+
+    /**
+     * 丢弃的非参考帧数
+     */
+    public long getNonReferenceDropped() {
+        return nonReferenceDropped;
+    }
+}
@@ -0,0 +1,91 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者单消费者的无锁帧环形队列
+ * 槽位预分配，容量为2的幂；生产者只写tail，消费者只写head，
+ * 各自缓存对方位置，只有在看起来满/空时才读取对方的volatile位置。
+ */
+public final class SpscFrameRing {
+    private final MediaFrame[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // 下一个读取位置，仅消费者写
+    private final AtomicLong tail = new AtomicLong(); // 下一个写入位置，仅生产者写
+
+    private long producerHeadCache;
+    private long consumerTailCache;
+
+    /**
+     * @param capacity 最小容量，向上取整为2的幂
+     */
+    public SpscFrameRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new MediaFrame[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * 入队，仅生产者线程调用
+     * @return 队列已满时返回false，帧仍归调用方所有
+     */
+    public boolean offer(MediaFrame frame) {
+        long t = tail.get();
+        if (t - producerHeadCache >= slots.length) {
+            producerHeadCache = head.get();
+            if (t - producerHeadCache >= slots.length) {
+                return false;
+            }
+        }
+        slots[(int) t & mask] = frame;
+        // 完整的volatile写：生产者随后读取消费者的等待标志，只有发布后的读取才不会错过挂起的消费者
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * 查看队首帧但不出队，仅消费者线程调用
+     */
+    public MediaFrame peek() {
+        long h = head.get();
+        if (h >= consumerTailCache) {
+            consumerTailCache = tail.get();
+            if (h >= consumerTailCache) {
+                return null;
+            }
+        }
+        return slots[(int) h & mask];
+    }
+
+    /**
+     * 出队，仅消费者线程调用
+     * @return 队列为空时返回null
+     */
+    public MediaFrame poll() {
+        MediaFrame frame = peek();
+        if (frame != null) {
+            long h = head.get();
+            slots[(int) h & mask] = null;
+            head.lazySet(h + 1);
+        }
+        return frame;
+    }
+
+    /**
+     * 当前队列深度，任意线程可调用，并发时为近似值
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
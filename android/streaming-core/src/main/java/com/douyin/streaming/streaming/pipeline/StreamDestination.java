@@ -0,0 +1,524 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个推流目标
+ * 持有自己的连接、发送队列、丢帧策略和重连状态，帧由FrameFanOut以引用计数分发，不拷贝数据。
+ * 连接断开时按退避间隔只重建本目标的连接，重连后先发送缓存的序列头，并在下一个关键帧之前丢弃视频。
+ * 队列满时只影响本目标：视频按GOP丢弃，音频丢弃新到的帧，入队从不阻塞编码线程。
+ * 每个目标有自己的令牌桶节拍，按本目标的码率分散关键帧，跨重连保留。
+ */
+public class StreamDestination {
+    private static final String TAG = "StreamDestination";
+
+    // 重连退避：第一次立即重连，之后从500ms开始翻倍，最长5秒
+    private static final long RECONNECT_BASE_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 5000;
+
+    /**
+     * 目标事件回调
+     */
+    public interface Listener {
+        /**
+         * RTMP发布成功，在连接线程上调用
+         */
+        void onConnected(StreamDestination destination);
+
+        /**
+         * 每个数据包发送完成，在发送线程上调用
+         */
+        void onPacketSent(StreamDestination destination, MediaFrame frame, long bytes, long sendNanos);
+
+        /**
+         * 视频发送队列积压状态变化，在视频编码线程上调用
+         */
+        void onCongestionChanged(StreamDestination destination, boolean congested);
+
+        /**
+         * 连接断开，开始第attempt次重连，在重连线程上调用
+         */
+        void onReconnecting(StreamDestination destination, int attempt, int maxAttempts);
+
+        /**
+         * 重连成功，在重连线程上调用
+         * @param recoveryMs 从断开到重新发布成功的耗时
+         */
+        void onReconnected(StreamDestination destination, long recoveryMs);
+
+        /**
+         * 连接失败且重连用尽，本目标停止，不影响其他目标
+         */
+        void onFailed(StreamDestination destination, String error);
+    }
+
+    private final int index;
+    private final StreamingConfig config;
+    private final FramePublisher.Endpoint url;
+    private final ConfigFrameCache configCache;
+    private final Listener listener;
+    private final Clock clock;
+    private final SpscFrameRing videoRing;
+    private final SpscFrameRing audioRing;
+    private final GopDropPolicy dropPolicy;
+    private final GopDropPolicy.KeyFrameRequester keyFrameRequester;
+    private final TokenBucketPacer pacer;
+    // 重连时替换
+    private volatile FramePublisher publisher;
+    private volatile FrameSender sender;
+
+    private Thread connectThread;
+    private Thread reconnectThread;
+    private volatile boolean running = false;
+    // 连接可用时帧才入队，重连期间丢弃
+    private volatile boolean linkUp = false;
+    // 重连或恢复后丢弃视频直到下一个关键帧，新连接以IDR开始
+    private volatile boolean awaitingKeyFrame = false;
+    private boolean paused = false;
+    private volatile long closedBytesSent;
+    private volatile long closedPacketsSent;
+    private volatile long closedPacketsLost;
+    private volatile long closedPacketsRetransmitted;
+    private volatile long audioDropped;
+    // 连接不可用或等待关键帧期间丢弃的音频帧数，不计入拥塞丢帧
+    private volatile long audioDiscarded;
+    private volatile int reconnectCount;
+    private volatile long lastRecoveryMs = -1;
+    // 只在视频编码线程上修改
+    private volatile boolean congested = false;
+
+    /**
+     * @param index 目标序号，同时作为读取帧视图的读取方编号，须小于MediaFrame.MAX_READERS
+     * @param videoRingFrames 视频队列容量 (帧)
+     * @param audioRingFrames 音频队列容量 (帧)
+     * @param bufferMs 视频最多缓冲的时长，超过时按GOP丢弃
+     */
+    public StreamDestination(int index, StreamingConfig config, FramePublisher.Endpoint url,
+                             ConfigFrameCache configCache,
+                             GopDropPolicy.KeyFrameRequester keyFrameRequester,
+                             int videoRingFrames, int audioRingFrames, int bufferMs,
+                             Clock clock, Listener listener) {
+        if (index < 0 || index >= MediaFrame.MAX_READERS) {
+            throw new IllegalArgumentException("推流目标过多: " + (index + 1) + " > " + MediaFrame.MAX_READERS);
+        }
+        this.index = index;
+        this.config = config;
+        this.url = url;
+        this.configCache = configCache;
+        this.keyFrameRequester = keyFrameRequester;
+        this.clock = clock;
+        this.listener = listener;
+        this.videoRing = new SpscFrameRing(videoRingFrames);
+        this.audioRing = new SpscFrameRing(audioRingFrames);
+        this.dropPolicy = new GopDropPolicy(keyFrameRequester, bufferMs);
+        this.pacer = new TokenBucketPacer(config.getVideoFps());
+        setTargetBitrate(config.getVideoBitrate());
+        this.publisher = createPublisher();
+        this.sender = createSender(publisher);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public FramePublisher.Endpoint getUrl() {
+        return url;
+    }
+
+    /**
+     * 异步连接服务器，成功后开始接收帧
+     */
+    public void start() {
+        running = true;
+        connectThread = new Thread(this::connect, "StreamConnect-" + index);
+        connectThread.start();
+    }
+
+    /**
+     * 停止并关闭连接，释放队列中的帧
+     */
+    public void stop() {
+        synchronized (this) {
+            running = false;
+            linkUp = false;
+        }
+        // 先关闭连接，使阻塞在套接字写入上的发送线程退出
+        publisher.close();
+        sender.stop();
+        join(connectThread);
+        connectThread = null;
+        if (reconnectThread != null) {
+            reconnectThread.interrupt();
+            join(reconnectThread);
+            reconnectThread = null;
+        }
+    }
+
+    /**
+     * 暂停期间只保留连接并定期发送保活消息
+     */
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        sender.setKeepAlive(paused);
+        if (!paused) {
+            awaitingKeyFrame = true;
+        }
+    }
+
+    /**
+     * 设置本目标的视频码率，节拍按视频与音频的总码率补充令牌
+     * @param videoBitrate 视频码率 (kbps)
+     */
+    public void setTargetBitrate(int videoBitrate) {
+        pacer.setTargetBitrate(videoBitrate + config.getAudioBitrate());
+    }
+
+    /**
+     * 视频帧入队，在视频编码线程上调用，成功时持有一次引用
+     */
+    public void offerVideo(MediaFrame frame) {
+        if (!running || !linkUp) {
+            return;
+        }
+        if (awaitingKeyFrame && !frame.isConfig()) {
+            if (!frame.isKeyFrame()) {
+                return;
+            }
+            awaitingKeyFrame = false;
+        }
+        int depth = videoRing.size();
+        if (dropPolicy.admit(frame, depth, videoRing.capacity())) {
+            if (videoRing.offer(frame.retain())) {
+                sender.signal();
+                depth++;
+            } else {
+                dropPolicy.onRejected(frame);
+                frame.release();
+            }
+        }
+        updateCongestion(depth);
+    }
+
+    /**
+     * 音频帧入队，在音频编码线程上调用，成功时持有一次引用
+     * 重连期间和重连后第一个关键帧之前丢弃，配置帧除外；队列满时丢弃该帧，不等待发送线程
+     */
+    public void offerAudio(MediaFrame frame) {
+        if (!running) {
+            return;
+        }
+        if (!linkUp || (awaitingKeyFrame && !frame.isConfig())) {
+            audioDiscarded++;
+            return;
+        }
+        if (audioRing.offer(frame.retain())) {
+            sender.signal();
+        } else {
+            audioDropped++;
+            frame.release();
+        }
+    }
+
+    /**
+     * 累计发送字节数，包括重连前的连接
+     */
+    public long getBytesSent() {
+        return closedBytesSent + publisher.getBytesSent();
+    }
+
+    /**
+     * 本目标丢弃的帧数，包括拥塞丢帧和音频队列满
+     */
+    public long getDroppedFrames() {
+        return dropPolicy.getDroppedFrames() + audioDropped;
+    }
+
+    /**
+     * 连接不可用或重连后等待关键帧期间丢弃的音频帧数
+     */
+    public long getAudioDiscarded() {
+        return audioDiscarded;
+    }
+
+    public int getQueueDepth() {
+        return videoRing.size() + audioRing.size();
+    }
+
+    public int getQueueCapacity() {
+        return videoRing.capacity() + audioRing.capacity();
+    }
+
+    /**
+     * 视频发送队列占用比例 (0-1)
+     */
+    public double getVideoQueueRatio() {
+        return (double) videoRing.size() / videoRing.capacity();
+    }
+
+    public double getRttMs() {
+        return publisher.getRttMs();
+    }
+
+    /**
+     * 上次调用以来单帧的最大节拍排队时延 (毫秒)，读取后清零
+     * @see TokenBucketPacer#pollMaxQueueDelayMs()
+     */
+    public double pollPacerDelayMs() {
+        return pacer.pollMaxQueueDelayMs();
+    }
+
+    /**
+     * 上次调用以来音频帧在发送队列中的最大排队时延 (毫秒)，读取后清零
+     * @see FrameSender#pollAudioQueueDelayMs()
+     */
+    public double pollAudioQueueDelayMs() {
+        return sender.pollAudioQueueDelayMs();
+    }
+
+    /**
+     * 上次调用以来视频帧在发送队列中的最大排队时延 (毫秒)，读取后清零
+     * @see FrameSender#pollVideoQueueDelayMs()
+     */
+    public double pollVideoQueueDelayMs() {
+        return sender.pollVideoQueueDelayMs();
+    }
+
+    /**
+     * 传输层累计发出的数据包数，包括重连前的连接
+     * @see FramePublisher#getPacketsSent()
+     */
+    public long getPacketsSent() {
+        return closedPacketsSent + publisher.getPacketsSent();
+    }
+
+    public long getPacketsLost() {
+        return closedPacketsLost + publisher.getPacketsLost();
+    }
+
+    public long getPacketsRetransmitted() {
+        return closedPacketsRetransmitted + publisher.getPacketsRetransmitted();
+    }
+
+    public double getMinRttMs() {
+        return publisher.getMinRttMs();
+    }
+
+    /**
+     * 当前连接的发送端带宽估计 (kbps)，传输层不支持时返回-1
+     * @see FramePublisher#getEstimatedBitrateKbps()
+     */
+    public int getEstimatedBitrateKbps() {
+        return publisher.getEstimatedBitrateKbps();
+    }
+
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * 最近一次重连从断开到恢复的耗时 (毫秒)，尚未重连时返回-1
+     */
+    public long getLastRecoveryMs() {
+        return lastRecoveryMs;
+    }
+
+    public boolean isCongested() {
+        return congested;
+    }
+
+    /**
+     * 连接可用，正在接收帧
+     */
+    public boolean isLinkUp() {
+        return linkUp;
+    }
+
+    private void connect() {
+        try {
+            publisher.connect(config.getNetworkTimeout());
+            if (!running) {
+                return;
+            }
+            sendMetaData(publisher);
+            configCache.sendTo(publisher);
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                // 编码已在进行时从下一个关键帧开始
+                awaitingKeyFrame = true;
+                sender.start();
+                linkUp = true;
+            }
+            keyFrameRequester.requestKeyFrame();
+            listener.onConnected(this);
+        } catch (IOException | RuntimeException e) {
+            fail("连接推流服务器失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 推流中连接断开或发送失败时调用，启动重连线程
+     */
+    private synchronized void onConnectionLost(String reason) {
+        // 尚未连接、已停止或已在重连
+        if (!running || !linkUp) {
+            return;
+        }
+        linkUp = false;
+        if (config.getRetryCount() <= 0) {
+            fail(reason);
+            return;
+        }
+        StreamingLog.w(TAG, url + " " + reason + "，开始重连");
+        reconnectThread = new Thread(() -> reconnect(reason), "StreamReconnect-" + index);
+        reconnectThread.start();
+    }
+
+    /**
+     * 重连状态机，在重连线程上运行
+     * 关闭旧连接并丢弃积压的帧，按退避间隔重建连接；成功后重发元数据和序列头，
+     * 请求关键帧并在其到达前丢弃视频，使新连接从IDR开始
+     */
+    private void reconnect(String reason) {
+        long lostNanos = clock.nanoTime();
+        long discardedBefore = audioDiscarded;
+        publisher.close();
+        // 发送线程退出时释放队列中积压的帧
+        FrameSender previous = sender;
+        previous.stop();
+
+        int maxAttempts = config.getRetryCount();
+        for (int attempt = 1; attempt <= maxAttempts && running; attempt++) {
+            listener.onReconnecting(this, attempt, maxAttempts);
+            try {
+                Thread.sleep(reconnectDelayMs(attempt));
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) {
+                return;
+            }
+            // 队列只能有一个消费者，且发送节拍只由发送线程访问，旧发送线程退出前不在新连接上发送
+            if (!previous.awaitExit(config.getNetworkTimeout())) {
+                StreamingLog.w(TAG, String.format("%s 第%d次重连失败: 发送线程未退出", url, attempt));
+                continue;
+            }
+
+            // 先替换再连接，使stop()能关闭正在建连的连接
+            FramePublisher candidate = createPublisher();
+            closedBytesSent += publisher.getBytesSent();
+            closedPacketsSent += publisher.getPacketsSent();
+            closedPacketsLost += publisher.getPacketsLost();
+            closedPacketsRetransmitted += publisher.getPacketsRetransmitted();
+            publisher = candidate;
+            try {
+                candidate.connect(config.getNetworkTimeout());
+                sendMetaData(candidate);
+                configCache.sendTo(candidate);
+            } catch (IOException e) {
+                candidate.close();
+                StreamingLog.w(TAG, String.format("%s 第%d次重连失败: %s", url, attempt, e.getMessage()));
+                continue;
+            }
+            synchronized (this) {
+                if (!running) {
+                    candidate.close();
+                    return;
+                }
+                awaitingKeyFrame = true;
+                sender = createSender(candidate);
+                sender.setKeepAlive(paused);
+                sender.start();
+                linkUp = true;
+            }
+            keyFrameRequester.requestKeyFrame();
+            lastRecoveryMs = TimeUnit.NANOSECONDS.toMillis(clock.nanoTime() - lostNanos);
+            reconnectCount++;
+            StreamingLog.i(TAG, String.format("%s 第%d次重连成功，恢复耗时%dms，期间丢弃音频%d帧",
+                    url, attempt, lastRecoveryMs, audioDiscarded - discardedBefore));
+            listener.onReconnected(this, lastRecoveryMs);
+            return;
+        }
+        fail(reason + "，重连" + maxAttempts + "次失败");
+    }
+
+    private FramePublisher createPublisher() {
+        FramePublisher created = url.create(new FramePublisher.ConnectionListener() {
+            @Override
+            public void onDisconnected(IOException e) {
+                onConnectionLost("推流连接断开: " + e.getMessage());
+            }
+
+            @Override
+            public void onKeyFrameRequested() {
+                if (linkUp) {
+                    keyFrameRequester.requestKeyFrame();
+                }
+            }
+        }, (frame, bytes, sendNanos) -> listener.onPacketSent(this, frame, bytes, sendNanos));
+        created.setFrameReader(index);
+        created.setPacer(pacer);
+        return created;
+    }
+
+    private FrameSender createSender(FramePublisher target) {
+        return new FrameSender(videoRing, audioRing, target, dropPolicy,
+                e -> onConnectionLost("推流发送失败: " + e.getMessage()), clock, pacer);
+    }
+
+    private void sendMetaData(FramePublisher target) throws IOException {
+        target.sendMetaData(config.getVideoWidth(), config.getVideoHeight(), config.getVideoFps(),
+                config.getVideoBitrate(), config.getAudioBitrate(),
+                config.getAudioSampleRate(), config.getAudioChannels());
+    }
+
+    /**
+     * 按视频队列深度判断积压，高低水位之间保持原状态避免抖动
+     */
+    private void updateCongestion(int depth) {
+        int capacity = videoRing.capacity();
+        boolean value = congested ? depth > capacity / 4 : depth >= capacity * 3 / 4;
+        if (value != congested) {
+            congested = value;
+            StreamingLog.w(TAG, value ? url + " 发送队列积压: " + depth + "/" + capacity : url + " 发送队列恢复");
+            listener.onCongestionChanged(this, value);
+        }
+    }
+
+    private synchronized void fail(String error) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        linkUp = false;
+        StreamingLog.e(TAG, url + " " + error);
+        listener.onFailed(this, error);
+    }
+
+    private static long reconnectDelayMs(int attempt) {
+        if (attempt <= 1) {
+            return 0;
+        }
+        return Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(attempt - 2, 10));
+    }
+
+    private void join(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(config.getNetworkTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
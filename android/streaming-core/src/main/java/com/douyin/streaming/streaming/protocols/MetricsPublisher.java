@@ -0,0 +1,93 @@
+package com.douyin.streaming.streaming.protocols;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 推流指标快照的发布
+ * 统计线程每个周期发布一次最新快照，按各订阅的间隔分发；没有订阅时只保存快照，不做其他工作
+ */
+final class MetricsPublisher {
+    private static final String TAG = "MetricsPublisher";
+    // 统计线程的周期，订阅间隔按此向上取整
+    static final long PERIOD_MS = 1000;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile StreamingProtocol.MetricsSnapshot latest = StreamingProtocol.MetricsSnapshot.EMPTY;
+    // 推流结束后不再接受统计线程上尚未完成的发布
+    private boolean finished;
+
+    StreamingProtocol.MetricsSnapshot getLatest() {
+        return latest;
+    }
+
+    StreamingProtocol.MetricsSubscription subscribe(StreamingProtocol.MetricsListener listener, long intervalMs) {
+        long periods = Math.max(1, (intervalMs + PERIOD_MS - 1) / PERIOD_MS);
+        Subscription subscription = new Subscription(listener, (int) Math.min(periods, Integer.MAX_VALUE));
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * 发布快照，只在统计线程上调用
+     */
+    synchronized void publish(StreamingProtocol.MetricsSnapshot snapshot) {
+        if (finished) {
+            return;
+        }
+        latest = snapshot;
+        for (Subscription subscription : subscriptions) {
+            if (++subscription.elapsedPeriods < subscription.periods) {
+                continue;
+            }
+            subscription.elapsedPeriods = 0;
+            deliver(subscription, snapshot);
+        }
+    }
+
+    /**
+     * 推流结束或出错时调用：不论订阅间隔，向每个订阅发布最后一个快照，之后恢复为空快照，保留订阅
+     */
+    synchronized void finish(StreamingProtocol.MetricsSnapshot snapshot) {
+        finished = true;
+        latest = StreamingProtocol.MetricsSnapshot.EMPTY;
+        for (Subscription subscription : subscriptions) {
+            subscription.elapsedPeriods = 0;
+            deliver(subscription, snapshot);
+        }
+    }
+
+    /**
+     * 开始推流前恢复为空快照，保留订阅
+     */
+    synchronized void reset() {
+        finished = false;
+        latest = StreamingProtocol.MetricsSnapshot.EMPTY;
+    }
+
+    private static void deliver(Subscription subscription, StreamingProtocol.MetricsSnapshot snapshot) {
+        try {
+            subscription.listener.onMetrics(snapshot);
+        } catch (RuntimeException e) {
+            StreamingLog.e(TAG, "指标回调异常", e);
+        }
+    }
+
+    private final class Subscription implements StreamingProtocol.MetricsSubscription {
+        final StreamingProtocol.MetricsListener listener;
+        final int periods;
+        // 在发布器的锁内访问
+        int elapsedPeriods;
+
+        Subscription(StreamingProtocol.MetricsListener listener, int periods) {
+            this.listener = listener;
+            this.periods = periods;
+        }
+
+        @Override
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+    }
+}
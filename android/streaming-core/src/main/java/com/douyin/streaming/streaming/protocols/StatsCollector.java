@@ -0,0 +1,167 @@
+package com.douyin.streaming.streaming.protocols;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.streaming.stats.TelemetryRecorder;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 推流统计的定时汇总和遥测记录，各协议共用
+ * 统计任务每秒汇总一次发送端统计、采样滑动窗口并发布指标快照；开启遥测时按配置的间隔把指标写入遥测文件，
+ * 遥测记录的字段映射只在这里维护。
+ */
+final class StatsCollector {
+    private static final String TAG = "StatsCollector";
+
+    /**
+     * 协议提供的统计来源，在定时线程上调用
+     */
+    interface Source {
+        /**
+         * 当前推流状态
+         */
+        StreamingProtocol.StreamingStatus getStatus();
+
+        /**
+         * 是否计入推流时长，暂停期间为false
+         */
+        boolean isRunning();
+
+        /**
+         * 每个统计周期调用一次，把发送端的统计汇总到StreamingStats；统计由回调写入时不需要处理
+         */
+        void updateStats();
+
+        /**
+         * 写入遥测记录前调用，可用发送端的实时累计值覆盖取自StreamingStats的样本
+         */
+        void sampleTelemetry(TelemetrySample sample);
+    }
+
+    /**
+     * 一条遥测记录中随发送端变化的值，其余字段取自StreamingStats
+     */
+    static final class TelemetrySample {
+        long bytesSent;
+        long videoFrames;
+        long audioFrames;
+        long droppedFrames;
+        int queueDepth;
+        double rttMs;
+        // 最近一帧视频编码输出的System.nanoTime，未知时为-1
+        long encoderOutputNanos;
+    }
+
+    private final String name;
+    private final StreamingScheduler scheduler;
+    private final Clock clock;
+    private final StreamingProtocol.StreamingStats stats;
+    private final MetricsPublisher metrics;
+    private final Source source;
+    // 只在遥测任务上访问
+    private final TelemetrySample sample = new TelemetrySample();
+
+    private StreamingScheduler.Task statsTask;
+    private StreamingScheduler.Task telemetryTask;
+    private volatile TelemetryRecorder telemetryRecorder;
+
+    /**
+     * @param name 任务名和遥测文件名前缀，如协议名
+     */
+    StatsCollector(String name, StreamingScheduler scheduler, Clock clock, StreamingProtocol.StreamingStats stats,
+                   MetricsPublisher metrics, Source source) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.stats = stats;
+        this.metrics = metrics;
+        this.source = source;
+    }
+
+    /**
+     * 清空统计并开始定时汇总，正在进行的汇总先停止
+     * @param telemetryDir 遥测目录，为null或配置未开启遥测时不记录
+     */
+    synchronized void start(StreamingConfig config, File telemetryDir) {
+        stop();
+        stats.reset();
+        metrics.reset();
+        stats.setStartTime(clock.currentTimeMillis());
+        // 推流时长从此刻起按统计周期累计
+        stats.sampleRunningTime(clock.nanoTime(), false);
+        statsTask = scheduler.schedulePeriodic(name + "Stats", this::collect,
+                MetricsPublisher.PERIOD_MS, MetricsPublisher.PERIOD_MS);
+        if (telemetryDir != null && config.isEnableTelemetry()) {
+            startTelemetry(config, telemetryDir);
+        }
+    }
+
+    /**
+     * 停止定时汇总和遥测记录，向指标订阅发布最后一个快照，此后查询返回空快照
+     * 在推流状态更新为结束或错误之后调用，可在任意线程上调用
+     */
+    synchronized void stop() {
+        if (statsTask != null) {
+            statsTask.cancel();
+            statsTask = null;
+            metrics.finish(stats.snapshot(source.getStatus(), clock.nanoTime()));
+        }
+        if (telemetryTask != null) {
+            telemetryTask.cancel();
+            telemetryTask = null;
+        }
+        TelemetryRecorder recorder = telemetryRecorder;
+        telemetryRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    private void collect() {
+        source.updateStats();
+        long now = clock.nanoTime();
+        stats.sampleWindows(now);
+        stats.sampleRunningTime(now, source.isRunning());
+        // 只发布数值快照，文本由订阅方按需格式化
+        metrics.publish(stats.snapshot(source.getStatus(), now));
+    }
+
+    /**
+     * 打开遥测文件并开始记录，打开失败不影响推流
+     */
+    private void startTelemetry(StreamingConfig config, File dir) {
+        try {
+            telemetryRecorder = TelemetryRecorder.openSession(dir, name, config.getTelemetryInterval(),
+                    config.getVideoBitrate(), config.getVideoFps());
+        } catch (IOException | RuntimeException e) {
+            StreamingLog.w(TAG, "打开遥测文件失败", e);
+            return;
+        }
+        telemetryTask = scheduler.schedulePeriodic(name + "Telemetry", this::recordTelemetry,
+                config.getTelemetryInterval(), config.getTelemetryInterval());
+    }
+
+    private void recordTelemetry() {
+        TelemetryRecorder recorder = telemetryRecorder;
+        if (recorder == null) {
+            return;
+        }
+        sample.bytesSent = stats.getBytesSent();
+        sample.videoFrames = stats.getVideoFramesSent();
+        sample.audioFrames = stats.getAudioFramesSent();
+        sample.droppedFrames = stats.getDroppedFrames();
+        sample.queueDepth = stats.getSendQueueDepth();
+        sample.rttMs = stats.getRttMs();
+        sample.encoderOutputNanos = -1;
+        source.sampleTelemetry(sample);
+        // 与记录器的起始时间同为System.nanoTime
+        recorder.append(System.nanoTime(), sample.bytesSent, sample.videoFrames, sample.audioFrames,
+                sample.droppedFrames, sample.queueDepth, stats.getTargetVideoBitrate(), sample.rttMs,
+                stats.getPacketSendTimeUs(), stats.getMaxPacketSendTimeUs(), source.getStatus().ordinal(),
+                stats.getRetryCount(), sample.encoderOutputNanos);
+    }
+}
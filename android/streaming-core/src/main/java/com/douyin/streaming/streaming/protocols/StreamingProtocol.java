@@ -0,0 +1,673 @@
+package com.douyin.streaming.streaming.protocols;
+
+import com.douyin.streaming.streaming.encoder.VideoEncoderBackend;
+import com.douyin.streaming.streaming.stats.RateWindow;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推流协议接口
+ * 定义所有推流方式需要实现的基本方法
+ */
+public interface StreamingProtocol {
+    
+    /**
+     * 推流回调接口
+     */
+    interface StreamingCallback {
+        /**
+         * 推流启动成功
+         */
+        void onStarted();
+        
+        /**
+         * 推流停止
+         */
+        void onStopped();
+        
+        /**
+         * 推流出错
+         */
+        void onError(String error);
+        
+        /**
+         * 状态更新
+         */
+        void onStatusUpdate(String status);
+        
+        /**
+         * 自适应码率调整了视频码率
+         * @param oldBitrate 调整前码率 (kbps)
+         * @param newBitrate 调整后码率 (kbps)
+         * @param reason 调整原因
+         */
+        void onBitrateChanged(int oldBitrate, int newBitrate, String reason);
+    }
+    
+    /**
+     * 推流指标监听
+     */
+    interface MetricsListener {
+        /**
+         * 在统计线程上回调，不应执行耗时操作
+         */
+        void onMetrics(MetricsSnapshot snapshot);
+    }
+    
+    /**
+     * 指标订阅，取消后不再回调
+     */
+    interface MetricsSubscription {
+        void cancel();
+    }
+    
+    /**
+     * 启动推流
+     * @param config 推流配置
+     * @param callback 推流回调
+     */
+    void startStreaming(StreamingConfig config, StreamingCallback callback);
+    
+    /**
+     * 停止推流
+     */
+    void stopStreaming();
+    
+    /**
+     * 暂停推流
+     */
+    void pauseStreaming();
+    
+    /**
+     * 恢复推流
+     */
+    void resumeStreaming();
+    
+    /**
+     * 获取推流状态
+     * @return 推流状态
+     */
+    StreamingStatus getStatus();
+    
+    /**
+     * 获取推流统计信息
+     * @return 推流统计
+     */
+    StreamingStats getStats();
+    
+    /**
+     * 获取最近一次统计周期的指标快照
+     * 快照不可变，在下一个统计周期之前重复返回同一实例；尚未开始推流时返回空快照
+     */
+    MetricsSnapshot getMetricsSnapshot();
+    
+    /**
+     * 订阅指标快照
+     * @param intervalMs 回调间隔，按统计周期 (1秒) 向上取整
+     * @return 订阅，用于取消
+     */
+    MetricsSubscription subscribeMetrics(MetricsListener listener, long intervalMs);
+    
+    /**
+     * 设置推流参数
+     * @param config 推流配置
+     */
+    void setConfig(StreamingConfig config);
+    
+    /**
+     * 释放资源
+     */
+    void release();
+    
+    /**
+     * 推流状态枚举
+     */
+    enum StreamingStatus {
+        IDLE("空闲"),
+        CONNECTING("连接中"),
+        CONNECTED("已连接"),
+        STREAMING("推流中"),
+        PAUSED("已暂停"),
+        ERROR("错误"),
+        DISCONNECTED("已断开");
+        
+        private final String description;
+        
+        StreamingStatus(String description) {
+            this.description = description;
+        }
+        
+        public String getDescription() {
+            return description;
+        }
+    }
+    
+    /**
+     * 推流统计信息
+     * 计数器基于原子变量，其余字段为volatile，发送线程、FFmpeg回调线程写入，任意线程读取。
+     * 统计线程每秒调用一次sampleWindows()，按秒保存采样，提供1s/5s/30s窗口和指数加权平均的
+     * 码率、帧率和丢帧率；写入路径无锁。
+     */
+    class StreamingStats {
+        // 指数加权平均中最新一秒的权重，约等于最近5秒的平滑
+        private static final double EWMA_ALPHA = 0.2;
+        
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong framesSent = new AtomicLong();
+        private final AtomicLong audioFramesSent = new AtomicLong();
+        private final AtomicLong videoFramesSent = new AtomicLong();
+        private final AtomicLong droppedFrames = new AtomicLong();
+        private final AtomicLong retryCount = new AtomicLong();
+        private final AtomicLong encoderWarnings = new AtomicLong(); // FFmpeg编码器输出的警告数
+        private volatile long startTime;
+        private volatile long duration;
+        private volatile long runningTime; // 推流时长 (秒)，暂停期间不计入
+        // 只在统计线程上访问
+        private long runningNanos;
+        private long lastRunningSampleNanos;
+        private volatile double bitrate;
+        private volatile double fps;
+        private volatile double audioBitrate;
+        private volatile double videoBitrate;
+        private volatile int networkQuality;
+        private volatile VideoEncoderBackend videoEncoderBackend;
+        private volatile String videoEncoderName;
+        private volatile double packetSendTimeUs; // 统计周期内单包平均写入耗时
+        private volatile long maxPacketSendTimeUs; // 统计周期内单包最大写入耗时
+        private volatile int sendQueueDepth; // 编码与发送之间的队列深度 (帧)
+        private volatile int sendQueueCapacity;
+        private volatile double pacerQueueDelayMs; // 统计周期内单帧在发送节拍中等待令牌的最长时间
+        // 统计周期内帧从编码输出到开始发送的最长排队时间，音频在有界领先量内优先发送，拥塞时的排队主要由视频承担
+        private volatile double audioQueueDelayMs;
+        private volatile double videoQueueDelayMs;
+        private volatile double rttMs = -1; // 往返时延，未知时为-1
+        private volatile int estimatedBandwidthKbps = -1; // 传输层带宽估计，只有WebRTC可用，未知时为-1
+        private volatile int targetVideoBitrate; // 当前编码目标码率 (kbps)
+        private volatile long lastRecoveryTimeMs = -1; // 最近一次重连从断开到恢复的耗时，未重连时为-1
+        // 传输层链路统计，只有基于UDP的传输 (SRT、WebRTC) 可见，TCP传输时为0
+        private volatile long linkPacketsSent;
+        private volatile long linkPacketsLost; // 对端报告丢失的包数
+        private volatile long linkPacketsRetransmitted;
+        
+        // 按秒采样的滑动窗口，只在统计线程上写入
+        private final RateWindow bytesWindow = new RateWindow(EWMA_ALPHA);
+        private final RateWindow videoFramesWindow = new RateWindow(EWMA_ALPHA);
+        private final RateWindow droppedWindow = new RateWindow(EWMA_ALPHA);
+        
+        // Getters and Setters
+        public long getBytesSent() { return bytesSent.get(); }
+        public void setBytesSent(long bytesSent) { this.bytesSent.set(bytesSent); }
+        public void addBytesSent(long bytes) { bytesSent.addAndGet(bytes); }
+        
+        public long getFramesSent() { return framesSent.get(); }
+        public void setFramesSent(long framesSent) { this.framesSent.set(framesSent); }
+        
+        public long getAudioFramesSent() { return audioFramesSent.get(); }
+        public void setAudioFramesSent(long audioFramesSent) { this.audioFramesSent.set(audioFramesSent); }
+        
+        public long getVideoFramesSent() { return videoFramesSent.get(); }
+        public void setVideoFramesSent(long videoFramesSent) { this.videoFramesSent.set(videoFramesSent); }
+        
+        public double getAudioQueueDelayMs() { return audioQueueDelayMs; }
+        public void setAudioQueueDelayMs(double audioQueueDelayMs) { this.audioQueueDelayMs = audioQueueDelayMs; }
+        
+        public double getVideoQueueDelayMs() { return videoQueueDelayMs; }
+        public void setVideoQueueDelayMs(double videoQueueDelayMs) { this.videoQueueDelayMs = videoQueueDelayMs; }
+        
+        public long getDroppedFrames() { return droppedFrames.get(); }
+        public void setDroppedFrames(long droppedFrames) { this.droppedFrames.set(droppedFrames); }
+        
+        public long getRetryCount() { return retryCount.get(); }
+        public void setRetryCount(long retryCount) { this.retryCount.set(retryCount); }
+        public void incrementRetryCount() { retryCount.incrementAndGet(); }
+        
+        public long getStartTime() { return startTime; }
+        public void setStartTime(long startTime) { this.startTime = startTime; }
+        
+        public long getDuration() { return duration; }
+        public void setDuration(long duration) { this.duration = duration; }
+        
+        public long getRunningTime() { return runningTime; }
+        public void setRunningTime(long runningTime) { this.runningTime = runningTime; }
+        
+        public double getBitrate() { return bitrate; }
+        public void setBitrate(double bitrate) { this.bitrate = bitrate; }
+        
+        public double getFps() { return fps; }
+        public void setFps(double fps) { this.fps = fps; }
+        
+        public double getAudioBitrate() { return audioBitrate; }
+        public void setAudioBitrate(double audioBitrate) { this.audioBitrate = audioBitrate; }
+        
+        public double getVideoBitrate() { return videoBitrate; }
+        public void setVideoBitrate(double videoBitrate) { this.videoBitrate = videoBitrate; }
+        
+        public int getNetworkQuality() { return networkQuality; }
+        public void setNetworkQuality(int networkQuality) { this.networkQuality = networkQuality; }
+        
+        public VideoEncoderBackend getVideoEncoderBackend() { return videoEncoderBackend; }
+        public void setVideoEncoderBackend(VideoEncoderBackend videoEncoderBackend) { this.videoEncoderBackend = videoEncoderBackend; }
+        
+        public String getVideoEncoderName() { return videoEncoderName; }
+        public void setVideoEncoderName(String videoEncoderName) { this.videoEncoderName = videoEncoderName; }
+        
+        public double getPacketSendTimeUs() { return packetSendTimeUs; }
+        public void setPacketSendTimeUs(double packetSendTimeUs) { this.packetSendTimeUs = packetSendTimeUs; }
+        
+        public long getMaxPacketSendTimeUs() { return maxPacketSendTimeUs; }
+        public void setMaxPacketSendTimeUs(long maxPacketSendTimeUs) { this.maxPacketSendTimeUs = maxPacketSendTimeUs; }
+        
+        public int getSendQueueDepth() { return sendQueueDepth; }
+        public void setSendQueueDepth(int sendQueueDepth) { this.sendQueueDepth = sendQueueDepth; }
+        
+        public int getSendQueueCapacity() { return sendQueueCapacity; }
+        public void setSendQueueCapacity(int sendQueueCapacity) { this.sendQueueCapacity = sendQueueCapacity; }
+        
+        public double getPacerQueueDelayMs() { return pacerQueueDelayMs; }
+        public void setPacerQueueDelayMs(double pacerQueueDelayMs) { this.pacerQueueDelayMs = pacerQueueDelayMs; }
+        
+        public double getRttMs() { return rttMs; }
+        public void setRttMs(double rttMs) { this.rttMs = rttMs; }
+        
+        public int getEstimatedBandwidthKbps() { return estimatedBandwidthKbps; }
+        public void setEstimatedBandwidthKbps(int estimatedBandwidthKbps) { this.estimatedBandwidthKbps = estimatedBandwidthKbps; }
+        
+        public int getTargetVideoBitrate() { return targetVideoBitrate; }
+        public void setTargetVideoBitrate(int targetVideoBitrate) { this.targetVideoBitrate = targetVideoBitrate; }
+        
+        public long getLastRecoveryTimeMs() { return lastRecoveryTimeMs; }
+        public void setLastRecoveryTimeMs(long lastRecoveryTimeMs) { this.lastRecoveryTimeMs = lastRecoveryTimeMs; }
+        
+        public long getEncoderWarnings() { return encoderWarnings.get(); }
+        public void incrementEncoderWarnings() { encoderWarnings.incrementAndGet(); }
+        
+        public long getLinkPacketsSent() { return linkPacketsSent; }
+        public void setLinkPacketsSent(long linkPacketsSent) { this.linkPacketsSent = linkPacketsSent; }
+        
+        public long getLinkPacketsLost() { return linkPacketsLost; }
+        public void setLinkPacketsLost(long linkPacketsLost) { this.linkPacketsLost = linkPacketsLost; }
+        
+        public long getLinkPacketsRetransmitted() { return linkPacketsRetransmitted; }
+        public void setLinkPacketsRetransmitted(long linkPacketsRetransmitted) { this.linkPacketsRetransmitted = linkPacketsRetransmitted; }
+        
+        /**
+         * 链路丢包率 (%)，对端报告丢失的包数占发出包数的比例
+         */
+        public double getLinkLossRate() {
+            long sent = linkPacketsSent;
+            return sent > 0 ? (double) linkPacketsLost / sent * 100 : 0.0;
+        }
+        
+        /**
+         * 按当前累计值写入一秒的采样，并把1秒窗口的码率和帧率作为当前值
+         * 只在统计线程上每秒调用一次
+         */
+        public void sampleWindows(long nowNanos) {
+            bytesWindow.sample(bytesSent.get(), nowNanos);
+            videoFramesWindow.sample(videoFramesSent.get(), nowNanos);
+            droppedWindow.sample(droppedFrames.get(), nowNanos);
+            bitrate = getWindowBitrate(1);
+            fps = getWindowFps(1);
+        }
+        
+        /**
+         * 累计推流时长，只在统计线程上每周期调用一次
+         * @param running 本周期是否在推流，暂停和连接中的周期不计入
+         */
+        public void sampleRunningTime(long nowNanos, boolean running) {
+            if (running && lastRunningSampleNanos != 0) {
+                runningNanos += nowNanos - lastRunningSampleNanos;
+                runningTime = TimeUnit.NANOSECONDS.toSeconds(runningNanos);
+            }
+            lastRunningSampleNanos = nowNanos;
+        }
+        
+        /**
+         * 按当前统计值创建快照，在统计线程上sampleWindows()之后调用
+         */
+        public MetricsSnapshot snapshot(StreamingStatus status, long timestampNanos) {
+            return new MetricsSnapshot(this, status, timestampNanos);
+        }
+        
+        /**
+         * 清空计数、统计周期内的指标和滑动窗口，新会话开始前调用
+         * 编码器选择在会话开始前确定，不清空
+         */
+        public void reset() {
+            bytesSent.set(0);
+            framesSent.set(0);
+            audioFramesSent.set(0);
+            videoFramesSent.set(0);
+            droppedFrames.set(0);
+            retryCount.set(0);
+            encoderWarnings.set(0);
+            duration = 0;
+            runningTime = 0;
+            runningNanos = 0;
+            lastRunningSampleNanos = 0;
+            bitrate = 0;
+            fps = 0;
+            audioBitrate = 0;
+            videoBitrate = 0;
+            networkQuality = 0;
+            packetSendTimeUs = 0;
+            maxPacketSendTimeUs = 0;
+            sendQueueDepth = 0;
+            sendQueueCapacity = 0;
+            pacerQueueDelayMs = 0;
+            audioQueueDelayMs = 0;
+            videoQueueDelayMs = 0;
+            rttMs = -1;
+            targetVideoBitrate = 0;
+            lastRecoveryTimeMs = -1;
+            estimatedBandwidthKbps = -1;
+            linkPacketsSent = 0;
+            linkPacketsLost = 0;
+            linkPacketsRetransmitted = 0;
+            bytesWindow.reset();
+            videoFramesWindow.reset();
+            droppedWindow.reset();
+        }
+        
+        /**
+         * 最近seconds秒的平均码率 (kbps)，窗口最长30秒
+         */
+        public double getWindowBitrate(int seconds) {
+            return bytesWindow.rate(seconds) * 8 / 1000;
+        }
+        
+        /**
+         * 最近seconds秒的平均视频帧率
+         */
+        public double getWindowFps(int seconds) {
+            return videoFramesWindow.rate(seconds);
+        }
+        
+        /**
+         * 最近seconds秒的丢帧率 (%)
+         */
+        public double getWindowDropRate(int seconds) {
+            double dropped = droppedWindow.rate(seconds);
+            double total = dropped + videoFramesWindow.rate(seconds);
+            return total > 0 ? dropped / total * 100 : 0.0;
+        }
+        
+        /**
+         * 码率的指数加权平均 (kbps)
+         */
+        public double getBitrateEwma() {
+            return bytesWindow.ewma() * 8 / 1000;
+        }
+        
+        public double getFpsEwma() {
+            return videoFramesWindow.ewma();
+        }
+        
+        /**
+         * 丢帧率的指数加权平均 (%)
+         */
+        public double getDropRateEwma() {
+            double dropped = droppedWindow.ewma();
+            double total = dropped + videoFramesWindow.ewma();
+            return total > 0 ? dropped / total * 100 : 0.0;
+        }
+        
+        /**
+         * 获取平均比特率 (kbps)
+         */
+        public double getAverageBitrate() {
+            long duration = this.duration;
+            if (duration > 0) {
+                return (getBytesSent() * 8.0 / 1000) / (duration / 1000.0);
+            }
+            return 0.0;
+        }
+        
+        /**
+         * 获取丢帧率
+         */
+        public double getDropRate() {
+            long frames = getFramesSent();
+            if (frames > 0) {
+                return (double) getDroppedFrames() / frames * 100;
+            }
+            return 0.0;
+        }
+        
+        /**
+         * 自开始推流以来经过的时间 (秒)
+         */
+        public long getElapsedTime() {
+            long startTime = this.startTime;
+            if (startTime > 0) {
+                return (System.currentTimeMillis() - startTime) / 1000;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 推流指标快照
+     * 统计线程每个周期创建一次，字段均为数值，只有调用toString()时才格式化文本
+     */
+    final class MetricsSnapshot {
+        /**
+         * 尚未开始推流时的空快照
+         */
+        public static final MetricsSnapshot EMPTY = new MetricsSnapshot();
+        
+        private final long timestampNanos;
+        private final StreamingStatus status;
+        private final long runningTimeSec;
+        private final long bytesSent;
+        private final long videoFramesSent;
+        private final long audioFramesSent;
+        private final double audioQueueDelayMs;
+        private final double videoQueueDelayMs;
+        private final long droppedFrames;
+        private final double bitrateKbps;
+        private final double bitrate5sKbps;
+        private final double bitrate30sKbps;
+        private final double bitrateEwmaKbps;
+        private final double fps;
+        private final double fpsEwma;
+        private final double dropRate5s;
+        private final double dropRateEwma;
+        private final int targetVideoBitrate;
+        private final double rttMs;
+        private final int estimatedBandwidthKbps;
+        private final int sendQueueDepth;
+        private final int sendQueueCapacity;
+        private final double pacerQueueDelayMs;
+        private final double packetSendTimeUs;
+        private final long maxPacketSendTimeUs;
+        private final long retryCount;
+        private final long lastRecoveryTimeMs;
+        private final long encoderWarnings;
+        private final long linkPacketsLost;
+        private final long linkPacketsRetransmitted;
+        private final double linkLossRate;
+        private final VideoEncoderBackend videoEncoderBackend;
+        
+        private MetricsSnapshot() {
+            timestampNanos = 0;
+            status = StreamingStatus.IDLE;
+            runningTimeSec = 0;
+            bytesSent = 0;
+            videoFramesSent = 0;
+            audioFramesSent = 0;
+            audioQueueDelayMs = 0;
+            videoQueueDelayMs = 0;
+            droppedFrames = 0;
+            bitrateKbps = 0;
+            bitrate5sKbps = 0;
+            bitrate30sKbps = 0;
+            bitrateEwmaKbps = 0;
+            fps = 0;
+            fpsEwma = 0;
+            dropRate5s = 0;
+            dropRateEwma = 0;
+            targetVideoBitrate = 0;
+            rttMs = -1;
+            estimatedBandwidthKbps = -1;
+            sendQueueDepth = 0;
+            sendQueueCapacity = 0;
+            pacerQueueDelayMs = 0;
+            packetSendTimeUs = 0;
+            maxPacketSendTimeUs = 0;
+            retryCount = 0;
+            lastRecoveryTimeMs = -1;
+            encoderWarnings = 0;
+            linkPacketsLost = 0;
+            linkPacketsRetransmitted = 0;
+            linkLossRate = 0;
+            videoEncoderBackend = null;
+        }
+        
+        private MetricsSnapshot(StreamingStats stats, StreamingStatus status, long timestampNanos) {
+            this.timestampNanos = timestampNanos;
+            this.status = status;
+            this.runningTimeSec = stats.getRunningTime();
+            this.bytesSent = stats.getBytesSent();
+            this.videoFramesSent = stats.getVideoFramesSent();
+            this.audioFramesSent = stats.getAudioFramesSent();
+            this.audioQueueDelayMs = stats.getAudioQueueDelayMs();
+            this.videoQueueDelayMs = stats.getVideoQueueDelayMs();
+            this.droppedFrames = stats.getDroppedFrames();
+            this.bitrateKbps = stats.getBitrate();
+            this.bitrate5sKbps = stats.getWindowBitrate(5);
+            this.bitrate30sKbps = stats.getWindowBitrate(30);
+            this.bitrateEwmaKbps = stats.getBitrateEwma();
+            this.fps = stats.getFps();
+            this.fpsEwma = stats.getFpsEwma();
+            this.dropRate5s = stats.getWindowDropRate(5);
+            this.dropRateEwma = stats.getDropRateEwma();
+            this.targetVideoBitrate = stats.getTargetVideoBitrate();
+            this.rttMs = stats.getRttMs();
+            this.estimatedBandwidthKbps = stats.getEstimatedBandwidthKbps();
+            this.sendQueueDepth = stats.getSendQueueDepth();
+            this.sendQueueCapacity = stats.getSendQueueCapacity();
+            this.pacerQueueDelayMs = stats.getPacerQueueDelayMs();
+            this.packetSendTimeUs = stats.getPacketSendTimeUs();
+            this.maxPacketSendTimeUs = stats.getMaxPacketSendTimeUs();
+            this.retryCount = stats.getRetryCount();
+            this.lastRecoveryTimeMs = stats.getLastRecoveryTimeMs();
+            this.encoderWarnings = stats.getEncoderWarnings();
+            this.linkPacketsLost = stats.getLinkPacketsLost();
+            this.linkPacketsRetransmitted = stats.getLinkPacketsRetransmitted();
+            this.linkLossRate = stats.getLinkLossRate();
+            this.videoEncoderBackend = stats.getVideoEncoderBackend();
+        }
+        
+        /**
+         * 快照时间，System.nanoTime()
+         */
+        public long getTimestampNanos() { return timestampNanos; }
+        
+        public StreamingStatus getStatus() { return status; }
+        
+        /**
+         * 推流时长 (秒)，不含暂停
+         */
+        public long getRunningTimeSec() { return runningTimeSec; }
+        
+        public long getBytesSent() { return bytesSent; }
+        
+        public long getVideoFramesSent() { return videoFramesSent; }
+        
+        public long getAudioFramesSent() { return audioFramesSent; }
+        
+        /**
+         * 统计周期内音频帧从编码输出到开始发送的最大排队时延；FFmpeg推流时为0
+         */
+        public double getAudioQueueDelayMs() { return audioQueueDelayMs; }
+        
+        /**
+         * 统计周期内视频帧从编码输出到开始发送的最大排队时延，拥塞时随积压增长直到按GOP丢帧；FFmpeg推流时为0
+         */
+        public double getVideoQueueDelayMs() { return videoQueueDelayMs; }
+        
+        public long getDroppedFrames() { return droppedFrames; }
+        
+        /**
+         * 最近1秒的码率 (kbps)
+         */
+        public double getBitrateKbps() { return bitrateKbps; }
+        
+        public double getBitrate5sKbps() { return bitrate5sKbps; }
+        
+        public double getBitrate30sKbps() { return bitrate30sKbps; }
+        
+        public double getBitrateEwmaKbps() { return bitrateEwmaKbps; }
+        
+        /**
+         * 最近1秒的视频帧率
+         */
+        public double getFps() { return fps; }
+        
+        public double getFpsEwma() { return fpsEwma; }
+        
+        /**
+         * 最近5秒的丢帧率 (%)
+         */
+        public double getDropRate5s() { return dropRate5s; }
+        
+        public double getDropRateEwma() { return dropRateEwma; }
+        
+        /**
+         * 当前编码目标码率 (kbps)，未启用自适应码率时为0
+         */
+        public int getTargetVideoBitrate() { return targetVideoBitrate; }
+        
+        /**
+         * 往返时延，未知时为-1
+         */
+        public double getRttMs() { return rttMs; }
+        
+        /**
+         * 传输层带宽估计 (kbps)，只有WebRTC可用，未知时为-1
+         */
+        public int getEstimatedBandwidthKbps() { return estimatedBandwidthKbps; }
+        
+        public int getSendQueueDepth() { return sendQueueDepth; }
+        
+        public int getSendQueueCapacity() { return sendQueueCapacity; }
+        
+        /**
+         * 统计周期内单帧在发送节拍中的最大排队时延，关键帧分散发送的耗时；FFmpeg推流时为0
+         */
+        public double getPacerQueueDelayMs() { return pacerQueueDelayMs; }
+        
+        public double getPacketSendTimeUs() { return packetSendTimeUs; }
+        
+        public long getMaxPacketSendTimeUs() { return maxPacketSendTimeUs; }
+        
+        public long getRetryCount() { return retryCount; }
+        
+        /**
+         * 最近一次重连的恢复耗时，未重连时为-1
+         */
+        public long getLastRecoveryTimeMs() { return lastRecoveryTimeMs; }
+        
+        public long getEncoderWarnings() { return encoderWarnings; }
+        
+        public long getLinkPacketsLost() { return linkPacketsLost; }
+        
+        public long getLinkPacketsRetransmitted() { return linkPacketsRetransmitted; }
+        
+        /**
+         * 链路丢包率 (%)，TCP传输时为0
+         */
+        public double getLinkLossRate() { return linkLossRate; }
+        
+        public VideoEncoderBackend getVideoEncoderBackend() { return videoEncoderBackend; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s - 比特率: %.1fkbps, 帧率: %.1ffps, 丢帧率: %.1f%%, 时长: %ds",
+                    status.getDescription(), bitrateKbps, fps, dropRate5s, runningTimeSec);
+        }
+    }
+}
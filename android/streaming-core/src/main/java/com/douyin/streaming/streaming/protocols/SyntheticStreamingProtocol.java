@@ -0,0 +1,332 @@
+package com.douyin.streaming.streaming.protocols;
+
+import com.douyin.streaming.streaming.StreamingType;
+import com.douyin.streaming.streaming.desktop.SyntheticStreamingSession;
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.cmaf.CmafUrl;
+import com.douyin.streaming.streaming.network.rtmp.RtmpUrl;
+import com.douyin.streaming.streaming.network.srt.SrtUrl;
+import com.douyin.streaming.streaming.network.udp.UdpUrl;
+import com.douyin.streaming.streaming.network.webrtc.WhipUrl;
+import com.douyin.streaming.streaming.pipeline.AdaptiveBitrateController;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.scheduler.StreamingScheduler;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合成帧源的推流协议
+ * 不依赖Android，以合成帧代替摄像头和编码器，经与设备相同的队列、丢帧策略、自适应码率和
+ * FLV/RTMP或TS/SRT发送链路推流，统计和指标快照与OKB进程内推流一致。用于桌面环境的压测、剖析和回归。
+ */
+public class SyntheticStreamingProtocol implements StreamingProtocol {
+    private static final String TAG = "SyntheticStreaming";
+    private static final int MIN_ADAPTIVE_BITRATE = 200;
+
+    private final Clock clock;
+    private final StreamingStats stats = new StreamingStats();
+    private final MetricsPublisher metrics = new MetricsPublisher();
+    private final StatsCollector statsCollector;
+    private final Object packetStatsLock = new Object();
+
+    private StreamingConfig config;
+    private StreamingCallback callback;
+    private volatile StreamingStatus status = StreamingStatus.IDLE;
+    private volatile SyntheticStreamingSession session;
+    private AdaptiveBitrateController bitrateController;
+
+    // 发送线程写入，统计线程读取
+    private long videoPacketsSent;
+    private long audioPacketsSent;
+    private long videoBytesSent;
+    private long audioBytesSent;
+    private long windowPackets;
+    private long windowSendNanos;
+    private long windowMaxSendNanos;
+    // 只在统计线程上访问
+    private long lastVideoBytesSent;
+    private long lastAudioBytesSent;
+    private long lastDroppedFrames;
+
+    public SyntheticStreamingProtocol(StreamingConfig config, StreamingScheduler scheduler, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+        this.statsCollector = new StatsCollector(TAG, scheduler, clock, stats, metrics, statsSource);
+    }
+
+    @Override
+    public void startStreaming(StreamingConfig config, StreamingCallback callback) {
+        if (status == StreamingStatus.STREAMING || status == StreamingStatus.CONNECTING) {
+            StreamingLog.w(TAG, "推流已在进行中");
+            return;
+        }
+        this.config = config;
+        this.callback = callback;
+        List<FramePublisher.Endpoint> urls = new ArrayList<>();
+        try {
+            urls.add(parseUrl(config, config.getRtmpUrl(), config.getStreamKey()));
+            for (String address : config.getAdditionalRtmpUrls()) {
+                urls.add(parseUrl(config, address, null));
+            }
+        } catch (IllegalArgumentException e) {
+            status = StreamingStatus.ERROR;
+            callback.onError(e.getMessage());
+            return;
+        }
+
+        synchronized (packetStatsLock) {
+            videoPacketsSent = 0;
+            audioPacketsSent = 0;
+            videoBytesSent = 0;
+            audioBytesSent = 0;
+            windowPackets = 0;
+            windowSendNanos = 0;
+            windowMaxSendNanos = 0;
+        }
+        lastVideoBytesSent = 0;
+        lastAudioBytesSent = 0;
+        lastDroppedFrames = 0;
+        bitrateController = config.isEnableAdaptiveBitrate()
+                ? new AdaptiveBitrateController(config.getVideoBitrate(),
+                        Math.max(MIN_ADAPTIVE_BITRATE, config.getVideoBitrate() / 5))
+                : null;
+
+        status = StreamingStatus.CONNECTING;
+        startStatsCollection();
+        stats.setTargetVideoBitrate(config.getVideoBitrate());
+        session = new SyntheticStreamingSession(config, urls, clock, sessionListener);
+        session.start();
+    }
+
+    @Override
+    public void stopStreaming() {
+        SyntheticStreamingSession current = session;
+        session = null;
+        if (current != null) {
+            current.stop();
+        }
+        StreamingStatus previous = status;
+        // 最后一个指标快照带上结束状态
+        status = StreamingStatus.IDLE;
+        stopStatsCollection();
+        if (previous != StreamingStatus.IDLE && callback != null) {
+            callback.onStopped();
+        }
+    }
+
+    /**
+     * 合成帧源不支持暂停
+     */
+    @Override
+    public void pauseStreaming() {
+        StreamingLog.w(TAG, "合成推流不支持暂停");
+    }
+
+    @Override
+    public void resumeStreaming() {
+    }
+
+    @Override
+    public StreamingStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public StreamingStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public MetricsSnapshot getMetricsSnapshot() {
+        return metrics.getLatest();
+    }
+
+    @Override
+    public MetricsSubscription subscribeMetrics(MetricsListener listener, long intervalMs) {
+        return metrics.subscribe(listener, intervalMs);
+    }
+
+    @Override
+    public void setConfig(StreamingConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public void release() {
+        stopStreaming();
+    }
+
+    /**
+     * srt://地址的流ID取自streamKey，延迟和加密参数取自配置；http(s)://在ATF推流时为CMAF上传路径，streamKey作为
+     * 最后一级路径，否则为WHIP端点，streamKey作为Bearer令牌；udp://没有流ID，忽略streamKey；RTMP地址与streamKey拼接
+     * @param streamKey 为null时地址已完整
+     */
+    private static FramePublisher.Endpoint parseUrl(StreamingConfig config, String address, String streamKey) {
+        if (config.getStreamingType() == StreamingType.ATF && CmafUrl.isSupported(address)) {
+            return CmafUrl.parse(address, streamKey);
+        }
+        if (WhipUrl.isSupported(address)) {
+            return WhipUrl.parse(address, streamKey);
+        }
+        if (UdpUrl.isSupported(address)) {
+            return UdpUrl.parse(address);
+        }
+        if (SrtUrl.isSupported(address)) {
+            return SrtUrl.parse(address, config.getSrtLatency(), config.getSrtPassphrase(),
+                    config.getSrtKeyLength()).withDefaultStreamId(streamKey);
+        }
+        String full = streamKey != null ? address + streamKey : address;
+        if (!RtmpUrl.isSupported(full)) {
+            throw new IllegalArgumentException("不支持的推流地址: " + full);
+        }
+        return RtmpUrl.parse(full);
+    }
+
+    private final SyntheticStreamingSession.Listener sessionListener = new SyntheticStreamingSession.Listener() {
+        @Override
+        public void onConnected() {
+            status = StreamingStatus.STREAMING;
+            stats.setStartTime(clock.currentTimeMillis());
+            if (callback != null) {
+                callback.onStarted();
+            }
+        }
+
+        @Override
+        public void onPacketSent(MediaFrame frame, long bytes, long sendNanos) {
+            if (frame.isConfig()) {
+                return;
+            }
+            synchronized (packetStatsLock) {
+                if (frame.isVideo()) {
+                    videoPacketsSent++;
+                    videoBytesSent += bytes;
+                } else {
+                    audioPacketsSent++;
+                    audioBytesSent += bytes;
+                }
+                windowPackets++;
+                windowSendNanos += sendNanos;
+                windowMaxSendNanos = Math.max(windowMaxSendNanos, sendNanos);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            status = StreamingStatus.ERROR;
+            stopStatsCollection();
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+    };
+
+    /**
+     * 桌面环境不记录遥测
+     */
+    private void startStatsCollection() {
+        statsCollector.start(config, null);
+    }
+
+    private void stopStatsCollection() {
+        statsCollector.stop();
+    }
+
+    private final StatsCollector.Source statsSource = new StatsCollector.Source() {
+        @Override
+        public StreamingStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return status == StreamingStatus.STREAMING;
+        }
+
+        @Override
+        public void updateStats() {
+            SyntheticStreamingSession current = session;
+            if (current != null) {
+                SyntheticStreamingProtocol.this.updateStats(current);
+            }
+        }
+
+        @Override
+        public void sampleTelemetry(StatsCollector.TelemetrySample sample) {
+        }
+    };
+
+    /**
+     * 汇总发送统计，每秒调用一次
+     */
+    private void updateStats(SyntheticStreamingSession session) {
+        long videoFrames;
+        long audioFrames;
+        long videoBytes;
+        long audioBytes;
+        long packets;
+        long sendNanos;
+        long maxSendNanos;
+        synchronized (packetStatsLock) {
+            videoFrames = videoPacketsSent;
+            audioFrames = audioPacketsSent;
+            videoBytes = videoBytesSent;
+            audioBytes = audioBytesSent;
+            packets = windowPackets;
+            sendNanos = windowSendNanos;
+            maxSendNanos = windowMaxSendNanos;
+            windowPackets = 0;
+            windowSendNanos = 0;
+            windowMaxSendNanos = 0;
+        }
+
+        stats.setBytesSent(session.getBytesSent());
+        stats.setFramesSent(videoFrames);
+        stats.setVideoFramesSent(videoFrames);
+        stats.setAudioFramesSent(audioFrames);
+        stats.setDroppedFrames(session.getDroppedFrames());
+        stats.setSendQueueDepth(session.getQueueDepth());
+        stats.setSendQueueCapacity(session.getQueueCapacity());
+        stats.setPacerQueueDelayMs(session.pollPacerDelayMs());
+        stats.setAudioQueueDelayMs(session.pollAudioQueueDelayMs());
+        stats.setVideoQueueDelayMs(session.pollVideoQueueDelayMs());
+        stats.setDuration(clock.currentTimeMillis() - stats.getStartTime());
+        stats.setPacketSendTimeUs(packets > 0 ? sendNanos / 1000.0 / packets : 0);
+        stats.setMaxPacketSendTimeUs(maxSendNanos / 1000);
+        stats.setVideoBitrate((videoBytes - lastVideoBytesSent) * 8.0 / 1000);
+        stats.setAudioBitrate((audioBytes - lastAudioBytesSent) * 8.0 / 1000);
+        stats.setRttMs(session.getRttMs());
+        stats.setEstimatedBandwidthKbps(session.getEstimatedBitrateKbps());
+        stats.setLinkPacketsSent(session.getPacketsSent());
+        stats.setLinkPacketsLost(session.getPacketsLost());
+        stats.setLinkPacketsRetransmitted(session.getPacketsRetransmitted());
+        lastVideoBytesSent = videoBytes;
+        lastAudioBytesSent = audioBytes;
+
+        long dropped = stats.getDroppedFrames() - lastDroppedFrames;
+        lastDroppedFrames = stats.getDroppedFrames();
+        if (bitrateController == null || status != StreamingStatus.STREAMING) {
+            return;
+        }
+        // 带宽估计包含音频，扣除音频码率后作为视频上限
+        int estimated = stats.getEstimatedBandwidthKbps();
+        int videoEstimate = estimated > 0 ? Math.max(1, estimated - (int) stats.getAudioBitrate()) : -1;
+        AdaptiveBitrateController.Decision decision = bitrateController.update(
+                session.getVideoQueueRatio(), stats.getVideoBitrate(),
+                session.getRttMs(), session.getMinRttMs(), dropped, videoEstimate);
+        if (decision == null) {
+            return;
+        }
+        session.setVideoBitrate(decision.getNewBitrate());
+        stats.setTargetVideoBitrate(decision.getNewBitrate());
+        StreamingLog.d(TAG, String.format("自适应码率: %dkbps -> %dkbps (%s)",
+                decision.getOldBitrate(), decision.getNewBitrate(), decision.getReason()));
+        if (callback != null) {
+            callback.onBitrateChanged(decision.getOldBitrate(), decision.getNewBitrate(), decision.getReason());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.douyin.streaming.streaming.scheduler;
+
+/**
+ * 时钟
+ * 核心模块中需要读取时间的组件通过此接口取时，测试和压测时可替换为可控的实现
+ */
+public interface Clock {
+    /**
+     * 单调时间 (纳秒)，只用于计算间隔
+     */
+    long nanoTime();
+
+    /**
+     * 墙上时间 (毫秒)
+     */
+    long currentTimeMillis();
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+}
@@ -0,0 +1,139 @@
+package com.douyin.streaming.streaming.scheduler;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推流定时任务调度
+ * 由StreamingManager持有，所有协议的统计、看门狗、码率调整等周期任务共用一个定时线程，
+ * 推流启停只增删任务，不创建线程；release()取消全部任务并等待线程退出。
+ */
+public final class StreamingScheduler {
+    private static final String TAG = "StreamingScheduler";
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
+
+    /**
+     * 已注册的任务，取消后不再执行
+     */
+    public interface Task {
+        void cancel();
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Set<TaskHandle> tasks = Collections.newSetFromMap(new ConcurrentHashMap<TaskHandle, Boolean>());
+
+    public StreamingScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "StreamingTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 取消的任务立即移出队列，避免反复启停后堆积
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * 注册固定频率的周期任务
+     * 任务在共享线程上执行，不应阻塞；抛出的异常只记录日志，不影响后续执行
+     * @param name 任务名，用于日志
+     */
+    public Task schedulePeriodic(String name, Runnable task, long initialDelayMs, long periodMs) {
+        TaskHandle handle = new TaskHandle(name, task, false);
+        tasks.add(handle);
+        try {
+            handle.future = executor.scheduleAtFixedRate(handle, initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(handle);
+            StreamingLog.w(TAG, "调度器已释放，忽略任务: " + name);
+        }
+        return handle;
+    }
+
+    /**
+     * 注册单次延迟任务
+     */
+    public Task schedule(String name, Runnable task, long delayMs) {
+        TaskHandle handle = new TaskHandle(name, task, true);
+        tasks.add(handle);
+        try {
+            handle.future = executor.schedule(handle, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(handle);
+            StreamingLog.w(TAG, "调度器已释放，忽略任务: " + name);
+        }
+        return handle;
+    }
+
+    /**
+     * 当前注册的任务数
+     */
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * 取消全部任务并等待定时线程退出，此后注册的任务不会执行
+     */
+    public void release() {
+        for (TaskHandle handle : tasks) {
+            handle.cancel();
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                StreamingLog.w(TAG, "定时线程未在" + SHUTDOWN_TIMEOUT_MS + "ms内退出");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class TaskHandle implements Task, Runnable {
+        final String name;
+        final Runnable task;
+        final boolean oneShot;
+        volatile ScheduledFuture<?> future;
+        volatile boolean cancelled;
+
+        TaskHandle(String name, Runnable task, boolean oneShot) {
+            this.name = name;
+            this.task = task;
+            this.oneShot = oneShot;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                StreamingLog.e(TAG, "定时任务异常: " + name, e);
+            } finally {
+                if (oneShot) {
+                    tasks.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+            tasks.remove(this);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.douyin.streaming.streaming.stats;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 接收端逐帧延迟统计
+ * 按音视频分别记录每帧从采集到接收端收齐的延迟，计算分位数、RFC 3550到达抖动和接收速率。
+ * 采集时间和到达时间须来自同一时钟，即接收端与推流端在同一进程内。
+ * 延迟样本保存在预分配的环形数组中，超出容量后保留最近的样本。
+ */
+public class IngestLatencyTracker {
+    private static final int DEFAULT_SAMPLE_CAPACITY = 1 << 16;
+
+    private final Track video;
+    private final Track audio;
+
+    public IngestLatencyTracker() {
+        this(DEFAULT_SAMPLE_CAPACITY);
+    }
+
+    /**
+     * @param sampleCapacity 每路保留的延迟样本数
+     */
+    public IngestLatencyTracker(int sampleCapacity) {
+        this.video = new Track(sampleCapacity);
+        this.audio = new Track(sampleCapacity);
+    }
+
+    /**
+     * 记录一帧，在接收线程上调用
+     * @param captureNanos 帧的采集时间
+     * @param arrivalNanos 帧在接收端收齐的时间
+     * @param bytes 帧大小
+     */
+    public void record(boolean isVideo, long captureNanos, long arrivalNanos, int bytes) {
+        Track track = isVideo ? video : audio;
+        synchronized (track) {
+            track.record(captureNanos, arrivalNanos, bytes);
+        }
+    }
+
+    /**
+     * 清空统计，用于丢弃预热阶段的数据
+     */
+    public void reset() {
+        synchronized (video) {
+            video.reset();
+        }
+        synchronized (audio) {
+            audio.reset();
+        }
+    }
+
+    public TrackReport getVideoReport() {
+        synchronized (video) {
+            return video.report();
+        }
+    }
+
+    public TrackReport getAudioReport() {
+        synchronized (audio) {
+            return audio.report();
+        }
+    }
+
+    /**
+     * 单路统计结果，时间单位为毫秒
+     */
+    public static final class TrackReport {
+        private final long frames;
+        private final long bytes;
+        private final double meanMs;
+        private final double p50Ms;
+        private final double p95Ms;
+        private final double p99Ms;
+        private final double maxMs;
+        private final double jitterMs;
+        private final double throughputKbps;
+
+        TrackReport(long frames, long bytes, double meanMs, double p50Ms, double p95Ms, double p99Ms,
+                    double maxMs, double jitterMs, double throughputKbps) {
+            this.frames = frames;
+            this.bytes = bytes;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+            this.jitterMs = jitterMs;
+            this.throughputKbps = throughputKbps;
+        }
+
+        public long getFrames() { return frames; }
+
+        public long getBytes() { return bytes; }
+
+        public double getMeanMs() { return meanMs; }
+
+        public double getP50Ms() { return p50Ms; }
+
+        public double getP95Ms() { return p95Ms; }
+
+        public double getP99Ms() { return p99Ms; }
+
+        public double getMaxMs() { return maxMs; }
+
+        /**
+         * RFC 3550到达抖动：相邻两帧传输时间之差的平滑均值
+         */
+        public double getJitterMs() { return jitterMs; }
+
+        /**
+         * 第一帧到最后一帧到达之间的接收速率
+         */
+        public double getThroughputKbps() { return throughputKbps; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "帧数=%d 延迟(ms) 平均=%.2f p50=%.2f p95=%.2f p99=%.2f 最大=%.2f 抖动=%.3fms 速率=%.0fkbps",
+                    frames, meanMs, p50Ms, p95Ms, p99Ms, maxMs, jitterMs, throughputKbps);
+        }
+    }
+
+    private static final class Track {
+        private final long[] samples;
+        private int sampleCount;
+        private int next;
+        private long frames;
+        private long bytes;
+        private long latencySum;
+        private long maxLatency;
+        private long firstArrival;
+        private long lastArrival;
+        private long lastTransit;
+        private double jitter;
+
+        Track(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        void record(long captureNanos, long arrivalNanos, int size) {
+            long transit = arrivalNanos - captureNanos;
+            if (frames == 0) {
+                firstArrival = arrivalNanos;
+            } else {
+                double d = Math.abs(transit - lastTransit);
+                jitter += (d - jitter) / 16;
+            }
+            lastTransit = transit;
+            lastArrival = arrivalNanos;
+            frames++;
+            bytes += size;
+            latencySum += transit;
+            maxLatency = Math.max(maxLatency, transit);
+
+            samples[next] = transit;
+            next = next + 1 == samples.length ? 0 : next + 1;
+            sampleCount = Math.min(sampleCount + 1, samples.length);
+        }
+
+        void reset() {
+            sampleCount = 0;
+            next = 0;
+            frames = 0;
+            bytes = 0;
+            latencySum = 0;
+            maxLatency = 0;
+            firstArrival = 0;
+            lastArrival = 0;
+            lastTransit = 0;
+            jitter = 0;
+        }
+
+        TrackReport report() {
+            if (frames == 0) {
+                return new TrackReport(0, 0, 0, 0, 0, 0, 0, 0, 0);
+            }
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            long span = lastArrival - firstArrival;
+            double throughput = span > 0 ? bytes * 8.0 * 1000000 / span : 0;
+            return new TrackReport(frames, bytes, toMs(latencySum / (double) frames),
+                    toMs(percentile(sorted, 0.50)), toMs(percentile(sorted, 0.95)),
+                    toMs(percentile(sorted, 0.99)), toMs(maxLatency), toMs(jitter), throughput);
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+
+        private static double toMs(double nanos) {
+            return nanos / 1000000.0;
+        }
+    }
+}
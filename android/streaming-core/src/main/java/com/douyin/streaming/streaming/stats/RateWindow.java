@@ -0,0 +1,82 @@
+package com.douyin.streaming.streaming.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按秒采样的滑动窗口
+ * 统计线程每秒写入一次累计值，环形保存最近的采样，可按1-30秒任意窗口计算速率，
+ * 同时维护每秒速率的指数加权平均。只有一个写入线程，读取方无锁。
+ */
+public final class RateWindow {
+    public static final int MAX_WINDOW_SECONDS = 30;
+    // 窗口两端都需要采样，留出余量避免读取时被覆盖
+    private static final int SLOTS = 64;
+    private static final int MASK = SLOTS - 1;
+
+    private final AtomicLongArray totals = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray times = new AtomicLongArray(SLOTS);
+    private final double alpha;
+    private volatile long samples;
+    private volatile double ewma;
+
+    /**
+     * @param alpha 指数加权平均中最新一秒的权重 (0-1)
+     */
+    public RateWindow(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * 写入累计值，只在统计线程上调用
+     * @param total 单调递增的累计值
+     */
+    public void sample(long total, long nowNanos) {
+        long n = samples;
+        int index = (int) n & MASK;
+        totals.set(index, total);
+        times.set(index, nowNanos);
+        if (n > 0) {
+            double rate = rateBetween(n - 1, n);
+            ewma = n == 1 ? rate : ewma + alpha * (rate - ewma);
+        }
+        samples = n + 1;
+    }
+
+    /**
+     * 最近seconds秒的平均速率 (每秒)，采样不足时使用已有的全部采样
+     */
+    public double rate(int seconds) {
+        long last = samples - 1;
+        if (last < 1) {
+            return 0;
+        }
+        int span = Math.max(1, Math.min(seconds, MAX_WINDOW_SECONDS));
+        return rateBetween(Math.max(0, last - span), last);
+    }
+
+    /**
+     * 每秒速率的指数加权平均
+     */
+    public double ewma() {
+        return ewma;
+    }
+
+    /**
+     * 清空采样，在新会话开始前调用
+     */
+    public void reset() {
+        samples = 0;
+        ewma = 0;
+    }
+
+    private double rateBetween(long from, long to) {
+        int a = (int) from & MASK;
+        int b = (int) to & MASK;
+        long nanos = times.get(b) - times.get(a);
+        if (nanos <= 0) {
+            return 0;
+        }
+        // 会话重建后累计值可能回退，此时不计负速率
+        return Math.max(0, totals.get(b) - totals.get(a)) * 1e9 / nanos;
+    }
+}
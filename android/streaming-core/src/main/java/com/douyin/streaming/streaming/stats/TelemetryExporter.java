@@ -0,0 +1,194 @@
+package com.douyin.streaming.streaming.stats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * 推流遥测文件导出
+ * 读取TelemetryRecorder写入的会话文件，按时间顺序导出为CSV或JSON，
+ * 码率、帧率和丢帧数由相邻记录的累计值之差计算，编码器停顿时长为记录时间与最近一帧编码输出时间之差。只依赖JDK，可在工作站上直接运行:
+ *   javac -d out TelemetryFormat.java TelemetryExporter.java
+ *   java -cp out com.douyin.streaming.streaming.stats.TelemetryExporter session.stlm csv > session.csv
+ */
+public final class TelemetryExporter {
+    private static final String[] COLUMNS = {
+            "time_ms", "status", "bytes_sent", "bitrate_kbps", "video_frames", "fps", "audio_frames",
+            "dropped_frames", "drops", "queue_depth", "target_bitrate_kbps", "rtt_ms",
+            "send_time_us", "max_send_time_us", "retry_count", "encoder_output_ms", "encoder_idle_ms"
+    };
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final long count;
+    private final int version;
+    private final int recordSize;
+
+    public TelemetryExporter(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < TelemetryFormat.HEADER_SIZE
+                || buffer.getInt(TelemetryFormat.HEADER_MAGIC) != TelemetryFormat.MAGIC) {
+            throw new IOException("不是推流遥测文件: " + file);
+        }
+        version = buffer.getInt(TelemetryFormat.HEADER_VERSION);
+        recordSize = buffer.getInt(TelemetryFormat.HEADER_RECORD_SIZE);
+        if (!(version == TelemetryFormat.VERSION && recordSize == TelemetryFormat.RECORD_SIZE)
+                && !(version == 1 && recordSize == TelemetryFormat.RECORD_SIZE_V1)) {
+            throw new IOException("不支持的遥测文件版本: " + version);
+        }
+        capacity = buffer.getInt(TelemetryFormat.HEADER_CAPACITY);
+        count = buffer.getLong(TelemetryFormat.HEADER_COUNT);
+    }
+
+    /**
+     * 文件中保留的记录数，写满后为容量
+     */
+    public int getRecordCount() {
+        return (int) Math.min(count, capacity);
+    }
+
+    public long getStartTimeMs() {
+        return buffer.getLong(TelemetryFormat.HEADER_START_TIME);
+    }
+
+    public void writeCsv(Writer out) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(COLUMNS[i]);
+        }
+        out.write('\n');
+
+        Object[] row = new Object[COLUMNS.length];
+        int records = getRecordCount();
+        for (int i = 0; i < records; i++) {
+            readRow(i, row);
+            for (int c = 0; c < row.length; c++) {
+                if (c > 0) {
+                    out.write(',');
+                }
+                out.write(format(row[c]));
+            }
+            out.write('\n');
+        }
+    }
+
+    public void writeJson(Writer out) throws IOException {
+        out.write(String.format(Locale.US, "{\"start_time_ms\":%d,\"interval_ms\":%d,"
+                        + "\"video_bitrate_kbps\":%d,\"video_fps\":%d,\"records\":[",
+                getStartTimeMs(), buffer.getInt(TelemetryFormat.HEADER_INTERVAL),
+                buffer.getInt(TelemetryFormat.HEADER_VIDEO_BITRATE), buffer.getInt(TelemetryFormat.HEADER_VIDEO_FPS)));
+
+        Object[] row = new Object[COLUMNS.length];
+        int records = getRecordCount();
+        for (int i = 0; i < records; i++) {
+            readRow(i, row);
+            out.write(i > 0 ? ",\n{" : "\n{");
+            for (int c = 0; c < row.length; c++) {
+                if (c > 0) {
+                    out.write(',');
+                }
+                out.write('"');
+                out.write(COLUMNS[c]);
+                out.write("\":");
+                out.write(row[c] instanceof String ? "\"" + row[c] + "\"" : format(row[c]));
+            }
+            out.write('}');
+        }
+        out.write("\n]}\n");
+    }
+
+    /**
+     * 读取按时间顺序的第index条记录，速率按与上一条记录之差计算
+     */
+    private void readRow(int index, Object[] row) {
+        int current = recordOffset(index);
+        long timeNanos = buffer.getLong(current + TelemetryFormat.TIME);
+        long bytes = buffer.getLong(current + TelemetryFormat.BYTES_SENT);
+        long videoFrames = buffer.getLong(current + TelemetryFormat.VIDEO_FRAMES);
+        long dropped = buffer.getLong(current + TelemetryFormat.DROPPED_FRAMES);
+
+        double bitrate = 0;
+        double fps = 0;
+        long drops = 0;
+        if (index > 0) {
+            int previous = recordOffset(index - 1);
+            long nanos = timeNanos - buffer.getLong(previous + TelemetryFormat.TIME);
+            if (nanos > 0) {
+                // 会话重建后累计值可能回退，此时不计负值
+                bitrate = Math.max(0, bytes - buffer.getLong(previous + TelemetryFormat.BYTES_SENT)) * 8e6 / nanos;
+                fps = Math.max(0, videoFrames - buffer.getLong(previous + TelemetryFormat.VIDEO_FRAMES)) * 1e9 / nanos;
+            }
+            drops = Math.max(0, dropped - buffer.getLong(previous + TelemetryFormat.DROPPED_FRAMES));
+        }
+
+        int status = buffer.getShort(current + TelemetryFormat.STATUS);
+        row[0] = timeNanos / 1e6;
+        row[1] = status >= 0 && status < TelemetryFormat.STATUS_NAMES.length
+                ? TelemetryFormat.STATUS_NAMES[status] : String.valueOf(status);
+        row[2] = bytes;
+        row[3] = bitrate;
+        row[4] = videoFrames;
+        row[5] = fps;
+        row[6] = buffer.getLong(current + TelemetryFormat.AUDIO_FRAMES);
+        row[7] = dropped;
+        row[8] = drops;
+        row[9] = buffer.getInt(current + TelemetryFormat.QUEUE_DEPTH);
+        row[10] = buffer.getInt(current + TelemetryFormat.TARGET_BITRATE);
+        row[11] = (double) buffer.getFloat(current + TelemetryFormat.RTT);
+        row[12] = (double) buffer.getFloat(current + TelemetryFormat.SEND_TIME);
+        row[13] = buffer.getInt(current + TelemetryFormat.MAX_SEND_TIME);
+        row[14] = (int) buffer.getShort(current + TelemetryFormat.RETRY_COUNT);
+        long encoderNanos = version >= 2 ? buffer.getLong(current + TelemetryFormat.ENCODER_OUTPUT_TIME) : -1;
+        row[15] = encoderNanos >= 0 ? encoderNanos / 1e6 : -1.0;
+        row[16] = encoderNanos >= 0 ? Math.max(0, timeNanos - encoderNanos) / 1e6 : -1.0;
+    }
+
+    private int recordOffset(int index) {
+        // 写满后最旧的记录位于下一个写入位置
+        long first = count > capacity ? count - capacity : 0;
+        int slot = (int) ((first + index) % capacity);
+        return TelemetryFormat.HEADER_SIZE + slot * recordSize;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            return String.format(Locale.US, "%.3f", (Double) value);
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * 命令行导出，结果写到标准输出
+     * 参数: 遥测文件 [csv|json]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: TelemetryExporter <文件.stlm> [csv|json]");
+            System.exit(2);
+        }
+        TelemetryExporter exporter = new TelemetryExporter(new File(args[0]));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.forName("UTF-8")));
+        if (args.length > 1 && "json".equalsIgnoreCase(args[1])) {
+            exporter.writeJson(out);
+        } else {
+            exporter.writeCsv(out);
+        }
+        out.flush();
+    }
+}
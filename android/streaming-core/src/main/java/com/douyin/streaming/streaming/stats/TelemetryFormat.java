@@ -0,0 +1,73 @@
+package com.douyin.streaming.streaming.stats;
+
+/**
+ * 推流遥测文件格式
+ * 文件由64字节文件头和固定数量的72字节记录组成，小端字节序；记录区写满后从头覆盖，保留最近的记录。
+ * 版本1的记录为64字节，没有编码输出时间。
+ *
+ * 文件头:
+ *   0  int   魔数 'STLM'
+ *   4  int   版本
+ *   8  int   记录大小
+ *   12 int   记录容量
+ *   16 long  开始时间 (毫秒，System.currentTimeMillis)
+ *   24 long  已写入的记录总数，每条记录写完后更新
+ *   32 int   采样间隔 (毫秒)
+ *   36 int   配置的视频码率 (kbps)
+ *   40 int   配置的视频帧率
+ *
+ * 记录:
+ *   0  long  相对开始时间的纳秒数
+ *   8  long  累计发送字节数
+ *   16 long  累计发送视频帧数
+ *   24 long  累计发送音频帧数
+ *   32 long  累计丢弃帧数
+ *   40 int   发送队列深度 (帧)
+ *   44 int   编码目标码率 (kbps)
+ *   48 float 往返时延 (毫秒)，未知时为-1
+ *   52 float 单包平均写入耗时 (微秒)
+ *   56 int   单包最大写入耗时 (微秒)
+ *   60 short 推流状态，StreamingStatus的序号
+ *   62 short 重连次数
+ *   64 long  最近一帧视频编码输出的时间，相对开始时间的纳秒数；尚无输出或FFmpeg推流时为-1
+ */
+final class TelemetryFormat {
+    static final int MAGIC = 0x4D4C5453; // "STLM"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 72;
+    // 版本1的记录大小，导出时兼容
+    static final int RECORD_SIZE_V1 = 64;
+
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 8;
+    static final int HEADER_CAPACITY = 12;
+    static final int HEADER_START_TIME = 16;
+    static final int HEADER_COUNT = 24;
+    static final int HEADER_INTERVAL = 32;
+    static final int HEADER_VIDEO_BITRATE = 36;
+    static final int HEADER_VIDEO_FPS = 40;
+
+    static final int TIME = 0;
+    static final int BYTES_SENT = 8;
+    static final int VIDEO_FRAMES = 16;
+    static final int AUDIO_FRAMES = 24;
+    static final int DROPPED_FRAMES = 32;
+    static final int QUEUE_DEPTH = 40;
+    static final int TARGET_BITRATE = 44;
+    static final int RTT = 48;
+    static final int SEND_TIME = 52;
+    static final int MAX_SEND_TIME = 56;
+    static final int STATUS = 60;
+    static final int RETRY_COUNT = 62;
+    static final int ENCODER_OUTPUT_TIME = 64;
+
+    // 与StreamingProtocol.StreamingStatus的声明顺序一致，导出时不依赖Android代码
+    static final String[] STATUS_NAMES = {
+            "IDLE", "CONNECTING", "CONNECTED", "STREAMING", "PAUSED", "ERROR", "DISCONNECTED"
+    };
+
+    private TelemetryFormat() {
+    }
+}
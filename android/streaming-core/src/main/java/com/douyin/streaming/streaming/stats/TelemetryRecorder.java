@@ -0,0 +1,140 @@
+package com.douyin.streaming.streaming.stats;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 推流遥测记录
+ * 按固定间隔把推流指标追加为定长二进制记录，写入内存映射文件，写入路径不分配对象、不执行系统调用；
+ * 进程异常退出时已写入的记录仍由系统写回文件。文件格式见TelemetryFormat，可用TelemetryExporter导出。
+ */
+public final class TelemetryRecorder {
+    private static final String TAG = "TelemetryRecorder";
+    public static final String FILE_SUFFIX = ".stlm";
+    // 10Hz采样约可保存55分钟，文件约2.3MB
+    private static final int DEFAULT_CAPACITY = 32 * 1024;
+    // 目录中保留的会话文件数
+    private static final int MAX_SESSION_FILES = 8;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long startNanos;
+    // 只在记录线程上访问
+    private long count;
+
+    /**
+     * 在目录中创建新的会话文件，并删除最旧的会话文件
+     * @param prefix 文件名前缀，如协议名
+     */
+    public static TelemetryRecorder openSession(File dir, String prefix, int intervalMs,
+                                                int videoBitrate, int videoFps) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建遥测目录: " + dir);
+        }
+        pruneSessions(dir, MAX_SESSION_FILES - 1);
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(dir, prefix + "-" + time + FILE_SUFFIX);
+        return new TelemetryRecorder(file, DEFAULT_CAPACITY, intervalMs, videoBitrate, videoFps);
+    }
+
+    public TelemetryRecorder(File file, int capacity, int intervalMs, int videoBitrate, int videoFps)
+            throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        long size = TelemetryFormat.HEADER_SIZE + (long) capacity * TelemetryFormat.RECORD_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            // 映射在通道关闭后仍然有效
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        startNanos = System.nanoTime();
+
+        buffer.putInt(TelemetryFormat.HEADER_MAGIC, TelemetryFormat.MAGIC);
+        buffer.putInt(TelemetryFormat.HEADER_VERSION, TelemetryFormat.VERSION);
+        buffer.putInt(TelemetryFormat.HEADER_RECORD_SIZE, TelemetryFormat.RECORD_SIZE);
+        buffer.putInt(TelemetryFormat.HEADER_CAPACITY, capacity);
+        buffer.putLong(TelemetryFormat.HEADER_START_TIME, System.currentTimeMillis());
+        buffer.putLong(TelemetryFormat.HEADER_COUNT, 0);
+        buffer.putInt(TelemetryFormat.HEADER_INTERVAL, intervalMs);
+        buffer.putInt(TelemetryFormat.HEADER_VIDEO_BITRATE, videoBitrate);
+        buffer.putInt(TelemetryFormat.HEADER_VIDEO_FPS, videoFps);
+        StreamingLog.d(TAG, "遥测记录文件: " + file);
+    }
+
+    /**
+     * 追加一条记录，只在记录线程上调用
+     * @param rttMs 往返时延，未知时为-1
+     * @param status 推流状态序号
+     * @param encoderOutputNanos 最近一帧视频编码输出的System.nanoTime，未知时为-1
+     */
+    public void append(long nowNanos, long bytesSent, long videoFrames, long audioFrames, long droppedFrames,
+                       int queueDepth, int targetBitrate, double rttMs, double sendTimeUs, long maxSendTimeUs,
+                       int status, long retryCount, long encoderOutputNanos) {
+        int base = TelemetryFormat.HEADER_SIZE + (int) (count % capacity) * TelemetryFormat.RECORD_SIZE;
+        buffer.putLong(base + TelemetryFormat.TIME, nowNanos - startNanos);
+        buffer.putLong(base + TelemetryFormat.BYTES_SENT, bytesSent);
+        buffer.putLong(base + TelemetryFormat.VIDEO_FRAMES, videoFrames);
+        buffer.putLong(base + TelemetryFormat.AUDIO_FRAMES, audioFrames);
+        buffer.putLong(base + TelemetryFormat.DROPPED_FRAMES, droppedFrames);
+        buffer.putInt(base + TelemetryFormat.QUEUE_DEPTH, queueDepth);
+        buffer.putInt(base + TelemetryFormat.TARGET_BITRATE, targetBitrate);
+        buffer.putFloat(base + TelemetryFormat.RTT, (float) rttMs);
+        buffer.putFloat(base + TelemetryFormat.SEND_TIME, (float) sendTimeUs);
+        buffer.putInt(base + TelemetryFormat.MAX_SEND_TIME, (int) Math.min(maxSendTimeUs, Integer.MAX_VALUE));
+        buffer.putShort(base + TelemetryFormat.STATUS, (short) status);
+        buffer.putShort(base + TelemetryFormat.RETRY_COUNT, (short) Math.min(retryCount, Short.MAX_VALUE));
+        buffer.putLong(base + TelemetryFormat.ENCODER_OUTPUT_TIME,
+                encoderOutputNanos >= 0 ? encoderOutputNanos - startNanos : -1);
+        // 记录写完后再更新计数，读取方不会看到写了一半的记录
+        count++;
+        buffer.putLong(TelemetryFormat.HEADER_COUNT, count);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRecordCount() {
+        return count;
+    }
+
+    /**
+     * 把已写入的记录刷到文件，停止记录时调用
+     */
+    public void close() {
+        try {
+            buffer.force();
+        } catch (RuntimeException e) {
+            StreamingLog.w(TAG, "写回遥测文件失败", e);
+        }
+        StreamingLog.d(TAG, "遥测记录结束: " + file.getName() + ", " + count + "条");
+    }
+
+    private static void pruneSessions(File dir, int keep) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null || files.length <= keep) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - keep; i++) {
+            if (!files[i].delete()) {
+                StreamingLog.w(TAG, "删除旧遥测文件失败: " + files[i]);
+            }
+        }
+    }
+}
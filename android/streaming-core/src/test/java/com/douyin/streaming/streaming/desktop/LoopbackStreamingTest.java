@@ -0,0 +1,159 @@
+package com.douyin.streaming.streaming.desktop;
+
+import com.douyin.streaming.streaming.log.StreamingLog;
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.muxer.FlvTagWriter;
+import com.douyin.streaming.streaming.network.rtmp.RtmpIngestServer;
+import com.douyin.streaming.streaming.network.rtmp.RtmpUrl;
+import com.douyin.streaming.streaming.scheduler.Clock;
+import com.douyin.streaming.streaming.stats.IngestLatencyTracker;
+import com.douyin.streaming.utils.StreamingConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本机回环地址上的推流测试
+ * 合成帧经完整的队列和FLV/RTMP发送链路推流到RtmpIngestServer，校验每帧都按顺序到达、没有丢帧、时间戳连续。
+ * 按实际时间推流，延迟阈值放宽到只发现明显的阻塞；严格的延迟和抖动阈值由latencyCheck任务手动检查。
+ */
+public class LoopbackStreamingTest {
+    private static final int STREAM_SECONDS = 3;
+    private static final int TIMEOUT_SECONDS = 10;
+    private static final double MAX_P95_MS = 500;
+
+    private final List<Tag> videoTags = new ArrayList<>();
+    private final List<Tag> audioTags = new ArrayList<>();
+    private final IngestLatencyTracker tracker = new IngestLatencyTracker();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private final AtomicLong videoFramesSent = new AtomicLong();
+    private final AtomicLong audioFramesSent = new AtomicLong();
+    private volatile String error;
+
+    private StreamingConfig config;
+    private RtmpIngestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        StreamingLog.setMinPriority(StreamingLog.WARN);
+        config = new StreamingConfig(StreamingConfig.QualityPreset.MEDIUM);
+        config.setEnableAdaptiveBitrate(false);
+        server = new RtmpIngestServer(receiver, Clock.SYSTEM);
+        server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void everyFrameArrivesInOrder() throws Exception {
+        SyntheticStreamingSession session = new SyntheticStreamingSession(config,
+                RtmpUrl.parse(server.getUrl("live", "loopback")), Clock.SYSTEM, sessionListener);
+        session.start();
+        assertTrue("推流未能连接", connected.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(TimeUnit.SECONDS.toMillis(STREAM_SECONDS));
+        session.stop();
+        assertTrue("接收端连接未结束", closed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertNull(error);
+        assertEquals(0, session.getDroppedFrames());
+        synchronized (this) {
+            // 发送线程已退出，发出的每帧都应到达
+            assertEquals(videoFramesSent.get(), videoTags.size());
+            assertEquals(audioFramesSent.get(), audioTags.size());
+            assertTrue(videoTags.size() >= config.getVideoFps() * (STREAM_SECONDS - 1));
+            assertTrue("第一帧视频应为关键帧", videoTags.get(0).keyFrame);
+            assertContinuous("视频", videoTags, 1000.0 / config.getVideoFps());
+            assertContinuous("音频", audioTags, 1024 * 1000.0 / config.getAudioSampleRate());
+        }
+        IngestLatencyTracker.TrackReport video = tracker.getVideoReport();
+        IngestLatencyTracker.TrackReport audio = tracker.getAudioReport();
+        assertTrue("视频 " + video, video.getP95Ms() <= MAX_P95_MS);
+        assertTrue("音频 " + audio, audio.getP95Ms() <= MAX_P95_MS);
+    }
+
+    /**
+     * 相邻帧的毫秒时间戳之差只能是帧间隔向下或向上取整
+     */
+    private static void assertContinuous(String track, List<Tag> tags, double intervalMs) {
+        long min = (long) Math.floor(intervalMs);
+        long max = (long) Math.ceil(intervalMs);
+        for (int i = 1; i < tags.size(); i++) {
+            long delta = tags.get(i).timestamp - tags.get(i - 1).timestamp;
+            assertTrue(String.format("%s第%d帧时间戳不连续: %d -> %d", track, i,
+                    tags.get(i - 1).timestamp, tags.get(i).timestamp), delta >= min && delta <= max);
+        }
+    }
+
+    private final RtmpIngestServer.Listener receiver = new RtmpIngestServer.Listener() {
+        @Override
+        public void onPublish(String app, String streamName) {
+        }
+
+        @Override
+        public void onMedia(int type, int timestamp, ByteBuffer body, long arrivalNanos) {
+            long captureNanos = SyntheticFrameSource.readCaptureNanos(type, body);
+            // 序列头不计入
+            if (captureNanos < 0) {
+                return;
+            }
+            boolean video = type == FlvTagWriter.TAG_VIDEO;
+            tracker.record(video, captureNanos, arrivalNanos, body.remaining());
+            // 视频标签头第一个字节的高4位为1表示关键帧
+            boolean keyFrame = video && (body.get(body.position()) >> 4) == 1;
+            synchronized (LoopbackStreamingTest.this) {
+                (video ? videoTags : audioTags).add(new Tag(timestamp, keyFrame));
+            }
+        }
+
+        @Override
+        public void onClosed(IOException e) {
+            closed.countDown();
+        }
+    };
+
+    private final SyntheticStreamingSession.Listener sessionListener = new SyntheticStreamingSession.Listener() {
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onPacketSent(MediaFrame frame, long bytes, long sendNanos) {
+            if (!frame.isConfig()) {
+                (frame.isVideo() ? videoFramesSent : audioFramesSent).incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(String message) {
+            error = message;
+        }
+    };
+
+    private static final class Tag {
+        final long timestamp;
+        final boolean keyFrame;
+
+        Tag(long timestamp, boolean keyFrame) {
+            this.timestamp = timestamp;
+            this.keyFrame = keyFrame;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.douyin.streaming.streaming.network;
+
+import com.douyin.streaming.streaming.scheduler.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 令牌桶发送节拍测试，以可控时钟校验放行量和补充速率
+ * 2400kbps、30fps时桶深为10000字节，基础补充速率为目标码率的4倍，即1.2字节/微秒
+ */
+public class TokenBucketPacerTest {
+    private static final int BITRATE_KBPS = 2400;
+    private static final int FPS = 30;
+    private static final int BUCKET_BYTES = 10000;
+    private static final int MIN_GRANT_BYTES = 4096;
+
+    private final FakeClock clock = new FakeClock();
+    private final TokenBucketPacer pacer = new TokenBucketPacer(FPS, clock);
+
+    @Before
+    public void setUp() {
+        pacer.setTargetBitrate(BITRATE_KBPS);
+        pacer.beginFrame(0);
+    }
+
+    @Test
+    public void unlimitedGrantsEverything() {
+        pacer.setTargetBitrate(0);
+        assertEquals(1000000, pacer.acquire(1000000));
+    }
+
+    @Test
+    public void startsWithFullBucket() {
+        assertEquals(1000, pacer.acquire(1000));
+        assertGrant(BUCKET_BYTES, pacer.acquire(50000));
+    }
+
+    @Test
+    public void refillsAtPacingRate() {
+        drain();
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(5));
+        assertGrant(6000, pacer.acquire(50000));
+        pacer.onSent(6000);
+        // 桶满后不再累积
+        clock.advance(TimeUnit.SECONDS.toNanos(1));
+        assertGrant(BUCKET_BYTES, pacer.acquire(50000));
+    }
+
+    @Test
+    public void largeFrameRaisesRefillRate() {
+        drain();
+        // 40000字节须在帧间隔的80%内发完：40000 / 26.67ms = 1.5字节/微秒，高于基础速率
+        pacer.beginFrame(40000);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(4));
+        assertGrant(6000, pacer.acquire(50000));
+        pacer.onSent(6000);
+        // 帧结束后恢复基础速率
+        pacer.endFrame();
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(4));
+        assertGrant(4800, pacer.acquire(50000));
+    }
+
+    @Test
+    public void waitsForMinimumGrantAndRecordsQueueDelay() {
+        drain();
+        pacer.pollMaxQueueDelayMs();
+        // 每次读取时钟前进1ms，等待循环按时钟而不是实际时间结束
+        clock.step = TimeUnit.MILLISECONDS.toNanos(1);
+        assertEquals(MIN_GRANT_BYTES, pacer.acquire(MIN_GRANT_BYTES));
+        pacer.endFrame();
+        // 攒够4096字节需要4096 / 1.2 = 3.41ms，时钟读取的步长使实际等待至多多出2ms
+        double delayMs = pacer.pollMaxQueueDelayMs();
+        assertTrue("排队时延" + delayMs, delayMs >= 3.41 && delayMs <= 3.41 + 2);
+        assertEquals(0, pacer.pollMaxQueueDelayMs(), 0);
+    }
+
+    /**
+     * 令牌按浮点累计，放行量取整后允许差1字节
+     */
+    private static void assertGrant(int expected, int granted) {
+        assertEquals(expected, granted, 1);
+    }
+
+    /**
+     * 取走满桶的令牌
+     */
+    private void drain() {
+        assertGrant(BUCKET_BYTES, pacer.acquire(BUCKET_BYTES));
+        pacer.onSent(BUCKET_BYTES);
+    }
+
+    /**
+     * 手动前进的时钟，step不为0时每次读取后自动前进step
+     */
+    private static final class FakeClock implements Clock {
+        // 0表示节拍未开始，时钟从非0开始
+        private long now = TimeUnit.SECONDS.toNanos(1);
+        long step;
+
+        void advance(long nanos) {
+            now += nanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            long current = now;
+            now += step;
+            return current;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(now);
+        }
+    }
+}
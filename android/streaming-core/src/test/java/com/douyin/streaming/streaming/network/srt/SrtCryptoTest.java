@@ -0,0 +1,90 @@
+package com.douyin.streaming.streaming.network.srt;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * SRT加密测试
+ * 密钥封装取RFC 3394第4.1和4.6节的向量；密钥材料消息和负载加密以收发两端往返校验
+ */
+public class SrtCryptoTest {
+    private static final String PASSPHRASE = "correct horse battery";
+
+    @Test
+    public void wrapMatchesRfc3394() throws Exception {
+        byte[] kek = hex("000102030405060708090A0B0C0D0E0F");
+        byte[] key = hex("00112233445566778899AABBCCDDEEFF");
+        byte[] wrapped = hex("1FA68B0A8112B447AEF34BD8FB5A7B829D3E862371D2CFE5");
+        assertArrayEquals(wrapped, SrtCrypto.wrap(kek, key));
+        assertArrayEquals(key, SrtCrypto.unwrap(kek, wrapped));
+    }
+
+    @Test
+    public void wrap256MatchesRfc3394() throws Exception {
+        byte[] kek = hex("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F");
+        byte[] key = hex("00112233445566778899AABBCCDDEEFF000102030405060708090A0B0C0D0E0F");
+        byte[] wrapped = hex("28C9F404C4B810F4CBCCB35CFB87F8263F5786E2D80ED326"
+                + "CBC7F0E71A99F43BFB988B9B7A02DD21");
+        assertArrayEquals(wrapped, SrtCrypto.wrap(kek, key));
+        assertArrayEquals(key, SrtCrypto.unwrap(kek, wrapped));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void unwrapRejectsTamperedKey() throws Exception {
+        byte[] wrapped = hex("1FA68B0A8112B447AEF34BD8FB5A7B829D3E862371D2CFE5");
+        wrapped[10] ^= 1;
+        SrtCrypto.unwrap(hex("000102030405060708090A0B0C0D0E0F"), wrapped);
+    }
+
+    @Test
+    public void keyMaterialRoundTrip() throws Exception {
+        for (int keyLength : new int[]{16, 24, 32}) {
+            SrtCrypto sender = SrtCrypto.generate(PASSPHRASE, keyLength);
+            assertEquals(keyLength / 8, sender.getEncryptionField());
+            SrtCrypto receiver = SrtCrypto.fromKeyMaterial(PASSPHRASE, keyMaterial(sender));
+
+            byte[] plain = "MPEG-TS payload spanning more than one AES block".getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer packet = ByteBuffer.wrap(plain.clone());
+            sender.crypt(42, packet, 0, plain.length);
+            assertFalse(Arrays.equals(plain, packet.array()));
+            receiver.crypt(42, packet, 0, plain.length);
+            assertArrayEquals(plain, packet.array());
+        }
+    }
+
+    @Test
+    public void keyMaterialRejectsWrongPassphrase() throws Exception {
+        ByteBuffer km = keyMaterial(SrtCrypto.generate(PASSPHRASE, 16));
+        try {
+            SrtCrypto.fromKeyMaterial("wrong passphrase", km);
+            fail("密码错误时应无法解开密钥");
+        } catch (GeneralSecurityException expected) {
+            // 预期
+        }
+    }
+
+    private static ByteBuffer keyMaterial(SrtCrypto crypto) {
+        ByteBuffer km = ByteBuffer.allocate(crypto.getKeyMaterialWords() * 4);
+        crypto.writeKeyMaterial(km);
+        assertEquals(km.capacity(), km.position());
+        km.flip();
+        return km;
+    }
+
+    private static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
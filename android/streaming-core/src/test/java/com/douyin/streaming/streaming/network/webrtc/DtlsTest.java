@@ -0,0 +1,158 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import static com.douyin.streaming.streaming.network.webrtc.SrtpTest.bytes;
+import static com.douyin.streaming.streaming.network.webrtc.SrtpTest.hex;
+import static com.douyin.streaming.streaming.network.webrtc.SrtpTest.packet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * DTLS 1.2测试
+ * PRF取TLS 1.2 P_SHA256的公开测试向量；握手在内存中的两端之间进行，校验导出的DTLS-SRTP密钥材料
+ */
+public class DtlsTest {
+    private static final byte[] RTP_PLAIN = hex("800F1234DECAFBADCAFEBABE"
+            + "ABABABABABABABABABABABABABABABAB");
+
+    private DtlsCertificate clientCertificate;
+    private DtlsCertificate serverCertificate;
+    private final ArrayDeque<byte[]> toServer = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> toClient = new ArrayDeque<>();
+    // 0表示不设置重发定时，时钟从非0开始
+    private long now = TimeUnit.SECONDS.toNanos(1);
+
+    @Before
+    public void setUp() throws Exception {
+        clientCertificate = DtlsCertificate.generate("client");
+        serverCertificate = DtlsCertificate.generate("server");
+    }
+
+    @Test
+    public void prfMatchesTls12Vector() {
+        byte[] expected = hex("E3F229BA727BE17B8D122620557CD453C2AAB21D07C3D495329B52D4E61EDB5A"
+                + "6B301791E90D35C9C9A46B4E14BAF9AF0FA022F7077DEF17ABFD3797C0564BAB"
+                + "4FBC91666E9DEF9B97FCE34F796789BAA48082D122EE42C5A72E5A5110FFF701"
+                + "87347B66");
+        byte[] actual = Dtls.prf(hex("9BBE436BA940F017B17652849A71DB35"), "test label",
+                hex("A0BA9F936CDA311827A6F796FFD5198C"), expected.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void handshakeExportsSameSrtpKeys() throws Exception {
+        Dtls client = client(serverCertificate.getFingerprint());
+        Dtls server = server(clientCertificate.getFingerprint());
+        client.start(now);
+        server.start(now);
+        pump(client, server);
+
+        assertTrue(client.isConnected());
+        assertTrue(server.isConnected());
+        byte[] material = client.exportSrtpKeyingMaterial();
+        assertEquals(2 * (Dtls.SRTP_KEY_SIZE + Dtls.SRTP_SALT_SIZE), material.length);
+        assertArrayEquals(material, server.exportSrtpKeyingMaterial());
+
+        // 客户端以自己的密钥加密，服务端以客户端的密钥解密
+        Srtp sender = Srtp.fromKeyingMaterial(material, true);
+        Srtp receiver = Srtp.fromKeyingMaterial(server.exportSrtpKeyingMaterial(), true);
+        ByteBuffer packet = packet(RTP_PLAIN);
+        int length = sender.protectRtp(packet, RTP_PLAIN.length);
+        assertArrayEquals(RTP_PLAIN, bytes(packet, receiver.unprotectRtp(packet, length)));
+        // 反方向的密钥不同
+        packet = packet(RTP_PLAIN);
+        length = sender.protectRtp(packet, RTP_PLAIN.length);
+        assertEquals(-1, Srtp.fromKeyingMaterial(material, false).unprotectRtp(packet, length));
+    }
+
+    @Test
+    public void handshakeRetransmitsLostFlight() throws Exception {
+        Dtls client = client(serverCertificate.getFingerprint());
+        Dtls server = server(clientCertificate.getFingerprint());
+        client.start(now);
+        assertFalse(toServer.isEmpty());
+        toServer.clear();
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        client.poll(now);
+        pump(client, server);
+        assertTrue(client.isConnected());
+        assertTrue(server.isConnected());
+    }
+
+    @Test
+    public void clientRejectsServerFingerprintMismatch() throws Exception {
+        Dtls client = client(clientCertificate.getFingerprint());
+        Dtls server = server(clientCertificate.getFingerprint());
+        client.start(now);
+        try {
+            pump(client, server);
+            fail("对端证书摘要不符时握手应失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+        assertFalse(client.isConnected());
+        assertFalse(server.isConnected());
+    }
+
+    @Test
+    public void serverRejectsClientFingerprintMismatch() throws Exception {
+        Dtls client = client(serverCertificate.getFingerprint());
+        Dtls server = server(serverCertificate.getFingerprint());
+        client.start(now);
+        try {
+            pump(client, server);
+            fail("对端证书摘要不符时握手应失败");
+        } catch (IOException expected) {
+            // 预期
+        }
+        assertFalse(server.isConnected());
+    }
+
+    @Test(expected = IOException.class)
+    public void exportBeforeConnectedFails() throws Exception {
+        client(serverCertificate.getFingerprint()).exportSrtpKeyingMaterial();
+    }
+
+    private Dtls client(String remoteFingerprint) {
+        return new Dtls(true, clientCertificate, remoteFingerprint, datagram -> toServer.add(copy(datagram)));
+    }
+
+    private Dtls server(String remoteFingerprint) {
+        return new Dtls(false, serverCertificate, remoteFingerprint, datagram -> toClient.add(copy(datagram)));
+    }
+
+    /**
+     * 在两端之间交换数据报，直到没有待发送的数据
+     */
+    private void pump(Dtls client, Dtls server) throws IOException {
+        for (int round = 0; round < 100 && (!toServer.isEmpty() || !toClient.isEmpty()); round++) {
+            while (!toServer.isEmpty()) {
+                ByteBuffer datagram = ByteBuffer.wrap(toServer.poll());
+                assertTrue(Dtls.isDtls(datagram));
+                server.receive(datagram, now);
+            }
+            while (!toClient.isEmpty()) {
+                ByteBuffer datagram = ByteBuffer.wrap(toClient.poll());
+                assertTrue(Dtls.isDtls(datagram));
+                client.receive(datagram, now);
+            }
+        }
+    }
+
+    private static byte[] copy(ByteBuffer datagram) {
+        byte[] out = new byte[datagram.remaining()];
+        datagram.duplicate().get(out);
+        return out;
+    }
+}
@@ -0,0 +1,96 @@
+package com.douyin.streaming.streaming.network.webrtc;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SRTP (AES_CM_128_HMAC_SHA1_80) 测试
+ * 密钥导出取RFC 3711附录B.3的向量，整包加密取libsrtp的srtp_driver向量，与之使用同一主密钥和主盐
+ */
+public class SrtpTest {
+    private static final byte[] MASTER_KEY = hex("E1F97A0D3E018BE0D64FA32C06DE4139");
+    private static final byte[] MASTER_SALT = hex("0EC675AD498AFEEBB6960B3AABE6");
+    private static final byte[] RTP_PLAIN = hex("800F1234DECAFBADCAFEBABE"
+            + "ABABABABABABABABABABABABABABABAB");
+    private static final byte[] RTP_PROTECTED = hex("800F1234DECAFBADCAFEBABE"
+            + "4E55DC4CE79978D88CA4D215949D2402" + "B78D6ACC99EA179B8DBB");
+    // 发送者报告：头部、SSRC和20字节发送者信息
+    private static final byte[] RTCP_PLAIN = hex("80C80006CAFEBABE"
+            + "0102030405060708090A0B0C0D0E0F1011121314");
+
+    @Test
+    public void deriveMatchesRfc3711() throws Exception {
+        Cipher kdf = Cipher.getInstance("AES/ECB/NoPadding");
+        kdf.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(MASTER_KEY, "AES"));
+        assertArrayEquals(hex("C61E7A93744F39EE10734AFE3FF7A087"), Srtp.derive(kdf, MASTER_SALT, 0, 16));
+        assertArrayEquals(hex("CEBE321F6FF7716B6FD4AB49AF256A156D38BAA4"), Srtp.derive(kdf, MASTER_SALT, 1, 20));
+        assertArrayEquals(hex("30CBBC08863D8C85D49DB34A9AE1"), Srtp.derive(kdf, MASTER_SALT, 2, 14));
+    }
+
+    @Test
+    public void protectRtpMatchesLibsrtp() throws Exception {
+        ByteBuffer packet = packet(RTP_PLAIN);
+        int length = new Srtp(MASTER_KEY, MASTER_SALT).protectRtp(packet, RTP_PLAIN.length);
+        assertArrayEquals(RTP_PROTECTED, bytes(packet, length));
+    }
+
+    @Test
+    public void unprotectRtpMatchesLibsrtp() throws Exception {
+        ByteBuffer packet = packet(RTP_PROTECTED);
+        int length = new Srtp(MASTER_KEY, MASTER_SALT).unprotectRtp(packet, RTP_PROTECTED.length);
+        assertArrayEquals(RTP_PLAIN, bytes(packet, length));
+    }
+
+    @Test
+    public void unprotectRtpRejectsTamperedPacket() throws Exception {
+        byte[] tampered = RTP_PROTECTED.clone();
+        tampered[20] ^= 1;
+        assertEquals(-1, new Srtp(MASTER_KEY, MASTER_SALT).unprotectRtp(packet(tampered), tampered.length));
+    }
+
+    @Test
+    public void rtcpRoundTrip() throws Exception {
+        ByteBuffer packet = packet(RTCP_PLAIN);
+        int length = new Srtp(MASTER_KEY, MASTER_SALT).protectRtcp(packet, RTCP_PLAIN.length);
+        assertEquals(RTCP_PLAIN.length + Srtp.SRTCP_INDEX_SIZE + Srtp.AUTH_TAG_SIZE, length);
+
+        Srtp receiver = new Srtp(MASTER_KEY, MASTER_SALT);
+        byte[] tampered = bytes(packet, length);
+        tampered[12] ^= 1;
+        assertEquals(-1, receiver.unprotectRtcp(packet(tampered), length));
+        assertArrayEquals(RTCP_PLAIN, bytes(packet, receiver.unprotectRtcp(packet, length)));
+    }
+
+    /**
+     * 复制到留出认证标签和SRTCP序号空间的缓冲区
+     */
+    static ByteBuffer packet(byte[] data) {
+        ByteBuffer packet = ByteBuffer.allocate(data.length + Srtp.SRTCP_INDEX_SIZE + Srtp.AUTH_TAG_SIZE);
+        packet.put(data);
+        packet.clear();
+        return packet;
+    }
+
+    static byte[] bytes(ByteBuffer packet, int length) {
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = packet.get(i);
+        }
+        return out;
+    }
+
+    static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,107 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 自适应码率测试，以合成的队列占用、发送速率和往返时延逐周期驱动
+ */
+public class AdaptiveBitrateControllerTest {
+    private static final int INITIAL = 2000;
+    private static final int MIN = 300;
+    private static final double MIN_RTT = 20;
+
+    private final AdaptiveBitrateController controller = new AdaptiveBitrateController(INITIAL, MIN);
+
+    @Test
+    public void queueBacklogDecreasesFromThroughput() {
+        AdaptiveBitrateController.Decision decision = controller.update(0.6, 1800, MIN_RTT, MIN_RTT, 0);
+        assertNotNull(decision);
+        assertEquals(INITIAL, decision.getOldBitrate());
+        assertEquals(1260, decision.getNewBitrate());
+        assertEquals(1260, controller.getCurrentBitrate());
+    }
+
+    @Test
+    public void droppedFramesDecreaseFromCurrentWhenThroughputHigher() {
+        assertEquals(1400, controller.update(0, 3000, MIN_RTT, MIN_RTT, 2).getNewBitrate());
+    }
+
+    @Test
+    public void rttQueueingDecreasesMildly() {
+        // 往返时延超过 最小时延 * 2 + 50ms
+        assertNull(controller.update(0.2, 0, MIN_RTT * 2 + 50, MIN_RTT, 0));
+        assertEquals(1700, controller.update(0.2, 0, MIN_RTT * 2 + 51, MIN_RTT, 0).getNewBitrate());
+    }
+
+    @Test
+    public void holdsAfterDecreaseThenStepsUp() {
+        controller.update(0, 0, -1, -1, 1);
+        assertEquals(1400, controller.getCurrentBitrate());
+        // 下调后保持5个周期，再连续通畅3个周期才上调
+        for (int period = 0; period < 7; period++) {
+            assertNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+        }
+        assertEquals(1512, controller.update(0, 1400, MIN_RTT, MIN_RTT, 0).getNewBitrate());
+        // 上调后重新计数
+        assertNull(controller.update(0, 1512, MIN_RTT, MIN_RTT, 0));
+        assertNull(controller.update(0, 1512, MIN_RTT, MIN_RTT, 0));
+        assertEquals(1632, controller.update(0, 1512, MIN_RTT, MIN_RTT, 0).getNewBitrate());
+    }
+
+    @Test
+    public void partialBacklogResetsStablePeriods() {
+        controller.update(0, 0, -1, -1, 1);
+        for (int period = 0; period < 5; period++) {
+            controller.update(0, 1400, MIN_RTT, MIN_RTT, 0);
+        }
+        assertNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+        assertNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+        // 队列占用介于通畅和拥塞之间，不调整但打断连续通畅
+        assertNull(controller.update(0.3, 1400, MIN_RTT, MIN_RTT, 0));
+        assertNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+        assertNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+        assertNotNull(controller.update(0, 1400, MIN_RTT, MIN_RTT, 0));
+    }
+
+    @Test
+    public void increaseStopsAtInitialBitrate() {
+        assertNull(controller.update(0, INITIAL, MIN_RTT, MIN_RTT, 0));
+        controller.update(0, 1900, MIN_RTT * 10, MIN_RTT, 0);
+        int previous = controller.getCurrentBitrate();
+        for (int period = 0; period < 100 && controller.getCurrentBitrate() < INITIAL; period++) {
+            controller.update(0, previous, MIN_RTT, MIN_RTT, 0);
+            assertTrue(controller.getCurrentBitrate() >= previous);
+            previous = controller.getCurrentBitrate();
+        }
+        assertEquals(INITIAL, controller.getCurrentBitrate());
+        for (int period = 0; period < 10; period++) {
+            assertNull(controller.update(0, INITIAL, MIN_RTT, MIN_RTT, 0));
+        }
+    }
+
+    @Test
+    public void decreaseStopsAtMinimum() {
+        for (int period = 0; period < 20; period++) {
+            controller.update(1, 0, -1, -1, 5);
+        }
+        assertEquals(MIN, controller.getCurrentBitrate());
+        assertNull(controller.update(1, 0, -1, -1, 5));
+    }
+
+    @Test
+    public void estimateCapsBitrate() {
+        AdaptiveBitrateController.Decision decision = controller.update(0, 0, -1, -1, 0, 1000);
+        assertEquals(1000, decision.getNewBitrate());
+        assertTrue(decision.getReason().contains("带宽估计"));
+        // 估计回升后，通畅时直接跟到估计值
+        for (int period = 0; period < 7; period++) {
+            assertNull(controller.update(0, 1000, MIN_RTT, MIN_RTT, 0, 1800));
+        }
+        assertEquals(1800, controller.update(0, 1000, MIN_RTT, MIN_RTT, 0, 1800).getNewBitrate());
+    }
+}
@@ -0,0 +1,216 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+import com.douyin.streaming.streaming.network.FramePublisher;
+import com.douyin.streaming.streaming.network.TokenBucketPacer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 发送线程取帧顺序测试
+ * 两个队列在发送线程启动前填满，取帧顺序只取决于帧的DTS，校验配置帧最先发送、
+ * 音频领先队首视频不超过MAX_AUDIO_LEAD_US以及两路各自按入队顺序发送
+ */
+public class FrameSenderTest {
+    private static final long MAX_AUDIO_LEAD_US = 100000;
+    private static final long VIDEO_INTERVAL_US = 33333;
+    private static final long AUDIO_INTERVAL_US = 23220;
+    private static final int VIDEO_FRAMES = 15;
+    private static final int AUDIO_FRAMES = 40;
+
+    private final MediaFramePool videoPool = new MediaFramePool(MediaFrame.Track.VIDEO, 32, 64);
+    private final MediaFramePool audioPool = new MediaFramePool(MediaFrame.Track.AUDIO, 64, 64);
+    private final SpscFrameRing videoRing = new SpscFrameRing(32);
+    private final SpscFrameRing audioRing = new SpscFrameRing(64);
+
+    @Test
+    public void configFirstAndAudioLeadBounded() throws Exception {
+        // 音频配置帧先于视频配置帧入队，仍在视频配置帧之后发送
+        offer(audioRing, audioPool, 0, true);
+        offer(videoRing, videoPool, 0, true);
+        for (int i = 0; i < VIDEO_FRAMES; i++) {
+            offer(videoRing, videoPool, i * VIDEO_INTERVAL_US, false);
+        }
+        for (int i = 0; i < AUDIO_FRAMES; i++) {
+            offer(audioRing, audioPool, i * AUDIO_INTERVAL_US, false);
+        }
+        List<Sent> sent = send(VIDEO_FRAMES + AUDIO_FRAMES + 2);
+
+        assertTrue(sent.get(0).video && sent.get(0).config);
+        assertTrue(!sent.get(1).video && sent.get(1).config);
+        long lastVideoDts = -1;
+        long lastAudioDts = -1;
+        int nextVideo = 0;
+        for (Sent frame : sent.subList(2, sent.size())) {
+            assertFalse(frame.config);
+            if (frame.video) {
+                assertEquals(nextVideo * VIDEO_INTERVAL_US, frame.dtsUs);
+                assertTrue(frame.dtsUs > lastVideoDts);
+                lastVideoDts = frame.dtsUs;
+                nextVideo++;
+            } else {
+                assertTrue(frame.dtsUs > lastAudioDts);
+                lastAudioDts = frame.dtsUs;
+                // 还有视频未发送时，音频只能领先队首视频MAX_AUDIO_LEAD_US
+                if (nextVideo < VIDEO_FRAMES) {
+                    assertTrue("音频" + frame.dtsUs + "领先视频" + nextVideo * VIDEO_INTERVAL_US,
+                            frame.dtsUs - nextVideo * VIDEO_INTERVAL_US <= MAX_AUDIO_LEAD_US);
+                }
+            }
+        }
+        assertEquals(VIDEO_FRAMES, nextVideo);
+    }
+
+    @Test
+    public void audioFirstWhileWithinLead() throws Exception {
+        offer(videoRing, videoPool, 0, false);
+        offer(audioRing, audioPool, 0, false);
+        offer(audioRing, audioPool, MAX_AUDIO_LEAD_US, false);
+        offer(audioRing, audioPool, MAX_AUDIO_LEAD_US + 1, false);
+        List<Sent> sent = send(4);
+
+        // 领先量等于上限的音频仍先发，超出上限后先发视频
+        assertFalse(sent.get(0).video);
+        assertFalse(sent.get(1).video);
+        assertTrue(sent.get(2).video);
+        assertEquals(MAX_AUDIO_LEAD_US + 1, sent.get(3).dtsUs);
+    }
+
+    @Test
+    public void audioOnlyAndVideoOnlyFlow() throws Exception {
+        offer(audioRing, audioPool, 0, false);
+        offer(audioRing, audioPool, 10 * MAX_AUDIO_LEAD_US, false);
+        assertEquals(2, send(2).size());
+
+        offer(videoRing, videoPool, 0, false);
+        offer(videoRing, videoPool, VIDEO_INTERVAL_US, false);
+        assertEquals(2, send(2).size());
+    }
+
+    /**
+     * 启动发送线程，发出count帧后停止
+     */
+    private List<Sent> send(int count) throws InterruptedException {
+        RecordingPublisher publisher = new RecordingPublisher(count);
+        // 延迟上限足够大，不按积压丢帧
+        GopDropPolicy dropPolicy = new GopDropPolicy(() -> { }, (int) TimeUnit.MINUTES.toMillis(1));
+        FrameSender sender = new FrameSender(videoRing, audioRing, publisher, dropPolicy, e -> { });
+        sender.start();
+        try {
+            assertTrue("发送未完成", publisher.done.await(5, TimeUnit.SECONDS));
+        } finally {
+            assertTrue(sender.stop());
+        }
+        synchronized (publisher) {
+            assertEquals(count, publisher.sent.size());
+            return new ArrayList<>(publisher.sent);
+        }
+    }
+
+    private static void offer(SpscFrameRing ring, MediaFramePool pool, long dtsUs, boolean config) {
+        MediaFrame frame = pool.acquire();
+        frame.prepareWrite(16).flip();
+        frame.set(dtsUs, dtsUs, !config, config, System.nanoTime());
+        assertTrue(ring.offer(frame));
+    }
+
+    private static final class Sent {
+        final boolean video;
+        final boolean config;
+        final long dtsUs;
+
+        Sent(MediaFrame frame) {
+            this.video = frame.isVideo();
+            this.config = frame.isConfig();
+            this.dtsUs = frame.getDtsUs();
+        }
+    }
+
+    /**
+     * 记录发送顺序的发布器，帧在sendFrame返回后释放，只保存帧属性
+     */
+    private static final class RecordingPublisher implements FramePublisher {
+        final List<Sent> sent = new ArrayList<>();
+        final CountDownLatch done;
+
+        RecordingPublisher(int count) {
+            this.done = new CountDownLatch(count);
+        }
+
+        @Override
+        public synchronized void sendFrame(MediaFrame frame) {
+            sent.add(new Sent(frame));
+            done.countDown();
+        }
+
+        @Override
+        public void setFrameReader(int reader) {
+        }
+
+        @Override
+        public void setPacer(TokenBucketPacer pacer) {
+        }
+
+        @Override
+        public void connect(int timeoutMs) {
+        }
+
+        @Override
+        public long getBytesSent() {
+            return 0;
+        }
+
+        @Override
+        public double getRttMs() {
+            return 0;
+        }
+
+        @Override
+        public double getMinRttMs() {
+            return 0;
+        }
+
+        @Override
+        public int getEstimatedBitrateKbps() {
+            return 0;
+        }
+
+        @Override
+        public long getPacketsSent() {
+            return 0;
+        }
+
+        @Override
+        public long getPacketsLost() {
+            return 0;
+        }
+
+        @Override
+        public long getPacketsRetransmitted() {
+            return 0;
+        }
+
+        @Override
+        public void sendMetaData(int width, int height, int fps, int videoBitrate,
+                                 int audioBitrate, int audioSampleRate, int audioChannels) {
+        }
+
+        @Override
+        public void sendKeepAlive() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按GOP丢帧策略测试
+ * 入队端和发送端分别校验保留、丢弃至下一个关键帧和积压过期的状态转换，配置帧和音频帧从不丢弃
+ */
+public class GopDropPolicyTest {
+    private static final int CAPACITY = 8;
+    private static final int MAX_LATENCY_MS = 100;
+    private static final long NOW = TimeUnit.SECONDS.toNanos(10);
+    private static final long STALE = NOW - TimeUnit.MILLISECONDS.toNanos(MAX_LATENCY_MS + 1);
+
+    private final MediaFramePool videoPool = new MediaFramePool(MediaFrame.Track.VIDEO, 16, 64);
+    private final MediaFramePool audioPool = new MediaFramePool(MediaFrame.Track.AUDIO, 4, 64);
+    private int keyFrameRequests;
+    private final GopDropPolicy policy = new GopDropPolicy(() -> keyFrameRequests++, MAX_LATENCY_MS);
+
+    @Test
+    public void admitsFramesBelowCapacity() {
+        assertTrue(policy.admit(video(true, NOW), 0, CAPACITY));
+        assertTrue(policy.admit(video(false, NOW), CAPACITY - 1, CAPACITY));
+        assertEquals(0, policy.getDroppedFrames());
+        assertEquals(0, keyFrameRequests);
+    }
+
+    @Test
+    public void dropsNonReferenceFramesWhenHalfFull() {
+        MediaFrame frame = video(false, NOW);
+        frame.setNonReference(true);
+        assertTrue(policy.admit(frame, CAPACITY / 2 - 1, CAPACITY));
+        assertFalse(policy.admit(frame, CAPACITY / 2, CAPACITY));
+        assertEquals(1, policy.getNonReferenceDropped());
+        // 非参考帧不影响后续帧，不进入丢弃至关键帧的状态
+        assertTrue(policy.admit(video(false, NOW), CAPACITY / 2, CAPACITY));
+        assertEquals(0, keyFrameRequests);
+    }
+
+    @Test
+    public void fullQueueSkipsToNextKeyFrame() {
+        assertFalse(policy.admit(video(false, NOW), CAPACITY, CAPACITY));
+        assertEquals(1, keyFrameRequests);
+        // 队列已空时仍丢弃当前GOP剩余的帧
+        assertFalse(policy.admit(video(false, NOW), 0, CAPACITY));
+        assertEquals(1, keyFrameRequests);
+        assertTrue(policy.admit(video(true, NOW), 0, CAPACITY));
+        assertTrue(policy.admit(video(false, NOW), 0, CAPACITY));
+        assertEquals(2, policy.getDroppedFrames());
+    }
+
+    @Test
+    public void rejectedOfferSkipsToNextKeyFrame() {
+        MediaFrame frame = video(false, NOW);
+        assertTrue(policy.admit(frame, 0, CAPACITY));
+        policy.onRejected(frame);
+        assertEquals(1, keyFrameRequests);
+        assertFalse(policy.admit(video(false, NOW), 0, CAPACITY));
+        assertTrue(policy.admit(video(true, NOW), 0, CAPACITY));
+        assertEquals(2, policy.getDroppedFrames());
+    }
+
+    @Test
+    public void staleFrameSkipsToNextKeyFrame() {
+        assertFalse(policy.discardStale(video(false, NOW), NOW));
+        assertTrue(policy.discardStale(video(false, STALE), NOW));
+        assertEquals(1, keyFrameRequests);
+        // 未过期的帧也丢弃，直到关键帧；关键帧即使过期也发送
+        assertTrue(policy.discardStale(video(false, NOW), NOW));
+        assertFalse(policy.discardStale(video(true, STALE), NOW));
+        assertFalse(policy.discardStale(video(false, NOW), NOW));
+        assertEquals(2, policy.getDroppedFrames());
+        assertEquals(1, keyFrameRequests);
+    }
+
+    @Test
+    public void configAndAudioFramesNeverDropped() {
+        MediaFrame config = videoPool.acquire();
+        config.set(0, 0, false, true, STALE);
+        MediaFrame audio = audioPool.acquire();
+        audio.set(0, 0, false, false, STALE);
+
+        // 入队端和发送端都处于丢弃至关键帧的状态
+        assertFalse(policy.admit(video(false, NOW), CAPACITY, CAPACITY));
+        assertTrue(policy.discardStale(video(false, STALE), NOW));
+        int requests = keyFrameRequests;
+
+        assertTrue(policy.admit(config, CAPACITY, CAPACITY));
+        assertTrue(policy.admit(audio, CAPACITY, CAPACITY));
+        assertFalse(policy.discardStale(config, NOW));
+        assertFalse(policy.discardStale(audio, NOW));
+        policy.onRejected(config);
+        policy.onRejected(audio);
+        assertEquals(2, policy.getDroppedFrames());
+        assertEquals(requests, keyFrameRequests);
+    }
+
+    private MediaFrame video(boolean keyFrame, long createdNanos) {
+        MediaFrame frame = videoPool.acquire();
+        frame.set(0, 0, keyFrame, false, createdNanos);
+        return frame;
+    }
+}
@@ -0,0 +1,93 @@
+package com.douyin.streaming.streaming.pipeline;
+
+import com.douyin.streaming.streaming.media.MediaFrame;
+import com.douyin.streaming.streaming.media.MediaFramePool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 单生产者单消费者帧队列测试，在单线程上校验容量取整、满/空和环绕后的顺序
+ */
+public class SpscFrameRingTest {
+    private final MediaFramePool pool = new MediaFramePool(MediaFrame.Track.VIDEO, 16, 64);
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, new SpscFrameRing(0).capacity());
+        assertEquals(2, new SpscFrameRing(1).capacity());
+        assertEquals(2, new SpscFrameRing(2).capacity());
+        assertEquals(4, new SpscFrameRing(3).capacity());
+        assertEquals(8, new SpscFrameRing(5).capacity());
+        assertEquals(8, new SpscFrameRing(8).capacity());
+        assertEquals(128, new SpscFrameRing(100).capacity());
+    }
+
+    @Test
+    public void emptyRingReturnsNull() {
+        SpscFrameRing ring = new SpscFrameRing(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.peek());
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        SpscFrameRing ring = new SpscFrameRing(3);
+        MediaFrame[] frames = frames(ring.capacity() + 1);
+        for (int i = 0; i < ring.capacity(); i++) {
+            assertTrue(ring.offer(frames[i]));
+        }
+        assertEquals(ring.capacity(), ring.size());
+        assertFalse(ring.offer(frames[ring.capacity()]));
+
+        // 出队一帧后又可入队
+        assertSame(frames[0], ring.poll());
+        assertTrue(ring.offer(frames[ring.capacity()]));
+        assertEquals(ring.capacity(), ring.size());
+    }
+
+    @Test
+    public void peekDoesNotRemove() {
+        SpscFrameRing ring = new SpscFrameRing(4);
+        MediaFrame frame = frames(1)[0];
+        ring.offer(frame);
+        assertSame(frame, ring.peek());
+        assertSame(frame, ring.peek());
+        assertEquals(1, ring.size());
+        assertSame(frame, ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void wrapAroundKeepsOrder() {
+        SpscFrameRing ring = new SpscFrameRing(4);
+        MediaFrame[] frames = frames(3);
+        // 每轮入队3帧再出队，位置多次越过容量后仍按入队顺序取出
+        for (int round = 0; round < 10; round++) {
+            for (MediaFrame frame : frames) {
+                assertTrue(ring.offer(frame));
+            }
+            assertEquals(frames.length, ring.size());
+            for (MediaFrame frame : frames) {
+                assertSame(frame, ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    private MediaFrame[] frames(int count) {
+        MediaFrame[] frames = new MediaFrame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = pool.acquire();
+            frames[i].set(i, i, false, false, 0);
+        }
+        return frames;
+    }
+}
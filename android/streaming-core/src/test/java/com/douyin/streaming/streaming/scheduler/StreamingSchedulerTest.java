@@ -0,0 +1,115 @@
+package com.douyin.streaming.streaming.scheduler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 定时任务调度测试
+ * 任务都在同一个定时线程上按顺序执行，取消后等一个标记任务执行完，即可确认没有正在执行的旧任务
+ */
+public class StreamingSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final long PERIOD_MS = 10;
+
+    private final StreamingScheduler scheduler = new StreamingScheduler();
+
+    @After
+    public void tearDown() {
+        scheduler.release();
+    }
+
+    @Test
+    public void periodicTaskRepeatsOnTimerThread() throws Exception {
+        CountDownLatch runs = new CountDownLatch(5);
+        String[] threadName = {null};
+        StreamingScheduler.Task task = scheduler.schedulePeriodic("periodic", () -> {
+            threadName[0] = Thread.currentThread().getName();
+            runs.countDown();
+        }, 0, PERIOD_MS);
+        assertEquals(1, scheduler.getTaskCount());
+        assertTrue(runs.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        task.cancel();
+        assertEquals("StreamingTimer", threadName[0]);
+    }
+
+    @Test
+    public void cancelledPeriodicTaskStops() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        StreamingScheduler.Task task = scheduler.schedulePeriodic("periodic", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+        }, 0, PERIOD_MS);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        task.cancel();
+        assertEquals(0, scheduler.getTaskCount());
+        awaitTimer(0);
+        int cancelledAt = runs.get();
+        awaitTimer(PERIOD_MS * 5);
+        assertEquals(cancelledAt, runs.get());
+    }
+
+    @Test
+    public void exceptionDoesNotStopPeriodicTask() throws Exception {
+        CountDownLatch runs = new CountDownLatch(3);
+        scheduler.schedulePeriodic("failing", () -> {
+            runs.countDown();
+            throw new IllegalStateException("测试异常");
+        }, 0, PERIOD_MS);
+        assertTrue(runs.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void oneShotTaskRunsOnceAndUnregisters() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedule("once", runs::incrementAndGet, PERIOD_MS);
+        awaitTimer(PERIOD_MS * 5);
+        assertEquals(1, runs.get());
+        // 单次任务在执行结束后才移除，包括标记任务自身
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (scheduler.getTaskCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, scheduler.getTaskCount());
+    }
+
+    @Test
+    public void cancelledOneShotTaskNeverRuns() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedule("once", runs::incrementAndGet, PERIOD_MS * 2).cancel();
+        assertEquals(0, scheduler.getTaskCount());
+        awaitTimer(PERIOD_MS * 5);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void releaseCancelsTasksAndIgnoresNewOnes() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedulePeriodic("periodic", runs::incrementAndGet, PERIOD_MS * 100, PERIOD_MS);
+        scheduler.release();
+        assertEquals(0, scheduler.getTaskCount());
+
+        StreamingScheduler.Task late = scheduler.schedule("late", runs::incrementAndGet, 0);
+        assertEquals(0, scheduler.getTaskCount());
+        late.cancel();
+        Thread.sleep(PERIOD_MS * 5);
+        assertEquals(0, runs.get());
+    }
+
+    /**
+     * 等待delayMs后执行的标记任务完成，此前排在定时线程上的任务都已执行完
+     */
+    private void awaitTimer(long delayMs) throws InterruptedException {
+        CountDownLatch marker = new CountDownLatch(1);
+        scheduler.schedule("marker", marker::countDown, delayMs);
+        assertTrue(marker.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
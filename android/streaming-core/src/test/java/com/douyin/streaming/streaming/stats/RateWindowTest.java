@@ -0,0 +1,102 @@
+package com.douyin.streaming.streaming.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 滑动窗口测试，每秒写入一次累计值，校验不同窗口的速率、采样环绕后的窗口滚动和指数加权平均
+ */
+public class RateWindowTest {
+    private static final double DELTA = 1e-6;
+
+    private final RateWindow window = new RateWindow(0.5);
+    private long total;
+    private int second;
+
+    @Test
+    public void needsTwoSamples() {
+        assertEquals(0, window.rate(1), DELTA);
+        tick(1000);
+        assertEquals(0, window.rate(1), DELTA);
+        tick(1000);
+        assertEquals(1000, window.rate(1), DELTA);
+    }
+
+    @Test
+    public void windowRollsOverToRecentSeconds() {
+        tick(0);
+        for (int i = 0; i < 10; i++) {
+            tick(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            tick(3000);
+        }
+        assertEquals(3000, window.rate(1), DELTA);
+        assertEquals(3000, window.rate(10), DELTA);
+        assertEquals((10 * 3000 + 5 * 1000) / 15.0, window.rate(15), DELTA);
+        assertEquals(2000, window.rate(20), DELTA);
+        // 采样不足时使用已有的全部采样
+        assertEquals(2000, window.rate(RateWindow.MAX_WINDOW_SECONDS), DELTA);
+    }
+
+    @Test
+    public void windowSurvivesRingWrapAround() {
+        tick(0);
+        // 超过环形容量后，窗口仍只覆盖最近的采样
+        for (int i = 0; i < 100; i++) {
+            tick(1000);
+        }
+        for (int i = 0; i < 20; i++) {
+            tick(4000);
+        }
+        assertEquals(4000, window.rate(20), DELTA);
+        assertEquals(3000, window.rate(RateWindow.MAX_WINDOW_SECONDS), DELTA);
+        // 窗口上限为MAX_WINDOW_SECONDS秒
+        assertEquals(3000, window.rate(60), DELTA);
+    }
+
+    @Test
+    public void ewmaWeightsLatestSecond() {
+        tick(0);
+        tick(1000);
+        assertEquals(1000, window.ewma(), DELTA);
+        tick(3000);
+        assertEquals(2000, window.ewma(), DELTA);
+        tick(3000);
+        assertEquals(2500, window.ewma(), DELTA);
+    }
+
+    @Test
+    public void counterResetIsNotNegative() {
+        tick(0);
+        tick(1000);
+        // 会话重建后累计值从0重新开始
+        total = 0;
+        tick(200);
+        assertEquals(0, window.rate(1), DELTA);
+        assertEquals(100, window.rate(2), DELTA);
+    }
+
+    @Test
+    public void resetClearsSamples() {
+        tick(0);
+        tick(1000);
+        window.reset();
+        assertEquals(0, window.rate(1), DELTA);
+        assertEquals(0, window.ewma(), DELTA);
+        tick(500);
+        tick(500);
+        assertEquals(500, window.rate(5), DELTA);
+    }
+
+    /**
+     * 前进一秒，累计值增加delta后采样
+     */
+    private void tick(long delta) {
+        total += delta;
+        window.sample(total, TimeUnit.SECONDS.toNanos(++second));
+    }
+}
@@ -0,0 +1,152 @@
+package com.douyin.streaming.streaming.stats;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 遥测记录和导出的往返测试
+ * 以TelemetryRecorder写入记录后用TelemetryExporter导出CSV，校验字段和差值计算，
+ * 以及记录区写满覆盖后仍从最旧的记录开始按时间顺序导出
+ */
+public class TelemetryExporterTest {
+    private static final int CAPACITY = 4;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 每个间隔发送12500字节、3帧视频，即1000kbps、30fps
+    private static final long BYTES_PER_INTERVAL = 12500;
+    private static final long FRAMES_PER_INTERVAL = 3;
+    private static final long ENCODER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(40);
+    private static final int STREAMING = 3;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportsRecordedFields() throws IOException {
+        File file = record(3);
+        TelemetryExporter exporter = new TelemetryExporter(file);
+        assertEquals(3, exporter.getRecordCount());
+
+        Csv csv = export(exporter);
+        assertEquals(3, csv.rows.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("STREAMING", csv.get(i, "status"));
+            assertEquals(String.valueOf(i * BYTES_PER_INTERVAL), csv.get(i, "bytes_sent"));
+            assertEquals(String.valueOf(i * FRAMES_PER_INTERVAL), csv.get(i, "video_frames"));
+            assertEquals(String.valueOf(i), csv.get(i, "queue_depth"));
+            assertEquals("1000", csv.get(i, "target_bitrate_kbps"));
+            assertEquals("25.500", csv.get(i, "rtt_ms"));
+            assertEquals("2", csv.get(i, "retry_count"));
+            assertEquals(40, csv.getDouble(i, "encoder_idle_ms"), 1e-3);
+        }
+        // 第一条记录没有前一条，速率为0
+        assertEquals(0, csv.getDouble(0, "bitrate_kbps"), 1e-3);
+        assertEquals(1000, csv.getDouble(1, "bitrate_kbps"), 1e-3);
+        assertEquals(30, csv.getDouble(2, "fps"), 1e-3);
+        assertEquals("0", csv.get(1, "drops"));
+        assertEquals("1", csv.get(2, "drops"));
+        assertEquals(100, csv.getDouble(2, "time_ms") - csv.getDouble(1, "time_ms"), 1e-3);
+    }
+
+    @Test
+    public void wrappedRecordsExportOldestFirst() throws IOException {
+        int records = CAPACITY * 2 + 2;
+        TelemetryExporter exporter = new TelemetryExporter(record(records));
+        assertEquals(CAPACITY, exporter.getRecordCount());
+
+        Csv csv = export(exporter);
+        assertEquals(CAPACITY, csv.rows.size());
+        // 只保留最近的CAPACITY条，第一条为最旧的
+        for (int row = 0; row < CAPACITY; row++) {
+            long i = records - CAPACITY + row;
+            assertEquals(String.valueOf(i * BYTES_PER_INTERVAL), csv.get(row, "bytes_sent"));
+        }
+        assertEquals(0, csv.getDouble(0, "bitrate_kbps"), 1e-3);
+        for (int row = 1; row < CAPACITY; row++) {
+            assertEquals(1000, csv.getDouble(row, "bitrate_kbps"), 1e-3);
+            assertEquals(100, csv.getDouble(row, "time_ms") - csv.getDouble(row - 1, "time_ms"), 1e-3);
+        }
+    }
+
+    @Test
+    public void jsonIncludesHeaderAndRecords() throws IOException {
+        StringWriter out = new StringWriter();
+        new TelemetryExporter(record(2)).writeJson(out);
+        String json = out.toString();
+        assertTrue(json, json.contains("\"interval_ms\":100,\"video_bitrate_kbps\":1000,\"video_fps\":30"));
+        assertTrue(json, json.contains("\"bytes_sent\":12500"));
+        assertTrue(json, json.contains("\"status\":\"STREAMING\""));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("other.stlm");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[128]);
+        }
+        new TelemetryExporter(file);
+    }
+
+    /**
+     * 写入count条记录，第i条的累计值为i个间隔的量，每个间隔多丢1帧
+     */
+    private File record(int count) throws IOException {
+        File file = new File(folder.getRoot(), "session" + TelemetryRecorder.FILE_SUFFIX);
+        TelemetryRecorder recorder = new TelemetryRecorder(file, CAPACITY, 100, 1000, 30);
+        // 早于记录开始的编码输出时间导出为未知，第一条记录也须晚于开始ENCODER_IDLE_NANOS
+        long base = System.nanoTime() + ENCODER_IDLE_NANOS;
+        for (int i = 0; i < count; i++) {
+            long now = base + i * INTERVAL_NANOS;
+            recorder.append(now, i * BYTES_PER_INTERVAL, i * FRAMES_PER_INTERVAL, i * 4L, i > 1 ? i - 1 : 0,
+                    i, 1000, 25.5, 120.5, 800, STREAMING, 2, now - ENCODER_IDLE_NANOS);
+        }
+        assertEquals(count, recorder.getRecordCount());
+        recorder.close();
+        return file;
+    }
+
+    private static Csv export(TelemetryExporter exporter) throws IOException {
+        StringWriter out = new StringWriter();
+        exporter.writeCsv(out);
+        return new Csv(out.toString());
+    }
+
+    /**
+     * 导出的CSV，按列名取值
+     */
+    private static final class Csv {
+        final List<String> header;
+        final List<String[]> rows;
+
+        Csv(String text) {
+            List<String> lines = Arrays.asList(text.split("\n"));
+            header = Arrays.asList(lines.get(0).split(","));
+            rows = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                rows.add(line.split(","));
+            }
+        }
+
+        String get(int row, String column) {
+            int index = header.indexOf(column);
+            assertTrue("没有列" + column, index >= 0);
+            return rows.get(row)[index];
+        }
+
+        double getDouble(int row, String column) {
+            return Double.parseDouble(get(row, column));
+        }
+    }
+}